@@ -1,17 +1,15 @@
 package org.springframework.security.access.expression;
 
 import java.io.Serializable;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.BitSet;
 
 import org.springframework.context.ApplicationContext;
 import org.springframework.security.access.PermissionEvaluator;
 import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchyImpl;
 import org.springframework.security.authentication.AuthenticationTrustResolver;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.AuthorityDictionary;
 
 
 /**
@@ -24,7 +22,7 @@ public abstract class SecurityExpressionRoot implements SecurityExpressionOperat
     protected final Authentication authentication;
     private AuthenticationTrustResolver trustResolver;
     private RoleHierarchy roleHierarchy;
-    private Set<String> roles;
+    private BitSet roles;
 
     /** Allows "permitAll" expression */
     public final boolean permitAll = true;
@@ -54,14 +52,12 @@ public abstract class SecurityExpressionRoot implements SecurityExpressionOperat
     }
 
     public final boolean hasRole(String role) {
-        return getAuthoritySet().contains(role);
+        return isGranted(role);
     }
 
     public final boolean hasAnyRole(String... roles) {
-        Set<String> roleSet = getAuthoritySet();
-
         for (String role : roles) {
-            if (roleSet.contains(role)) {
+            if (isGranted(role)) {
                 return true;
             }
         }
@@ -109,19 +105,25 @@ public abstract class SecurityExpressionRoot implements SecurityExpressionOperat
         this.roleHierarchy = roleHierarchy;
     }
 
-    private Set<String> getAuthoritySet() {
-        if (roles == null) {
-            roles = new HashSet<String>();
-            Collection<? extends GrantedAuthority> userAuthorities = authentication.getAuthorities();
+    /**
+     * Checks a role against the {@link AuthorityDictionary} ids of the user's authorities. Without a role hierarchy,
+     * these are retained by the {@code Authentication}, and a {@link RoleHierarchyImpl} caches the reachable ones, so
+     * neither needs to be recomputed for each expression.
+     */
+    private boolean isGranted(String role) {
+        if (roleHierarchy == null) {
+            return AuthorityDictionary.contains(authentication, role);
+        }
 
-            if (roleHierarchy != null) {
-                userAuthorities = roleHierarchy.getReachableGrantedAuthorities(userAuthorities);
-            }
+        if (roleHierarchy instanceof RoleHierarchyImpl) {
+            return ((RoleHierarchyImpl) roleHierarchy).isReachable(authentication.getAuthorities(), role);
+        }
 
-            roles = AuthorityUtils.authorityListToSet(userAuthorities);
+        if (roles == null) {
+            roles = AuthorityDictionary.getIds(roleHierarchy.getReachableGrantedAuthorities(authentication.getAuthorities()));
         }
 
-        return roles;
+        return AuthorityDictionary.contains(roles, role);
     }
 
 
@@ -18,8 +18,10 @@ package org.springframework.security.access.hierarchicalroles;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityDictionary;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.util.ConcurrentLruCache;
 
 import java.util.*;
 import java.util.regex.Matcher;
@@ -80,6 +82,13 @@ public class RoleHierarchyImpl implements RoleHierarchy {
      */
     private Map<GrantedAuthority, Set<GrantedAuthority>> rolesReachableInOneOrMoreStepsMap = null;
 
+    /**
+     * The {@link AuthorityDictionary} ids of the roles reachable from a list of authorities, for
+     * {@link #isReachable(Collection, String)}. Replaced whenever the hierarchy is set.
+     */
+    private volatile ConcurrentLruCache<List<GrantedAuthority>, BitSet> reachableIdsCache =
+            new ConcurrentLruCache<List<GrantedAuthority>, BitSet>(1000);
+
     /**
      * Set the role hierarchy and pre-calculate for every role the set of all reachable roles, i.e. all roles lower in
      * the hierarchy of every given role. Pre-calculation is done for performance reasons (reachable roles can then be
@@ -96,6 +105,36 @@ public class RoleHierarchyImpl implements RoleHierarchy {
 
         buildRolesReachableInOneStepMap();
         buildRolesReachableInOneOrMoreStepsMap();
+        reachableIdsCache = new ConcurrentLruCache<List<GrantedAuthority>, BitSet>(1000);
+    }
+
+    /**
+     * Checks whether a role can be reached from the given authorities. The ids of the reachable roles are cached for
+     * each list of authorities, so that voters don't have to recalculate them on every invocation. Token authorities
+     * are interned immutable lists, so they make suitable keys; other collections are not cached.
+     *
+     * @param authorities the authorities granted to the user
+     * @param role the name of the required role
+     * @return true if the role is one of the authorities or is reachable from them
+     * @since 3.2
+     */
+    public boolean isReachable(Collection<? extends GrantedAuthority> authorities, String role) {
+        if (!(authorities instanceof List)) {
+            return AuthorityDictionary.contains(AuthorityDictionary.getIds(getReachableGrantedAuthorities(authorities)),
+                    role);
+        }
+
+        ConcurrentLruCache<List<GrantedAuthority>, BitSet> cache = reachableIdsCache;
+        @SuppressWarnings("unchecked")
+        List<GrantedAuthority> key = (List<GrantedAuthority>) authorities;
+        BitSet ids = cache.get(key);
+
+        if (ids == null) {
+            ids = AuthorityDictionary.getIds(getReachableGrantedAuthorities(authorities));
+            cache.put(new ArrayList<GrantedAuthority>(authorities), ids);
+        }
+
+        return AuthorityDictionary.contains(ids, role);
     }
 
     public Collection<GrantedAuthority> getReachableGrantedAuthorities(Collection<? extends GrantedAuthority> authorities) {
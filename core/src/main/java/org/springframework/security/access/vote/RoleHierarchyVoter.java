@@ -1,10 +1,9 @@
 package org.springframework.security.access.vote;
 
-import java.util.Collection;
-
 import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchyImpl;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityDictionary;
 import org.springframework.util.Assert;
 
 /**
@@ -23,10 +22,17 @@ public class RoleHierarchyVoter extends RoleVoter {
     }
 
     /**
-     * Calls the <tt>RoleHierarchy</tt> to obtain the complete set of user authorities.
+     * Calls the <tt>RoleHierarchy</tt> to obtain the complete set of user authorities. A {@link RoleHierarchyImpl}
+     * caches the result for each set of authorities until its hierarchy is changed.
      */
     @Override
-    Collection<? extends GrantedAuthority> extractAuthorities(Authentication authentication) {
-        return roleHierarchy.getReachableGrantedAuthorities(authentication.getAuthorities());
+    boolean hasAuthority(Authentication authentication, String attribute) {
+        if (roleHierarchy instanceof RoleHierarchyImpl) {
+            return ((RoleHierarchyImpl) roleHierarchy).isReachable(authentication.getAuthorities(), attribute);
+        }
+
+        return AuthorityDictionary.contains(
+                AuthorityDictionary.getIds(roleHierarchy.getReachableGrantedAuthorities(authentication.getAuthorities())),
+                attribute);
     }
 }
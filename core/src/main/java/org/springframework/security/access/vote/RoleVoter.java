@@ -20,7 +20,7 @@ import java.util.Collection;
 import org.springframework.security.access.AccessDecisionVoter;
 import org.springframework.security.access.ConfigAttribute;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityDictionary;
 
 /**
  * Votes if any {@link ConfigAttribute#getAttribute()} starts with a prefix
@@ -93,17 +93,14 @@ public class RoleVoter implements AccessDecisionVoter<Object> {
 
     public int vote(Authentication authentication, Object object, Collection<ConfigAttribute> attributes) {
         int result = ACCESS_ABSTAIN;
-        Collection<? extends GrantedAuthority> authorities = extractAuthorities(authentication);
 
         for (ConfigAttribute attribute : attributes) {
             if (this.supports(attribute)) {
                 result = ACCESS_DENIED;
 
                 // Attempt to find a matching granted authority
-                for (GrantedAuthority authority : authorities) {
-                    if (attribute.getAttribute().equals(authority.getAuthority())) {
-                        return ACCESS_GRANTED;
-                    }
+                if (hasAuthority(authentication, attribute.getAttribute())) {
+                    return ACCESS_GRANTED;
                 }
             }
         }
@@ -111,7 +108,11 @@ public class RoleVoter implements AccessDecisionVoter<Object> {
         return result;
     }
 
-    Collection<? extends GrantedAuthority> extractAuthorities(Authentication authentication) {
-        return authentication.getAuthorities();
+    /**
+     * Checks the attribute against the {@link AuthorityDictionary} ids which the token retains, rather than
+     * comparing it against each authority name.
+     */
+    boolean hasAuthority(Authentication authentication, String attribute) {
+        return AuthorityDictionary.contains(authentication, attribute);
     }
 }
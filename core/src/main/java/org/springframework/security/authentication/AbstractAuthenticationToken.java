@@ -15,14 +15,20 @@
 
 package org.springframework.security.authentication;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.authority.AuthorityDictionary;
+import org.springframework.security.core.authority.AuthorityInterner;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UserDetails;
 
@@ -39,7 +45,8 @@ public abstract class AbstractAuthenticationToken implements Authentication, Cre
     //~ Instance fields ================================================================================================
 
     private Object details;
-    private final Collection<GrantedAuthority> authorities;
+    private Collection<GrantedAuthority> authorities;
+    private transient volatile BitSet authorityIds;
     private boolean authenticated = false;
 
     //~ Constructors ===================================================================================================
@@ -61,17 +68,73 @@ public abstract class AbstractAuthenticationToken implements Authentication, Cre
                 throw new IllegalArgumentException("Authorities collection cannot contain any null elements");
             }
         }
+        // Identical lists of authorities are shared between tokens where possible
+        List<GrantedAuthority> interned = AuthorityInterner.internList(authorities);
+
+        if (interned != null) {
+            this.authorities = interned;
+            return;
+        }
+
         ArrayList<GrantedAuthority> temp = new ArrayList<GrantedAuthority>(authorities.size());
         temp.addAll(authorities);
         this.authorities = Collections.unmodifiableList(temp);
     }
 
+    /**
+     * Creates a token which shares the authorities of an existing token. They are already immutable, so there is no
+     * need to copy them.
+     *
+     * @param prototype the token whose authorities should be used
+     * @param authenticated the initial value of the {@code authenticated} property
+     */
+    AbstractAuthenticationToken(AbstractAuthenticationToken prototype, boolean authenticated) {
+        this.authorities = prototype.authorities;
+        this.authorityIds = prototype.authorityIds;
+        this.authenticated = authenticated;
+    }
+
     //~ Methods ========================================================================================================
 
     public Collection<GrantedAuthority> getAuthorities() {
         return authorities;
     }
 
+    /**
+     * Returns the ids assigned by the {@link AuthorityDictionary} to the authorities of this token, which allows
+     * authorities to be checked without comparing their names. The set is computed when it is first requested and
+     * retained by the token, and a copy is returned.
+     *
+     * @return the ids of the authorities returned by {@link #getAuthorities()}
+     * @since 3.2
+     */
+    public BitSet getAuthorityIds() {
+        return (BitSet) authorityIds().clone();
+    }
+
+    /**
+     * Checks for a single authority id without copying the retained set, which is what the voters need on every
+     * invocation.
+     *
+     * @param id an id assigned by the {@link AuthorityDictionary}
+     * @return true if one of the authorities of this token has the id
+     * @since 3.2
+     */
+    public boolean hasAuthorityId(int id) {
+        return id >= 0 && authorityIds().get(id);
+    }
+
+    private BitSet authorityIds() {
+        BitSet ids = authorityIds;
+
+        if (ids == null) {
+            ids = AuthorityDictionary.getIds(getAuthorities());
+            authorityIds = ids;
+        }
+
+        return ids;
+    }
+
     public String getName() {
         if (this.getPrincipal() instanceof UserDetails) {
             return ((UserDetails) this.getPrincipal()).getUsername();
@@ -116,6 +179,15 @@ public abstract class AbstractAuthenticationToken implements Authentication, Cre
         }
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        List<GrantedAuthority> interned = AuthorityInterner.internList(authorities);
+
+        if (interned != null) {
+            authorities = interned;
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof AbstractAuthenticationToken)) {
@@ -58,6 +58,20 @@ public class AnonymousAuthenticationToken extends AbstractAuthenticationToken im
         setAuthenticated(true);
     }
 
+    /**
+     * Creates a token with the same key, principal and authorities as an existing one. This is cheaper than using the
+     * public constructor, since the authorities are shared rather than copied, and is intended for cases where a new
+     * token is created from the same values for every request.
+     *
+     * @param prototype the token to copy
+     * @since 3.2
+     */
+    protected AnonymousAuthenticationToken(AnonymousAuthenticationToken prototype) {
+        super(prototype, true);
+        this.keyHash = prototype.keyHash;
+        this.principal = prototype.principal;
+    }
+
     //~ Methods ========================================================================================================
 
     public boolean equals(Object obj) {
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.authority;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Assigns a small, dense integer id to each distinct authority name, so that a collection of authorities can be
+ * represented as a {@code BitSet} and checking for a particular authority becomes a single bit test, rather than a
+ * comparison against each of the authority names.
+ * <p>
+ * Ids are assigned the first time an authority is seen and are never reused, so they are only meaningful within a
+ * single JVM. Looking up an authority which has never been assigned an id doesn't register it, so checking arbitrary
+ * attribute values can't cause the dictionary to grow; it only grows with the number of distinct authority names
+ * which are actually granted.
+ *
+ * @since 3.2
+ */
+public final class AuthorityDictionary {
+    private static final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private AuthorityDictionary() {
+    }
+
+    /**
+     * Returns the id of an authority, assigning a new one if necessary.
+     *
+     * @param authority the name of the authority
+     * @return the id, or -1 if the authority is null
+     */
+    public static int getId(String authority) {
+        if (authority == null) {
+            return -1;
+        }
+
+        Integer id = ids.get(authority);
+
+        if (id == null) {
+            // Allocating an id which isn't used if another thread wins the race just leaves a gap
+            Integer newId = Integer.valueOf(nextId.getAndIncrement());
+            id = ids.putIfAbsent(authority, newId);
+            if (id == null) {
+                id = newId;
+            }
+        }
+
+        return id.intValue();
+    }
+
+    /**
+     * @param authority the name of an authority
+     * @return the id of the authority, or -1 if it has never been assigned one (in which case it can't be contained
+     * in any of the sets returned by this class)
+     */
+    public static int findId(String authority) {
+        if (authority == null) {
+            return -1;
+        }
+
+        Integer id = ids.get(authority);
+
+        return id == null ? -1 : id.intValue();
+    }
+
+    /**
+     * @param authorities the authorities (may be null)
+     * @return a new set containing the ids of the authorities. Authorities whose {@code getAuthority()} method
+     * returns null are ignored.
+     */
+    public static BitSet getIds(Collection<? extends GrantedAuthority> authorities) {
+        BitSet bits = new BitSet();
+
+        if (authorities != null) {
+            for (GrantedAuthority authority : authorities) {
+                int id = getId(authority.getAuthority());
+                if (id >= 0) {
+                    bits.set(id);
+                }
+            }
+        }
+
+        return bits;
+    }
+
+    /**
+     * Returns the ids of the authorities of an {@code Authentication}. For an {@code AbstractAuthenticationToken}, the
+     * set is computed once and retained by the token, and a copy is returned.
+     *
+     * @param authentication the authentication
+     * @return the ids of its authorities
+     */
+    public static BitSet getIds(Authentication authentication) {
+        if (authentication instanceof AbstractAuthenticationToken) {
+            return ((AbstractAuthenticationToken) authentication).getAuthorityIds();
+        }
+
+        return getIds(authentication.getAuthorities());
+    }
+
+    /**
+     * Checks whether an {@code Authentication} has an authority without building a set of ids. An
+     * {@code AbstractAuthenticationToken} checks the set it retains; otherwise the names are compared.
+     *
+     * @param authentication the authentication
+     * @param authority the name of an authority
+     * @return true if the authentication has the authority
+     */
+    public static boolean contains(Authentication authentication, String authority) {
+        if (authority == null) {
+            return false;
+        }
+
+        int id = findId(authority);
+
+        if (id >= 0 && authentication instanceof AbstractAuthenticationToken) {
+            return ((AbstractAuthenticationToken) authentication).hasAuthorityId(id);
+        }
+
+        // A name without an id may still be granted by a token whose set hasn't been computed yet
+        for (GrantedAuthority granted : authentication.getAuthorities()) {
+            if (authority.equals(granted.getAuthority())) {
+                // Register it, so that later checks can use the ids
+                getId(authority);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param ids a set of ids returned by one of the {@code getIds} methods
+     * @param authority the name of an authority
+     * @return true if the set contains the id of the authority
+     */
+    public static boolean contains(BitSet ids, String authority) {
+        int id = findId(authority);
+
+        return id >= 0 && ids.get(id);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.authority;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.SpringSecurityCoreVersion;
+import org.springframework.security.util.ConcurrentLruCache;
+
+/**
+ * A registry of shared, immutable instances of {@code SimpleGrantedAuthority} and of collections of them.
+ * <p>
+ * Applications typically have a large number of users, but a small number of distinct roles and combinations of
+ * roles. Since each {@code User} and {@code Authentication} normally has its own copy of its authorities, a large
+ * number of identical collections may be retained (for example, in {@code HttpSession}s). The methods of this class
+ * return a canonical instance for each distinct authority, set or list, so that they are shared instead.
+ * {@code User} and {@code AbstractAuthenticationToken} intern the collections they store, including when they are
+ * deserialized, while {@code AuthorityUtils} and {@code SimpleAuthorityMapper} use the shared authorities. Collections
+ * which are returned to callers, who may modify them, are not interned.
+ * <p>
+ * Only collections which consist entirely of {@code SimpleGrantedAuthority} instances are interned, since other
+ * implementations may be mutable or have inconsistent {@code equals} methods. The registry is bounded, with the least
+ * recently used entries being discarded, so an unusually large number of distinct combinations just results in less
+ * sharing.
+ *
+ * @since 3.2
+ */
+public final class AuthorityInterner {
+    private static final Comparator<GrantedAuthority> BY_AUTHORITY = new AuthorityComparator();
+
+    private static final ConcurrentLruCache<String, SimpleGrantedAuthority> authorities =
+            new ConcurrentLruCache<String, SimpleGrantedAuthority>(4096);
+    private static final ConcurrentLruCache<Set<GrantedAuthority>, Set<GrantedAuthority>> sets =
+            new ConcurrentLruCache<Set<GrantedAuthority>, Set<GrantedAuthority>>(1024);
+    private static final ConcurrentLruCache<List<GrantedAuthority>, List<GrantedAuthority>> lists =
+            new ConcurrentLruCache<List<GrantedAuthority>, List<GrantedAuthority>>(1024);
+
+    private AuthorityInterner() {
+    }
+
+    /**
+     * @param role the name of the authority
+     * @return the shared {@code SimpleGrantedAuthority} with the given name
+     */
+    public static SimpleGrantedAuthority intern(String role) {
+        SimpleGrantedAuthority authority = authorities.get(role);
+
+        if (authority == null) {
+            authority = new SimpleGrantedAuthority(role);
+            authorities.put(role, authority);
+        }
+
+        return authority;
+    }
+
+    /**
+     * @param authority an authority
+     * @return the shared equivalent of the authority if it is a {@code SimpleGrantedAuthority}, or the authority
+     * itself if it is of any other type
+     */
+    public static GrantedAuthority intern(GrantedAuthority authority) {
+        if (!(authority instanceof SimpleGrantedAuthority)) {
+            return authority;
+        }
+
+        SimpleGrantedAuthority existing = authorities.get(authority.getAuthority());
+
+        if (existing == null) {
+            existing = (SimpleGrantedAuthority) authority;
+            authorities.put(authority.getAuthority(), existing);
+        }
+
+        return existing;
+    }
+
+    /**
+     * Returns an unmodifiable set, whose iteration order is the natural order of the authority names, containing the
+     * supplied authorities.
+     *
+     * @param authorities the authorities (duplicates are ignored)
+     * @return the shared set, or null if the collection is null or contains anything other than
+     * {@code SimpleGrantedAuthority}s
+     */
+    public static Set<GrantedAuthority> internSet(Collection<? extends GrantedAuthority> authorities) {
+        if (!isInternable(authorities)) {
+            return null;
+        }
+
+        Set<GrantedAuthority> set = new TreeSet<GrantedAuthority>(BY_AUTHORITY);
+
+        for (GrantedAuthority authority : authorities) {
+            set.add(intern(authority));
+        }
+
+        Set<GrantedAuthority> existing = sets.get(set);
+
+        if (existing == null) {
+            existing = Collections.unmodifiableSet(set);
+            sets.put(existing, existing);
+        }
+
+        return existing;
+    }
+
+    /**
+     * Returns an unmodifiable list containing the supplied authorities, in the same order.
+     *
+     * @param authorities the authorities
+     * @return the shared list, or null if the collection is null or contains anything other than
+     * {@code SimpleGrantedAuthority}s
+     */
+    public static List<GrantedAuthority> internList(Collection<? extends GrantedAuthority> authorities) {
+        if (!isInternable(authorities)) {
+            return null;
+        }
+
+        List<GrantedAuthority> list = new ArrayList<GrantedAuthority>(authorities.size());
+
+        for (GrantedAuthority authority : authorities) {
+            list.add(intern(authority));
+        }
+
+        List<GrantedAuthority> existing = lists.get(list);
+
+        if (existing == null) {
+            existing = Collections.unmodifiableList(list);
+            lists.put(existing, existing);
+        }
+
+        return existing;
+    }
+
+    private static boolean isInternable(Collection<? extends GrantedAuthority> authorities) {
+        if (authorities == null) {
+            return false;
+        }
+
+        for (GrantedAuthority authority : authorities) {
+            if (!(authority instanceof SimpleGrantedAuthority)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Orders authorities by name. It is serializable, since the interned sets are stored in serializable objects.
+     */
+    private static final class AuthorityComparator implements Comparator<GrantedAuthority>, Serializable {
+        private static final long serialVersionUID = SpringSecurityCoreVersion.SERIAL_VERSION_UID;
+
+        public int compare(GrantedAuthority a1, GrantedAuthority a2) {
+            return a1.getAuthority().compareTo(a2.getAuthority());
+        }
+    }
+}
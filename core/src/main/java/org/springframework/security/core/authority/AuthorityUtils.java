@@ -45,11 +45,15 @@ public abstract class AuthorityUtils {
         return set;
     }
 
+    /**
+     * Creates a (modifiable) list of {@code SimpleGrantedAuthority}s. The authorities themselves are shared instances
+     * obtained from the {@link AuthorityInterner}.
+     */
     public static List<GrantedAuthority> createAuthorityList(String... roles) {
         List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>(roles.length);
 
         for (String role : roles) {
-            authorities.add(new SimpleGrantedAuthority(role));
+            authorities.add(AuthorityInterner.intern(role));
         }
 
         return authorities;
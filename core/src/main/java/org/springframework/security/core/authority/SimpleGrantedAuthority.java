@@ -47,4 +47,11 @@ public final class SimpleGrantedAuthority implements GrantedAuthority {
     public String toString() {
         return this.role;
     }
+
+    /**
+     * Replaces a deserialized instance with the shared instance from the {@link AuthorityInterner}.
+     */
+    private Object readResolve() {
+        return AuthorityInterner.intern(this);
+    }
 }
@@ -2,6 +2,7 @@ package org.springframework.security.core.authority.mapping;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityInterner;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.util.Assert;
 
@@ -58,7 +59,7 @@ public final class SimpleAuthorityMapper implements GrantedAuthoritiesMapper, In
             name = prefix + name;
         }
 
-        return new SimpleGrantedAuthority(name);
+        return AuthorityInterner.intern(name);
     }
 
     /**
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.context;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityInterner;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+/**
+ * A {@code SecurityContextSerializer} which uses a compact binary format in place of standard Java serialization.
+ * <p>
+ * The most commonly stored types ({@code UsernamePasswordAuthenticationToken}, {@code User},
+ * {@code SimpleGrantedAuthority} and {@code String}) are written field by field, with a one-byte tag rather than a
+ * class descriptor, and with variable-length integers for lengths and counts. Each distinct string is only written
+ * once per context, with later occurrences (such as the authorities of a {@code User}, which are usually repeated in
+ * the {@code Authentication}) replaced by a reference. A subclass can also supply a dictionary of strings which are
+ * known in advance (typically the names of the application's authorities), which are then never written at all.
+ * Any other objects (including subclasses of the types above) are written using Java serialization, so any
+ * serializable context can be stored, although with less benefit.
+ * <p>
+ * {@link #deserialize(byte[])} also accepts a context which was written using standard Java serialization, so data
+ * stored before the serializer was introduced can still be read.
+ *
+ * @since 3.2
+ */
+public class CompactSecurityContextSerializer implements SecurityContextSerializer {
+    private static final int MAGIC = 0x5C;
+    private static final int VERSION = 1;
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xAC;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int USERNAME_PASSWORD_TOKEN = 2;
+    private static final int USER = 3;
+    private static final int AUTHORITY = 4;
+    private static final int SERIALIZED = 5;
+
+    private final List<String> dictionary;
+    private final Map<String, Integer> dictionaryIndex = new HashMap<String, Integer>();
+
+    public CompactSecurityContextSerializer() {
+        this(new String[0]);
+    }
+
+    /**
+     * Creates an instance which uses a fixed dictionary of commonly used strings. The same dictionary (in the same
+     * order) must be used to read the data. Entries may be added to the end of the dictionary without affecting
+     * existing data, but must not be removed or reordered.
+     * <p>
+     * This constructor is protected since {@link SerializingSecurityContext} only records the class of the
+     * serializer, so a serializer which uses a dictionary should be a subclass which always passes the same one.
+     *
+     * @param dictionary strings (such as authority names) which are expected to occur frequently
+     */
+    protected CompactSecurityContextSerializer(String... dictionary) {
+        this.dictionary = Collections.unmodifiableList(Arrays.asList(dictionary.clone()));
+
+        for (int i = 0; i < dictionary.length; i++) {
+            if (!dictionaryIndex.containsKey(dictionary[i])) {
+                dictionaryIndex.put(dictionary[i], Integer.valueOf(i));
+            }
+        }
+    }
+
+    /**
+     * Serializers are equal if they are of the same class and use the same dictionary, and so can read each other's
+     * data.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+
+        return dictionary.equals(((CompactSecurityContextSerializer) obj).dictionary);
+    }
+
+    @Override
+    public int hashCode() {
+        return dictionary.hashCode();
+    }
+
+    public byte[] serialize(SecurityContext context) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+
+        try {
+            Writer writer = new Writer(new DataOutputStream(bytes));
+            writer.out.writeByte(MAGIC);
+            writer.out.writeByte(VERSION);
+            writer.writeObject(context.getAuthentication());
+            writer.out.flush();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize " + context, e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    public SecurityContext deserialize(byte[] bytes) {
+        if (bytes.length > 0 && (bytes[0] & 0xff) == JAVA_SERIALIZATION_MAGIC) {
+            return readSerializedContext(bytes);
+        }
+
+        if (bytes.length < 2 || bytes[0] != MAGIC) {
+            throw new IllegalArgumentException("Data is not a serialized SecurityContext");
+        }
+
+        if (bytes[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported format version " + bytes[1]);
+        }
+
+        SecurityContext context = new SecurityContextImpl();
+
+        try {
+            Reader reader = new Reader(new DataInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2)));
+            context.setAuthentication((Authentication) reader.readObject());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Serialized SecurityContext is invalid", e);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException("Serialized SecurityContext is invalid", e);
+        }
+
+        return context;
+    }
+
+    private static SecurityContext readSerializedContext(byte[] bytes) {
+        Object object = readSerializedObject(bytes);
+
+        if (!(object instanceof SecurityContext)) {
+            throw new IllegalArgumentException("Data contains a " + object.getClass().getName()
+                    + ", not a SecurityContext");
+        }
+
+        return (SecurityContext) object;
+    }
+
+    private static Object readSerializedObject(byte[] bytes) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read serialized object", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unable to read serialized object", e);
+        }
+    }
+
+    private static boolean isStandardToken(UsernamePasswordAuthenticationToken token) {
+        // The unauthenticated constructor doesn't accept authorities
+        return token.getClass() == UsernamePasswordAuthenticationToken.class
+                && (token.isAuthenticated() || token.getAuthorities().isEmpty());
+    }
+
+    private final class Writer {
+        final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeObject(Object object) throws IOException {
+            if (object == null) {
+                out.writeByte(NULL);
+            } else if (object instanceof String) {
+                out.writeByte(STRING);
+                writeString((String) object);
+            } else if (object.getClass() == SimpleGrantedAuthority.class) {
+                out.writeByte(AUTHORITY);
+                writeString(((SimpleGrantedAuthority) object).getAuthority());
+            } else if (object instanceof UsernamePasswordAuthenticationToken
+                    && isStandardToken((UsernamePasswordAuthenticationToken) object)) {
+                UsernamePasswordAuthenticationToken token = (UsernamePasswordAuthenticationToken) object;
+                out.writeByte(USERNAME_PASSWORD_TOKEN);
+                writeObject(token.getPrincipal());
+                writeObject(token.getCredentials());
+                writeObject(token.getDetails());
+                out.writeBoolean(token.isAuthenticated());
+                writeAuthorities(token.getAuthorities());
+            } else if (object.getClass() == User.class) {
+                User user = (User) object;
+                out.writeByte(USER);
+                writeString(user.getUsername());
+                writeObject(user.getPassword());
+                out.writeByte((user.isEnabled() ? 1 : 0) | (user.isAccountNonExpired() ? 2 : 0)
+                        | (user.isCredentialsNonExpired() ? 4 : 0) | (user.isAccountNonLocked() ? 8 : 0));
+                writeAuthorities(user.getAuthorities());
+            } else if (object instanceof Serializable) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream oos = new ObjectOutputStream(bytes);
+                oos.writeObject(object);
+                oos.close();
+                out.writeByte(SERIALIZED);
+                writeVarInt(bytes.size());
+                bytes.writeTo(out);
+            } else {
+                throw new IOException(object.getClass().getName() + " is not serializable");
+            }
+        }
+
+        private void writeAuthorities(Collection<? extends GrantedAuthority> authorities) throws IOException {
+            writeVarInt(authorities.size());
+
+            for (GrantedAuthority authority : authorities) {
+                writeObject(authority);
+            }
+        }
+
+        /**
+         * Writes a dictionary index, a reference to a string which has already been written, or the string itself.
+         * The first value distinguishes between them: a dictionary entry is {@code 2 * index + 1}, a reference is
+         * {@code 2 * index + 2} and a new string is 0, followed by its length and UTF-8 bytes.
+         */
+        private void writeString(String string) throws IOException {
+            Integer index = dictionaryIndex.get(string);
+
+            if (index != null) {
+                writeVarInt(2 * index.intValue() + 1);
+                return;
+            }
+
+            index = strings.get(string);
+
+            if (index != null) {
+                writeVarInt(2 * index.intValue() + 2);
+                return;
+            }
+
+            strings.put(string, Integer.valueOf(strings.size()));
+            byte[] utf8 = string.getBytes("UTF-8");
+            writeVarInt(0);
+            writeVarInt(utf8.length);
+            out.write(utf8);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+    }
+
+    private final class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<String>();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        Object readObject() throws IOException {
+            int tag = in.readUnsignedByte();
+
+            switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString();
+            case AUTHORITY:
+                return AuthorityInterner.intern(readString());
+            case USERNAME_PASSWORD_TOKEN:
+                Object principal = readObject();
+                Object credentials = readObject();
+                Object details = readObject();
+                boolean authenticated = in.readBoolean();
+                List<GrantedAuthority> authorities = readAuthorities();
+                UsernamePasswordAuthenticationToken token = authenticated ?
+                        new UsernamePasswordAuthenticationToken(principal, credentials, authorities) :
+                        new UsernamePasswordAuthenticationToken(principal, credentials);
+                token.setDetails(details);
+                return token;
+            case USER:
+                String username = readString();
+                String password = (String) readObject();
+                int flags = in.readUnsignedByte();
+                User user = new User(username, password == null ? "" : password, (flags & 1) != 0,
+                        (flags & 2) != 0, (flags & 4) != 0, (flags & 8) != 0, readAuthorities());
+                if (password == null) {
+                    user.eraseCredentials();
+                }
+                return user;
+            case SERIALIZED:
+                byte[] bytes = new byte[readVarInt()];
+                in.readFully(bytes);
+                return readSerializedObject(bytes);
+            default:
+                throw new IOException("Invalid tag " + tag);
+            }
+        }
+
+        private List<GrantedAuthority> readAuthorities() throws IOException {
+            int count = readVarInt();
+            List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>(Math.min(count, 64));
+
+            for (int i = 0; i < count; i++) {
+                authorities.add((GrantedAuthority) readObject());
+            }
+
+            return authorities;
+        }
+
+        private String readString() throws IOException {
+            int value = readVarInt();
+
+            if (value == 0) {
+                byte[] utf8 = new byte[readVarInt()];
+                in.readFully(utf8);
+                String string = new String(utf8, "UTF-8");
+                strings.add(string);
+                return string;
+            }
+
+            int index = (value - 1) >>> 1;
+            List<String> source = (value & 1) != 0 ? dictionary : strings;
+
+            if (index >= source.size()) {
+                throw new IOException("Invalid string reference " + value);
+            }
+
+            return source.get(index);
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        break;
+                    }
+                    return value;
+                }
+            }
+
+            throw new IOException("Malformed variable-length integer");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.context;
+
+/**
+ * Converts a {@code SecurityContext} to and from an array of bytes, for storage or transmission.
+ *
+ * @since 3.2
+ * @see CompactSecurityContextSerializer
+ * @see SerializingSecurityContext
+ */
+public interface SecurityContextSerializer {
+
+    /**
+     * @param context the context to serialize
+     * @return the serialized form of the context
+     */
+    byte[] serialize(SecurityContext context);
+
+    /**
+     * @param bytes data produced by {@link #serialize(SecurityContext)}
+     * @return a new context with the same contents as the one which was serialized
+     * @throws IllegalArgumentException if the data is invalid
+     */
+    SecurityContext deserialize(byte[] bytes);
+}
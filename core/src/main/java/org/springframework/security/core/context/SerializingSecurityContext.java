@@ -0,0 +1,164 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.context;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@code VersionedSecurityContext} whose Java serialized form is produced by a {@link SecurityContextSerializer},
+ * which allows a more compact format to be used where contexts are stored in a container's replicated or persistent
+ * {@code HttpSession}.
+ * <p>
+ * The name of the serializer's class is included in the data unless it is {@link CompactSecurityContextSerializer}.
+ * When the context is deserialized, the name is only used to look up a serializer which has already been used to
+ * create a context, or has been {@link #registerSerializer(SecurityContextSerializer) registered}, in the same
+ * application. Classes named in the data are never loaded or instantiated, so a server which may read contexts
+ * before creating any (such as one receiving replicated sessions) must register the serializer on startup. Since
+ * only the class is recorded, all the serializers of a class which are used in an application must be
+ * {@code equals()}, and using one which differs from the one already registered fails. A
+ * deserialized context is considered to have been persisted, so {@link #isDirty()} will return false until it is
+ * changed.
+ *
+ * @since 3.2
+ */
+public class SerializingSecurityContext extends VersionedSecurityContext {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ConcurrentMap<String, SecurityContextSerializer> serializers =
+            new ConcurrentHashMap<String, SecurityContextSerializer>();
+
+    private static final SecurityContextSerializer COMPACT_SERIALIZER = new CompactSecurityContextSerializer();
+
+    //~ Instance fields ================================================================================================
+
+    private final transient SecurityContextSerializer serializer;
+
+    //~ Constructors ===================================================================================================
+
+    /**
+     * Creates a context which will be serialized by a {@link CompactSecurityContextSerializer}.
+     */
+    public SerializingSecurityContext() {
+        this(getSerializer(null));
+    }
+
+    /**
+     * @param serializer the serializer which will be used to produce the serialized form of this context
+     * @throws IllegalArgumentException if a different serializer of the same class has been used or registered
+     * before (see {@link #registerSerializer(SecurityContextSerializer)})
+     */
+    public SerializingSecurityContext(SecurityContextSerializer serializer) {
+        Assert.notNull(serializer, "serializer cannot be null");
+        this.serializer = serializer;
+        registerSerializer(serializer);
+    }
+
+    //~ Methods ========================================================================================================
+
+    public SecurityContextSerializer getSerializer() {
+        return serializer;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        String serializerClass = serializer.getClass() == CompactSecurityContextSerializer.class ?
+                null : serializer.getClass().getName();
+
+        return new SerializedForm(serializerClass, serializer.serialize(this));
+    }
+
+    /**
+     * Allows contexts written by a serializer of the same class to be deserialized.
+     *
+     * @param serializer the serializer to use when reading contexts which name its class
+     * @throws IllegalArgumentException if a serializer of the same class which isn't equal to this one has already
+     * been registered, since the data written by one couldn't be read by the other
+     */
+    public static void registerSerializer(SecurityContextSerializer serializer) {
+        Assert.notNull(serializer, "serializer cannot be null");
+        if (serializer.getClass() == CompactSecurityContextSerializer.class) {
+            return;
+        }
+
+        String className = serializer.getClass().getName();
+        SecurityContextSerializer registered = serializers.putIfAbsent(className, serializer);
+
+        if (registered != null && !registered.equals(serializer)) {
+            throw new IllegalArgumentException("A different SecurityContextSerializer of class " + className
+                    + " has already been registered");
+        }
+    }
+
+    private static SecurityContextSerializer getSerializer(String className) {
+        if (className == null) {
+            return COMPACT_SERIALIZER;
+        }
+
+        return serializers.get(className);
+    }
+
+    /**
+     * The data which is actually written. Its fields are written explicitly, so the class descriptor doesn't contain
+     * any field descriptions.
+     */
+    private static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient String serializerClass;
+        private transient byte[] data;
+
+        SerializedForm(String serializerClass, byte[] data) {
+            this.serializerClass = serializerClass;
+            this.data = data;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.writeBoolean(serializerClass != null);
+            if (serializerClass != null) {
+                out.writeUTF(serializerClass);
+            }
+            out.writeInt(data.length);
+            out.write(data);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException {
+            serializerClass = in.readBoolean() ? in.readUTF() : null;
+            data = new byte[in.readInt()];
+            in.readFully(data);
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            SecurityContextSerializer serializer = getSerializer(serializerClass);
+
+            if (serializer == null) {
+                throw new InvalidObjectException("No SecurityContextSerializer of class " + serializerClass
+                        + " has been registered");
+            }
+
+            SerializingSecurityContext context = new SerializingSecurityContext(serializer);
+            context.setAuthentication(serializer.deserialize(data).getAuthentication());
+            context.setPersistedVersion(context.getVersion());
+
+            return context;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.context;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.core.Authentication;
+
+/**
+ * A {@code SecurityContextImpl} which counts the number of times its contents have been changed.
+ * <p>
+ * Code which persists the context (such as a {@code SecurityContextRepository}) can record the version which was
+ * last written using {@link #setPersistedVersion(int)}, and use {@link #isDirty()} to decide cheaply whether the
+ * context actually needs to be written again. Since the same instance may be shared by concurrent requests (when it
+ * is stored in an {@code HttpSession}, for example), this also avoids a write when another request has already
+ * stored the change. Setting the same {@code Authentication} instance again doesn't count as a change.
+ *
+ * @since 3.2
+ */
+public class VersionedSecurityContext extends SecurityContextImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    //~ Instance fields ================================================================================================
+
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile int persistedVersion = -1;
+
+    //~ Methods ========================================================================================================
+
+    @Override
+    public void setAuthentication(Authentication authentication) {
+        boolean changed = authentication != getAuthentication();
+        super.setAuthentication(authentication);
+
+        // Incremented afterwards, so that a concurrent save which sees the old version will leave the context dirty
+        if (changed) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of times the {@code Authentication} has been changed since the context was created
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Records that the context has been persisted.
+     *
+     * @param persistedVersion the value of {@link #getVersion()} which was read before the context was written
+     */
+    public void setPersistedVersion(int persistedVersion) {
+        this.persistedVersion = persistedVersion;
+    }
+
+    /**
+     * @return true if the context has never been persisted, or has been changed since it was
+     */
+    public boolean isDirty() {
+        return version.get() != persistedVersion;
+    }
+}
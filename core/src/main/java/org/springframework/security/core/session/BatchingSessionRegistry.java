@@ -0,0 +1,214 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.session;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link SessionRegistry} which defers calls to {@link #refreshLastRequest(String)} and passes them on to another
+ * registry periodically. However many requests are made using a session between two flushes, the delegate is only
+ * asked to refresh it once, which greatly reduces the number of updates for a registry which is backed by a database
+ * or a remote cache. All other methods are passed on immediately.
+ * <p>
+ * The pending refreshes are flushed by a background thread, which is started by {@link #afterPropertiesSet()}, and
+ * once more by {@link #destroy()}. The last request time reported by the delegate may therefore be out of date by up
+ * to the {@link #setFlushIntervalSeconds(int) flush interval}, which should be small compared to the session timeout.
+ * The exception is a principal whose sessions are listed, or who registers a new session with a limit: any of their
+ * sessions with pending refreshes are refreshed first, so that the least recently used session can be identified.
+ * <p>
+ * The {@code SessionRegistry} interface doesn't allow a time to be passed to the delegate, so it records the time at
+ * which the refresh is passed on rather than that of the last request. A flushed session therefore appears to have
+ * been used up to one flush interval later than it actually was, which delays its expiry by the same amount, and
+ * sessions which were refreshed in the same flush can't be told apart by their last request times.
+ * <p>
+ * {@link #getSessionCount(Object, boolean)} is passed on if the delegate is a {@link CountingSessionRegistry}, and
+ * otherwise counts the sessions returned by the delegate. Use {@link BoundedBatchingSessionRegistry} to wrap a
+ * {@link BoundedSessionRegistry}, so that it can still be used with a
+ * {@code BoundedConcurrentSessionControlStrategy}.
+ *
+ * @since 3.2
+ */
+public class BatchingSessionRegistry implements CountingSessionRegistry, InitializingBean, DisposableBean {
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final SessionRegistry delegate;
+    private final ConcurrentMap<String, Boolean> pendingRefreshes = new ConcurrentHashMap<String, Boolean>();
+    private int flushIntervalSeconds = 30;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * @param delegate the registry to pass the calls on to
+     */
+    public BatchingSessionRegistry(SessionRegistry delegate) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        this.delegate = delegate;
+    }
+
+    public void afterPropertiesSet() {
+        if (flusher != null) {
+            return;
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BatchingSessionRegistry flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to refresh sessions", e);
+                }
+            }
+        }, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+
+        flush();
+    }
+
+    /**
+     * Passes the pending refreshes on to the delegate.
+     *
+     * @return the number of sessions which were refreshed
+     */
+    public int flush() {
+        int refreshed = 0;
+
+        for (String sessionId : pendingRefreshes.keySet()) {
+            if (pendingRefreshes.remove(sessionId) != null) {
+                delegate.refreshLastRequest(sessionId);
+                refreshed++;
+            }
+        }
+
+        if (refreshed > 0 && logger.isDebugEnabled()) {
+            logger.debug("Refreshed last request time of " + refreshed + " sessions");
+        }
+
+        return refreshed;
+    }
+
+    public List<Object> getAllPrincipals() {
+        return delegate.getAllPrincipals();
+    }
+
+    /**
+     * Refreshes any of the principal's sessions which have pending refreshes before returning them, so that their
+     * last request times can be compared.
+     */
+    public List<SessionInformation> getAllSessions(Object principal, boolean includeExpiredSessions) {
+        List<SessionInformation> sessions = delegate.getAllSessions(principal, includeExpiredSessions);
+
+        if (refreshPending(sessions)) {
+            // The delegate may not update the instances it has already returned
+            sessions = delegate.getAllSessions(principal, includeExpiredSessions);
+        }
+
+        return sessions;
+    }
+
+    public int getSessionCount(Object principal, boolean includeExpiredSessions) {
+        if (delegate instanceof CountingSessionRegistry) {
+            return ((CountingSessionRegistry) delegate).getSessionCount(principal, includeExpiredSessions);
+        }
+
+        return delegate.getAllSessions(principal, includeExpiredSessions).size();
+    }
+
+    public SessionInformation getSessionInformation(String sessionId) {
+        return delegate.getSessionInformation(sessionId);
+    }
+
+    /**
+     * Records that the session has been used, so that the delegate is asked to refresh it on the next flush.
+     */
+    public void refreshLastRequest(String sessionId) {
+        Assert.hasText(sessionId, "SessionId required as per interface contract");
+
+        pendingRefreshes.put(sessionId, Boolean.TRUE);
+    }
+
+    public void registerNewSession(String sessionId, Object principal) {
+        delegate.registerNewSession(sessionId, principal);
+    }
+
+    public void removeSessionInformation(String sessionId) {
+        discardPending(sessionId);
+        delegate.removeSessionInformation(sessionId);
+    }
+
+    /**
+     * Passes on the pending refreshes of the principal's unexpired sessions.
+     */
+    void refreshPending(Object principal) {
+        refreshPending(delegate.getAllSessions(principal, false));
+    }
+
+    /**
+     * Drops the pending refresh of a session which is being removed.
+     */
+    void discardPending(String sessionId) {
+        pendingRefreshes.remove(sessionId);
+    }
+
+    /**
+     * Passes on the pending refreshes of the given sessions.
+     *
+     * @return true if any of them were refreshed
+     */
+    private boolean refreshPending(List<SessionInformation> sessions) {
+        boolean refreshed = false;
+
+        for (SessionInformation info : sessions) {
+            if (pendingRefreshes.remove(info.getSessionId()) != null) {
+                delegate.refreshLastRequest(info.getSessionId());
+                refreshed = true;
+            }
+        }
+
+        return refreshed;
+    }
+
+    /**
+     * Sets how often the pending refreshes are passed on to the delegate. Defaults to 30.
+     *
+     * @param flushIntervalSeconds the interval in seconds
+     */
+    public void setFlushIntervalSeconds(int flushIntervalSeconds) {
+        Assert.isTrue(flushIntervalSeconds > 0, "flushIntervalSeconds must be positive");
+        this.flushIntervalSeconds = flushIntervalSeconds;
+    }
+}
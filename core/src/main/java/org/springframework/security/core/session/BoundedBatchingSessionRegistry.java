@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.session;
+
+/**
+ * A {@link BatchingSessionRegistry} for a delegate which is a {@link BoundedSessionRegistry}, so that batching the
+ * refreshes doesn't hide its ability to enforce a session limit.
+ *
+ * @since 3.2
+ */
+public class BoundedBatchingSessionRegistry extends BatchingSessionRegistry implements BoundedSessionRegistry {
+    private final BoundedSessionRegistry delegate;
+
+    /**
+     * @param delegate the registry to pass the calls on to
+     */
+    public BoundedBatchingSessionRegistry(BoundedSessionRegistry delegate) {
+        super(delegate);
+        this.delegate = delegate;
+    }
+
+    /**
+     * Refreshes any of the principal's sessions which have pending refreshes, and passes the call on to the delegate.
+     */
+    public boolean registerNewSession(String sessionId, Object principal, String replacedSessionId,
+            int maximumSessions, boolean rejectIfMaximumExceeded) {
+        if (maximumSessions > 0) {
+            refreshPending(principal);
+        }
+
+        if (replacedSessionId != null) {
+            discardPending(replacedSessionId);
+        }
+
+        return delegate.registerNewSession(sessionId, principal, replacedSessionId, maximumSessions,
+                rejectIfMaximumExceeded);
+    }
+}
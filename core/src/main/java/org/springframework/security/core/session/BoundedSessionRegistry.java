@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.session;
+
+/**
+ * A {@link SessionRegistry} which can enforce a maximum number of sessions per principal as part of registering a
+ * session. Checking the number of sessions, expiring the least recently used one if necessary and registering the
+ * new one happen as a single atomic operation, so concurrent logins by the same principal can't exceed the limit.
+ *
+ * @since 3.2
+ */
+public interface BoundedSessionRegistry extends CountingSessionRegistry {
+
+    /**
+     * Registers a new session for the specified principal, unless they would then have more than
+     * {@code maximumSessions} sessions which haven't expired. If the limit has been reached, either the least
+     * recently used of the principal's sessions is expired to make room, or the session isn't registered, depending
+     * on {@code rejectIfMaximumExceeded}.
+     *
+     * @param sessionId to associate with the principal (should never be <code>null</code>)
+     * @param principal to associate with the session (should never be <code>null</code>)
+     * @param replacedSessionId the id of a session which the new one replaces (for example, because the session id
+     * was changed on authentication), which is removed and so doesn't count towards the limit. May be null.
+     * @param maximumSessions the maximum number of unexpired sessions for the principal, or -1 for no limit
+     * @param rejectIfMaximumExceeded if <code>true</code>, the session isn't registered if the limit has been reached,
+     * rather than an existing session being expired
+     *
+     * @return <code>true</code> if the session was registered
+     */
+    boolean registerNewSession(String sessionId, Object principal, String replacedSessionId, int maximumSessions,
+            boolean rejectIfMaximumExceeded);
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.session;
+
+/**
+ * A {@link SessionRegistry} which can report the number of sessions belonging to a principal without building the
+ * list of their {@code SessionInformation}. Used by concurrent session control, which only needs the full list
+ * when the maximum number of sessions has been reached.
+ *
+ * @since 3.2
+ */
+public interface CountingSessionRegistry extends SessionRegistry {
+
+    /**
+     * Obtains the number of known sessions for the specified principal. This is the same as the size of the list
+     * returned by {@link #getAllSessions(Object, boolean)} with the same arguments, but should not require the
+     * sessions to be examined.
+     *
+     * @param principal to count sessions for (should never be <code>null</code>)
+     * @param includeExpiredSessions if <code>true</code>, sessions which have expired are also counted
+     *
+     * @return the number of sessions for this principal
+     */
+    int getSessionCount(Object principal, boolean includeExpiredSessions);
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.session;
+
+import java.security.Principal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.JdbcDaoSupport;
+import org.springframework.security.core.SpringSecurityCoreVersion;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.util.ConcurrentLruCache;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link SessionRegistry} which stores the session information in a database table, so that concurrent session
+ * control can be applied across a cluster.
+ * <p>
+ * Principals are identified by name (the username of a {@code UserDetails}, the name of a {@code Principal}, or
+ * otherwise the result of {@code toString()}), so the {@code SessionInformation} instances returned by this class
+ * and the results of {@link #getAllPrincipals()} contain the name rather than the original principal.
+ * <p>
+ * Registrations, removals, expirations (whether through {@link SessionInformation#expireNow()} or otherwise) and
+ * last request refreshes are not written immediately, but queued and written in JDBC batches by a background thread
+ * every {@link #setFlushIntervalSeconds(int) flushInterval}, or as soon as {@link #setMaxBatchSize(int) maxBatchSize}
+ * changes are waiting. Only the latest change to each session is written. Queries which return more than one
+ * session write the queued changes first, so that they are included.
+ * <p>
+ * {@link #getSessionInformation(String)}, which is called for every request by the {@code ConcurrentSessionFilter},
+ * is answered from a local cache where possible, including for sessions which aren't registered. Entries are
+ * reloaded once they are older than the {@link #setNearCacheTtlSeconds(int) nearCacheTtl}. Changes made on this node
+ * are visible immediately, but a change made by another node may not be noticed for up to the sum of the flush
+ * interval and the cache TTL, so both should be small compared to the session timeout.
+ * <p>
+ * If a {@link #setMaxInactiveInterval(int) maxInactiveInterval} is set, sessions which haven't been used for longer
+ * than that are also deleted every {@link #setIdleSessionRemovalIntervalSeconds(int) idleSessionRemovalInterval},
+ * since a node may be stopped before it removes its sessions.
+ * <p>
+ * The table can be created using {@link #CREATE_TABLE_SQL}. The background thread is started when the bean is
+ * initialized and stopped by {@link #destroy()}, which also writes any remaining changes.
+ *
+ * @since 3.2
+ */
+public class JdbcSessionRegistry extends JdbcDaoSupport implements CountingSessionRegistry,
+        ApplicationListener<SessionDestroyedEvent>, DisposableBean {
+    //~ Static fields/initializers =====================================================================================
+
+    /** Default SQL for creating the database table to store the sessions */
+    public static final String CREATE_TABLE_SQL =
+            "create table session_registry (session_id varchar(100) primary key, " +
+                    "principal_name varchar(100) not null, last_request timestamp not null, " +
+                    "expired boolean not null)";
+    /** The default SQL used by <tt>getSessionInformation</tt> */
+    public static final String DEF_SESSION_BY_ID_SQL =
+            "select session_id, principal_name, last_request, expired from session_registry where session_id = ?";
+    /** The default SQL used by <tt>getAllSessions</tt> */
+    public static final String DEF_SESSIONS_BY_PRINCIPAL_SQL =
+            "select session_id, principal_name, last_request, expired from session_registry where principal_name = ?";
+    /** The default SQL used by <tt>getSessionCount</tt> to count the unexpired sessions */
+    public static final String DEF_COUNT_ACTIVE_SESSIONS_SQL =
+            "select count(*) from session_registry where principal_name = ? and expired = ?";
+    /** The default SQL used by <tt>getSessionCount</tt> to count all sessions */
+    public static final String DEF_COUNT_ALL_SESSIONS_SQL =
+            "select count(*) from session_registry where principal_name = ?";
+    /** The default SQL used by <tt>getAllPrincipals</tt> */
+    public static final String DEF_ALL_PRINCIPALS_SQL =
+            "select distinct principal_name from session_registry";
+    /** The default SQL used to write new sessions */
+    public static final String DEF_INSERT_SESSION_SQL =
+            "insert into session_registry (session_id, principal_name, last_request, expired) values (?,?,?,?)";
+    /** The default SQL used to write changes to existing sessions */
+    public static final String DEF_UPDATE_SESSION_SQL =
+            "update session_registry set last_request = ?, expired = ? where session_id = ?";
+    /** The default SQL used to delete sessions */
+    public static final String DEF_DELETE_SESSION_SQL =
+            "delete from session_registry where session_id = ?";
+    /** The default SQL used by <tt>removeIdleSessions</tt> */
+    public static final String DEF_DELETE_IDLE_SESSIONS_SQL =
+            "delete from session_registry where last_request < ?";
+
+    //~ Instance fields ================================================================================================
+
+    private final RowMapper<SessionInformation> sessionMapper = new RowMapper<SessionInformation>() {
+        public SessionInformation mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new JdbcSessionInformation(rs.getString(2), rs.getString(1), rs.getTimestamp(3),
+                    rs.getBoolean(4), JdbcSessionRegistry.this);
+        }
+    };
+
+    private final Object pendingLock = new Object();
+    /** <sessionId:String,PendingWrite>, guarded by pendingLock */
+    private Map<String, PendingWrite> pending = new HashMap<String, PendingWrite>();
+    private final Object flushLock = new Object();
+
+    private ConcurrentLruCache<String, CachedSession> nearCache;
+    private int nearCacheSize = 10000;
+    private long nearCacheTtl = 5000;
+
+    private int flushIntervalSeconds = 1;
+    private int maxBatchSize = 500;
+    private int maxInactiveInterval = -1;
+    private int idleSessionRemovalIntervalSeconds = 300;
+    private boolean createTableOnStartup;
+    private ScheduledExecutorService flusher;
+
+    //~ Methods ========================================================================================================
+
+    @Override
+    protected void initDao() {
+        if (createTableOnStartup) {
+            getJdbcTemplate().execute(CREATE_TABLE_SQL);
+        }
+
+        if (nearCacheTtl > 0) {
+            nearCache = new ConcurrentLruCache<String, CachedSession>(nearCacheSize);
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "JdbcSessionRegistry flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to update session registry", e);
+                }
+            }
+        }, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+
+        if (maxInactiveInterval > 0) {
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        removeIdleSessions();
+                    } catch (RuntimeException e) {
+                        logger.error("Failed to remove idle sessions", e);
+                    }
+                }
+            }, idleSessionRemovalIntervalSeconds, idleSessionRemovalIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+
+        flush();
+    }
+
+    public List<Object> getAllPrincipals() {
+        flush();
+
+        return new ArrayList<Object>(getJdbcTemplate().queryForList(DEF_ALL_PRINCIPALS_SQL, String.class));
+    }
+
+    public List<SessionInformation> getAllSessions(Object principal, boolean includeExpiredSessions) {
+        flush();
+
+        List<SessionInformation> sessions = getJdbcTemplate().query(DEF_SESSIONS_BY_PRINCIPAL_SQL, sessionMapper,
+                getPrincipalName(principal));
+        List<SessionInformation> result = new ArrayList<SessionInformation>(sessions.size());
+
+        for (SessionInformation info : sessions) {
+            // Share the instance which may already be cached, so that changes to either are seen by both
+            info = cache(info.getSessionId(), info);
+            if (includeExpiredSessions || !info.isExpired()) {
+                result.add(info);
+            }
+        }
+
+        return result;
+    }
+
+    public int getSessionCount(Object principal, boolean includeExpiredSessions) {
+        flush();
+
+        if (includeExpiredSessions) {
+            return getJdbcTemplate().queryForObject(DEF_COUNT_ALL_SESSIONS_SQL, Integer.class,
+                    getPrincipalName(principal)).intValue();
+        }
+
+        return getJdbcTemplate().queryForObject(DEF_COUNT_ACTIVE_SESSIONS_SQL, Integer.class,
+                getPrincipalName(principal), Boolean.FALSE).intValue();
+    }
+
+    public SessionInformation getSessionInformation(String sessionId) {
+        Assert.hasText(sessionId, "SessionId required as per interface contract");
+
+        if (nearCache != null) {
+            CachedSession cached = nearCache.get(sessionId);
+
+            if (cached != null && cached.isFresh()) {
+                return cached.info;
+            }
+        }
+
+        PendingWrite write;
+
+        synchronized (pendingLock) {
+            write = pending.get(sessionId);
+        }
+
+        if (write != null) {
+            // Not written yet, so the database is out of date
+            cache(sessionId, write.info);
+            return write.info;
+        }
+
+        List<SessionInformation> sessions = getJdbcTemplate().query(DEF_SESSION_BY_ID_SQL, sessionMapper, sessionId);
+        SessionInformation info = sessions.isEmpty() ? null : sessions.get(0);
+
+        return cache(sessionId, info);
+    }
+
+    public void onApplicationEvent(SessionDestroyedEvent event) {
+        removeSessionInformation(event.getId());
+    }
+
+    public void refreshLastRequest(String sessionId) {
+        Assert.hasText(sessionId, "SessionId required as per interface contract");
+
+        SessionInformation info = getSessionInformation(sessionId);
+
+        if (info != null) {
+            info.refreshLastRequest();
+        }
+    }
+
+    public void registerNewSession(String sessionId, Object principal) {
+        Assert.hasText(sessionId, "SessionId required as per interface contract");
+        Assert.notNull(principal, "Principal required as per interface contract");
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Registering session " + sessionId +", for principal " + principal);
+        }
+
+        JdbcSessionInformation info = new JdbcSessionInformation(getPrincipalName(principal), sessionId, new Date(),
+                false, this);
+
+        enqueue(sessionId, new PendingWrite(info, true));
+        forceCache(sessionId, info);
+    }
+
+    public void removeSessionInformation(String sessionId) {
+        Assert.hasText(sessionId, "SessionId required as per interface contract");
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Removing session " + sessionId + " from set of registered sessions");
+        }
+
+        enqueue(sessionId, new PendingWrite(null, false));
+        forceCache(sessionId, null);
+    }
+
+    /**
+     * Writes the queued changes to the database. This is invoked periodically once the bean has been initialized,
+     * but may also be called directly.
+     *
+     * @return the number of sessions which were written
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            Map<String, PendingWrite> writes;
+
+            synchronized (pendingLock) {
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                writes = pending;
+                pending = new HashMap<String, PendingWrite>();
+            }
+
+            List<Object[]> deletes = new ArrayList<Object[]>();
+            List<Object[]> inserts = new ArrayList<Object[]>();
+            List<Object[]> updates = new ArrayList<Object[]>();
+
+            for (Map.Entry<String, PendingWrite> entry : writes.entrySet()) {
+                PendingWrite write = entry.getValue();
+                SessionInformation info = write.info;
+
+                if (info == null || write.insert) {
+                    // A new session replaces any existing one with the same id
+                    deletes.add(new Object[] {entry.getKey()});
+                }
+
+                if (info == null) {
+                    continue;
+                }
+
+                Timestamp lastRequest = new Timestamp(info.getLastRequest().getTime());
+                Boolean expired = Boolean.valueOf(info.isExpired());
+
+                if (write.insert) {
+                    inserts.add(new Object[] {info.getSessionId(), info.getPrincipal(), lastRequest, expired});
+                } else {
+                    updates.add(new Object[] {lastRequest, expired, info.getSessionId()});
+                }
+            }
+
+            try {
+                if (!deletes.isEmpty()) {
+                    getJdbcTemplate().batchUpdate(DEF_DELETE_SESSION_SQL, deletes);
+                }
+                if (!inserts.isEmpty()) {
+                    getJdbcTemplate().batchUpdate(DEF_INSERT_SESSION_SQL, inserts);
+                }
+                if (!updates.isEmpty()) {
+                    getJdbcTemplate().batchUpdate(DEF_UPDATE_SESSION_SQL, updates);
+                }
+            } catch (RuntimeException e) {
+                requeue(writes);
+                throw e;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Wrote " + writes.size() + " sessions to session registry");
+            }
+
+            return writes.size();
+        }
+    }
+
+    /**
+     * Deletes the sessions which haven't been used for longer than the {@code maxInactiveInterval}, if it is set.
+     * This is invoked periodically once the bean has been initialized, but may also be called directly.
+     *
+     * @return the number of sessions which were deleted
+     */
+    public int removeIdleSessions() {
+        if (maxInactiveInterval <= 0) {
+            return 0;
+        }
+
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - maxInactiveInterval * 1000L);
+
+        return getJdbcTemplate().update(DEF_DELETE_IDLE_SESSIONS_SQL, cutoff);
+    }
+
+    void sessionChanged(JdbcSessionInformation info) {
+        enqueue(info.getSessionId(), new PendingWrite(info, false));
+    }
+
+    /**
+     * Queues writes which failed again, unless a later registration or removal of the same session id has been
+     * queued in the meantime. The writes are repeated in full, which is harmless for any which succeeded.
+     */
+    private void requeue(Map<String, PendingWrite> writes) {
+        synchronized (pendingLock) {
+            for (Map.Entry<String, PendingWrite> entry : writes.entrySet()) {
+                PendingWrite later = pending.get(entry.getKey());
+
+                // As in enqueue, a later change doesn't replace the failed insertion or removal
+                if (later == null || (later.info != null && !later.insert)) {
+                    pending.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private void enqueue(String sessionId, PendingWrite write) {
+        int size;
+
+        synchronized (pendingLock) {
+            PendingWrite previous = pending.get(sessionId);
+
+            // A change to an existing session doesn't replace its pending insertion, or a later registration or
+            // removal of the same session id, each of which already writes its latest state
+            if (previous == null || write.insert || write.info == null) {
+                pending.put(sessionId, write);
+            }
+
+            size = pending.size();
+        }
+
+        if (size >= maxBatchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Caches the session information. If a different instance for the same session which is at least as up to date
+     * is already cached, it is kept and returned instead, so that changes made through it are not lost.
+     */
+    private SessionInformation cache(String sessionId, SessionInformation info) {
+        if (nearCache == null) {
+            return info;
+        }
+
+        CachedSession cached = nearCache.get(sessionId);
+
+        if (info != null && cached != null && cached.info != null && cached.info != info
+                && cached.info.getLastRequest().getTime() >= info.getLastRequest().getTime()
+                && cached.info.isExpired() == info.isExpired()) {
+            nearCache.put(sessionId, new CachedSession(cached.info, nearCacheTtl));
+            return cached.info;
+        }
+
+        nearCache.put(sessionId, new CachedSession(info, nearCacheTtl));
+
+        return info;
+    }
+
+    private void forceCache(String sessionId, SessionInformation info) {
+        if (nearCache != null) {
+            nearCache.put(sessionId, new CachedSession(info, nearCacheTtl));
+        }
+    }
+
+    private String getPrincipalName(Object principal) {
+        if (principal instanceof UserDetails) {
+            return ((UserDetails) principal).getUsername();
+        }
+
+        if (principal instanceof Principal) {
+            return ((Principal) principal).getName();
+        }
+
+        return principal.toString();
+    }
+
+    /**
+     * Intended for convenience in debugging. Will create the session_registry database table when the class
+     * is initialized during the initDao method.
+     *
+     * @param createTableOnStartup set to true to create the table
+     */
+    public void setCreateTableOnStartup(boolean createTableOnStartup) {
+        this.createTableOnStartup = createTableOnStartup;
+    }
+
+    /**
+     * Sets how often queued changes are written to the database. Defaults to 1.
+     *
+     * @param flushIntervalSeconds the interval in seconds
+     */
+    public void setFlushIntervalSeconds(int flushIntervalSeconds) {
+        Assert.isTrue(flushIntervalSeconds > 0, "flushIntervalSeconds must be positive");
+        this.flushIntervalSeconds = flushIntervalSeconds;
+    }
+
+    /**
+     * Sets the number of queued changes which causes them to be written immediately, rather than waiting for the
+     * next flush. Defaults to 500.
+     *
+     * @param maxBatchSize the maximum number of queued changes
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Sets the time after which an unused session is deleted. The default is -1, meaning that sessions are only
+     * deleted when they are removed.
+     *
+     * @param maxInactiveInterval the interval in seconds, which should match the session timeout of the container
+     */
+    public void setMaxInactiveInterval(int maxInactiveInterval) {
+        this.maxInactiveInterval = maxInactiveInterval;
+    }
+
+    /**
+     * Sets how often sessions which have exceeded the {@code maxInactiveInterval} are deleted. Defaults to 300. Each
+     * run scans the table, so this should be much longer than the flush interval.
+     *
+     * @param idleSessionRemovalIntervalSeconds the interval in seconds
+     */
+    public void setIdleSessionRemovalIntervalSeconds(int idleSessionRemovalIntervalSeconds) {
+        Assert.isTrue(idleSessionRemovalIntervalSeconds > 0, "idleSessionRemovalIntervalSeconds must be positive");
+        this.idleSessionRemovalIntervalSeconds = idleSessionRemovalIntervalSeconds;
+    }
+
+    /**
+     * Sets how long session information is cached locally. Defaults to 5. Use 0 to disable the cache.
+     *
+     * @param nearCacheTtlSeconds the time in seconds
+     */
+    public void setNearCacheTtlSeconds(int nearCacheTtlSeconds) {
+        Assert.isTrue(nearCacheTtlSeconds >= 0, "nearCacheTtlSeconds cannot be negative");
+        this.nearCacheTtl = nearCacheTtlSeconds * 1000L;
+    }
+
+    /**
+     * Sets the maximum number of sessions which are cached locally. Defaults to 10000.
+     *
+     * @param nearCacheSize the maximum number of cached sessions
+     */
+    public void setNearCacheSize(int nearCacheSize) {
+        Assert.isTrue(nearCacheSize > 0, "nearCacheSize must be positive");
+        this.nearCacheSize = nearCacheSize;
+    }
+
+    /**
+     * A change to a session which hasn't been written yet. A null {@code info} means it has been removed.
+     */
+    private static final class PendingWrite {
+        private final SessionInformation info;
+        private final boolean insert;
+
+        PendingWrite(SessionInformation info, boolean insert) {
+            this.info = info;
+            this.insert = insert;
+        }
+    }
+
+    private static final class CachedSession {
+        private final SessionInformation info;
+        private final long expiryTime;
+
+        CachedSession(SessionInformation info, long ttl) {
+            this.info = info;
+            this.expiryTime = System.currentTimeMillis() + ttl;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < expiryTime;
+        }
+    }
+
+    /**
+     * Queues a change to be written when it is expired or used.
+     */
+    private static final class JdbcSessionInformation extends SessionInformation {
+        private static final long serialVersionUID = SpringSecurityCoreVersion.SERIAL_VERSION_UID;
+
+        private transient final JdbcSessionRegistry registry;
+
+        JdbcSessionInformation(String principal, String sessionId, Date lastRequest, boolean expired,
+                JdbcSessionRegistry registry) {
+            super(principal, sessionId, lastRequest);
+            if (expired) {
+                super.expireNow();
+            }
+            this.registry = registry;
+        }
+
+        @Override
+        public void expireNow() {
+            super.expireNow();
+            if (registry != null) {
+                registry.sessionChanged(this);
+            }
+        }
+
+        @Override
+        public void refreshLastRequest() {
+            super.refreshLastRequest();
+            if (registry != null) {
+                registry.sessionChanged(this);
+            }
+        }
+    }
+}
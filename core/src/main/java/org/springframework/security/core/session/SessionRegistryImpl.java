@@ -17,13 +17,19 @@ package org.springframework.security.core.session;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationListener;
+import org.springframework.security.core.SpringSecurityCoreVersion;
 import org.springframework.util.Assert;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Default implementation of {@link org.springframework.security.core.session.SessionRegistry SessionRegistry}
@@ -33,43 +39,90 @@ import java.util.concurrent.CopyOnWriteArraySet;
  * For this class to function correctly in a web application, it is important that you register an
  * {@link org.springframework.security.web.session.HttpSessionEventPublisher HttpSessionEventPublisher}
  * in the <tt>web.xml</tt> file so that this class is notified of sessions that expire.
+ * <p>
+ * The sessions of each principal are held in a concurrent map, along with a count of those which haven't expired,
+ * so registering and removing sessions doesn't copy the principal's existing sessions and
+ * {@link #getSessionCount(Object, boolean)} doesn't need to examine them. The unexpired sessions are also held
+ * separately, so that {@link #registerNewSession(String, Object, String, int, boolean)} only has to compare their
+ * last request times to find the least recently used one. Refreshing the last request time of a session doesn't
+ * involve its principal, so sessions which share a principal don't contend with each other when they are used.
+ * <p>
+ * If a {@link #setMaxInactiveInterval(int) maxInactiveInterval} is set, sessions which haven't been used for longer
+ * than that (based on {@link SessionInformation#getLastRequest()}) are periodically removed by a background thread,
+ * so that entries aren't retained indefinitely if a {@code SessionDestroyedEvent} is never received. This includes
+ * expired sessions, which are otherwise retained so that they can be rejected if they are used again. The value
+ * should be the same as the session timeout of the container, and the last request time is only updated by a
+ * {@link org.springframework.security.web.session.ConcurrentSessionFilter ConcurrentSessionFilter}, so one should
+ * be used when it is set. The thread is started by {@link #afterPropertiesSet()} and stopped by {@link #destroy()}.
  *
  * @author Ben Alex
  * @author Luke Taylor
  */
-public class SessionRegistryImpl implements SessionRegistry, ApplicationListener<SessionDestroyedEvent> {
+public class SessionRegistryImpl implements BoundedSessionRegistry, ApplicationListener<SessionDestroyedEvent>,
+        InitializingBean, DisposableBean {
 
     //~ Instance fields ================================================================================================
 
     protected final Log logger = LogFactory.getLog(SessionRegistryImpl.class);
 
-    /** <principal:Object,SessionIdSet> */
-    private final ConcurrentMap<Object,Set<String>> principals = new ConcurrentHashMap<Object,Set<String>>();
+    /** <principal:Object,PrincipalSessions> */
+    private final ConcurrentMap<Object,PrincipalSessions> principals = new ConcurrentHashMap<Object,PrincipalSessions>();
     /** <sessionId:Object,SessionInformation> */
-    private final Map<String, SessionInformation> sessionIds = new ConcurrentHashMap<String, SessionInformation>();
+    private final ConcurrentMap<String, SessionInformation> sessionIds =
+            new ConcurrentHashMap<String, SessionInformation>();
+
+    private int maxInactiveInterval = -1;
+    private int sweepIntervalSeconds = 60;
+    private ScheduledExecutorService sweeper;
 
     //~ Methods ========================================================================================================
 
+    public void afterPropertiesSet() {
+        if (maxInactiveInterval <= 0 || sweeper != null) {
+            return;
+        }
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SessionRegistryImpl sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    removeIdleSessions();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to remove idle sessions", e);
+                }
+            }
+        }, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void destroy() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
     public List<Object> getAllPrincipals() {
         return new ArrayList<Object>(principals.keySet());
     }
 
     public List<SessionInformation> getAllSessions(Object principal, boolean includeExpiredSessions) {
-        final Set<String> sessionsUsedByPrincipal = principals.get(principal);
+        final PrincipalSessions sessionsUsedByPrincipal = principals.get(principal);
 
         if (sessionsUsedByPrincipal == null) {
             return Collections.emptyList();
         }
 
-        List<SessionInformation> list = new ArrayList<SessionInformation>(sessionsUsedByPrincipal.size());
-
-        for (String sessionId : sessionsUsedByPrincipal) {
-            SessionInformation sessionInformation = getSessionInformation(sessionId);
-
-            if (sessionInformation == null) {
-                continue;
-            }
+        Collection<SessionInformation> sessions = sessionsUsedByPrincipal.sessions.values();
+        List<SessionInformation> list = new ArrayList<SessionInformation>(sessions.size());
 
+        for (SessionInformation sessionInformation : sessions) {
             if (includeExpiredSessions || !sessionInformation.isExpired()) {
                 list.add(sessionInformation);
             }
@@ -78,6 +131,23 @@ public class SessionRegistryImpl implements SessionRegistry, ApplicationListener
         return list;
     }
 
+    /**
+     * @since 3.2
+     */
+    public int getSessionCount(Object principal, boolean includeExpiredSessions) {
+        final PrincipalSessions sessionsUsedByPrincipal = principals.get(principal);
+
+        if (sessionsUsedByPrincipal == null) {
+            return 0;
+        }
+
+        if (includeExpiredSessions) {
+            return sessionsUsedByPrincipal.sessions.size();
+        }
+
+        return sessionsUsedByPrincipal.activeCount;
+    }
+
     public SessionInformation getSessionInformation(String sessionId) {
         Assert.hasText(sessionId, "SessionId required as per interface contract");
 
@@ -100,6 +170,14 @@ public class SessionRegistryImpl implements SessionRegistry, ApplicationListener
     }
 
     public void registerNewSession(String sessionId, Object principal) {
+        registerNewSession(sessionId, principal, null, -1, false);
+    }
+
+    /**
+     * @since 3.2
+     */
+    public boolean registerNewSession(String sessionId, Object principal, String replacedSessionId,
+            int maximumSessions, boolean rejectIfMaximumExceeded) {
         Assert.hasText(sessionId, "SessionId required as per interface contract");
         Assert.notNull(principal, "Principal required as per interface contract");
 
@@ -107,28 +185,58 @@ public class SessionRegistryImpl implements SessionRegistry, ApplicationListener
             logger.debug("Registering session " + sessionId +", for principal " + principal);
         }
 
-        if (getSessionInformation(sessionId) != null) {
+        SessionInformation replaced = replacedSessionId == null ? null : getSessionInformation(replacedSessionId);
+        SessionInformation existing = getSessionInformation(sessionId);
+
+        if (existing != null && existing != replaced) {
             removeSessionInformation(sessionId);
         }
 
-        sessionIds.put(sessionId, new SessionInformation(principal, sessionId, new Date()));
+        PrincipalSessions sessionsUsedByPrincipal;
+        RegisteredSessionInformation info;
+        Admission admission;
 
-        Set<String> sessionsUsedByPrincipal = principals.get(principal);
+        do {
+            sessionsUsedByPrincipal = principals.get(principal);
 
-        if (sessionsUsedByPrincipal == null) {
-            sessionsUsedByPrincipal = new CopyOnWriteArraySet<String>();
-            Set<String> prevSessionsUsedByPrincipal = principals.putIfAbsent(principal,
-                    sessionsUsedByPrincipal);
-            if (prevSessionsUsedByPrincipal != null) {
-                sessionsUsedByPrincipal = prevSessionsUsedByPrincipal;
+            if (sessionsUsedByPrincipal == null) {
+                sessionsUsedByPrincipal = new PrincipalSessions();
+                PrincipalSessions prevSessionsUsedByPrincipal = principals.putIfAbsent(principal,
+                        sessionsUsedByPrincipal);
+                if (prevSessionsUsedByPrincipal != null) {
+                    sessionsUsedByPrincipal = prevSessionsUsedByPrincipal;
+                }
+            }
+
+            if (replaced != null && !sessionsUsedByPrincipal.owns(replaced)) {
+                // Belongs to another principal, so it doesn't count towards this one's limit
+                removeSessionInformation(replacedSessionId);
+                replaced = null;
+            }
+
+            info = new RegisteredSessionInformation(principal, sessionId, sessionsUsedByPrincipal);
+            admission = sessionsUsedByPrincipal.admit(info, replaced, maximumSessions, rejectIfMaximumExceeded);
+            // Retried if the last session was concurrently removed, along with the principal
+        } while (admission == Admission.RETRY);
+
+        if (replaced != null) {
+            sessionIds.remove(replacedSessionId, replaced);
+        }
+
+        if (admission == Admission.REJECTED) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Maximum of " + maximumSessions + " sessions reached for principal " + principal);
             }
+            return false;
         }
 
-        sessionsUsedByPrincipal.add(sessionId);
+        sessionIds.put(sessionId, info);
 
         if (logger.isTraceEnabled()) {
-            logger.trace("Sessions used by '" + principal + "' : " + sessionsUsedByPrincipal);
+            logger.trace("Sessions used by '" + principal + "' : " + sessionsUsedByPrincipal.sessions.keySet());
         }
+
+        return true;
     }
 
     public void removeSessionInformation(String sessionId) {
@@ -146,7 +254,7 @@ public class SessionRegistryImpl implements SessionRegistry, ApplicationListener
 
         sessionIds.remove(sessionId);
 
-        Set<String> sessionsUsedByPrincipal = principals.get(info.getPrincipal());
+        PrincipalSessions sessionsUsedByPrincipal = principals.get(info.getPrincipal());
 
         if (sessionsUsedByPrincipal == null) {
             return;
@@ -156,19 +264,181 @@ public class SessionRegistryImpl implements SessionRegistry, ApplicationListener
             logger.debug("Removing session " + sessionId + " from principal's set of registered sessions");
         }
 
-        sessionsUsedByPrincipal.remove(sessionId);
-
-        if (sessionsUsedByPrincipal.isEmpty()) {
+        if (sessionsUsedByPrincipal.remove(info)) {
             // No need to keep object in principals Map anymore
             if (logger.isDebugEnabled()) {
                 logger.debug("Removing principal " + info.getPrincipal() + " from registry");
             }
-            principals.remove(info.getPrincipal());
+            principals.remove(info.getPrincipal(), sessionsUsedByPrincipal);
         }
 
         if (logger.isTraceEnabled()) {
-            logger.trace("Sessions used by '" + info.getPrincipal() + "' : " + sessionsUsedByPrincipal);
+            logger.trace("Sessions used by '" + info.getPrincipal() + "' : " + sessionsUsedByPrincipal.sessions.keySet());
         }
     }
 
+    /**
+     * Removes the sessions which haven't been used for longer than the {@code maxInactiveInterval}. This is invoked
+     * periodically once the bean has been initialized, but may also be called directly.
+     *
+     * @return the number of sessions which were removed
+     * @since 3.2
+     */
+    public int removeIdleSessions() {
+        if (maxInactiveInterval <= 0) {
+            return 0;
+        }
+
+        long cutoff = System.currentTimeMillis() - maxInactiveInterval * 1000L;
+        int removed = 0;
+
+        for (SessionInformation info : sessionIds.values()) {
+            if (info.getLastRequest().getTime() < cutoff) {
+                removeSessionInformation(info.getSessionId());
+                removed++;
+            }
+        }
+
+        if (removed > 0 && logger.isDebugEnabled()) {
+            logger.debug("Removed " + removed + " idle sessions from registry");
+        }
+
+        return removed;
+    }
+
+    /**
+     * Sets the time after which an unused session is removed from the registry. The default is -1, meaning that
+     * sessions are only removed when a {@code SessionDestroyedEvent} is received.
+     *
+     * @param maxInactiveInterval the interval in seconds, which should match the session timeout of the container
+     * @since 3.2
+     */
+    public void setMaxInactiveInterval(int maxInactiveInterval) {
+        this.maxInactiveInterval = maxInactiveInterval;
+    }
+
+    /**
+     * Sets how often idle sessions are looked for, if a {@code maxInactiveInterval} is set. Defaults to 60.
+     *
+     * @param sweepIntervalSeconds the interval in seconds
+     * @since 3.2
+     */
+    public void setSweepIntervalSeconds(int sweepIntervalSeconds) {
+        Assert.isTrue(sweepIntervalSeconds > 0, "sweepIntervalSeconds must be positive");
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+    }
+
+    private enum Admission { ADMITTED, REJECTED, RETRY }
+
+    /**
+     * The sessions of a principal. The unexpired sessions are also held separately, so that the least recently used
+     * one can be found by examining no more than the maximum number of sessions. All changes are made while holding
+     * the lock of this instance, but the sessions and the count of unexpired sessions can be read without it.
+     */
+    private static final class PrincipalSessions {
+        private final ConcurrentMap<String, SessionInformation> sessions =
+                new ConcurrentHashMap<String, SessionInformation>();
+        private final Map<String, SessionInformation> activeSessions = new LinkedHashMap<String, SessionInformation>();
+        private volatile int activeCount;
+        private boolean removed;
+
+        synchronized Admission admit(SessionInformation info, SessionInformation replaced, int maximumSessions,
+                boolean rejectIfMaximumExceeded) {
+            if (removed) {
+                return Admission.RETRY;
+            }
+
+            if (replaced != null && sessions.remove(replaced.getSessionId(), replaced)) {
+                deactivate(replaced);
+            }
+
+            if (maximumSessions > 0 && activeCount >= maximumSessions) {
+                if (rejectIfMaximumExceeded) {
+                    return Admission.REJECTED;
+                }
+
+                while (activeCount >= maximumSessions) {
+                    // Removes it from activeSessions
+                    leastRecentlyUsed().expireNow();
+                }
+            }
+
+            SessionInformation previous = sessions.put(info.getSessionId(), info);
+
+            if (previous != null) {
+                deactivate(previous);
+            }
+
+            activeSessions.put(info.getSessionId(), info);
+            activeCount = activeSessions.size();
+
+            return Admission.ADMITTED;
+        }
+
+        /**
+         * @return true if this was the last session, so this instance should no longer be registered
+         */
+        synchronized boolean remove(SessionInformation info) {
+            if (!sessions.remove(info.getSessionId(), info)) {
+                return false;
+            }
+
+            deactivate(info);
+
+            if (sessions.isEmpty()) {
+                removed = true;
+            }
+
+            return removed;
+        }
+
+        synchronized boolean owns(SessionInformation info) {
+            return sessions.get(info.getSessionId()) == info;
+        }
+
+        synchronized void deactivate(SessionInformation info) {
+            if (activeSessions.get(info.getSessionId()) == info) {
+                activeSessions.remove(info.getSessionId());
+                activeCount = activeSessions.size();
+            }
+        }
+
+        /**
+         * The order of use is only determined when a session has to be expired, so that using a session doesn't
+         * require the lock.
+         */
+        private SessionInformation leastRecentlyUsed() {
+            SessionInformation leastRecentlyUsed = null;
+
+            for (SessionInformation info : activeSessions.values()) {
+                if (leastRecentlyUsed == null || info.getLastRequest().before(leastRecentlyUsed.getLastRequest())) {
+                    leastRecentlyUsed = info;
+                }
+            }
+
+            return leastRecentlyUsed;
+        }
+    }
+
+    /**
+     * Keeps the unexpired sessions of its principal up to date when it is expired.
+     */
+    private static final class RegisteredSessionInformation extends SessionInformation {
+        private static final long serialVersionUID = SpringSecurityCoreVersion.SERIAL_VERSION_UID;
+
+        private transient final PrincipalSessions owner;
+
+        RegisteredSessionInformation(Object principal, String sessionId, PrincipalSessions owner) {
+            super(principal, sessionId, new Date());
+            this.owner = owner;
+        }
+
+        @Override
+        public void expireNow() {
+            super.expireNow();
+            if (owner != null) {
+                owner.deactivate(this);
+            }
+        }
+    }
 }
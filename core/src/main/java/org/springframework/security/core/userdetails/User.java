@@ -15,6 +15,8 @@
 
 package org.springframework.security.core.userdetails;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
@@ -26,6 +28,7 @@ import java.util.TreeSet;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.CredentialsContainer;
 import org.springframework.security.core.SpringSecurityCoreVersion;
+import org.springframework.security.core.authority.AuthorityInterner;
 import org.springframework.util.Assert;
 
 /**
@@ -54,7 +57,7 @@ public class User implements UserDetails, CredentialsContainer {
     //~ Instance fields ================================================================================================
     private String password;
     private final String username;
-    private final Set<GrantedAuthority> authorities;
+    private Set<GrantedAuthority> authorities;
     private final boolean accountNonExpired;
     private final boolean accountNonLocked;
     private final boolean credentialsNonExpired;
@@ -106,6 +109,7 @@ public class User implements UserDetails, CredentialsContainer {
         this.credentialsNonExpired = credentialsNonExpired;
         this.accountNonLocked = accountNonLocked;
         this.authorities = Collections.unmodifiableSet(sortAuthorities(authorities));
+        internAuthorities();
     }
 
     //~ Methods ========================================================================================================
@@ -142,6 +146,23 @@ public class User implements UserDetails, CredentialsContainer {
         password = null;
     }
 
+    /**
+     * Replaces the authorities with the shared instance from the {@link AuthorityInterner}, if possible. Since
+     * the set is sorted in the same way, this has no visible effect.
+     */
+    private void internAuthorities() {
+        Set<GrantedAuthority> interned = AuthorityInterner.internSet(authorities);
+
+        if (interned != null) {
+            authorities = interned;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        internAuthorities();
+    }
+
     private static SortedSet<GrantedAuthority> sortAuthorities(Collection<? extends GrantedAuthority> authorities) {
         Assert.notNull(authorities, "Cannot pass a null GrantedAuthority collection");
         // Ensure array iteration order is predictable (as per UserDetails.getAuthorities() contract and SEC-717)
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * A simple, size-bounded cache which evicts the least recently used entries once the maximum size is reached.
+ * <p>
+ * The entries are split between a number of independently locked segments (chosen by the hash of the key) to reduce
+ * contention, so the eviction order is only approximately LRU across the cache as a whole, and each segment holds
+ * at most {@code maximumSize / concurrencyLevel} (rounded up) entries. Hit and miss counts are maintained for
+ * monitoring purposes.
+ * <p>
+ * Null keys and values are not supported.
+ *
+ * @since 3.2
+ */
+public final class ConcurrentLruCache<K, V> {
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache with the default concurrency level (16).
+     *
+     * @param maximumSize the maximum number of entries
+     */
+    public ConcurrentLruCache(int maximumSize) {
+        this(maximumSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maximumSize the maximum number of entries
+     * @param concurrencyLevel the expected number of concurrently updating threads, used to determine the number of
+     * segments (the nearest power of two which is not greater than the supplied value or the maximum size)
+     */
+    public ConcurrentLruCache(int maximumSize, int concurrencyLevel) {
+        Assert.isTrue(maximumSize > 0, "maximumSize must be greater than zero");
+        Assert.isTrue(concurrencyLevel > 0, "concurrencyLevel must be greater than zero");
+
+        int segmentCount = 1;
+        while (segmentCount * 2 <= Math.min(concurrencyLevel, maximumSize)) {
+            segmentCount *= 2;
+        }
+
+        int segmentSize = (maximumSize + segmentCount - 1) / segmentCount;
+        // A generic array can't be created directly, but it is only ever populated with Segment<K, V>s
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        Segment<K, V>[] segments = new Segment[segmentCount];
+        segmentMask = segmentCount - 1;
+
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<K, V>(segmentSize, evictions);
+        }
+
+        this.segments = segments;
+    }
+
+    /**
+     * Returns the cached value for the key, marking it as recently used.
+     *
+     * @param key the key
+     * @return the value, or null if it is not in the cache
+     */
+    public V get(K key) {
+        V value = segmentFor(key).get(key);
+
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        return value;
+    }
+
+    /**
+     * Adds an entry, possibly evicting the least recently used entry from the segment.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        Assert.notNull(value, "value cannot be null");
+        segmentFor(key).put(key, value);
+    }
+
+    /**
+     * Adds an entry unless the cache already contains one for the key, in which case that entry is marked as recently
+     * used instead.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the existing value, or null if the entry was added
+     */
+    public V putIfAbsent(K key, V value) {
+        Assert.notNull(value, "value cannot be null");
+        return segmentFor(key).putIfAbsent(key, value);
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key the key
+     * @return the removed value, or null if there was no entry for the key
+     */
+    public V remove(K key) {
+        return segmentFor(key).remove(key);
+    }
+
+    /**
+     * Removes all entries. The hit and miss counts are not reset.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return the current number of entries
+     */
+    public int size() {
+        int size = 0;
+
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * @return the number of calls to {@link #get(Object)} which found an entry
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of calls to {@link #get(Object)} which didn't find an entry
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries which have been evicted to keep the cache within its maximum size
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        Assert.notNull(key, "key cannot be null");
+        int h = key.hashCode();
+        // Spread the bits, as with HashMap, so that poor hash functions still use all segments
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+
+        return segments[h & segmentMask];
+    }
+
+    private static final class Segment<K, V> {
+        private final Map<K, V> map;
+
+        private Segment(final int maximumSize, final AtomicLong evictions) {
+            map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    if (size() > maximumSize) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized V get(K key) {
+            return map.get(key);
+        }
+
+        synchronized void put(K key, V value) {
+            map.put(key, value);
+        }
+
+        synchronized V putIfAbsent(K key, V value) {
+            V existing = map.get(key);
+
+            if (existing == null) {
+                map.put(key, value);
+            }
+
+            return existing;
+        }
+
+        synchronized V remove(K key) {
+            return map.remove(key);
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+}
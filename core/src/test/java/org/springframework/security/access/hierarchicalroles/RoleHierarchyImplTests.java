@@ -15,6 +15,7 @@
 package org.springframework.security.access.hierarchicalroles;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import junit.framework.TestCase;
@@ -139,4 +140,21 @@ public class RoleHierarchyImplTests extends TestCase {
         assertTrue(HierarchicalRolesTestHelper.containTheSameGrantedAuthoritiesCompareByAuthorityString(roleHierarchyImpl.getReachableGrantedAuthorities(authorities1), authorities2));
         assertTrue(HierarchicalRolesTestHelper.containTheSameGrantedAuthoritiesCompareByAuthorityString(roleHierarchyImpl.getReachableGrantedAuthorities(authorities2), authorities2));
     }
+
+    public void testReachableRolesAreRecalculatedWhenHierarchyChanges() {
+        List<GrantedAuthority> authorities = AuthorityUtils.createAuthorityList("ROLE_A");
+
+        RoleHierarchyImpl roleHierarchyImpl = new RoleHierarchyImpl();
+        roleHierarchyImpl.setHierarchy("ROLE_A > ROLE_B");
+
+        assertTrue(roleHierarchyImpl.isReachable(authorities, "ROLE_A"));
+        assertTrue(roleHierarchyImpl.isReachable(authorities, "ROLE_B"));
+        assertFalse(roleHierarchyImpl.isReachable(authorities, "ROLE_C"));
+
+        roleHierarchyImpl.setHierarchy("ROLE_A > ROLE_C");
+
+        assertFalse(roleHierarchyImpl.isReachable(authorities, "ROLE_B"));
+        assertTrue(roleHierarchyImpl.isReachable(authorities, "ROLE_C"));
+        assertTrue(roleHierarchyImpl.isReachable(new HashSet<GrantedAuthority>(authorities), "ROLE_C"));
+    }
 }
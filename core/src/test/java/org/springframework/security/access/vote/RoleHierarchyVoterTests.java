@@ -21,4 +21,32 @@ public class RoleHierarchyVoterTests {
 
         assertEquals(RoleHierarchyVoter.ACCESS_GRANTED, voter.vote(auth, new Object(), SecurityConfig.createList("ROLE_B")));
     }
+
+    @Test
+    public void reachableAuthoritiesAreResolvedPerCombinationOfRoles() {
+        RoleHierarchyImpl roleHierarchyImpl = new RoleHierarchyImpl();
+        roleHierarchyImpl.setHierarchy("ROLE_A > ROLE_B");
+        RoleHierarchyVoter voter = new RoleHierarchyVoter(roleHierarchyImpl);
+
+        TestingAuthenticationToken userA = new TestingAuthenticationToken("user", "password", "ROLE_A");
+        TestingAuthenticationToken userB = new TestingAuthenticationToken("other", "password", "ROLE_B");
+        TestingAuthenticationToken anotherUserA = new TestingAuthenticationToken("another", "password", "ROLE_A");
+
+        assertEquals(RoleHierarchyVoter.ACCESS_GRANTED, voter.vote(userA, new Object(), SecurityConfig.createList("ROLE_B")));
+        assertEquals(RoleHierarchyVoter.ACCESS_DENIED, voter.vote(userB, new Object(), SecurityConfig.createList("ROLE_A")));
+        assertEquals(RoleHierarchyVoter.ACCESS_GRANTED, voter.vote(anotherUserA, new Object(), SecurityConfig.createList("ROLE_B")));
+        assertEquals(RoleHierarchyVoter.ACCESS_GRANTED, voter.vote(userB, new Object(), SecurityConfig.createList("ROLE_B")));
+    }
+
+    @Test
+    public void changesToHierarchyAreUsed() {
+        RoleHierarchyImpl roleHierarchyImpl = new RoleHierarchyImpl();
+        roleHierarchyImpl.setHierarchy("ROLE_A > ROLE_B");
+        RoleHierarchyVoter voter = new RoleHierarchyVoter(roleHierarchyImpl);
+        TestingAuthenticationToken userA = new TestingAuthenticationToken("user", "password", "ROLE_A");
+
+        assertEquals(RoleHierarchyVoter.ACCESS_GRANTED, voter.vote(userA, new Object(), SecurityConfig.createList("ROLE_B")));
+        roleHierarchyImpl.setHierarchy("ROLE_A > ROLE_C");
+        assertEquals(RoleHierarchyVoter.ACCESS_DENIED, voter.vote(userA, new Object(), SecurityConfig.createList("ROLE_B")));
+    }
 }
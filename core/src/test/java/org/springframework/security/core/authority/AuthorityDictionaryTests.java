@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.authority;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+public class AuthorityDictionaryTests {
+
+    @Test
+    public void idsAreStable() {
+        int id = AuthorityDictionary.getId("ROLE_DICTIONARY_A");
+
+        assertTrue(id >= 0);
+        assertEquals(id, AuthorityDictionary.getId("ROLE_DICTIONARY_A"));
+        assertEquals(id, AuthorityDictionary.findId("ROLE_DICTIONARY_A"));
+        assertFalse(id == AuthorityDictionary.getId("ROLE_DICTIONARY_B"));
+        assertEquals(-1, AuthorityDictionary.getId(null));
+    }
+
+    @Test
+    public void findingUnknownAuthorityDoesNotRegisterIt() {
+        assertEquals(-1, AuthorityDictionary.findId("ROLE_DICTIONARY_UNKNOWN"));
+        assertEquals(-1, AuthorityDictionary.findId("ROLE_DICTIONARY_UNKNOWN"));
+        assertFalse(AuthorityDictionary.contains(new BitSet(), "ROLE_DICTIONARY_UNKNOWN"));
+    }
+
+    @Test
+    public void containsMatchesAuthorityNames() {
+        BitSet ids = AuthorityDictionary.getIds(AuthorityUtils.createAuthorityList("ROLE_DICTIONARY_C",
+                "ROLE_DICTIONARY_D"));
+
+        assertTrue(AuthorityDictionary.contains(ids, "ROLE_DICTIONARY_C"));
+        assertTrue(AuthorityDictionary.contains(ids, "ROLE_DICTIONARY_D"));
+        assertFalse(AuthorityDictionary.contains(ids, "ROLE_DICTIONARY_A"));
+        assertFalse(AuthorityDictionary.contains(ids, null));
+    }
+
+    @Test
+    public void authoritiesWithNullNameAreIgnored() {
+        GrantedAuthority custom = mock(GrantedAuthority.class);
+        List<GrantedAuthority> authorities = Arrays.asList(custom, new SimpleGrantedAuthority("ROLE_DICTIONARY_E"));
+
+        BitSet ids = AuthorityDictionary.getIds(authorities);
+
+        assertEquals(1, ids.cardinality());
+        assertTrue(AuthorityDictionary.contains(ids, "ROLE_DICTIONARY_E"));
+        assertTrue(AuthorityDictionary.getIds((List<GrantedAuthority>) null).isEmpty());
+    }
+
+    @Test
+    public void tokenRetainsIds() {
+        TestingAuthenticationToken token = new TestingAuthenticationToken("joe", "password", "ROLE_DICTIONARY_F");
+
+        BitSet ids = AuthorityDictionary.getIds(token);
+
+        assertEquals(ids, token.getAuthorityIds());
+        assertTrue(AuthorityDictionary.contains(ids, "ROLE_DICTIONARY_F"));
+    }
+
+    @Test
+    public void retainedIdsCannotBeModified() {
+        TestingAuthenticationToken token = new TestingAuthenticationToken("joe", "password", "ROLE_DICTIONARY_H");
+
+        AuthorityDictionary.getIds(token).clear();
+        token.getAuthorityIds().clear();
+
+        assertTrue(AuthorityDictionary.contains(AuthorityDictionary.getIds(token), "ROLE_DICTIONARY_H"));
+    }
+
+    @Test
+    public void otherAuthenticationTypesAreSupported() {
+        Authentication authentication = mock(Authentication.class);
+        List<GrantedAuthority> authorities = AuthorityUtils.createAuthorityList("ROLE_DICTIONARY_G");
+        doReturn(authorities).when(authentication).getAuthorities();
+
+        assertTrue(AuthorityDictionary.contains(AuthorityDictionary.getIds(authentication), "ROLE_DICTIONARY_G"));
+    }
+
+    @Test
+    public void containsChecksAuthenticationWithoutCopyingIds() {
+        TestingAuthenticationToken token = new TestingAuthenticationToken("joe", "password", "ROLE_DICTIONARY_I");
+
+        assertTrue(AuthorityDictionary.contains(token, "ROLE_DICTIONARY_I"));
+        assertTrue(token.hasAuthorityId(AuthorityDictionary.findId("ROLE_DICTIONARY_I")));
+        assertFalse(AuthorityDictionary.contains(token, "ROLE_DICTIONARY_A"));
+        assertFalse(AuthorityDictionary.contains(token, "ROLE_DICTIONARY_UNKNOWN"));
+        assertFalse(AuthorityDictionary.contains(token, null));
+        assertFalse(token.hasAuthorityId(-1));
+    }
+
+    @Test
+    public void containsChecksOtherAuthenticationTypesByName() {
+        Authentication authentication = mock(Authentication.class);
+        List<GrantedAuthority> authorities = AuthorityUtils.createAuthorityList("ROLE_DICTIONARY_J");
+        doReturn(authorities).when(authentication).getAuthorities();
+
+        assertTrue(AuthorityDictionary.contains(authentication, "ROLE_DICTIONARY_J"));
+        assertFalse(AuthorityDictionary.contains(authentication, "ROLE_DICTIONARY_A"));
+    }
+}
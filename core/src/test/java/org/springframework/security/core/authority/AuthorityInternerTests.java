@@ -0,0 +1,140 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.authority;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.mapping.SimpleAuthorityMapper;
+import org.springframework.security.core.userdetails.User;
+
+public class AuthorityInternerTests {
+
+    @Test
+    public void authoritiesAreShared() {
+        assertSame(AuthorityInterner.intern("ROLE_INTERN_A"), AuthorityInterner.intern("ROLE_INTERN_A"));
+        assertSame(AuthorityInterner.intern("ROLE_INTERN_B"),
+                AuthorityInterner.intern(new SimpleGrantedAuthority("ROLE_INTERN_B")));
+        assertSame(AuthorityUtils.createAuthorityList("ROLE_INTERN_C").get(0),
+                AuthorityUtils.createAuthorityList("ROLE_INTERN_C").get(0));
+    }
+
+    @Test
+    public void otherAuthorityTypesAreNotInterned() {
+        GrantedAuthority authority = new GrantedAuthority() {
+            public String getAuthority() {
+                return "ROLE_A";
+            }
+        };
+
+        assertSame(authority, AuthorityInterner.intern(authority));
+        assertNull(AuthorityInterner.internSet(Arrays.asList(authority)));
+        assertNull(AuthorityInterner.internList(Arrays.asList(authority)));
+        assertNull(AuthorityInterner.internSet(null));
+    }
+
+    @Test
+    public void equalSetsAreSharedRegardlessOfOrder() {
+        Set<GrantedAuthority> set = AuthorityInterner.internSet(
+                AuthorityUtils.createAuthorityList("ROLE_B", "ROLE_A", "ROLE_B"));
+
+        assertSame(set, AuthorityInterner.internSet(AuthorityUtils.createAuthorityList("ROLE_A", "ROLE_B")));
+        assertEquals(2, set.size());
+        Iterator<GrantedAuthority> authorities = set.iterator();
+        assertEquals("ROLE_A", authorities.next().getAuthority());
+        assertEquals("ROLE_B", authorities.next().getAuthority());
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void internedSetIsUnmodifiable() {
+        AuthorityInterner.internSet(AuthorityUtils.createAuthorityList("ROLE_A")).clear();
+    }
+
+    @Test
+    public void listsPreserveOrder() {
+        List<GrantedAuthority> list = AuthorityInterner.internList(
+                AuthorityUtils.createAuthorityList("ROLE_B", "ROLE_A"));
+
+        assertSame(list, AuthorityInterner.internList(AuthorityUtils.createAuthorityList("ROLE_B", "ROLE_A")));
+        assertNotSame(list, AuthorityInterner.internList(AuthorityUtils.createAuthorityList("ROLE_A", "ROLE_B")));
+        assertEquals("ROLE_B", list.get(0).getAuthority());
+    }
+
+    @Test
+    public void usersAndTokensShareAuthorities() {
+        User user1 = new User("joe", "password", AuthorityUtils.createAuthorityList("ROLE_A", "ROLE_B"));
+        User user2 = new User("bob", "password", AuthorityUtils.createAuthorityList("ROLE_B", "ROLE_A"));
+
+        assertSame(user1.getAuthorities(), user2.getAuthorities());
+        assertSame(new UsernamePasswordAuthenticationToken(user1, null, user1.getAuthorities()).getAuthorities(),
+                new UsernamePasswordAuthenticationToken(user2, null, user2.getAuthorities()).getAuthorities());
+    }
+
+    @Test
+    public void mappedAuthoritiesAreSharedOnceStored() {
+        SimpleAuthorityMapper mapper = new SimpleAuthorityMapper();
+        Set<GrantedAuthority> mapped = mapper.mapAuthorities(AuthorityUtils.createAuthorityList("A", "B"));
+
+        // The result belongs to the caller
+        mapped.add(new SimpleGrantedAuthority("ROLE_C"));
+        assertSame(AuthorityInterner.intern("ROLE_A"), mapper.mapAuthorities(
+                AuthorityUtils.createAuthorityList("A")).iterator().next());
+
+        User first = new User("joe", "password", mapper.mapAuthorities(AuthorityUtils.createAuthorityList("A", "B")));
+        User second = new User("bob", "password", mapper.mapAuthorities(
+                AuthorityUtils.createAuthorityList("ROLE_B", "ROLE_A")));
+        assertSame(first.getAuthorities(), second.getAuthorities());
+    }
+
+    @Test
+    public void deserializedAuthoritiesAreShared() throws Exception {
+        User user = new User("joe", "password", AuthorityUtils.createAuthorityList("ROLE_A", "ROLE_B"));
+        UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(user, null,
+                user.getAuthorities());
+        List<Object> objects = new ArrayList<Object>();
+        objects.add(new SimpleGrantedAuthority("ROLE_A"));
+        objects.add(token);
+
+        @SuppressWarnings("unchecked")
+        List<Object> result = (List<Object>) deserialize(serialize(objects));
+
+        assertSame(AuthorityInterner.intern("ROLE_A"), result.get(0));
+        UsernamePasswordAuthenticationToken resultToken = (UsernamePasswordAuthenticationToken) result.get(1);
+        assertSame(token.getAuthorities(), resultToken.getAuthorities());
+        assertSame(user.getAuthorities(), ((User) resultToken.getPrincipal()).getAuthorities());
+    }
+
+    private static byte[] serialize(Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws Exception {
+        return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.context;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+
+public class CompactSecurityContextSerializerTests {
+    private final List<GrantedAuthority> authorities = AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN",
+            "ROLE_AUDITOR", "ROLE_REPORTS", "ROLE_BILLING");
+    private final CompactSecurityContextSerializer serializer = new CompactSecurityContextSerializer();
+
+    @Test
+    public void authenticatedUserRoundTrips() {
+        User user = new User("joe", "password", true, false, true, false, authorities);
+        UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(user, null,
+                user.getAuthorities());
+        token.setDetails("details");
+
+        Authentication result = roundTrip(token);
+
+        assertEquals(token, result);
+        assertTrue(result.isAuthenticated());
+        assertEquals("details", result.getDetails());
+        User resultUser = (User) result.getPrincipal();
+        assertEquals("password", resultUser.getPassword());
+        assertTrue(resultUser.isEnabled());
+        assertFalse(resultUser.isAccountNonExpired());
+        assertTrue(resultUser.isCredentialsNonExpired());
+        assertFalse(resultUser.isAccountNonLocked());
+        assertEquals(user.getAuthorities(), resultUser.getAuthorities());
+    }
+
+    @Test
+    public void erasedPasswordRemainsNull() {
+        User user = new User("joe", "password", authorities);
+        user.eraseCredentials();
+
+        User result = (User) roundTrip(new UsernamePasswordAuthenticationToken(user, null, authorities))
+                .getPrincipal();
+
+        assertNull(result.getPassword());
+    }
+
+    @Test
+    public void unauthenticatedTokenRoundTrips() {
+        Authentication result = roundTrip(new UsernamePasswordAuthenticationToken("joe", "password"));
+
+        assertFalse(result.isAuthenticated());
+        assertEquals("joe", result.getPrincipal());
+        assertEquals("password", result.getCredentials());
+    }
+
+    @Test
+    public void emptyContextRoundTrips() {
+        SecurityContext result = serializer.deserialize(serializer.serialize(new SecurityContextImpl()));
+
+        assertNull(result.getAuthentication());
+    }
+
+    @Test
+    public void otherTypesUseJavaSerialization() {
+        TestingAuthenticationToken token = new TestingAuthenticationToken("joe", "password", "ROLE_A");
+
+        Authentication result = roundTrip(token);
+
+        assertTrue(result instanceof TestingAuthenticationToken);
+        assertEquals(token, result);
+    }
+
+    @Test
+    public void serializedFormIsMuchSmallerThanJavaSerialization() throws Exception {
+        SecurityContext context = new SecurityContextImpl();
+        User user = new User("joe", "password", authorities);
+        user.eraseCredentials();
+        context.setAuthentication(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+
+        int javaSize = javaSerialize(context).length;
+        int compactSize = serializer.serialize(context).length;
+
+        assertTrue("Compact size " + compactSize + " vs " + javaSize, compactSize * 10 < javaSize);
+    }
+
+    @Test
+    public void dictionaryEntriesAreNotWritten() {
+        SecurityContext context = new SecurityContextImpl();
+        context.setAuthentication(new UsernamePasswordAuthenticationToken("joe", null, authorities));
+        CompactSecurityContextSerializer withDictionary = new DictionarySerializer();
+
+        byte[] bytes = withDictionary.serialize(context);
+
+        assertTrue(bytes.length < serializer.serialize(context).length - 40);
+        assertEquals(context, withDictionary.deserialize(bytes));
+    }
+
+    @Test
+    public void javaSerializedContextCanBeRead() throws Exception {
+        SecurityContext context = new SecurityContextImpl();
+        context.setAuthentication(new UsernamePasswordAuthenticationToken("joe", null, authorities));
+
+        assertEquals(context, serializer.deserialize(javaSerialize(context)));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidDataIsRejected() {
+        serializer.deserialize(new byte[] {0x5C, 1, 42});
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void truncatedDataIsRejected() {
+        SecurityContext context = new SecurityContextImpl();
+        context.setAuthentication(new UsernamePasswordAuthenticationToken("joe", null, authorities));
+        byte[] bytes = serializer.serialize(context);
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        serializer.deserialize(truncated);
+    }
+
+    @Test
+    public void serializingSecurityContextUsesSerializer() throws Exception {
+        SerializingSecurityContext context = new SerializingSecurityContext();
+        User user = new User("joe", "password", authorities);
+        context.setAuthentication(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+        SecurityContextImpl plain = new SecurityContextImpl();
+        plain.setAuthentication(context.getAuthentication());
+
+        byte[] bytes = javaSerialize(context);
+        assertTrue(bytes.length * 5 < javaSerialize(plain).length);
+
+        SerializingSecurityContext result = (SerializingSecurityContext) javaDeserialize(bytes);
+        assertEquals(context.getAuthentication(), result.getAuthentication());
+        assertFalse(result.isDirty());
+        assertSame(CompactSecurityContextSerializer.class, result.getSerializer().getClass());
+    }
+
+    @Test
+    public void serializingSecurityContextRecreatesCustomSerializer() throws Exception {
+        SerializingSecurityContext context = new SerializingSecurityContext(new DictionarySerializer());
+        context.setAuthentication(new UsernamePasswordAuthenticationToken("joe", null, authorities));
+
+        SerializingSecurityContext result = (SerializingSecurityContext) javaDeserialize(javaSerialize(context));
+
+        assertEquals(context.getAuthentication(), result.getAuthentication());
+        assertTrue(result.getSerializer() instanceof DictionarySerializer);
+    }
+
+    @Test
+    public void equallyConfiguredSerializersCanBeRegistered() {
+        SerializingSecurityContext.registerSerializer(new DictionarySerializer());
+        SerializingSecurityContext.registerSerializer(new DictionarySerializer());
+
+        assertEquals(new DictionarySerializer(), new DictionarySerializer());
+        assertFalse(new DictionarySerializer().equals(new CompactSecurityContextSerializer()));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void differentlyConfiguredSerializerIsRejected() {
+        SerializingSecurityContext.registerSerializer(new ConfigurableSerializer("ROLE_USER"));
+        SerializingSecurityContext.registerSerializer(new ConfigurableSerializer("ROLE_ADMIN"));
+    }
+
+    @Test
+    public void serializerClassIsNotInstantiatedFromData() throws Exception {
+        SerializingSecurityContext context = new SerializingSecurityContext(new DictionarySerializer());
+        byte[] bytes = javaSerialize(context);
+        // Same length, so the stream structure is unchanged
+        byte[] original = DictionarySerializer.class.getName().getBytes("UTF-8");
+        byte[] replacement = InstantiationTracker.class.getName().getBytes("UTF-8");
+        assertEquals(original.length, replacement.length);
+        replace(bytes, original, replacement);
+
+        try {
+            javaDeserialize(bytes);
+            fail("Expected InvalidObjectException");
+        } catch (InvalidObjectException expected) {
+        }
+
+        assertFalse(InstantiationTracker.instantiated);
+    }
+
+    private static void replace(byte[] bytes, byte[] original, byte[] replacement) {
+        for (int i = 0; i <= bytes.length - original.length; i++) {
+            boolean found = true;
+            for (int j = 0; j < original.length && found; j++) {
+                found = bytes[i + j] == original[j];
+            }
+            if (found) {
+                System.arraycopy(replacement, 0, bytes, i, replacement.length);
+                return;
+            }
+        }
+        fail("Serializer class name not found");
+    }
+
+    private Authentication roundTrip(Authentication authentication) {
+        SecurityContext context = new SecurityContextImpl();
+        context.setAuthentication(authentication);
+
+        return serializer.deserialize(serializer.serialize(context)).getAuthentication();
+    }
+
+    private static byte[] javaSerialize(Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object javaDeserialize(byte[] bytes) throws Exception {
+        return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+    }
+
+    public static class DictionarySerializer extends CompactSecurityContextSerializer {
+        public DictionarySerializer() {
+            super("ROLE_USER", "ROLE_ADMIN", "ROLE_AUDITOR", "ROLE_REPORTS", "ROLE_BILLING");
+        }
+    }
+
+    public static class ConfigurableSerializer extends CompactSecurityContextSerializer {
+        public ConfigurableSerializer(String... dictionary) {
+            super(dictionary);
+        }
+    }
+
+    public static class InstantiationTracker {
+        static boolean instantiated;
+
+        public InstantiationTracker() {
+            instantiated = true;
+        }
+    }
+}
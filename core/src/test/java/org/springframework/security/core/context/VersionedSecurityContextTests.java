@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.context;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+public class VersionedSecurityContextTests {
+
+    @Test
+    public void versionIsIncrementedOnlyWhenAuthenticationChanges() {
+        VersionedSecurityContext context = new VersionedSecurityContext();
+        Authentication auth = new TestingAuthenticationToken("user", "password", "ROLE_A");
+
+        assertEquals(0, context.getVersion());
+        context.setAuthentication(null);
+        assertEquals(0, context.getVersion());
+        context.setAuthentication(auth);
+        assertEquals(1, context.getVersion());
+        context.setAuthentication(auth);
+        assertEquals(1, context.getVersion());
+        context.setAuthentication(null);
+        assertEquals(2, context.getVersion());
+    }
+
+    @Test
+    public void contextIsDirtyUntilPersisted() {
+        VersionedSecurityContext context = new VersionedSecurityContext();
+        assertTrue(context.isDirty());
+
+        context.setPersistedVersion(context.getVersion());
+        assertFalse(context.isDirty());
+
+        context.setAuthentication(new TestingAuthenticationToken("user", "password", "ROLE_A"));
+        assertTrue(context.isDirty());
+    }
+
+    @Test
+    public void equalsIsConsistentWithSecurityContextImpl() {
+        Authentication auth = new TestingAuthenticationToken("user", "password", "ROLE_A");
+        VersionedSecurityContext context = new VersionedSecurityContext();
+        context.setAuthentication(auth);
+        SecurityContextImpl other = new SecurityContextImpl();
+        other.setAuthentication(auth);
+
+        assertEquals(other, context);
+        assertEquals(context, other);
+    }
+}
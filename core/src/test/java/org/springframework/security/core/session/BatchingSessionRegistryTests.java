@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.session;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchingSessionRegistryTests {
+    private SessionRegistry delegate;
+    private BatchingSessionRegistry registry;
+
+    @Before
+    public void setUp() {
+        delegate = mock(SessionRegistry.class);
+        registry = new BatchingSessionRegistry(delegate);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void nullDelegateIsRejected() {
+        new BatchingSessionRegistry(null);
+    }
+
+    @Test
+    public void refreshesAreCoalescedUntilFlushed() {
+        registry.refreshLastRequest("1");
+        registry.refreshLastRequest("1");
+        registry.refreshLastRequest("2");
+        verify(delegate, never()).refreshLastRequest(anyString());
+
+        assertEquals(2, registry.flush());
+
+        verify(delegate).refreshLastRequest("1");
+        verify(delegate).refreshLastRequest("2");
+        assertEquals(0, registry.flush());
+    }
+
+    @Test
+    public void removedSessionIsNotRefreshed() {
+        registry.refreshLastRequest("1");
+        registry.removeSessionInformation("1");
+
+        assertEquals(0, registry.flush());
+
+        verify(delegate).removeSessionInformation("1");
+        verify(delegate, never()).refreshLastRequest(anyString());
+    }
+
+    @Test
+    public void destroyFlushesPendingRefreshes() {
+        registry.afterPropertiesSet();
+        registry.refreshLastRequest("1");
+
+        registry.destroy();
+
+        verify(delegate).refreshLastRequest("1");
+    }
+
+    @Test
+    public void otherMethodsAreDelegated() {
+        SessionInformation info = new SessionInformation("principal", "1", new Date());
+        when(delegate.getSessionInformation("1")).thenReturn(info);
+
+        registry.registerNewSession("1", "principal");
+
+        verify(delegate).registerNewSession("1", "principal");
+        assertSame(info, registry.getSessionInformation("1"));
+    }
+
+    @Test
+    public void sessionCountIsDelegatedToCountingRegistry() {
+        SessionRegistryImpl sessions = new SessionRegistryImpl();
+        sessions.registerNewSession("1", "principal");
+        sessions.registerNewSession("2", "principal");
+        registry = new BatchingSessionRegistry(sessions);
+
+        assertEquals(2, registry.getSessionCount("principal", false));
+    }
+
+    @Test
+    public void sessionsAreCountedForOtherRegistries() {
+        SessionInformation info = new SessionInformation("principal", "1", new Date());
+        when(delegate.getAllSessions("principal", false)).thenReturn(Arrays.asList(info));
+
+        assertEquals(1, registry.getSessionCount("principal", false));
+    }
+
+    @Test
+    public void listedSessionsAreRefreshed() {
+        SessionInformation info = new SessionInformation("principal", "1", new Date());
+        when(delegate.getAllSessions("principal", false)).thenReturn(Arrays.asList(info));
+        registry.refreshLastRequest("1");
+
+        assertEquals(Arrays.asList(info), registry.getAllSessions("principal", false));
+
+        verify(delegate).refreshLastRequest("1");
+        assertEquals(0, registry.flush());
+    }
+
+    @Test
+    public void boundedInterfaceIsOnlyImplementedForBoundedDelegate() {
+        assertFalse(registry instanceof BoundedSessionRegistry);
+        assertTrue(new BoundedBatchingSessionRegistry(new SessionRegistryImpl()) instanceof BoundedSessionRegistry);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.session;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedBatchingSessionRegistryTests {
+    private SessionRegistryImpl sessions;
+    private BoundedBatchingSessionRegistry registry;
+
+    @Before
+    public void setUp() {
+        sessions = new SessionRegistryImpl();
+        registry = new BoundedBatchingSessionRegistry(sessions);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void nullDelegateIsRejected() {
+        new BoundedBatchingSessionRegistry(null);
+    }
+
+    @Test
+    public void boundedRegistrationUsesCurrentLastRequestTimes() throws Exception {
+        registry.registerNewSession("1", "principal", null, 2, false);
+        registry.registerNewSession("2", "principal", null, 2, false);
+        Thread.sleep(10);
+        registry.refreshLastRequest("1");
+
+        assertTrue(registry.registerNewSession("3", "principal", null, 2, false));
+
+        assertFalse(sessions.getSessionInformation("1").isExpired());
+        assertTrue(sessions.getSessionInformation("2").isExpired());
+        assertEquals(0, registry.flush());
+    }
+
+    @Test
+    public void replacedSessionIsNotRefreshed() {
+        BoundedSessionRegistry delegate = mock(BoundedSessionRegistry.class);
+        registry = new BoundedBatchingSessionRegistry(delegate);
+        registry.refreshLastRequest("1");
+
+        registry.registerNewSession("2", "principal", "1", -1, false);
+
+        assertEquals(0, registry.flush());
+        verify(delegate).registerNewSession("2", "principal", "1", -1, false);
+        verify(delegate, never()).refreshLastRequest(anyString());
+    }
+}
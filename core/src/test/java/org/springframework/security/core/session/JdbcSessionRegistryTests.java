@@ -0,0 +1,266 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.core.session;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+
+public class JdbcSessionRegistryTests {
+    private static SingleConnectionDataSource dataSource;
+    private JdbcTemplate template;
+    private JdbcSessionRegistry registry;
+    private JdbcSessionRegistry otherNode;
+
+    @BeforeClass
+    public static void createDataSource() {
+        dataSource = new SingleConnectionDataSource("jdbc:hsqldb:mem:sessionregistrytest", "sa", "", true);
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+    }
+
+    @AfterClass
+    public static void clearDataSource() throws Exception {
+        dataSource.destroy();
+        dataSource = null;
+    }
+
+    @Before
+    public void createRegistries() throws Exception {
+        template = new JdbcTemplate(dataSource);
+        template.execute(JdbcSessionRegistry.CREATE_TABLE_SQL);
+        registry = createRegistry(5);
+        otherNode = createRegistry(0);
+    }
+
+    @After
+    public void clearData() {
+        registry.destroy();
+        otherNode.destroy();
+        template.execute("drop table session_registry");
+    }
+
+    private JdbcSessionRegistry createRegistry(int nearCacheTtlSeconds) throws Exception {
+        JdbcSessionRegistry registry = new JdbcSessionRegistry();
+        registry.setDataSource(dataSource);
+        registry.setFlushIntervalSeconds(3600);
+        registry.setNearCacheTtlSeconds(nearCacheTtlSeconds);
+        registry.afterPropertiesSet();
+        return registry;
+    }
+
+    private int rowCount() {
+        return template.queryForObject("select count(*) from session_registry", Integer.class).intValue();
+    }
+
+    @Test
+    public void registrationsAreWrittenInBatches() {
+        registry.registerNewSession("1", "joe");
+        registry.registerNewSession("2", "joe");
+        registry.registerNewSession("3", "bob");
+
+        assertEquals(0, rowCount());
+        assertNotNull(registry.getSessionInformation("1"));
+
+        assertEquals(3, registry.flush());
+        assertEquals(3, rowCount());
+        assertEquals(0, registry.flush());
+    }
+
+    @Test
+    public void sessionsAreVisibleToOtherNodesOnceFlushed() {
+        registry.registerNewSession("1", "joe");
+        assertNull(otherNode.getSessionInformation("1"));
+
+        registry.flush();
+
+        SessionInformation info = otherNode.getSessionInformation("1");
+        assertEquals("1", info.getSessionId());
+        assertEquals("joe", info.getPrincipal());
+        assertFalse(info.isExpired());
+    }
+
+    @Test
+    public void expiringSessionIsWritten() {
+        registry.registerNewSession("1", "joe");
+        registry.getSessionInformation("1").expireNow();
+
+        assertTrue(registry.getSessionInformation("1").isExpired());
+        registry.flush();
+
+        assertTrue(otherNode.getSessionInformation("1").isExpired());
+    }
+
+    @Test
+    public void sessionsLoadedFromDatabaseCanBeExpired() {
+        registry.registerNewSession("1", "joe");
+        registry.flush();
+
+        otherNode.getAllSessions("joe", false).get(0).expireNow();
+        otherNode.flush();
+
+        assertTrue(template.queryForObject("select expired from session_registry", Boolean.class));
+    }
+
+    @Test
+    public void refreshIsWritten() throws Exception {
+        registry.registerNewSession("1", "joe");
+        registry.flush();
+        Timestamp registered = template.queryForObject("select last_request from session_registry", Timestamp.class);
+
+        Thread.sleep(50);
+        registry.refreshLastRequest("1");
+        registry.flush();
+
+        Timestamp refreshed = template.queryForObject("select last_request from session_registry", Timestamp.class);
+        assertTrue(refreshed.after(registered));
+    }
+
+    @Test
+    public void removedSessionIsDeleted() {
+        registry.registerNewSession("1", "joe");
+        registry.flush();
+
+        registry.removeSessionInformation("1");
+        assertNull(registry.getSessionInformation("1"));
+        registry.flush();
+
+        assertEquals(0, rowCount());
+        assertNull(otherNode.getSessionInformation("1"));
+    }
+
+    @Test
+    public void registeringAndRemovingBeforeFlushWritesNothing() {
+        registry.registerNewSession("1", "joe");
+        registry.getSessionInformation("1").refreshLastRequest();
+        registry.removeSessionInformation("1");
+        registry.getSessionInformation("2");
+
+        registry.flush();
+
+        assertEquals(0, rowCount());
+    }
+
+    @Test
+    public void missingSessionsAreCached() {
+        assertNull(registry.getSessionInformation("1"));
+        otherNode.registerNewSession("1", "joe");
+        otherNode.flush();
+
+        assertNull(registry.getSessionInformation("1"));
+        assertNotNull(otherNode.getSessionInformation("1"));
+    }
+
+    @Test
+    public void queriesIncludeUnwrittenChanges() {
+        registry.registerNewSession("1", "joe");
+        registry.registerNewSession("2", "joe");
+        registry.registerNewSession("3", "bob");
+        registry.getSessionInformation("2").expireNow();
+
+        List<SessionInformation> sessions = registry.getAllSessions("joe", false);
+
+        assertEquals(1, sessions.size());
+        assertEquals("1", sessions.get(0).getSessionId());
+        assertEquals(2, registry.getAllSessions("joe", true).size());
+        assertEquals(1, registry.getSessionCount("joe", false));
+        assertEquals(2, registry.getSessionCount("joe", true));
+        assertEquals(2, registry.getAllPrincipals().size());
+    }
+
+    @Test
+    public void principalsAreIdentifiedByName() {
+        User user = new User("joe", "password", AuthorityUtils.createAuthorityList("ROLE_USER"));
+
+        registry.registerNewSession("1", user);
+
+        assertEquals("joe", registry.getSessionInformation("1").getPrincipal());
+        assertEquals(1, registry.getAllSessions(user, false).size());
+        assertEquals(1, registry.getAllSessions("joe", false).size());
+    }
+
+    @Test
+    public void reachingMaxBatchSizeFlushesChanges() {
+        registry.setMaxBatchSize(2);
+
+        registry.registerNewSession("1", "joe");
+        assertEquals(0, rowCount());
+        registry.registerNewSession("2", "joe");
+
+        assertEquals(2, rowCount());
+    }
+
+    @Test
+    public void idleSessionsAreRemoved() {
+        template.update("insert into session_registry values (?,?,?,?)", "1", "joe",
+                new Timestamp(System.currentTimeMillis() - 3600000), Boolean.FALSE);
+        registry.registerNewSession("2", "joe");
+        registry.flush();
+
+        assertEquals(0, registry.removeIdleSessions());
+        registry.setMaxInactiveInterval(1800);
+
+        assertEquals(1, registry.removeIdleSessions());
+        assertNull(otherNode.getSessionInformation("1"));
+        assertNotNull(otherNode.getSessionInformation("2"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void idleSessionRemovalIntervalMustBePositive() {
+        registry.setIdleSessionRemovalIntervalSeconds(0);
+    }
+
+    @Test
+    public void failedWritesAreQueuedAgain() throws Exception {
+        registry.registerNewSession("1", "joe");
+        registry.registerNewSession("2", "joe");
+        template.execute("drop table session_registry");
+
+        try {
+            registry.flush();
+            fail("Expected DataAccessException");
+        } catch (DataAccessException expected) {
+        }
+
+        template.execute(JdbcSessionRegistry.CREATE_TABLE_SQL);
+        // Neither a later change nor a new registration loses the failed writes
+        Thread.sleep(10);
+        registry.getSessionInformation("1").refreshLastRequest();
+        registry.registerNewSession("3", "bob");
+
+        assertEquals(3, registry.flush());
+        assertEquals(3, rowCount());
+        assertEquals(registry.getSessionInformation("1").getLastRequest().getTime(),
+                otherNode.getSessionInformation("1").getLastRequest().getTime());
+    }
+
+    @Test
+    public void destroyWritesRemainingChanges() {
+        registry.registerNewSession("1", "joe");
+
+        registry.destroy();
+
+        assertEquals(1, rowCount());
+    }
+}
@@ -171,6 +171,132 @@ public class SessionRegistryImplTests {
         assertEquals(0, sessionRegistry.getAllSessions(principal, false).size());
     }
 
+    @Test
+    public void sessionCountExcludesExpiredAndRemovedSessions() throws Exception {
+        Object principal = "Some principal object";
+
+        sessionRegistry.registerNewSession("1", principal);
+        sessionRegistry.registerNewSession("2", principal);
+        sessionRegistry.registerNewSession("3", principal);
+        assertEquals(3, sessionRegistry.getSessionCount(principal, false));
+
+        sessionRegistry.getSessionInformation("2").expireNow();
+        sessionRegistry.getSessionInformation("2").expireNow();
+        assertEquals(2, sessionRegistry.getSessionCount(principal, false));
+        assertEquals(3, sessionRegistry.getSessionCount(principal, true));
+
+        sessionRegistry.removeSessionInformation("2");
+        sessionRegistry.removeSessionInformation("3");
+        assertEquals(1, sessionRegistry.getSessionCount(principal, false));
+        assertEquals(1, sessionRegistry.getSessionCount(principal, true));
+
+        sessionRegistry.removeSessionInformation("1");
+        assertEquals(0, sessionRegistry.getSessionCount(principal, true));
+        assertTrue(sessionRegistry.getAllPrincipals().isEmpty());
+    }
+
+    @Test
+    public void reregisteringSessionDoesNotChangeCount() throws Exception {
+        sessionRegistry.registerNewSession("1", "principal");
+        sessionRegistry.registerNewSession("1", "principal");
+
+        assertEquals(1, sessionRegistry.getSessionCount("principal", false));
+        assertEquals(1, sessionRegistry.getAllSessions("principal", false).size());
+    }
+
+    @Test
+    public void idleSessionsAreRemoved() throws Exception {
+        sessionRegistry.registerNewSession("1", "principal");
+        sessionRegistry.registerNewSession("2", "principal");
+
+        assertEquals(0, sessionRegistry.removeIdleSessions());
+
+        sessionRegistry.setMaxInactiveInterval(1);
+        Thread.sleep(1100);
+        sessionRegistry.refreshLastRequest("2");
+
+        assertEquals(1, sessionRegistry.removeIdleSessions());
+        assertNull(sessionRegistry.getSessionInformation("1"));
+        assertNotNull(sessionRegistry.getSessionInformation("2"));
+        assertEquals(1, sessionRegistry.getSessionCount("principal", false));
+    }
+
+    @Test
+    public void boundedRegistrationExpiresLeastRecentlyUsedSession() throws Exception {
+        assertTrue(sessionRegistry.registerNewSession("1", "principal", null, 2, false));
+        assertTrue(sessionRegistry.registerNewSession("2", "principal", null, 2, false));
+        // The order of use is determined by the last request times
+        Thread.sleep(10);
+        sessionRegistry.refreshLastRequest("1");
+
+        assertTrue(sessionRegistry.registerNewSession("3", "principal", null, 2, false));
+
+        assertFalse(sessionRegistry.getSessionInformation("1").isExpired());
+        assertTrue(sessionRegistry.getSessionInformation("2").isExpired());
+        assertFalse(sessionRegistry.getSessionInformation("3").isExpired());
+        assertEquals(2, sessionRegistry.getSessionCount("principal", false));
+    }
+
+    @Test
+    public void boundedRegistrationCanRejectSession() throws Exception {
+        assertTrue(sessionRegistry.registerNewSession("1", "principal", null, 1, true));
+
+        assertFalse(sessionRegistry.registerNewSession("2", "principal", null, 1, true));
+
+        assertNull(sessionRegistry.getSessionInformation("2"));
+        assertFalse(sessionRegistry.getSessionInformation("1").isExpired());
+        assertEquals(1, sessionRegistry.getSessionCount("principal", true));
+    }
+
+    @Test
+    public void boundedRegistrationReplacesSession() throws Exception {
+        assertTrue(sessionRegistry.registerNewSession("1", "principal", null, 1, true));
+
+        assertTrue(sessionRegistry.registerNewSession("2", "principal", "1", 1, true));
+
+        assertNull(sessionRegistry.getSessionInformation("1"));
+        assertFalse(sessionRegistry.getSessionInformation("2").isExpired());
+        assertEquals(1, sessionRegistry.getSessionCount("principal", true));
+    }
+
+    @Test
+    public void expiredSessionsDoNotCountTowardsLimit() throws Exception {
+        sessionRegistry.registerNewSession("1", "principal", null, 1, true);
+        sessionRegistry.getSessionInformation("1").expireNow();
+
+        assertTrue(sessionRegistry.registerNewSession("2", "principal", null, 1, true));
+        assertEquals(1, sessionRegistry.getSessionCount("principal", false));
+        assertEquals(2, sessionRegistry.getSessionCount("principal", true));
+    }
+
+    @Test
+    public void concurrentBoundedRegistrationsDoNotExceedLimit() throws Exception {
+        final int threads = 8;
+        final int sessionsPerThread = 500;
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < sessionsPerThread; i++) {
+                        sessionRegistry.registerNewSession(thread + "-" + i, "principal", null, 3, false);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(3, sessionRegistry.getSessionCount("principal", false));
+        assertEquals(3, sessionRegistry.getAllSessions("principal", false).size());
+        assertEquals(threads * sessionsPerThread, sessionRegistry.getSessionCount("principal", true));
+    }
+
     private boolean contains(String sessionId, Object principal) {
         List<SessionInformation> info = sessionRegistry.getAllSessions(principal, false);
 
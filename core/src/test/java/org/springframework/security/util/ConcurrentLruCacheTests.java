@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ConcurrentLruCacheTests {
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(2, 1);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C");
+
+        assertEquals(2, cache.size());
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("C", cache.get("c"));
+    }
+
+    @Test
+    public void sizeIsBoundedWithMultipleSegments() {
+        ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<Integer, Integer>(64, 8);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(Integer.valueOf(i), Integer.valueOf(i));
+        }
+
+        assertTrue(cache.size() <= 64);
+    }
+
+    @Test
+    public void hitsAndMissesAreCounted() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(10);
+        cache.put("a", "A");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void removeAndClearWork() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(10);
+        cache.put("a", "A");
+        cache.put("b", "B");
+
+        assertEquals("A", cache.remove("a"));
+        assertNull(cache.remove("a"));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void putIfAbsentKeepsExistingEntry() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(10);
+
+        assertNull(cache.putIfAbsent("a", "A"));
+        assertEquals("A", cache.putIfAbsent("a", "B"));
+        assertEquals("A", cache.get("a"));
+    }
+
+    @Test
+    public void evictionsAreCounted() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(2, 1);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        cache.putIfAbsent("d", "D");
+
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullValueIsRejected() {
+        new ConcurrentLruCache<String, String>(10).put("a", null);
+    }
+}
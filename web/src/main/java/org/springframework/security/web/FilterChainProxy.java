@@ -21,11 +21,17 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.firewall.DefaultHttpFirewall;
 import org.springframework.security.web.firewall.FirewalledRequest;
 import org.springframework.security.web.firewall.HttpFirewall;
+import org.springframework.security.web.util.AntPathRequestMatcher;
 import org.springframework.security.web.util.RequestMatcher;
+import org.springframework.security.web.util.RequestMatcherIndex;
+import org.springframework.security.web.util.RequestPath;
 import org.springframework.security.web.util.UrlUtils;
 import org.springframework.web.filter.DelegatingFilterProxy;
 import org.springframework.web.filter.GenericFilterBean;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -80,6 +86,13 @@ import java.util.*;
  * The {@code FilterChainProxy} will not iterate through the remainder of the map entries to locate additional
  * {@code Filter}s.
  * <p>
+ * Once the bean has been initialized (via {@code afterPropertiesSet}), the chains are compiled into a
+ * {@link RequestMatcherIndex}, which indexes the {@link AntPathRequestMatcher}s of {@link DefaultSecurityFilterChain}s
+ * by the literal path segments at the start of their patterns. This means that only chains which could possibly match
+ * the request path are consulted, while still preserving the first-match semantics described above. Chains which use
+ * other matcher types (or other {@code SecurityFilterChain} implementations) are checked for every request, in their
+ * configured order.
+ * <p>
  * {@code FilterChainProxy} respects normal handling of {@code Filter}s that elect not to call {@link
  * javax.servlet.Filter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse,
  * javax.servlet.FilterChain)}, in that the remainder of the original or {@code FilterChainProxy}-declared filter
@@ -106,6 +119,15 @@ import java.util.*;
  * you use multiple instances in the same filter chain. It shouldn't be considered purely as a utility for wrapping
  * filter beans in a single {@code Filter} instance.
  *
+ * <h3>Filter Statistics</h3>
+ *
+ * If {@link #setFilterStatisticsEnabled(boolean) filter statistics} are enabled, the invocation count and latency
+ * distribution of each filter in each chain will be recorded in a {@link FilterStatistics} instance. The time recorded
+ * for a filter excludes the time spent in the remainder of the chain, so it is possible to see which filter is
+ * responsible for a latency increase. If an {@link #setMBeanServer(MBeanServer) MBeanServer} is set, the statistics
+ * will also be registered as MBeans under the domain {@code org.springframework.security}. Statistics are disabled by
+ * default, in which case there is no additional overhead.
+ *
  * <h2>Filter Lifecycle</h2>
  * <p>
  * Note the {@code Filter} lifecycle mismatch between the servlet container and IoC
@@ -129,10 +151,20 @@ public class FilterChainProxy extends GenericFilterBean {
 
     private List<SecurityFilterChain> filterChains;
 
+    private RequestMatcherIndex<SecurityFilterChain> filterChainIndex;
+
     private FilterChainValidator filterChainValidator = new NullFilterChainValidator();
 
     private HttpFirewall firewall = new DefaultHttpFirewall();
 
+    private boolean filterStatisticsEnabled;
+
+    private MBeanServer mbeanServer;
+
+    private Map<SecurityFilterChain, FilterStatistics[]> filterStatistics;
+
+    private final List<ObjectName> registeredMBeans = new ArrayList<ObjectName>();
+
     //~ Methods ========================================================================================================
 
     public FilterChainProxy() {
@@ -149,6 +181,28 @@ public class FilterChainProxy extends GenericFilterBean {
     @Override
     public void afterPropertiesSet() {
         filterChainValidator.validate(this);
+        filterChainIndex = createFilterChainIndex(filterChains);
+
+        if (filterStatisticsEnabled) {
+            filterStatistics = createFilterStatistics(filterChains);
+
+            if (mbeanServer != null) {
+                registerFilterStatistics();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (ObjectName name : registeredMBeans) {
+            try {
+                mbeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+                logger.warn("Failed to unregister MBean " + name, e);
+            }
+        }
+
+        registeredMBeans.clear();
     }
 
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
@@ -173,41 +227,112 @@ public class FilterChainProxy extends GenericFilterBean {
         FirewalledRequest fwRequest = firewall.getFirewalledRequest((HttpServletRequest) request);
         HttpServletResponse fwResponse = firewall.getFirewalledResponse((HttpServletResponse) response);
 
-        List<Filter> filters = getFilters(fwRequest);
+        // Share the path used for matching between all the RequestMatchers invoked while the request is secured
+        Object previousPath = RequestPath.install(fwRequest);
 
-        if (filters == null || filters.size() == 0) {
-            if (logger.isDebugEnabled()) {
-                logger.debug(UrlUtils.buildRequestUrl(fwRequest) +
-                        (filters == null ? " has no matching filters" : " has an empty filter list"));
-            }
+        try {
+            SecurityFilterChain filterChain = getFilterChain(fwRequest);
+            List<Filter> filters = filterChain == null ? null : filterChain.getFilters();
 
-            fwRequest.reset();
+            if (filters == null || filters.size() == 0) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(UrlUtils.buildRequestUrl(fwRequest) +
+                            (filters == null ? " has no matching filters" : " has an empty filter list"));
+                }
 
-            chain.doFilter(fwRequest, fwResponse);
+                fwRequest.reset();
 
-            return;
-        }
+                chain.doFilter(fwRequest, fwResponse);
+
+                return;
+            }
 
-        VirtualFilterChain vfc = new VirtualFilterChain(fwRequest, chain, filters);
-        vfc.doFilter(fwRequest, fwResponse);
+            Map<SecurityFilterChain, FilterStatistics[]> statistics = filterStatistics;
+            VirtualFilterChain vfc = new VirtualFilterChain(fwRequest, chain, filters,
+                    statistics == null ? null : statistics.get(filterChain));
+            vfc.doFilter(fwRequest, fwResponse);
+        } finally {
+            RequestPath.restore(fwRequest, previousPath);
+        }
     }
 
     /**
      * Returns the first filter chain matching the supplied URL.
      *
      * @param request the request to match
-     * @return an ordered array of Filters defining the filter chain
+     * @return the matching chain, or null if there is none
      */
-    private List<Filter> getFilters(HttpServletRequest request)  {
+    private SecurityFilterChain getFilterChain(HttpServletRequest request)  {
+        RequestMatcherIndex<SecurityFilterChain> index = filterChainIndex;
+
+        if (index != null) {
+            return index.getFirstMatch(request);
+        }
+
         for (SecurityFilterChain chain : filterChains) {
             if (chain.matches(request)) {
-                return chain.getFilters();
+                return chain;
             }
         }
 
         return null;
     }
 
+    private static RequestMatcherIndex<SecurityFilterChain> createFilterChainIndex(List<SecurityFilterChain> chains) {
+        RequestMatcherIndex<SecurityFilterChain> index = new RequestMatcherIndex<SecurityFilterChain>();
+
+        for (final SecurityFilterChain chain : chains) {
+            if (chain instanceof DefaultSecurityFilterChain) {
+                index.add(((DefaultSecurityFilterChain) chain).getRequestMatcher(), chain);
+            } else {
+                index.add(new RequestMatcher() {
+                    public boolean matches(HttpServletRequest request) {
+                        return chain.matches(request);
+                    }
+                }, chain);
+            }
+        }
+
+        return index;
+    }
+
+    private static Map<SecurityFilterChain, FilterStatistics[]> createFilterStatistics(
+            List<SecurityFilterChain> chains) {
+        Map<SecurityFilterChain, FilterStatistics[]> statistics =
+                new IdentityHashMap<SecurityFilterChain, FilterStatistics[]>();
+
+        for (SecurityFilterChain chain : chains) {
+            List<Filter> filters = chain.getFilters();
+            FilterStatistics[] chainStatistics = new FilterStatistics[filters.size()];
+
+            for (int i = 0; i < chainStatistics.length; i++) {
+                chainStatistics[i] = new FilterStatistics(chain, filters.get(i), i);
+            }
+
+            statistics.put(chain, chainStatistics);
+        }
+
+        return statistics;
+    }
+
+    private void registerFilterStatistics() {
+        String proxyName = ObjectName.quote(getFilterName() == null ? "filterChainProxy" : getFilterName());
+
+        for (int chain = 0; chain < filterChains.size(); chain++) {
+            for (FilterStatistics statistics : filterStatistics.get(filterChains.get(chain))) {
+                try {
+                    ObjectName name = new ObjectName("org.springframework.security:type=FilterStatistics,proxy="
+                            + proxyName + ",chain=" + chain + ",position=" + statistics.getPosition()
+                            + ",filter=" + ObjectName.quote(statistics.getFilterClass()));
+                    mbeanServer.registerMBean(statistics, name);
+                    registeredMBeans.add(name);
+                } catch (JMException e) {
+                    throw new IllegalStateException("Failed to register filter statistics MBean", e);
+                }
+            }
+        }
+    }
+
     /**
      * Convenience method, mainly for testing.
      *
@@ -215,7 +340,10 @@ public class FilterChainProxy extends GenericFilterBean {
      * @return matching filter list
      */
     public List<Filter> getFilters(String url) {
-        return getFilters(firewall.getFirewalledRequest((new FilterInvocation(url, null).getRequest())));
+        SecurityFilterChain chain =
+                getFilterChain(firewall.getFirewalledRequest((new FilterInvocation(url, null).getRequest())));
+
+        return chain == null ? null : chain.getFilters();
     }
 
     /**
@@ -238,6 +366,10 @@ public class FilterChainProxy extends GenericFilterBean {
         for (Map.Entry<RequestMatcher,List<Filter>> entry : filterChainMap.entrySet()) {
             filterChains.add(new DefaultSecurityFilterChain(entry.getKey(), entry.getValue()));
         }
+
+        if (filterChainIndex != null) {
+            filterChainIndex = createFilterChainIndex(filterChains);
+        }
     }
 
     /**
@@ -287,6 +419,42 @@ public class FilterChainProxy extends GenericFilterBean {
         this.firewall = firewall;
     }
 
+    /**
+     * Enables the recording of per-filter invocation counts and latencies. Takes effect when
+     * {@code afterPropertiesSet} is called. Disabled by default.
+     *
+     * @param filterStatisticsEnabled whether statistics should be recorded
+     */
+    public void setFilterStatisticsEnabled(boolean filterStatisticsEnabled) {
+        this.filterStatisticsEnabled = filterStatisticsEnabled;
+    }
+
+    /**
+     * Sets the {@code MBeanServer} with which the {@link FilterStatistics} will be registered, if they are enabled.
+     * They will be unregistered when the bean is destroyed.
+     *
+     * @param mbeanServer the server (for example, the platform MBeanServer)
+     */
+    public void setMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    /**
+     * @return the statistics for each filter in each chain (in chain order), or an empty list if statistics are not
+     * enabled
+     */
+    public List<FilterStatistics> getFilterStatistics() {
+        List<FilterStatistics> result = new ArrayList<FilterStatistics>();
+
+        if (filterStatistics != null) {
+            for (SecurityFilterChain chain : filterChains) {
+                result.addAll(Arrays.asList(filterStatistics.get(chain)));
+            }
+        }
+
+        return result;
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("FilterChainProxy[");
@@ -307,14 +475,19 @@ public class FilterChainProxy extends GenericFilterBean {
         private final FilterChain originalChain;
         private final List<Filter> additionalFilters;
         private final FirewalledRequest firewalledRequest;
+        private final FilterStatistics[] statistics;
         private final int size;
         private int currentPosition = 0;
+        /** Time spent further down the chain by the currently executing filter, when recording statistics */
+        private long downstreamNanos;
 
-        private VirtualFilterChain(FirewalledRequest firewalledRequest, FilterChain chain, List<Filter> additionalFilters) {
+        private VirtualFilterChain(FirewalledRequest firewalledRequest, FilterChain chain, List<Filter> additionalFilters,
+                FilterStatistics[] statistics) {
             this.originalChain = chain;
             this.additionalFilters = additionalFilters;
             this.size = additionalFilters.size();
             this.firewalledRequest = firewalledRequest;
+            this.statistics = statistics;
         }
 
         public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
@@ -327,7 +500,16 @@ public class FilterChainProxy extends GenericFilterBean {
                 // Deactivate path stripping as we exit the security filter chain
                 this.firewalledRequest.reset();
 
-                originalChain.doFilter(request, response);
+                if (statistics == null) {
+                    originalChain.doFilter(request, response);
+                } else {
+                    long start = System.nanoTime();
+                    try {
+                        originalChain.doFilter(request, response);
+                    } finally {
+                        downstreamNanos += System.nanoTime() - start;
+                    }
+                }
             } else {
                 currentPosition++;
 
@@ -339,7 +521,30 @@ public class FilterChainProxy extends GenericFilterBean {
                         + nextFilter.getClass().getSimpleName() + "'");
                 }
 
-                nextFilter.doFilter(request, response, this);
+                if (statistics == null) {
+                    nextFilter.doFilter(request, response, this);
+                } else {
+                    doFilterAndRecord(nextFilter, statistics[currentPosition - 1], request, response);
+                }
+            }
+        }
+
+        /**
+         * Invokes the filter, recording the time spent in the filter itself (the total time, minus the time spent in
+         * the rest of the chain).
+         */
+        private void doFilterAndRecord(Filter filter, FilterStatistics filterStatistics, ServletRequest request,
+                ServletResponse response) throws IOException, ServletException {
+            long outerDownstreamNanos = downstreamNanos;
+            downstreamNanos = 0;
+            long start = System.nanoTime();
+
+            try {
+                filter.doFilter(request, response, this);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                filterStatistics.record(elapsed - downstreamNanos);
+                downstreamNanos = outerDownstreamNanos + elapsed;
             }
         }
     }
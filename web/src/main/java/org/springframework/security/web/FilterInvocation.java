@@ -203,6 +203,13 @@ class DummyRequest extends HttpServletRequestWrapper {
     public void setQueryString(String queryString) {
         this.queryString = queryString;
     }
+
+    /**
+     * A dummy request has no attributes, but they may be looked up by request matchers.
+     */
+    public Object getAttribute(String name) {
+        return null;
+    }
 }
 
 final class UnsupportedOperationExceptionInvocationHandler implements InvocationHandler {
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Filter;
+
+/**
+ * Invocation count and latency distribution for a single filter within a {@link SecurityFilterChain}, recorded
+ * by {@link FilterChainProxy} when statistics are enabled. Recording is lock-free.
+ *
+ * @since 3.2
+ * @see FilterChainProxy#setFilterStatisticsEnabled(boolean)
+ */
+public final class FilterStatistics implements FilterStatisticsMBean {
+    private final String filterChain;
+    private final String filterClass;
+    private final int position;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    FilterStatistics(SecurityFilterChain chain, Filter filter, int position) {
+        this.filterChain = chain.toString();
+        this.filterClass = filter.getClass().getName();
+        this.position = position;
+    }
+
+    void record(long nanos) {
+        histogram.record(nanos);
+    }
+
+    public String getFilterChain() {
+        return filterChain;
+    }
+
+    public String getFilterClass() {
+        return filterClass;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public long getInvocationCount() {
+        return histogram.getCount();
+    }
+
+    public long getTotalTimeMicros() {
+        return toMicros(histogram.getTotal());
+    }
+
+    public long getMeanTimeMicros() {
+        long count = histogram.getCount();
+
+        return count == 0 ? 0 : toMicros(histogram.getTotal() / count);
+    }
+
+    public long getMaxTimeMicros() {
+        return toMicros(histogram.getMax());
+    }
+
+    public long getMedianTimeMicros() {
+        return toMicros(histogram.getValueAtPercentile(50));
+    }
+
+    public long get90thPercentileTimeMicros() {
+        return toMicros(histogram.getValueAtPercentile(90));
+    }
+
+    public long get99thPercentileTimeMicros() {
+        return toMicros(histogram.getValueAtPercentile(99));
+    }
+
+    public long get999thPercentileTimeMicros() {
+        return toMicros(histogram.getValueAtPercentile(99.9));
+    }
+
+    public void reset() {
+        histogram.reset();
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return "FilterStatistics[" + filterClass + " at position " + position + ", invocations="
+                + getInvocationCount() + ", mean=" + getMeanTimeMicros() + "us, max=" + getMaxTimeMicros() + "us]";
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web;
+
+/**
+ * Management interface for the {@link FilterStatistics} recorded by a {@link FilterChainProxy}.
+ * <p>
+ * Times are reported in microseconds and are exclusive of the time spent in the rest of the filter chain (the
+ * downstream security filters and the application itself).
+ *
+ * @since 3.2
+ */
+public interface FilterStatisticsMBean {
+
+    /**
+     * @return a description of the {@code SecurityFilterChain} which the filter belongs to
+     */
+    String getFilterChain();
+
+    /**
+     * @return the class name of the filter
+     */
+    String getFilterClass();
+
+    /**
+     * @return the (zero-based) position of the filter in its chain
+     */
+    int getPosition();
+
+    long getInvocationCount();
+
+    long getTotalTimeMicros();
+
+    long getMeanTimeMicros();
+
+    long getMaxTimeMicros();
+
+    long getMedianTimeMicros();
+
+    long get90thPercentileTimeMicros();
+
+    long get99thPercentileTimeMicros();
+
+    long get999thPercentileTimeMicros();
+
+    /**
+     * Clears the recorded data.
+     */
+    void reset();
+}
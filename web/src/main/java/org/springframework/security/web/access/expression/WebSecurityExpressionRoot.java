@@ -4,6 +4,7 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.security.access.expression.SecurityExpressionRoot;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.util.ConcurrentLruCache;
 import org.springframework.security.web.FilterInvocation;
 import org.springframework.security.web.util.IpAddressMatcher;
 
@@ -13,6 +14,13 @@ import org.springframework.security.web.util.IpAddressMatcher;
  * @since 3.0
  */
 public class WebSecurityExpressionRoot extends SecurityExpressionRoot {
+    /**
+     * The compiled matchers for the addresses used in {@code hasIpAddress} expressions, which are normally literals,
+     * so that they aren't parsed for every request.
+     */
+    private static final ConcurrentLruCache<String, IpAddressMatcher> ipAddressMatchers =
+            new ConcurrentLruCache<String, IpAddressMatcher>(256);
+
     //private FilterInvocation filterInvocation;
     /** Allows direct access to the request object */
     public final HttpServletRequest request;
@@ -30,7 +38,14 @@ public class WebSecurityExpressionRoot extends SecurityExpressionRoot {
      * @return true if the IP address of the current request is in the required range.
      */
     public boolean hasIpAddress(String ipAddress) {
-        return (new IpAddressMatcher(ipAddress).matches(request));
+        IpAddressMatcher matcher = ipAddressMatchers.get(ipAddress);
+
+        if (matcher == null) {
+            matcher = new IpAddressMatcher(ipAddress);
+            ipAddressMatchers.put(ipAddress, matcher);
+        }
+
+        return matcher.matches(request);
     }
 
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.access.intercept;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.util.ConcurrentLruCache;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.util.RequestPath;
+import org.springframework.util.Assert;
+
+/**
+ * Decorates a {@link DefaultFilterInvocationSecurityMetadataSource} (or an
+ * {@link org.springframework.security.web.access.expression.ExpressionBasedFilterInvocationSecurityMetadataSource
+ * ExpressionBasedFilterInvocationSecurityMetadataSource}), caching the attributes returned for each combination of
+ * HTTP method and request path ({@code servletPath + pathInfo}) in a bounded LRU cache.
+ * <p>
+ * This is useful for applications with a large number of rules but a relatively small set of distinct URLs making up
+ * most of the traffic. A result is only cached if it could not have been affected by any other request state. That is
+ * the case when the matching rule, and all the rules which precede it, use {@code AntPathRequestMatcher} or
+ * {@code AnyRequestMatcher}. Lookups which involve other matchers (which may use the query string, headers, the remote
+ * address or an EL expression, for example) are always passed through to the delegate and are counted separately.
+ * <p>
+ * The hit, miss and uncacheable counts can be used to monitor the effectiveness of the cache.
+ *
+ * @since 3.2
+ */
+public final class CachingFilterInvocationSecurityMetadataSource implements FilterInvocationSecurityMetadataSource {
+    private static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+    /** Stands in for a null result in the cache */
+    private static final Integer NO_MATCH = Integer.valueOf(-1);
+
+    private final DefaultFilterInvocationSecurityMetadataSource delegate;
+    private final ConcurrentLruCache<RequestKey, Integer> cache;
+    private final AtomicLong uncacheable = new AtomicLong();
+
+    /**
+     * Creates an instance which will cache up to 4096 entries.
+     *
+     * @param delegate the metadata source to which lookups are delegated
+     */
+    public CachingFilterInvocationSecurityMetadataSource(DefaultFilterInvocationSecurityMetadataSource delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param delegate the metadata source to which lookups are delegated
+     * @param maximumSize the maximum number of method and path combinations to cache
+     */
+    public CachingFilterInvocationSecurityMetadataSource(DefaultFilterInvocationSecurityMetadataSource delegate,
+            int maximumSize) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        this.delegate = delegate;
+        this.cache = new ConcurrentLruCache<RequestKey, Integer>(maximumSize);
+    }
+
+    public Collection<ConfigAttribute> getAttributes(Object object) {
+        final HttpServletRequest request = ((FilterInvocation) object).getRequest();
+        String path = RequestPath.get(request).getPath();
+
+        if (path == null) {
+            return delegate.getAttributes(object);
+        }
+
+        RequestKey key = new RequestKey(path, request.getMethod());
+        Integer entry = cache.get(key);
+
+        if (entry == null) {
+            int match = delegate.getMatchingEntry(request);
+
+            if (!delegate.isCacheable(match)) {
+                uncacheable.incrementAndGet();
+                return delegate.getAttributes(match);
+            }
+
+            entry = match < 0 ? NO_MATCH : Integer.valueOf(match);
+            cache.put(key, entry);
+        }
+
+        return delegate.getAttributes(entry.intValue());
+    }
+
+    public Collection<ConfigAttribute> getAllConfigAttributes() {
+        return delegate.getAllConfigAttributes();
+    }
+
+    public boolean supports(Class<?> clazz) {
+        return delegate.supports(clazz);
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of lookups which were answered from the cache
+     */
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups which were not found in the cache (including uncacheable ones)
+     */
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * @return the number of lookups whose result could not be cached, because it depended on a matcher which uses
+     * more than the request path and method
+     */
+    public long getUncacheableCount() {
+        return uncacheable.get();
+    }
+
+    /**
+     * @return the number of entries currently in the cache
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+}
@@ -28,6 +28,7 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.security.access.ConfigAttribute;
 import org.springframework.security.web.FilterInvocation;
 import org.springframework.security.web.util.RequestMatcher;
+import org.springframework.security.web.util.RequestMatcherIndex;
 
 
 /**
@@ -40,6 +41,12 @@ import org.springframework.security.web.util.RequestMatcher;
  * request will be used. Later matchers in the map will not be invoked if a match has already been found.
  * Accordingly, the most specific matchers should be registered first, with the most general matches registered last.
  * <p>
+ * The map is compiled into a {@link RequestMatcherIndex} on construction, so that only those matchers which could
+ * possibly match the request path (and method) are invoked. This makes the lookup cost largely independent of the
+ * number of entries when they are mostly ant patterns. Other matcher types (regular expressions, EL) are still
+ * invoked in their configured order for every request. In all cases, the result is the same as that obtained by
+ * iterating through the map.
+ * <p>
  * The most common method creating an instance is using the Spring Security namespace. For example, the {@code pattern}
  * and {@code access} attributes of the {@code &lt;intercept-url&gt;} elements defined as children of the
  * {@code &lt;http&gt;} element are combined to build the instance used by the {@code FilterSecurityInterceptor}.
@@ -53,6 +60,8 @@ public class DefaultFilterInvocationSecurityMetadataSource implements FilterInvo
 
     private final Map<RequestMatcher, Collection<ConfigAttribute>> requestMap;
 
+    private final RequestMatcherIndex<Collection<ConfigAttribute>> requestIndex;
+
     //~ Constructors ===================================================================================================
 
     /**
@@ -66,6 +75,11 @@ public class DefaultFilterInvocationSecurityMetadataSource implements FilterInvo
             LinkedHashMap<RequestMatcher, Collection<ConfigAttribute>> requestMap) {
 
         this.requestMap = requestMap;
+        this.requestIndex = new RequestMatcherIndex<Collection<ConfigAttribute>>();
+
+        for (Map.Entry<RequestMatcher, Collection<ConfigAttribute>> entry : requestMap.entrySet()) {
+            requestIndex.add(entry.getKey(), entry.getValue());
+        }
     }
 
     //~ Methods ========================================================================================================
@@ -82,12 +96,27 @@ public class DefaultFilterInvocationSecurityMetadataSource implements FilterInvo
 
     public Collection<ConfigAttribute> getAttributes(Object object) {
         final HttpServletRequest request = ((FilterInvocation) object).getRequest();
-        for (Map.Entry<RequestMatcher, Collection<ConfigAttribute>> entry : requestMap.entrySet()) {
-            if (entry.getKey().matches(request)) {
-                return entry.getValue();
-            }
-        }
-        return null;
+
+        return requestIndex.getFirstMatch(request);
+    }
+
+    /**
+     * Used by {@link CachingFilterInvocationSecurityMetadataSource}. Returns the position of the first matching entry
+     * for the request, or -1 if there is none.
+     */
+    int getMatchingEntry(HttpServletRequest request) {
+        return requestIndex.getFirstMatchIndex(request);
+    }
+
+    Collection<ConfigAttribute> getAttributes(int entry) {
+        return entry < 0 ? null : requestIndex.getValue(entry);
+    }
+
+    /**
+     * Whether the match result for an entry position depends only on the request path and method.
+     */
+    boolean isCacheable(int entry) {
+        return requestIndex.isCacheable(entry);
     }
 
     public boolean supports(Class<?> clazz) {
@@ -31,8 +31,10 @@ import org.springframework.security.authentication.AuthenticationDetailsSource;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.memory.UserAttribute;
+import org.springframework.security.web.context.DeferredLoadingSecurityContext;
 import org.springframework.util.Assert;
 import org.springframework.web.filter.GenericFilterBean;
 
@@ -40,6 +42,17 @@ import org.springframework.web.filter.GenericFilterBean;
 /**
  * Detects if there is no {@code Authentication} object in the {@code SecurityContextHolder}, and
  * populates it with one if needed.
+ * <p>
+ * By default, a new {@code AnonymousAuthenticationToken} is created for each request, with its details built
+ * immediately using the configured {@code AuthenticationDetailsSource}. If {@link #setLazyDetails(boolean) lazyDetails}
+ * is enabled, each token is instead created from a single prototype, sharing its principal and (immutable)
+ * authorities, and the details are only built if something actually calls {@code getDetails()} on it. This reduces
+ * the cost of anonymous requests, which often make up a large proportion of traffic, to the allocation of a single
+ * small object. The tokens are still {@code AnonymousAuthenticationToken}s, so they are treated in the same way by
+ * {@code AuthenticationTrustResolverImpl} and {@code AnonymousAuthenticationProvider}.
+ * <p>
+ * If the context is a {@link DeferredLoadingSecurityContext} which hasn't been loaded yet, the token is set as its
+ * default authentication instead, so that checking for an existing one doesn't load it.
  *
  * @author Ben Alex
  * @author Luke Taylor
@@ -53,6 +66,8 @@ public class AnonymousAuthenticationFilter extends GenericFilterBean  implements
     private String key;
     private Object principal;
     private List<GrantedAuthority> authorities;
+    private boolean lazyDetails;
+    private AnonymousAuthenticationToken prototype;
 
     /**
      * @deprecated Use constructor injection version
@@ -94,9 +109,23 @@ public class AnonymousAuthenticationFilter extends GenericFilterBean  implements
     public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
             throws IOException, ServletException {
 
+        Authentication anonymous = null;
+
         if (applyAnonymousForThisRequest((HttpServletRequest) req)) {
-            if (SecurityContextHolder.getContext().getAuthentication() == null) {
-                SecurityContextHolder.getContext().setAuthentication(createAuthentication((HttpServletRequest) req));
+            SecurityContext context = SecurityContextHolder.getContext();
+
+            if (context instanceof DeferredLoadingSecurityContext
+                    && !((DeferredLoadingSecurityContext) context).isLoaded()) {
+                // Checking for an existing authentication would load the context
+                anonymous = createAuthentication((HttpServletRequest) req);
+                ((DeferredLoadingSecurityContext) context).setDefaultAuthentication(anonymous);
+
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Set anonymous token as the default for the SecurityContext which has not been loaded");
+                }
+            } else if (context.getAuthentication() == null) {
+                anonymous = createAuthentication((HttpServletRequest) req);
+                SecurityContextHolder.getContext().setAuthentication(anonymous);
 
                 if (logger.isDebugEnabled()) {
                     logger.debug("Populated SecurityContextHolder with anonymous token: '"
@@ -110,7 +139,13 @@ public class AnonymousAuthenticationFilter extends GenericFilterBean  implements
             }
         }
 
-        chain.doFilter(req, res);
+        try {
+            chain.doFilter(req, res);
+        } finally {
+            if (anonymous instanceof LazyDetailsAnonymousAuthenticationToken) {
+                ((LazyDetailsAnonymousAuthenticationToken) anonymous).releaseRequest();
+            }
+        }
     }
 
     /**
@@ -131,12 +166,42 @@ public class AnonymousAuthenticationFilter extends GenericFilterBean  implements
     }
 
     protected Authentication createAuthentication(HttpServletRequest request) {
+        if (lazyDetails) {
+            return new LazyDetailsAnonymousAuthenticationToken(getPrototype(), authenticationDetailsSource, request);
+        }
+
         AnonymousAuthenticationToken auth = new AnonymousAuthenticationToken(key, principal, authorities);
         auth.setDetails(authenticationDetailsSource.buildDetails(request));
 
         return auth;
     }
 
+    private AnonymousAuthenticationToken getPrototype() {
+        AnonymousAuthenticationToken result = prototype;
+
+        if (result == null) {
+            result = new AnonymousAuthenticationToken(key, principal, authorities);
+            prototype = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * If set to {@code true}, tokens will be created from a shared prototype and their details will only be built
+     * from the request when they are first requested. Defaults to {@code false}.
+     * <p>
+     * The request is only referenced until this filter's chain returns, since the container may recycle it
+     * afterwards. Details which haven't been requested by then (for example, if the token is only read by
+     * asynchronous processing) remain {@code null}.
+     *
+     * @param lazyDetails whether the token details should be built lazily
+     * @since 3.2
+     */
+    public void setLazyDetails(boolean lazyDetails) {
+        this.lazyDetails = lazyDetails;
+    }
+
     public void setAuthenticationDetailsSource(AuthenticationDetailsSource<HttpServletRequest, ?> authenticationDetailsSource) {
         Assert.notNull(authenticationDetailsSource, "AuthenticationDetailsSource required");
         this.authenticationDetailsSource = authenticationDetailsSource;
@@ -157,6 +222,7 @@ public class AnonymousAuthenticationFilter extends GenericFilterBean  implements
     @Deprecated
     public void setKey(String key) {
         this.key = key;
+        this.prototype = null;
     }
 
     /**
@@ -167,5 +233,69 @@ public class AnonymousAuthenticationFilter extends GenericFilterBean  implements
     public void setUserAttribute(UserAttribute userAttributeDefinition) {
         this.principal = userAttributeDefinition.getPassword();
         this.authorities = userAttributeDefinition.getAuthorities();
+        this.prototype = null;
+    }
+
+    /**
+     * An anonymous token which builds its details from the request on first use, as long as the request is still
+     * being processed.
+     */
+    private static final class LazyDetailsAnonymousAuthenticationToken extends AnonymousAuthenticationToken {
+        private static final long serialVersionUID = 1L;
+
+        private transient AuthenticationDetailsSource<HttpServletRequest, ?> detailsSource;
+        private transient HttpServletRequest request;
+
+        LazyDetailsAnonymousAuthenticationToken(AnonymousAuthenticationToken prototype,
+                AuthenticationDetailsSource<HttpServletRequest, ?> detailsSource, HttpServletRequest request) {
+            super(prototype);
+            this.detailsSource = detailsSource;
+            this.request = request;
+        }
+
+        @Override
+        public synchronized Object getDetails() {
+            if (request != null) {
+                super.setDetails(detailsSource.buildDetails(request));
+                releaseRequest();
+            }
+
+            return super.getDetails();
+        }
+
+        @Override
+        public synchronized void setDetails(Object details) {
+            releaseRequest();
+            super.setDetails(details);
+        }
+
+        /**
+         * Drops the reference to the request once it has been processed, leaving the details unset if they haven't
+         * been built.
+         */
+        synchronized void releaseRequest() {
+            request = null;
+            detailsSource = null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            getDetails();
+            return super.equals(obj);
+        }
+
+        @Override
+        public int hashCode() {
+            getDetails();
+            return super.hashCode();
+        }
+
+        /**
+         * Builds the details (if necessary) before the token is serialized, since the request is not retained.
+         */
+        private Object writeReplace() {
+            getDetails();
+            return this;
+        }
     }
 }
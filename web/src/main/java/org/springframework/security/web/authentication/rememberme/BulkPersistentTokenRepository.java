@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.rememberme;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * A {@link PersistentTokenRepository} which can update and remove many tokens in a single operation. Used by
+ * {@link CachingPersistentTokenRepository}.
+ *
+ * @since 3.2
+ */
+public interface BulkPersistentTokenRepository extends PersistentTokenRepository {
+
+    /**
+     * Updates the token value and last used date of each of the tokens, which are identified by their series.
+     *
+     * @param tokens the tokens to update
+     */
+    void updateTokens(Collection<PersistentRememberMeToken> tokens);
+
+    /**
+     * Removes the tokens which were last used before the supplied date.
+     *
+     * @param date the earliest last used date of the tokens which should be kept
+     * @return the number of tokens which were removed
+     */
+    int removeTokensLastUsedBefore(Date date);
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.rememberme;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.util.ConcurrentLruCache;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link PersistentTokenRepository} which reduces the load that {@link PersistentTokenBasedRememberMeServices}
+ * places on another repository, typically a {@link JdbcTokenRepositoryImpl}.
+ * <p>
+ * Tokens are held in a bounded local cache for up to {@link #setCacheTtlSeconds(int) cacheTtl}, so that
+ * {@link #getTokenForSeries(String)} usually doesn't need to query the delegate. Calls to
+ * {@link #updateToken(String, String, Date)} update the cache immediately, but are only passed on to the delegate
+ * every {@link #setFlushIntervalSeconds(int) flushInterval}, as a single batch if the delegate is a
+ * {@link BulkPersistentTokenRepository}. New tokens and removals are passed on immediately, and removing the tokens
+ * of a user also invalidates any which are cached.
+ * <p>
+ * If the delegate is a {@code BulkPersistentTokenRepository}, tokens which haven't been used for longer than the
+ * {@link #setTokenValiditySeconds(int) tokenValiditySeconds} are also periodically removed, so that the tokens of
+ * users who never log in again don't accumulate.
+ * <p>
+ * Since {@code PersistentTokenBasedRememberMeServices} treats an out of date token as evidence of cookie theft,
+ * the delegate must not be updated by anything else while a token may be cached or waiting to be written. In
+ * particular, if the repository is shared by several servers, a user's requests should be routed to the same server
+ * for at least the cache TTL, and tokens which are waiting to be written when a server fails are lost, causing the
+ * affected users to be logged out. The background thread is started by {@link #afterPropertiesSet()} and stopped by
+ * {@link #destroy()}, which also writes any remaining updates.
+ *
+ * @since 3.2
+ */
+public class CachingPersistentTokenRepository implements PersistentTokenRepository, InitializingBean,
+        DisposableBean {
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final PersistentTokenRepository delegate;
+    private ConcurrentLruCache<String, CachedToken> cache = new ConcurrentLruCache<String, CachedToken>(10000);
+    /** <username:String,Long> the times at which the tokens of users were removed */
+    private final ConcurrentMap<String, Long> removals = new ConcurrentHashMap<String, Long>();
+
+    private final Object pendingLock = new Object();
+    /** <series:String,PersistentRememberMeToken>, guarded by pendingLock */
+    private Map<String, PersistentRememberMeToken> pending = new HashMap<String, PersistentRememberMeToken>();
+    private final Object flushLock = new Object();
+
+    private long cacheTtl = 60000;
+    private int flushIntervalSeconds = 5;
+    private int tokenValiditySeconds = AbstractRememberMeServices.TWO_WEEKS_S;
+    private int purgeIntervalSeconds = 3600;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param delegate the repository in which the tokens are stored
+     */
+    public CachingPersistentTokenRepository(PersistentTokenRepository delegate) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        this.delegate = delegate;
+    }
+
+    public void afterPropertiesSet() {
+        if (executor != null) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CachingPersistentTokenRepository flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to update tokens", e);
+                }
+            }
+        }, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+
+        if (delegate instanceof BulkPersistentTokenRepository) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        removeExpiredTokens();
+                    } catch (RuntimeException e) {
+                        logger.error("Failed to remove expired tokens", e);
+                    }
+                }
+            }, purgeIntervalSeconds, purgeIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+
+        flush();
+    }
+
+    public void createNewToken(PersistentRememberMeToken token) {
+        long time = System.currentTimeMillis();
+        delegate.createNewToken(token);
+        cache(token, time);
+    }
+
+    public void updateToken(String series, String tokenValue, Date lastUsed) {
+        long time = System.currentTimeMillis();
+        PersistentRememberMeToken current = getTokenForSeries(series);
+
+        if (current == null) {
+            // Username unknown, so it can't be cached
+            delegate.updateToken(series, tokenValue, lastUsed);
+            return;
+        }
+
+        PersistentRememberMeToken token = new PersistentRememberMeToken(current.getUsername(), series, tokenValue,
+                lastUsed);
+
+        synchronized (pendingLock) {
+            pending.put(series, token);
+        }
+
+        cache(token, time);
+    }
+
+    public PersistentRememberMeToken getTokenForSeries(String seriesId) {
+        CachedToken cached = cache.get(seriesId);
+
+        if (cached != null && isValid(cached)) {
+            return cached.token;
+        }
+
+        // Taken before loading, so that the token is invalid if it is removed in the meantime
+        long time = System.currentTimeMillis();
+        PersistentRememberMeToken token;
+
+        synchronized (pendingLock) {
+            token = pending.get(seriesId);
+        }
+
+        if (token == null) {
+            token = delegate.getTokenForSeries(seriesId);
+        }
+
+        if (token != null) {
+            cache(token, time);
+        }
+
+        return token;
+    }
+
+    public void removeUserTokens(String username) {
+        removals.put(username, Long.valueOf(System.currentTimeMillis()));
+
+        synchronized (pendingLock) {
+            Iterator<PersistentRememberMeToken> tokens = pending.values().iterator();
+
+            while (tokens.hasNext()) {
+                if (tokens.next().getUsername().equals(username)) {
+                    tokens.remove();
+                }
+            }
+        }
+
+        delegate.removeUserTokens(username);
+    }
+
+    /**
+     * Passes the pending updates on to the delegate. This is invoked periodically once the bean has been initialized,
+     * but may also be called directly.
+     *
+     * @return the number of tokens which were updated
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            pruneRemovals();
+
+            Map<String, PersistentRememberMeToken> tokens;
+
+            synchronized (pendingLock) {
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                tokens = pending;
+                pending = new HashMap<String, PersistentRememberMeToken>();
+            }
+
+            try {
+                if (delegate instanceof BulkPersistentTokenRepository) {
+                    ((BulkPersistentTokenRepository) delegate).updateTokens(tokens.values());
+                } else {
+                    for (PersistentRememberMeToken token : tokens.values()) {
+                        delegate.updateToken(token.getSeries(), token.getTokenValue(), token.getDate());
+                    }
+                }
+            } catch (RuntimeException e) {
+                requeue(tokens);
+                throw e;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Updated " + tokens.size() + " persistent login tokens");
+            }
+
+            return tokens.size();
+        }
+    }
+
+    /**
+     * Removes the tokens which haven't been used for longer than the {@code tokenValiditySeconds}, if the delegate is
+     * a {@link BulkPersistentTokenRepository}. This is invoked periodically once the bean has been initialized, but
+     * may also be called directly.
+     *
+     * @return the number of tokens which were removed
+     */
+    public int removeExpiredTokens() {
+        if (!(delegate instanceof BulkPersistentTokenRepository)) {
+            return 0;
+        }
+
+        // Otherwise a token which has just been used could be removed
+        flush();
+
+        Date cutoff = new Date(System.currentTimeMillis() - tokenValiditySeconds * 1000L);
+        int removed = ((BulkPersistentTokenRepository) delegate).removeTokensLastUsedBefore(cutoff);
+
+        if (removed > 0 && logger.isDebugEnabled()) {
+            logger.debug("Removed " + removed + " expired persistent login tokens");
+        }
+
+        return removed;
+    }
+
+    private void requeue(Map<String, PersistentRememberMeToken> tokens) {
+        synchronized (pendingLock) {
+            for (PersistentRememberMeToken token : tokens.values()) {
+                Long removed = removals.get(token.getUsername());
+
+                if (!pending.containsKey(token.getSeries())
+                        && (removed == null || removed.longValue() < token.getDate().getTime())) {
+                    pending.put(token.getSeries(), token);
+                }
+            }
+        }
+    }
+
+    private void cache(PersistentRememberMeToken token, long time) {
+        cache.put(token.getSeries(), new CachedToken(token, time));
+    }
+
+    private boolean isValid(CachedToken cached) {
+        if (System.currentTimeMillis() - cached.cachedTime >= cacheTtl) {
+            return false;
+        }
+
+        Long removed = removals.get(cached.token.getUsername());
+
+        return removed == null || removed.longValue() < cached.cachedTime;
+    }
+
+    /**
+     * Discards the removal times which are older than any cached token.
+     */
+    private void pruneRemovals() {
+        long cutoff = System.currentTimeMillis() - cacheTtl;
+
+        for (Map.Entry<String, Long> removal : removals.entrySet()) {
+            if (removal.getValue().longValue() < cutoff) {
+                removals.remove(removal.getKey(), removal.getValue());
+            }
+        }
+    }
+
+    /**
+     * Sets how long tokens are cached. Defaults to 60.
+     *
+     * @param cacheTtlSeconds the time in seconds
+     */
+    public void setCacheTtlSeconds(int cacheTtlSeconds) {
+        Assert.isTrue(cacheTtlSeconds >= 0, "cacheTtlSeconds cannot be negative");
+        this.cacheTtl = cacheTtlSeconds * 1000L;
+    }
+
+    /**
+     * Sets the maximum number of cached tokens. Defaults to 10000.
+     *
+     * @param cacheSize the maximum number of tokens
+     */
+    public void setCacheSize(int cacheSize) {
+        Assert.isTrue(cacheSize > 0, "cacheSize must be positive");
+        this.cache = new ConcurrentLruCache<String, CachedToken>(cacheSize);
+    }
+
+    /**
+     * Sets how often updated tokens are passed on to the delegate. Defaults to 5.
+     *
+     * @param flushIntervalSeconds the interval in seconds
+     */
+    public void setFlushIntervalSeconds(int flushIntervalSeconds) {
+        Assert.isTrue(flushIntervalSeconds > 0, "flushIntervalSeconds must be positive");
+        this.flushIntervalSeconds = flushIntervalSeconds;
+    }
+
+    /**
+     * Sets the age after which unused tokens are removed. This should be the same as the
+     * <tt>tokenValiditySeconds</tt> of the {@code PersistentTokenBasedRememberMeServices}, and defaults to two weeks.
+     *
+     * @param tokenValiditySeconds the age in seconds
+     */
+    public void setTokenValiditySeconds(int tokenValiditySeconds) {
+        Assert.isTrue(tokenValiditySeconds > 0, "tokenValiditySeconds must be positive");
+        this.tokenValiditySeconds = tokenValiditySeconds;
+    }
+
+    /**
+     * Sets how often expired tokens are removed. Defaults to 3600.
+     *
+     * @param purgeIntervalSeconds the interval in seconds
+     */
+    public void setPurgeIntervalSeconds(int purgeIntervalSeconds) {
+        Assert.isTrue(purgeIntervalSeconds > 0, "purgeIntervalSeconds must be positive");
+        this.purgeIntervalSeconds = purgeIntervalSeconds;
+    }
+
+    private static final class CachedToken {
+        private final PersistentRememberMeToken token;
+        private final long cachedTime;
+
+        CachedToken(PersistentRememberMeToken token, long cachedTime) {
+            this.token = token;
+            this.cachedTime = cachedTime;
+        }
+    }
+}
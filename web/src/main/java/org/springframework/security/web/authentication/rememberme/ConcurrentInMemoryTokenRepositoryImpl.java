@@ -0,0 +1,249 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.rememberme;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.util.Assert;
+
+/**
+ * A <tt>PersistentTokenRepository</tt> which holds the tokens in memory, and which is suitable for a large number of
+ * tokens accessed concurrently, unlike {@link InMemoryTokenRepositoryImpl}.
+ * <p>
+ * Tokens are held in a concurrent map keyed by series, with an index of the series belonging to each user, so no
+ * operation requires a lock on the whole repository and {@link #removeUserTokens(String)} only examines the user's
+ * own tokens. Reading and updating tokens doesn't require any lock, and changes to the index only lock the set of
+ * series of the user concerned.
+ * <p>
+ * Tokens which haven't been used for longer than the {@link #setTokenValiditySeconds(int) tokenValiditySeconds} are
+ * treated as missing when they are read, and are removed periodically by a background thread, which is started by
+ * {@link #afterPropertiesSet()} and stopped by {@link #destroy()}. The validity should be the same as that used by the
+ * {@link PersistentTokenBasedRememberMeServices}.
+ *
+ * @since 3.2
+ */
+public class ConcurrentInMemoryTokenRepositoryImpl implements BulkPersistentTokenRepository, InitializingBean,
+        DisposableBean {
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final ConcurrentMap<String, PersistentRememberMeToken> seriesTokens;
+    /** <username:String,Set<series:String>>, each set being guarded by its own lock */
+    private final ConcurrentMap<String, Set<String>> userSeries;
+
+    private long tokenValidity = AbstractRememberMeServices.TWO_WEEKS_S * 1000L;
+    private int purgeIntervalSeconds = 3600;
+    private ScheduledExecutorService purger;
+
+    public ConcurrentInMemoryTokenRepositoryImpl() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize the number of tokens which the repository is expected to hold, used to size it initially
+     */
+    public ConcurrentInMemoryTokenRepositoryImpl(int expectedSize) {
+        Assert.isTrue(expectedSize > 0, "expectedSize must be positive");
+        seriesTokens = new ConcurrentHashMap<String, PersistentRememberMeToken>(expectedSize, 0.75f, 64);
+        userSeries = new ConcurrentHashMap<String, Set<String>>(expectedSize, 0.75f, 64);
+    }
+
+    public void afterPropertiesSet() {
+        if (purger != null) {
+            return;
+        }
+
+        purger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ConcurrentInMemoryTokenRepositoryImpl purger");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        purger.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    removeExpiredTokens();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to remove expired tokens", e);
+                }
+            }
+        }, purgeIntervalSeconds, purgeIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void destroy() {
+        if (purger != null) {
+            purger.shutdownNow();
+            purger = null;
+        }
+    }
+
+    public void createNewToken(PersistentRememberMeToken token) {
+        if (seriesTokens.putIfAbsent(token.getSeries(), token) != null) {
+            throw new DataIntegrityViolationException("Series Id '"+ token.getSeries() +"' already exists!");
+        }
+
+        while (true) {
+            Set<String> series = userSeries.get(token.getUsername());
+
+            if (series == null) {
+                series = new HashSet<String>(4);
+                Set<String> existing = userSeries.putIfAbsent(token.getUsername(), series);
+                if (existing != null) {
+                    series = existing;
+                }
+            }
+
+            synchronized (series) {
+                // Retried if the user's tokens were removed concurrently, so that the new token is still indexed
+                if (userSeries.get(token.getUsername()) == series) {
+                    series.add(token.getSeries());
+                    return;
+                }
+            }
+        }
+    }
+
+    public void updateToken(String series, String tokenValue, Date lastUsed) {
+        PersistentRememberMeToken token;
+        PersistentRememberMeToken newToken;
+
+        do {
+            token = seriesTokens.get(series);
+
+            if (token == null) {
+                return;
+            }
+
+            newToken = new PersistentRememberMeToken(token.getUsername(), series, tokenValue,
+                    lastUsed == null ? new Date() : lastUsed);
+        } while (!seriesTokens.replace(series, token, newToken));
+    }
+
+    public PersistentRememberMeToken getTokenForSeries(String seriesId) {
+        PersistentRememberMeToken token = seriesTokens.get(seriesId);
+
+        if (token != null && isExpired(token, System.currentTimeMillis() - tokenValidity)) {
+            remove(token);
+            return null;
+        }
+
+        return token;
+    }
+
+    public void removeUserTokens(String username) {
+        Set<String> series = userSeries.remove(username);
+
+        if (series == null) {
+            return;
+        }
+
+        synchronized (series) {
+            for (String seriesId : series) {
+                seriesTokens.remove(seriesId);
+            }
+        }
+    }
+
+    public void updateTokens(Collection<PersistentRememberMeToken> tokens) {
+        for (PersistentRememberMeToken token : tokens) {
+            updateToken(token.getSeries(), token.getTokenValue(), token.getDate());
+        }
+    }
+
+    public int removeTokensLastUsedBefore(Date date) {
+        long cutoff = date.getTime();
+        int removed = 0;
+
+        for (PersistentRememberMeToken token : seriesTokens.values()) {
+            if (isExpired(token, cutoff) && remove(token)) {
+                removed++;
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Removes the tokens which haven't been used for longer than the {@code tokenValiditySeconds}. This is invoked
+     * periodically once the bean has been initialized, but may also be called directly.
+     *
+     * @return the number of tokens which were removed
+     */
+    public int removeExpiredTokens() {
+        int removed = removeTokensLastUsedBefore(new Date(System.currentTimeMillis() - tokenValidity));
+
+        if (removed > 0 && logger.isDebugEnabled()) {
+            logger.debug("Removed " + removed + " expired persistent login tokens");
+        }
+
+        return removed;
+    }
+
+    private boolean isExpired(PersistentRememberMeToken token, long cutoff) {
+        return token.getDate().getTime() < cutoff;
+    }
+
+    private boolean remove(PersistentRememberMeToken token) {
+        if (!seriesTokens.remove(token.getSeries(), token)) {
+            return false;
+        }
+
+        Set<String> series = userSeries.get(token.getUsername());
+
+        if (series != null) {
+            synchronized (series) {
+                series.remove(token.getSeries());
+                if (series.isEmpty()) {
+                    userSeries.remove(token.getUsername(), series);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Sets the age after which unused tokens are removed. Defaults to two weeks.
+     *
+     * @param tokenValiditySeconds the age in seconds
+     */
+    public void setTokenValiditySeconds(int tokenValiditySeconds) {
+        Assert.isTrue(tokenValiditySeconds > 0, "tokenValiditySeconds must be positive");
+        this.tokenValidity = tokenValiditySeconds * 1000L;
+    }
+
+    /**
+     * Sets how often expired tokens are removed. Defaults to 3600.
+     *
+     * @param purgeIntervalSeconds the interval in seconds
+     */
+    public void setPurgeIntervalSeconds(int purgeIntervalSeconds) {
+        Assert.isTrue(purgeIntervalSeconds > 0, "purgeIntervalSeconds must be positive");
+        this.purgeIntervalSeconds = purgeIntervalSeconds;
+    }
+}
@@ -10,6 +10,8 @@ import java.util.Map;
 /**
  * Simple <tt>PersistentTokenRepository</tt> implementation backed by a Map. Intended for testing only.
  *
+ * @see ConcurrentInMemoryTokenRepositoryImpl
+ *
  * @author Luke Taylor
  */
 public class InMemoryTokenRepositoryImpl implements PersistentTokenRepository {
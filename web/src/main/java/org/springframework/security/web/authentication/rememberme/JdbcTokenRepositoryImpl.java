@@ -31,7 +31,7 @@ import java.util.*;
  * @author Luke Taylor
  * @since 2.0
  */
-public class JdbcTokenRepositoryImpl extends JdbcDaoSupport implements PersistentTokenRepository {
+public class JdbcTokenRepositoryImpl extends JdbcDaoSupport implements BulkPersistentTokenRepository {
     //~ Static fields/initializers =====================================================================================
 
     /** Default SQL for creating the database table to store the tokens */
@@ -50,6 +50,9 @@ public class JdbcTokenRepositoryImpl extends JdbcDaoSupport implements Persisten
     /** The default SQL used by <tt>removeUserTokens</tt> */
     public static final String DEF_REMOVE_USER_TOKENS_SQL =
             "delete from persistent_logins where username = ?";
+    /** The default SQL used by <tt>removeTokensLastUsedBefore</tt> */
+    public static final String DEF_REMOVE_TOKENS_LAST_USED_BEFORE_SQL =
+            "delete from persistent_logins where last_used < ?";
 
     //~ Instance fields ================================================================================================
 
@@ -57,6 +60,7 @@ public class JdbcTokenRepositoryImpl extends JdbcDaoSupport implements Persisten
     private String insertTokenSql = DEF_INSERT_TOKEN_SQL;
     private String updateTokenSql = DEF_UPDATE_TOKEN_SQL;
     private String removeUserTokensSql = DEF_REMOVE_USER_TOKENS_SQL;
+    private String removeTokensLastUsedBeforeSql = DEF_REMOVE_TOKENS_LAST_USED_BEFORE_SQL;
     private boolean createTableOnStartup;
 
     protected void initDao() {
@@ -108,6 +112,28 @@ public class JdbcTokenRepositoryImpl extends JdbcDaoSupport implements Persisten
         getJdbcTemplate().update(removeUserTokensSql, username);
     }
 
+    /**
+     * Updates the tokens using a single JDBC batch.
+     *
+     * @since 3.2
+     */
+    public void updateTokens(Collection<PersistentRememberMeToken> tokens) {
+        List<Object[]> batchArgs = new ArrayList<Object[]>(tokens.size());
+
+        for (PersistentRememberMeToken token : tokens) {
+            batchArgs.add(new Object[] {token.getTokenValue(), token.getDate(), token.getSeries()});
+        }
+
+        getJdbcTemplate().batchUpdate(updateTokenSql, batchArgs);
+    }
+
+    /**
+     * @since 3.2
+     */
+    public int removeTokensLastUsedBefore(Date date) {
+        return getJdbcTemplate().update(removeTokensLastUsedBeforeSql, date);
+    }
+
     /**
      * Intended for convenience in debugging. Will create the persistent_tokens database table when the class
      * is initialized during the initDao method.
@@ -20,12 +20,17 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.codec.Hex;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.codec.Utf8;
+import org.springframework.security.util.ConcurrentLruCache;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
@@ -76,11 +81,28 @@ import java.util.Date;
  * using {@link #setTokenValiditySeconds(int)}. If this value is less than zero, the <tt>expiryTime</tt> will remain at
  * 14 days, but the negative value will be used for the <tt>maxAge</tt> property of the cookie, meaning that it will
  * not be stored when the browser is closed.
+ * <p>
+ * If {@link #setUseHmac(boolean) useHmac} is set, the signature is instead calculated as
+ * <tt>HmacSHA256Hex(username + &quot;:&quot; + expiryTime + &quot;:&quot; + password)</tt>, using the key as the
+ * secret. This is both stronger and cheaper to compute, since each thread reuses its own initialized <tt>Mac</tt>,
+ * but existing cookies will no longer be accepted once it is enabled.
+ * <p>
+ * Applications which don't store the authentication in a session will process the cookie on every request. Setting
+ * {@link #setValidatedCookieCacheSeconds(int) validatedCookieCacheSeconds} allows the user loaded for a cookie
+ * which has been validated to be reused for that period, avoiding both the user lookup and the signature
+ * calculation. Changes to the user, such as a new password, may then take up to that long to invalidate the cookie.
  *
  *
  * @author Ben Alex
  */
 public class TokenBasedRememberMeServices extends AbstractRememberMeServices {
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private boolean useHmac;
+    private final ThreadLocal<KeyedMac> macs = new ThreadLocal<KeyedMac>();
+    private long validatedCookieCacheTtl;
+    private ConcurrentLruCache<String, ValidatedCookie> validatedCookies =
+            new ConcurrentLruCache<String, ValidatedCookie>(10000);
 
     /**
      * @deprecated Use with-args constructor
@@ -119,6 +141,12 @@ public class TokenBasedRememberMeServices extends AbstractRememberMeServices {
                     + new Date(tokenExpiryTime) + "'; current time is '" + new Date() + "')");
         }
 
+        UserDetails cachedUser = getValidatedUser(cookieTokens, tokenExpiryTime);
+
+        if (cachedUser != null) {
+            return cachedUser;
+        }
+
         // Check the user exists.
         // Defer lookup until after expiry time checked, to possibly avoid expensive database call.
 
@@ -126,9 +154,9 @@ public class TokenBasedRememberMeServices extends AbstractRememberMeServices {
 
         // Check signature of token matches remaining details.
         // Must do this after user lookup, as we need the DAO-derived password.
-        // If efficiency was a major issue, just add in a UserCache implementation,
-        // but recall that this method is usually only called once per HttpSession - if the token is valid,
-        // it will cause SecurityContextHolder population, whilst if invalid, will cause the cookie to be cancelled.
+        // This method is usually only called once per HttpSession - if the token is valid, it will cause
+        // SecurityContextHolder population, whilst if invalid, will cause the cookie to be cancelled. Otherwise
+        // the validatedCookieCacheSeconds can be set to avoid repeating the work.
         String expectedTokenSignature = makeTokenSignature(tokenExpiryTime, userDetails.getUsername(),
                 userDetails.getPassword());
 
@@ -137,14 +165,49 @@ public class TokenBasedRememberMeServices extends AbstractRememberMeServices {
                                                                                                     + "' but expected '" + expectedTokenSignature + "'");
         }
 
+        if (validatedCookieCacheTtl > 0) {
+            validatedCookies.put(cookieTokens[2], new ValidatedCookie(cookieTokens[0], tokenExpiryTime, userDetails));
+        }
+
         return userDetails;
     }
 
+    /**
+     * Returns the user for a cookie which has been validated recently, or null if there isn't one.
+     */
+    private UserDetails getValidatedUser(String[] cookieTokens, long tokenExpiryTime) {
+        if (validatedCookieCacheTtl <= 0) {
+            return null;
+        }
+
+        ValidatedCookie validated = validatedCookies.get(cookieTokens[2]);
+
+        if (validated == null) {
+            return null;
+        }
+
+        if (validated.validatedTime + validatedCookieCacheTtl < System.currentTimeMillis()) {
+            validatedCookies.remove(cookieTokens[2]);
+            return null;
+        }
+
+        if (validated.expiryTime != tokenExpiryTime || !validated.username.equals(cookieTokens[0])) {
+            return null;
+        }
+
+        return validated.user;
+    }
+
     /**
      * Calculates the digital signature to be put in the cookie. Default value is
-     * MD5 ("username:tokenExpiryTime:password:key")
+     * MD5 ("username:tokenExpiryTime:password:key"), or HmacSHA256 ("username:tokenExpiryTime:password") using the
+     * key as the secret if <tt>useHmac</tt> is set.
      */
     protected String makeTokenSignature(long tokenExpiryTime, String username, String password) {
+        if (useHmac) {
+            return makeHmacTokenSignature(tokenExpiryTime, username, password);
+        }
+
         String data = username + ":" + tokenExpiryTime + ":" + password + ":" + getKey();
         MessageDigest digest;
         try {
@@ -156,6 +219,41 @@ public class TokenBasedRememberMeServices extends AbstractRememberMeServices {
         return new String(Hex.encode(digest.digest(data.getBytes())));
     }
 
+    private String makeHmacTokenSignature(long tokenExpiryTime, String username, String password) {
+        Mac mac = getMac();
+        byte[] separator = {':'};
+
+        mac.update(Utf8.encode(String.valueOf(username)));
+        mac.update(separator);
+        mac.update(Utf8.encode(Long.toString(tokenExpiryTime)));
+        mac.update(separator);
+        mac.update(Utf8.encode(String.valueOf(password)));
+
+        return new String(Hex.encode(mac.doFinal()));
+    }
+
+    /**
+     * Returns the current thread's <tt>Mac</tt>, creating it if necessary. A <tt>Mac</tt> is reset once it has
+     * been used to calculate a signature, so it can be reused without any synchronization.
+     */
+    private Mac getMac() {
+        String key = getKey();
+        KeyedMac keyedMac = macs.get();
+
+        if (keyedMac == null || !keyedMac.key.equals(key)) {
+            try {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(new SecretKeySpec(Utf8.encode(key), MAC_ALGORITHM));
+                keyedMac = new KeyedMac(key, mac);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to create " + MAC_ALGORITHM + " Mac", e);
+            }
+            macs.set(keyedMac);
+        }
+
+        return keyedMac.mac;
+    }
+
     protected boolean isTokenExpired(long tokenExpiryTime) {
         return tokenExpiryTime < System.currentTimeMillis();
     }
@@ -244,6 +342,60 @@ public class TokenBasedRememberMeServices extends AbstractRememberMeServices {
         return authentication.getPrincipal() instanceof UserDetails;
     }
 
+    /**
+     * In addition to cancelling the cookie, forgets that the cookie sent with the request was validated.
+     */
+    @Override
+    public void logout(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
+        String rememberMeCookie = extractRememberMeCookie(request);
+
+        if (validatedCookieCacheTtl > 0 && StringUtils.hasLength(rememberMeCookie)) {
+            try {
+                String[] cookieTokens = decodeCookie(rememberMeCookie);
+                if (cookieTokens.length == 3) {
+                    validatedCookies.remove(cookieTokens[2]);
+                }
+            } catch (InvalidCookieException ignored) {
+            }
+        }
+
+        super.logout(request, response, authentication);
+    }
+
+    /**
+     * Determines whether the cookie signature is calculated using HmacSHA256 with the key as the secret, rather
+     * than an MD5 digest of the key and the other values. Changing this invalidates the cookies already issued.
+     *
+     * @param useHmac defaults to <tt>false</tt>
+     * @since 3.2
+     */
+    public void setUseHmac(boolean useHmac) {
+        this.useHmac = useHmac;
+    }
+
+    /**
+     * Sets how long the user loaded for a validated cookie is reused for subsequent requests carrying the same
+     * cookie. Defaults to 0, meaning that every cookie is validated and the user loaded each time.
+     *
+     * @param validatedCookieCacheSeconds the time in seconds
+     * @since 3.2
+     */
+    public void setValidatedCookieCacheSeconds(int validatedCookieCacheSeconds) {
+        Assert.isTrue(validatedCookieCacheSeconds >= 0, "validatedCookieCacheSeconds cannot be negative");
+        this.validatedCookieCacheTtl = validatedCookieCacheSeconds * 1000L;
+    }
+
+    /**
+     * Sets the maximum number of validated cookies which are remembered. Defaults to 10000.
+     *
+     * @param validatedCookieCacheSize the maximum number of cookies
+     * @since 3.2
+     */
+    public void setValidatedCookieCacheSize(int validatedCookieCacheSize) {
+        Assert.isTrue(validatedCookieCacheSize > 0, "validatedCookieCacheSize must be positive");
+        this.validatedCookies = new ConcurrentLruCache<String, ValidatedCookie>(validatedCookieCacheSize);
+    }
+
     /**
      * Constant time comparison to prevent against timing attacks.
      */
@@ -267,4 +419,27 @@ public class TokenBasedRememberMeServices extends AbstractRememberMeServices {
         }
         return Utf8.encode(s);
     }
+
+    private static final class KeyedMac {
+        private final String key;
+        private final Mac mac;
+
+        KeyedMac(String key, Mac mac) {
+            this.key = key;
+            this.mac = mac;
+        }
+    }
+
+    private static final class ValidatedCookie {
+        private final String username;
+        private final long expiryTime;
+        private final UserDetails user;
+        private final long validatedTime = System.currentTimeMillis();
+
+        ValidatedCookie(String username, long expiryTime, UserDetails user) {
+            this.username = username;
+            this.expiryTime = expiryTime;
+            this.user = user;
+        }
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.session;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.springframework.context.MessageSource;
+import org.springframework.context.MessageSourceAware;
+import org.springframework.context.support.MessageSourceAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.SpringSecurityMessageSource;
+import org.springframework.security.core.session.BoundedSessionRegistry;
+import org.springframework.util.Assert;
+
+/**
+ * An alternative to {@link ConcurrentSessionControlStrategy} which leaves enforcement of the maximum number of
+ * sessions to a {@link BoundedSessionRegistry}, such as
+ * {@link org.springframework.security.core.session.SessionRegistryImpl SessionRegistryImpl}.
+ * <p>
+ * {@code ConcurrentSessionControlStrategy} loads the user's sessions, checks how many there are and searches for the
+ * least recently used one before the new session is registered, so concurrent logins by the same user can exceed
+ * the limit, and the cost grows with the number of sessions. This strategy registers the session, and expires the
+ * least recently used one or rejects the new one if necessary, in a single operation on the registry.
+ * <p>
+ * The behaviour is otherwise the same, except that the limit is checked once the session id has been changed, so
+ * the new session can replace the one which the request was using. If the maximum has been reached and
+ * <tt>exceptionIfMaximumExceeded</tt> is set, a {@link SessionAuthenticationException} is raised and the session is
+ * not registered.
+ *
+ * @since 3.2
+ */
+public class BoundedConcurrentSessionControlStrategy extends SessionFixationProtectionStrategy
+        implements MessageSourceAware {
+    protected MessageSourceAccessor messages = SpringSecurityMessageSource.getAccessor();
+    private final BoundedSessionRegistry sessionRegistry;
+    private boolean exceptionIfMaximumExceeded = false;
+    private int maximumSessions = 1;
+
+    /**
+     * @param sessionRegistry the session registry which should be updated when the authenticated session is changed.
+     */
+    public BoundedConcurrentSessionControlStrategy(BoundedSessionRegistry sessionRegistry) {
+        Assert.notNull(sessionRegistry, "The sessionRegistry cannot be null");
+        super.setAlwaysCreateSession(true);
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    /**
+     * In addition to the steps from the superclass, the session is registered if the user is permitted another one.
+     */
+    @Override
+    public void onAuthentication(Authentication authentication, HttpServletRequest request,
+            HttpServletResponse response) {
+        HttpSession session = request.getSession(false);
+        String originalSessionId = session == null ? null : session.getId();
+
+        // Allow the parent to create a new session if necessary
+        super.onAuthentication(authentication, request, response);
+
+        int allowedSessions = getMaximumSessionsForThisUser(authentication);
+
+        if (!sessionRegistry.registerNewSession(request.getSession().getId(), authentication.getPrincipal(),
+                originalSessionId, allowedSessions, exceptionIfMaximumExceeded)) {
+            throw new SessionAuthenticationException(messages.getMessage(
+                    "ConcurrentSessionControlStrategy.exceededAllowed",
+                    new Object[] {Integer.valueOf(allowedSessions)},
+                    "Maximum sessions of {0} for this principal exceeded"));
+        }
+    }
+
+    /**
+     * Method intended for use by subclasses to override the maximum number of sessions that are permitted for
+     * a particular authentication. The default implementation simply returns the <code>maximumSessions</code> value
+     * for the bean.
+     *
+     * @param authentication to determine the maximum sessions for
+     *
+     * @return either -1 meaning unlimited, or a positive integer to limit (never zero)
+     */
+    protected int getMaximumSessionsForThisUser(Authentication authentication) {
+        return maximumSessions;
+    }
+
+    /**
+     * Sets the <tt>exceptionIfMaximumExceeded</tt> property, which determines whether the user should be prevented
+     * from opening more sessions than allowed. If set to <tt>true</tt>, a <tt>SessionAuthenticationException</tt>
+     * will be raised.
+     *
+     * @param exceptionIfMaximumExceeded defaults to <tt>false</tt>.
+     */
+    public void setExceptionIfMaximumExceeded(boolean exceptionIfMaximumExceeded) {
+        this.exceptionIfMaximumExceeded = exceptionIfMaximumExceeded;
+    }
+
+    /**
+     * Sets the <tt>maxSessions</tt> property. The default value is 1. Use -1 for unlimited sessions.
+     *
+     * @param maximumSessions the maximimum number of permitted sessions a user can have open simultaneously.
+     */
+    public void setMaximumSessions(int maximumSessions) {
+        Assert.isTrue(maximumSessions != 0,
+            "MaximumLogins must be either -1 to allow unlimited logins, or a positive integer to specify a maximum");
+        this.maximumSessions = maximumSessions;
+    }
+
+    public void setMessageSource(MessageSource messageSource) {
+        this.messages = new MessageSourceAccessor(messageSource);
+    }
+
+    @Override
+    public final void setAlwaysCreateSession(boolean alwaysCreateSession) {
+        if (!alwaysCreateSession) {
+            throw new IllegalArgumentException("Cannot set alwaysCreateSession to false when concurrent session " +
+                    "control is required");
+        }
+    }
+}
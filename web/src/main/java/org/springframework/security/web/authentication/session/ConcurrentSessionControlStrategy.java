@@ -12,6 +12,7 @@ import org.springframework.context.support.MessageSourceAccessor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.SpringSecurityMessageSource;
+import org.springframework.security.core.session.CountingSessionRegistry;
 import org.springframework.security.core.session.SessionInformation;
 import org.springframework.security.core.session.SessionRegistry;
 import org.springframework.security.web.authentication.AbstractAuthenticationProcessingFilter;
@@ -25,7 +26,8 @@ import org.springframework.util.Assert;
  *
  * When invoked following an authentication, it will check whether the user in question should be allowed to proceed,
  * by comparing the number of sessions they already have active with the configured <tt>maximumSessions</tt> value.
- * The {@link SessionRegistry} is used as the source of data on authenticated users and session data.
+ * The {@link SessionRegistry} is used as the source of data on authenticated users and session data. If it is a
+ * {@link CountingSessionRegistry}, the user's sessions are only loaded once the maximum has been reached.
  * <p>
  * If a user has reached the maximum number of permitted sessions, the behaviour depends on the
  * <tt>exceptionIfMaxExceeded</tt> property. The default behaviour is to expired the least recently used session, which
@@ -70,10 +72,21 @@ public class ConcurrentSessionControlStrategy extends SessionFixationProtectionS
     private void checkAuthenticationAllowed(Authentication authentication, HttpServletRequest request)
             throws AuthenticationException {
 
+        int allowedSessions = getMaximumSessionsForThisUser(authentication);
+
+        if (sessionRegistry instanceof CountingSessionRegistry) {
+            int sessionCount = ((CountingSessionRegistry) sessionRegistry).getSessionCount(
+                    authentication.getPrincipal(), false);
+
+            if (sessionCount < allowedSessions) {
+                // No need to load the sessions unless the limit has been reached
+                return;
+            }
+        }
+
         final List<SessionInformation> sessions = sessionRegistry.getAllSessions(authentication.getPrincipal(), false);
 
         int sessionCount = sessions.size();
-        int allowedSessions = getMaximumSessionsForThisUser(authentication);
 
         if (sessionCount < allowedSessions) {
             // They haven't got too many login sessions running at present
@@ -82,6 +82,11 @@ import org.springframework.web.filter.GenericFilterBean;
  * Note that if a {@link RememberMeServices} is set, this filter will automatically send back remember-me
  * details to the client. Therefore, subsequent requests will not need to present a BASIC authentication header as
  * they will be authenticated using the remember-me mechanism.
+ * <p>
+ * Clients of stateless APIs usually send the same credentials with every request. If a
+ * {@link VerifiedCredentialsCache} is set, credentials which have recently been authenticated successfully are not
+ * passed to the <tt>AuthenticationManager</tt> again. Instead, a new <tt>UsernamePasswordAuthenticationToken</tt> is
+ * created with the principal and authorities of the earlier result and the details of the current request.
  *
  * @author Ben Alex
  */
@@ -95,6 +100,7 @@ public class BasicAuthenticationFilter extends GenericFilterBean {
     private RememberMeServices rememberMeServices = new NullRememberMeServices();
     private boolean ignoreFailure = false;
     private String credentialsCharset = "UTF-8";
+    private VerifiedCredentialsCache verifiedCredentialsCache;
 
     /**
      * @deprecated Use constructor injection
@@ -162,10 +168,32 @@ public class BasicAuthenticationFilter extends GenericFilterBean {
             }
 
             if (authenticationIsRequired(username)) {
-                UsernamePasswordAuthenticationToken authRequest =
-                        new UsernamePasswordAuthenticationToken(username, tokens[1]);
-                authRequest.setDetails(authenticationDetailsSource.buildDetails(request));
-                Authentication authResult = authenticationManager.authenticate(authRequest);
+                Authentication authResult = null;
+
+                if (verifiedCredentialsCache != null) {
+                    Authentication verified = verifiedCredentialsCache.getAuthentication(username, tokens[1]);
+
+                    if (verified != null) {
+                        // The cached result was created for an earlier request, so it isn't shared with this one
+                        UsernamePasswordAuthenticationToken result = new UsernamePasswordAuthenticationToken(
+                                verified.getPrincipal(), verified.getCredentials(), verified.getAuthorities());
+                        result.setDetails(authenticationDetailsSource.buildDetails(request));
+                        authResult = result;
+                    }
+                }
+
+                if (authResult == null) {
+                    long verificationStartTime = System.currentTimeMillis();
+                    UsernamePasswordAuthenticationToken authRequest =
+                            new UsernamePasswordAuthenticationToken(username, tokens[1]);
+                    authRequest.setDetails(authenticationDetailsSource.buildDetails(request));
+                    authResult = authenticationManager.authenticate(authRequest);
+
+                    if (verifiedCredentialsCache != null) {
+                        verifiedCredentialsCache.putAuthentication(username, tokens[1], authResult,
+                                verificationStartTime);
+                    }
+                }
 
                 if (debug) {
                     logger.debug("Authentication success: " + authResult);
@@ -316,6 +344,21 @@ public class BasicAuthenticationFilter extends GenericFilterBean {
         this.credentialsCharset = credentialsCharset;
     }
 
+    /**
+     * Sets a cache of recently verified credentials, which avoids authenticating the same username and password
+     * repeatedly. For cached credentials, the <tt>Authentication</tt> contains the principal and authorities from the
+     * first request, with details built from the current request. Since the <tt>AuthenticationManager</tt> isn't
+     * called, no <tt>AuthenticationSuccessEvent</tt> is published and the account status checks (locked, disabled or
+     * expired) aren't repeated, so a change to the account only takes effect when the user is removed from the cache
+     * or the cache's <tt>ttlSeconds</tt> elapse. Not used by default.
+     *
+     * @param verifiedCredentialsCache the cache to use
+     * @since 3.2
+     */
+    public void setVerifiedCredentialsCache(VerifiedCredentialsCache verifiedCredentialsCache) {
+        this.verifiedCredentialsCache = verifiedCredentialsCache;
+    }
+
     protected String getCredentialsCharset(HttpServletRequest httpRequest) {
         return credentialsCharset;
     }
@@ -16,8 +16,14 @@
 package org.springframework.security.web.authentication.www;
 
 import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -38,12 +44,14 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.SpringSecurityMessageSource;
 import org.springframework.security.crypto.codec.Base64;
+import org.springframework.security.crypto.codec.Utf8;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.core.userdetails.cache.NullUserCache;
+import org.springframework.security.util.ConcurrentLruCache;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -75,6 +83,15 @@ import org.springframework.web.filter.GenericFilterBean;
  * Note there are limitations to Digest authentication, although it is a more comprehensive and secure solution
  * than Basic authentication. Please see RFC 2617 section 4 for a full discussion on the advantages of Digest
  * authentication over Basic authentication, including commentary on the limitations that it still imposes.
+ * <p>
+ * Since the nonce is not stored, a request can be replayed for as long as its nonce is valid. If a
+ * {@link DigestNonceStore} is set, the nonce counts sent by RFC 2617 clients are recorded and requests which reuse
+ * a count are rejected.
+ * <p>
+ * Computing the <tt>HA1</tt> value, <tt>md5Hex(username:realm:password)</tt>, is one of the digests required for
+ * each request. It is skipped if the <tt>UserDetailsService</tt> returns it instead of the password (see
+ * {@link #setPasswordAlreadyEncoded(boolean)}), or if the values computed from clear text passwords are cached (see
+ * {@link #setHa1CacheSize(int)}).
  *
  * @author Ben Alex
  * @author Luke Taylor
@@ -85,6 +102,7 @@ public class DigestAuthenticationFilter extends GenericFilterBean implements Mes
 
 
     private static final Log logger = LogFactory.getLog(DigestAuthenticationFilter.class);
+    private static final String MAC_ALGORITHM = "HmacSHA256";
 
     //~ Instance fields ================================================================================================
 
@@ -95,6 +113,12 @@ public class DigestAuthenticationFilter extends GenericFilterBean implements Mes
     private UserDetailsService userDetailsService;
     private boolean passwordAlreadyEncoded = false;
     private boolean createAuthenticatedToken = false;
+    private DigestNonceStore nonceStore;
+    private ConcurrentLruCache<String, Ha1> ha1Cache;
+    private SecretKeySpec ha1CacheKey;
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>();
+    private final AtomicLong ha1CacheHits = new AtomicLong();
+    private final AtomicLong ha1CacheMisses = new AtomicLong();
 
     //~ Methods ========================================================================================================
 
@@ -199,6 +223,30 @@ public class DigestAuthenticationFilter extends GenericFilterBean implements Mes
             return;
         }
 
+        // Only requests with a valid response are recorded, so they can't be used to fill the store
+        if (nonceStore != null && digestAuth.getNc() != null) {
+            long nonceIssueTime = digestAuth.getNonceExpiryTime()
+                    - authenticationEntryPoint.getNonceValiditySeconds() * 1000L;
+            DigestNonceStore.Result result = nonceStore.useNonceCount(digestAuth.getNonce(), digestAuth.getCnonce(),
+                    digestAuth.getNonceCount(), nonceIssueTime);
+
+            if (result == DigestNonceStore.Result.REPLAYED) {
+                fail(request, response,
+                        new BadCredentialsException(messages.getMessage("DigestAuthenticationFilter.nonceCountReused",
+                                new Object[]{digestAuth.getNc()}, "Nonce count {0} has already been used")));
+
+                return;
+            }
+
+            if (result == DigestNonceStore.Result.UNKNOWN) {
+                fail(request, response,
+                        new NonceExpiredException(messages.getMessage("DigestAuthenticationFilter.nonceExpired",
+                                "Nonce has expired/timed out")));
+
+                return;
+            }
+        }
+
         if (logger.isDebugEnabled()) {
             logger.debug("Authentication success for user: '" + digestAuth.getUsername()
                     + "' with response: '" + digestAuth.getResponse() + "'");
@@ -209,6 +257,42 @@ public class DigestAuthenticationFilter extends GenericFilterBean implements Mes
         chain.doFilter(request, response);
     }
 
+    /**
+     * Returns the HA1 value for a clear text password, using the cached value if the password is unchanged.
+     */
+    private String getHa1(String username, String realm, String password) {
+        Ha1 ha1 = ha1Cache.get(username);
+
+        byte[] passwordMac = mac(password);
+
+        if (ha1 != null && MessageDigest.isEqual(ha1.passwordMac, passwordMac)) {
+            ha1CacheHits.incrementAndGet();
+            return ha1.digest;
+        }
+
+        ha1CacheMisses.incrementAndGet();
+        String digest = DigestAuthUtils.encodePasswordInA1Format(username, realm, password);
+        ha1Cache.put(username, new Ha1(passwordMac, digest));
+
+        return digest;
+    }
+
+    private byte[] mac(String password) {
+        Mac mac = macs.get();
+
+        if (mac == null) {
+            try {
+                mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(ha1CacheKey);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to create " + MAC_ALGORITHM + " Mac", e);
+            }
+            macs.set(mac);
+        }
+
+        return mac.doFinal(Utf8.encode(password));
+    }
+
     private Authentication createSuccessfulAuthentication(HttpServletRequest request, UserDetails user) {
         UsernamePasswordAuthenticationToken authRequest;
         if (createAuthenticatedToken) {
@@ -290,6 +374,61 @@ public class DigestAuthenticationFilter extends GenericFilterBean implements Mes
         this.createAuthenticatedToken = createAuthenticatedToken;
     }
 
+    /**
+     * Sets a store of the nonce counts which have been used, so that replayed requests can be rejected. Only
+     * requests which include a nonce count (those with a <tt>qop</tt> of <tt>auth</tt>) are checked. Not used by
+     * default.
+     *
+     * @param nonceStore the store to use
+     * @since 3.2
+     */
+    public void setNonceStore(DigestNonceStore nonceStore) {
+        this.nonceStore = nonceStore;
+    }
+
+    /**
+     * Enables caching of the HA1 values computed from clear text passwords, holding up to the given number of users.
+     * A cached value is only used while the <tt>UserDetails</tt> has the same password. The password itself isn't
+     * stored, only an HmacSHA256 of it, keyed with a random secret generated when the cache is created. Not used by
+     * default, and ignored if <tt>passwordAlreadyEncoded</tt> is set.
+     *
+     * @param ha1CacheSize the maximum number of users
+     * @since 3.2
+     */
+    public void setHa1CacheSize(int ha1CacheSize) {
+        Assert.isTrue(ha1CacheSize > 0, "ha1CacheSize must be positive");
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.ha1CacheKey = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.ha1Cache = new ConcurrentLruCache<String, Ha1>(ha1CacheSize);
+    }
+
+    /**
+     * @return the number of times a cached HA1 value was used
+     * @since 3.2
+     */
+    public long getHa1CacheHitCount() {
+        return ha1CacheHits.get();
+    }
+
+    /**
+     * @return the number of times an HA1 value had to be computed while the cache was enabled
+     * @since 3.2
+     */
+    public long getHa1CacheMissCount() {
+        return ha1CacheMisses.get();
+    }
+
+    private static final class Ha1 {
+        private final byte[] passwordMac;
+        private final String digest;
+
+        Ha1(byte[] passwordMac, String digest) {
+            this.passwordMac = passwordMac;
+            this.digest = digest;
+        }
+    }
+
     private class DigestData {
         private final String username;
         private final String realm;
@@ -387,10 +526,19 @@ public class DigestAuthenticationFilter extends GenericFilterBean implements Mes
             // Compute the expected response-digest (will be in hex form)
 
             // Don't catch IllegalArgumentException (already checked validity)
+            if (!passwordAlreadyEncoded && ha1Cache != null) {
+                return DigestAuthUtils.generateDigest(true, username, realm, getHa1(username, realm, password),
+                        httpMethod, uri, qop, nonce, nc, cnonce);
+            }
+
             return DigestAuthUtils.generateDigest(passwordAlreadyEncoded, username, realm, password,
                     httpMethod, uri, qop, nonce, nc, cnonce);
         }
 
+        long getNonceExpiryTime() {
+            return nonceExpiryTime;
+        }
+
         boolean isNonceExpired() {
             long now = System.currentTimeMillis();
             return nonceExpiryTime < now;
@@ -403,5 +551,28 @@ public class DigestAuthenticationFilter extends GenericFilterBean implements Mes
         String getResponse() {
             return response;
         }
+
+        String getNonce() {
+            return nonce;
+        }
+
+        String getNc() {
+            return nc;
+        }
+
+        String getCnonce() {
+            return cnonce;
+        }
+
+        /**
+         * @return the nonce count as a number, or -1 if it isn't valid hexadecimal
+         */
+        long getNonceCount() {
+            try {
+                return Long.parseLong(nc, 16);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
     }
 }
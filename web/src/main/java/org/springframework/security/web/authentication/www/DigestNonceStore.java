@@ -0,0 +1,193 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.www;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.util.ConcurrentLruCache;
+import org.springframework.util.Assert;
+
+/**
+ * Records the nonce counts (the <tt>nc</tt> values of RFC 2617) which have been used with each nonce, so that
+ * {@link DigestAuthenticationFilter} can reject a request which is replayed while its nonce is still valid. See
+ * {@link DigestAuthenticationFilter#setNonceStore(DigestNonceStore)}.
+ * <p>
+ * The counts are tracked per nonce and client nonce (<tt>cnonce</tt>), since nonces issued by
+ * {@link DigestAuthenticationEntryPoint} at the same time are identical. Clients may send requests concurrently, so
+ * the counts need not arrive in order: the highest count is recorded together with which of the 64 counts below it
+ * have been seen, and a count is only rejected if it has already been used or is too far behind.
+ * <p>
+ * The store holds at most {@link #setMaximumSize(int) maximumSize} nonces, evicting the least recently used. A
+ * nonce which is not in the store is only accepted with a count of 1, and only within
+ * {@link #setFirstUseSeconds(int) firstUseSeconds} of being issued. Otherwise the client is told that its nonce is
+ * stale and obtains a new one. Since an evicted nonce is indistinguishable from one which hasn't been used yet, a
+ * request with a count of 1 can be replayed if its nonce is evicted before that period has elapsed. The store should
+ * therefore be large enough to hold all the nonces first used during that period (for example, 20000 requests per
+ * second with new nonces would need more than 200000 entries for the default period of 10 seconds), and a growing
+ * {@link #getEvictionCount() eviction count} indicates that the protection may be incomplete. To avoid clients
+ * obtaining new nonces too often, it should also hold the nonces in use during the nonce validity period.
+ *
+ * @since 3.2
+ */
+public class DigestNonceStore {
+    private static final int WINDOW_SIZE = 64;
+
+    /**
+     * The outcome of {@link DigestNonceStore#useNonceCount(String, String, long, long)}.
+     */
+    public static enum Result {
+        /** The count hasn't been used before */
+        ACCEPTED,
+        /** The count has already been used, or is too old to tell */
+        REPLAYED,
+        /** The nonce isn't known, and the count isn't the first or the nonce is too old for it to be its first use */
+        UNKNOWN
+    }
+
+    private ConcurrentLruCache<String, NonceCounts> nonces = new ConcurrentLruCache<String, NonceCounts>(10000);
+    private long firstUsePeriod = 10000;
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong unknownCount = new AtomicLong();
+
+    /**
+     * Records the use of a nonce count.
+     *
+     * @param nonce the nonce presented by the client
+     * @param cnonce the client nonce
+     * @param nc the nonce count
+     * @param nonceIssueTime the time at which the nonce was issued
+     * @return whether the count may be used
+     */
+    public Result useNonceCount(String nonce, String cnonce, long nc, long nonceIssueTime) {
+        Result result = register(nonce + ":" + cnonce, nc, nonceIssueTime);
+
+        if (result == Result.ACCEPTED) {
+            acceptedCount.incrementAndGet();
+        } else if (result == Result.REPLAYED) {
+            replayedCount.incrementAndGet();
+        } else {
+            unknownCount.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    private Result register(String key, long nc, long nonceIssueTime) {
+        if (nc < 1) {
+            return Result.REPLAYED;
+        }
+
+        NonceCounts counts = nonces.get(key);
+
+        if (counts == null) {
+            // The nonce may have been used and evicted, so a first use is only believed while the nonce is new
+            if (nc != 1 || nonceIssueTime + firstUsePeriod < System.currentTimeMillis()) {
+                return Result.UNKNOWN;
+            }
+
+            counts = new NonceCounts();
+            NonceCounts existing = nonces.putIfAbsent(key, counts);
+
+            if (existing != null) {
+                counts = existing;
+            }
+        }
+
+        return counts.use(nc) ? Result.ACCEPTED : Result.REPLAYED;
+    }
+
+    /**
+     * @return the number of counts which were accepted
+     */
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * @return the number of counts which were rejected as having been used already
+     */
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     * @return the number of counts which were presented for a nonce which wasn't in the store, and which couldn't be
+     * accepted as its first use
+     */
+    public long getUnknownCount() {
+        return unknownCount.get();
+    }
+
+    /**
+     * @return the number of nonces which have been evicted to keep the store within its maximum size
+     */
+    public long getEvictionCount() {
+        return nonces.getEvictionCount();
+    }
+
+    /**
+     * @return the number of nonces in the store
+     */
+    public int size() {
+        return nonces.size();
+    }
+
+    /**
+     * Sets the number of seconds after a nonce is issued during which a count of 1 is accepted for it, if it isn't in
+     * the store. Defaults to 10.
+     *
+     * @param firstUseSeconds the time in seconds
+     */
+    public void setFirstUseSeconds(int firstUseSeconds) {
+        Assert.isTrue(firstUseSeconds > 0, "firstUseSeconds must be positive");
+        this.firstUsePeriod = firstUseSeconds * 1000L;
+    }
+
+    /**
+     * Sets the maximum number of nonces which are tracked. Defaults to 10000.
+     *
+     * @param maximumSize the maximum number of nonces
+     */
+    public void setMaximumSize(int maximumSize) {
+        Assert.isTrue(maximumSize > 0, "maximumSize must be positive");
+        this.nonces = new ConcurrentLruCache<String, NonceCounts>(maximumSize);
+    }
+
+    /**
+     * The highest count used with a nonce, and a bit for each of the counts below it which has been used.
+     */
+    private static final class NonceCounts {
+        private long highest;
+        private long used;
+
+        synchronized boolean use(long nc) {
+            if (nc > highest) {
+                long shift = nc - highest;
+                used = shift >= WINDOW_SIZE ? 1 : (used << shift) | 1;
+                highest = nc;
+                return true;
+            }
+
+            long offset = highest - nc;
+
+            if (offset >= WINDOW_SIZE || (used & (1L << offset)) != 0) {
+                return false;
+            }
+
+            used |= 1L << offset;
+
+            return true;
+        }
+    }
+}
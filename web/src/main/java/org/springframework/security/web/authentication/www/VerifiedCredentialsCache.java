@@ -0,0 +1,201 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.www;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
+import org.springframework.security.crypto.codec.Utf8;
+import org.springframework.security.util.ConcurrentLruCache;
+import org.springframework.util.Assert;
+
+/**
+ * Remembers the result of authenticating a username and password for a short time, so that a client which presents
+ * the same credentials with every request, as is usual with BASIC authentication, doesn't require a (deliberately
+ * slow) password encoder to check them each time. See
+ * {@link BasicAuthenticationFilter#setVerifiedCredentialsCache(VerifiedCredentialsCache)}.
+ * <p>
+ * The password itself is never stored. Each entry holds an HmacSHA256 of the password, keyed with a random secret
+ * generated when the cache is created, so the entries are of no use outside the process.
+ * <p>
+ * The cache implements {@link UserCache}, so that it can be given to a
+ * {@link org.springframework.security.provisioning.UserDetailsManager UserDetailsManager} such as
+ * {@code JdbcUserDetailsManager}, which removes the user from the cache when their password or account is changed.
+ * The calls are also passed on to another <tt>UserCache</tt>, if one is supplied, so that it can still be shared
+ * with the {@code DaoAuthenticationProvider}. Changes made by other means will only take effect once the
+ * {@link #setTtlSeconds(int) ttlSeconds} have elapsed. This applies to the account status as well: while the
+ * credentials are cached, the <tt>AuthenticationManager</tt> isn't called, so it doesn't check whether the account
+ * has been locked, disabled or expired, and doesn't publish an <tt>AuthenticationSuccessEvent</tt>.
+ *
+ * @since 3.2
+ */
+public class VerifiedCredentialsCache implements UserCache {
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final UserCache delegate;
+    private final SecretKeySpec macKey;
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>();
+    private ConcurrentLruCache<String, VerifiedCredentials> cache =
+            new ConcurrentLruCache<String, VerifiedCredentials>(10000);
+    private long ttl = 60000;
+    private volatile long lastRemovalTime;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public VerifiedCredentialsCache() {
+        this(new NullUserCache());
+    }
+
+    /**
+     * @param delegate the cache to pass the {@code UserCache} calls on to
+     */
+    public VerifiedCredentialsCache(UserCache delegate) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        this.delegate = delegate;
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.macKey = new SecretKeySpec(secret, MAC_ALGORITHM);
+    }
+
+    /**
+     * Returns the result of a previous authentication with the same username and password, if it is still valid.
+     *
+     * @param username the presented username
+     * @param password the presented password
+     * @return the <tt>Authentication</tt> returned by the earlier authentication, which callers should not share
+     * between requests, or null if the credentials must be checked
+     */
+    public Authentication getAuthentication(String username, String password) {
+        VerifiedCredentials verified = cache.get(username);
+
+        if (verified != null && verified.verifiedTime + ttl < System.currentTimeMillis()) {
+            cache.remove(username);
+            verified = null;
+        }
+
+        if (verified == null || !MessageDigest.isEqual(verified.passwordMac, mac(password))) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+
+        return verified.authentication;
+    }
+
+    /**
+     * Records the result of authenticating a username and password. It is ignored if any user has been removed from
+     * the cache since the authentication started, since the outcome may then be out of date.
+     *
+     * @param username the presented username
+     * @param password the presented password
+     * @param authentication the authenticated result
+     * @param verificationStartTime the time at which the authentication started
+     */
+    public void putAuthentication(String username, String password, Authentication authentication,
+            long verificationStartTime) {
+        if (!authentication.isAuthenticated() || lastRemovalTime >= verificationStartTime) {
+            return;
+        }
+
+        cache.put(username, new VerifiedCredentials(mac(password), authentication, verificationStartTime));
+    }
+
+    public UserDetails getUserFromCache(String username) {
+        return delegate.getUserFromCache(username);
+    }
+
+    public void putUserInCache(UserDetails user) {
+        delegate.putUserInCache(user);
+    }
+
+    /**
+     * Forgets the user's verified credentials, as well as removing the user from the delegate.
+     */
+    public void removeUserFromCache(String username) {
+        lastRemovalTime = System.currentTimeMillis();
+        cache.remove(username);
+        delegate.removeUserFromCache(username);
+    }
+
+    /**
+     * @return the number of times previously verified credentials were found
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of times the credentials had to be checked
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Sets how long verified credentials are remembered. Defaults to 60.
+     *
+     * @param ttlSeconds the time in seconds
+     */
+    public void setTtlSeconds(int ttlSeconds) {
+        Assert.isTrue(ttlSeconds > 0, "ttlSeconds must be positive");
+        this.ttl = ttlSeconds * 1000L;
+    }
+
+    /**
+     * Sets the maximum number of users whose credentials are remembered. Defaults to 10000.
+     *
+     * @param maximumSize the maximum number of users
+     */
+    public void setMaximumSize(int maximumSize) {
+        Assert.isTrue(maximumSize > 0, "maximumSize must be positive");
+        this.cache = new ConcurrentLruCache<String, VerifiedCredentials>(maximumSize);
+    }
+
+    private byte[] mac(String password) {
+        Mac mac = macs.get();
+
+        if (mac == null) {
+            try {
+                mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(macKey);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to create " + MAC_ALGORITHM + " Mac", e);
+            }
+            macs.set(mac);
+        }
+
+        return mac.doFinal(Utf8.encode(password));
+    }
+
+    private static final class VerifiedCredentials {
+        private final byte[] passwordMac;
+        private final Authentication authentication;
+        private final long verifiedTime;
+
+        VerifiedCredentials(byte[] passwordMac, Authentication authentication, long verifiedTime) {
+            this.passwordMac = passwordMac;
+            this.authentication = authentication;
+            this.verifiedTime = verifiedTime;
+        }
+    }
+}
@@ -0,0 +1,824 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.context;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.codec.Base64;
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.security.crypto.codec.Utf8;
+import org.springframework.security.crypto.encrypt.BytesEncryptor;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.keygen.KeyGenerators;
+import org.springframework.security.util.ConcurrentLruCache;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * A {@code SecurityContextRepository} which stores the security context in a signed cookie, rather than the
+ * {@code HttpSession}, so that any server in a cluster can process a request without sticky sessions or session
+ * replication.
+ * <p>
+ * Only the name of the authenticated principal and its authorities are stored, in a compact binary form which
+ * includes an expiry time and is signed using HMAC-SHA256. The loaded context contains an authenticated
+ * {@code UsernamePasswordAuthenticationToken}, whose principal is the name and which has no credentials or details.
+ * If {@link #setEncryptionEnabled(boolean) encryption} is enabled, the data is also encrypted (using 256-bit AES, as
+ * provided by {@link Encryptors#standard(CharSequence, CharSequence)}), so that it cannot be read by the client.
+ * The cookie is re-issued whenever the {@code Authentication} changes, and once half of its validity period has
+ * elapsed, so the validity period acts as an inactivity timeout. Re-issuing a cookie doesn't check the user again,
+ * so the time at which the user authenticated is also stored, and a cookie is never valid for longer than the
+ * {@link #setMaxLifetimeSeconds(int) maximum lifetime} after it, at which point the user has to log in again.
+ * Anonymous users aren't stored.
+ * <p>
+ * All the servers must be configured with the same secret keys. The first key is used to sign new cookies, while the
+ * others are only used to verify existing ones, which allows keys to be rotated without logging users out: add a new
+ * key at the start of the list, and remove the old one once its cookies have expired. A cookie signed with one of the
+ * older keys is re-issued with the current key.
+ * <p>
+ * Values which are too long for a single cookie are split between several, with the names {@code COOKIENAME},
+ * {@code COOKIENAME_1}, {@code COOKIENAME_2} and so on.
+ * <p>
+ * Since the same cookie is typically presented with many requests, the result of verifying each cookie value is
+ * cached in a bounded LRU cache, keyed by a SHA-256 digest of the value, so the MAC check, decryption and parsing are
+ * only performed the first time it is seen by each server. The expiry time is still checked on every request.
+ * <p>
+ * Unlike a session attribute, a cookie can only be added before the response is committed. A cookie which only needs
+ * to be re-issued is added when the context is loaded, but a change to the {@code Authentication} can only be stored
+ * if it is saved before the response is committed: by a redirect, an error, flushing the response or at the end of
+ * the request, as usual. If the response is committed in any other way first (for example, by filling the buffer)
+ * the change is lost, and a warning is logged. Similarly, a change made by an asynchronous request on another thread
+ * after the filter chain has returned isn't stored.
+ *
+ * @since 3.2
+ */
+public class CookieSecurityContextRepository implements SecurityContextRepository {
+    /**
+     * The default name of the cookie in which the security context is stored.
+     */
+    public static final String DEFAULT_COOKIE_NAME = "SPRING_SECURITY_CONTEXT";
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int HEADER_LENGTH = 6;
+    private static final int MAC_LENGTH = 32;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    protected final Log logger = LogFactory.getLog(this.getClass());
+
+    private final List<SigningKey> keys;
+    private final Map<Integer, SigningKey> keysById = new HashMap<Integer, SigningKey>();
+    private ConcurrentLruCache<CookieDigest, ContextToken> verifiedCookies =
+            new ConcurrentLruCache<CookieDigest, ContextToken>(10000);
+    private AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+    private String cookieName = DEFAULT_COOKIE_NAME;
+    private int tokenValiditySeconds = 1800;
+    private int maxLifetimeSeconds = 43200;
+    private int maxCookieLength = 3800;
+    private boolean encryptionEnabled;
+    private Boolean useSecureCookie = null;
+    private Method setHttpOnlyMethod = ReflectionUtils.findMethod(Cookie.class, "setHttpOnly", boolean.class);
+
+    /**
+     * Creates an instance which uses a randomly generated key. This is only suitable for a single server, and the
+     * cookies it issues won't be accepted once it has been restarted.
+     */
+    public CookieSecurityContextRepository() {
+        this(new String(Hex.encode(KeyGenerators.secureRandom(32).generateKey())));
+    }
+
+    /**
+     * @param secretKeys the keys used to sign (and encrypt) the cookie. The first is used for new cookies, while
+     * cookies signed with any of the others are still accepted.
+     */
+    public CookieSecurityContextRepository(String... secretKeys) {
+        this(Arrays.asList(secretKeys));
+    }
+
+    /**
+     * @param secretKeys the keys used to sign (and encrypt) the cookie. The first is used for new cookies, while
+     * cookies signed with any of the others are still accepted.
+     */
+    public CookieSecurityContextRepository(List<String> secretKeys) {
+        Assert.notEmpty(secretKeys, "At least one secret key is required");
+        List<SigningKey> keys = new ArrayList<SigningKey>(secretKeys.size());
+
+        for (String secretKey : secretKeys) {
+            Assert.hasLength(secretKey, "secretKeys cannot contain an empty key");
+            SigningKey key = new SigningKey(secretKey);
+            Assert.isTrue(!keysById.containsKey(key.id), "secretKeys cannot contain duplicate keys");
+            keysById.put(key.id, key);
+            keys.add(key);
+        }
+
+        this.keys = Collections.unmodifiableList(keys);
+    }
+
+    public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
+        HttpServletRequest request = requestResponseHolder.getRequest();
+        Map<String, String> cookies = readCookies(request);
+        ContextToken token = null;
+
+        if (!cookies.isEmpty()) {
+            token = getToken(joinChunks(cookies));
+        }
+
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+
+        if (token != null) {
+            context.setAuthentication(token.createAuthentication());
+        }
+
+        SaveToCookieResponseWrapper response = new SaveToCookieResponseWrapper(requestResponseHolder.getResponse(),
+                request, cookies.keySet(), token, context);
+        response.reissueIfRequired();
+        requestResponseHolder.setResponse(response);
+
+        return context;
+    }
+
+    public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        SaveContextOnUpdateOrErrorResponseWrapper responseWrapper = (SaveContextOnUpdateOrErrorResponseWrapper)response;
+
+        if (!responseWrapper.isContextSaved()) {
+            responseWrapper.saveContext(context);
+        }
+    }
+
+    public boolean containsContext(HttpServletRequest request) {
+        Map<String, String> cookies = readCookies(request);
+
+        return !cookies.isEmpty() && getToken(joinChunks(cookies)) != null;
+    }
+
+    /**
+     * Returns the cookies which make up the stored context, in order, stopping at the first missing chunk.
+     */
+    private Map<String, String> readCookies(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+
+        if (cookies == null || cookies.length == 0) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> values = new HashMap<String, String>();
+        String prefix = cookieName + "_";
+
+        for (Cookie cookie : cookies) {
+            String name = cookie.getName();
+            if (name.equals(cookieName) || name.startsWith(prefix)) {
+                values.put(name, cookie.getValue());
+            }
+        }
+
+        Map<String, String> chunks = new LinkedHashMap<String, String>();
+
+        for (int i = 0; i < values.size(); i++) {
+            String name = chunkName(i);
+            String value = values.get(name);
+
+            if (value == null) {
+                break;
+            }
+
+            chunks.put(name, value);
+        }
+
+        return chunks;
+    }
+
+    private String joinChunks(Map<String, String> chunks) {
+        if (chunks.size() == 1) {
+            return chunks.values().iterator().next();
+        }
+
+        StringBuilder value = new StringBuilder();
+
+        for (String chunk : chunks.values()) {
+            value.append(chunk);
+        }
+
+        return value.toString();
+    }
+
+    private String chunkName(int index) {
+        return index == 0 ? cookieName : cookieName + "_" + index;
+    }
+
+    /**
+     * Returns the verified, unexpired contents of the cookie, or null if the value isn't valid.
+     */
+    private ContextToken getToken(String cookieValue) {
+        CookieDigest digest = new CookieDigest(cookieValue);
+        ContextToken token = verifiedCookies.get(digest);
+
+        if (token == null) {
+            try {
+                token = decode(cookieValue);
+            } catch (InvalidCookieException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Ignoring invalid security context cookie: " + e.getMessage());
+                }
+                return null;
+            }
+
+            verifiedCookies.put(digest, token);
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (token.expiryTime < now || token.authenticationTime + maxLifetimeSeconds * 1000L < now) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Security context cookie for '" + token.name + "' has expired");
+            }
+            return null;
+        }
+
+        return token;
+    }
+
+    /**
+     * Encodes the token as a cookie value, which has the format
+     * <pre>
+     * version (1 byte) | key id (4 bytes) | flags (1 byte) | payload | HMAC-SHA256 of the preceding bytes (32 bytes)
+     * </pre>
+     * encoded using the URL-safe Base64 alphabet without padding. The payload (which may be encrypted) contains the
+     * expiry time, the authentication time, the name and the authorities.
+     */
+    String encode(ContextToken token) {
+        SigningKey key = keys.get(0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeLong(token.expiryTime);
+            out.writeLong(token.authenticationTime);
+            out.writeUTF(token.name);
+            writeVarInt(out, token.authorities.length);
+            for (String authority : token.authorities) {
+                out.writeUTF(authority);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] payload = bytes.toByteArray();
+        int flags = 0;
+
+        if (encryptionEnabled) {
+            payload = key.getEncryptor().encrypt(payload);
+            flags |= FLAG_ENCRYPTED;
+        }
+
+        byte[] value = new byte[HEADER_LENGTH + payload.length + MAC_LENGTH];
+        value[0] = FORMAT_VERSION;
+        value[1] = (byte) (key.id >>> 24);
+        value[2] = (byte) (key.id >>> 16);
+        value[3] = (byte) (key.id >>> 8);
+        value[4] = (byte) key.id;
+        value[5] = (byte) flags;
+        System.arraycopy(payload, 0, value, HEADER_LENGTH, payload.length);
+        key.sign(value, HEADER_LENGTH + payload.length);
+
+        return toUrlSafeBase64(value);
+    }
+
+    ContextToken decode(String cookieValue) throws InvalidCookieException {
+        byte[] value = fromUrlSafeBase64(cookieValue);
+
+        if (value == null || value.length < HEADER_LENGTH + MAC_LENGTH) {
+            throw new InvalidCookieException("Cookie is not a valid encoded value");
+        }
+
+        if (value[0] != FORMAT_VERSION) {
+            throw new InvalidCookieException("Unsupported format version " + value[0]);
+        }
+
+        int keyId = ((value[1] & 0xff) << 24) | ((value[2] & 0xff) << 16) | ((value[3] & 0xff) << 8) | (value[4] & 0xff);
+        SigningKey key = keysById.get(keyId);
+
+        if (key == null) {
+            throw new InvalidCookieException("Cookie was signed with an unknown key");
+        }
+
+        int payloadLength = value.length - HEADER_LENGTH - MAC_LENGTH;
+
+        if (!key.verify(value, HEADER_LENGTH + payloadLength)) {
+            throw new InvalidCookieException("Cookie signature is invalid");
+        }
+
+        byte[] payload = new byte[payloadLength];
+        System.arraycopy(value, HEADER_LENGTH, payload, 0, payloadLength);
+
+        if ((value[5] & FLAG_ENCRYPTED) != 0) {
+            try {
+                payload = key.getEncryptor().decrypt(payload);
+            } catch (IllegalStateException e) {
+                throw new InvalidCookieException("Cookie could not be decrypted");
+            }
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            long expiryTime = in.readLong();
+            long authenticationTime = in.readLong();
+            String name = in.readUTF();
+            int count = readVarInt(in);
+
+            if (count > payloadLength) {
+                throw new InvalidCookieException("Invalid authority count " + count);
+            }
+
+            String[] authorities = new String[count];
+            for (int i = 0; i < count; i++) {
+                authorities[i] = in.readUTF();
+            }
+
+            return new ContextToken(name, authorities, authenticationTime, expiryTime, key == keys.get(0));
+        } catch (IOException e) {
+            throw new InvalidCookieException("Cookie payload is truncated");
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    private static String toUrlSafeBase64(byte[] bytes) {
+        byte[] encoded = Base64.encode(bytes);
+        int length = encoded.length;
+
+        while (length > 0 && encoded[length - 1] == '=') {
+            length--;
+        }
+
+        char[] chars = new char[length];
+
+        for (int i = 0; i < length; i++) {
+            char c = (char) encoded[i];
+            chars[i] = c == '+' ? '-' : c == '/' ? '_' : c;
+        }
+
+        return new String(chars);
+    }
+
+    private static byte[] fromUrlSafeBase64(String value) {
+        int length = value.length();
+        byte[] encoded = new byte[(length + 3) & ~3];
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '-') {
+                c = '+';
+            } else if (c == '_') {
+                c = '/';
+            } else if (c == '+' || c == '/' || c == '=' || c > 0x7f) {
+                return null;
+            }
+            encoded[i] = (byte) c;
+        }
+
+        Arrays.fill(encoded, length, encoded.length, (byte) '=');
+
+        if (!Base64.isBase64(encoded)) {
+            return null;
+        }
+
+        return Base64.decode(encoded);
+    }
+
+    private void writeCookies(ContextToken token, Collection<String> existingCookies, HttpServletRequest request,
+            HttpServletResponse response) {
+        String value = encode(token);
+        int maxAge = (int) ((token.expiryTime - System.currentTimeMillis() + 999) / 1000);
+        int chunks = 0;
+
+        for (int start = 0; start < value.length(); start += maxCookieLength) {
+            String chunk = value.substring(start, Math.min(value.length(), start + maxCookieLength));
+            response.addCookie(createCookie(chunkName(chunks++), chunk, maxAge, request));
+        }
+
+        // Remove any chunks left over from a longer value
+        for (String name : existingCookies) {
+            if (!name.equals(cookieName) && Integer.parseInt(name.substring(cookieName.length() + 1)) >= chunks) {
+                response.addCookie(createCookie(name, null, 0, request));
+            }
+        }
+    }
+
+    private void cancelCookies(Collection<String> existingCookies, HttpServletRequest request,
+            HttpServletResponse response) {
+        for (String name : existingCookies) {
+            response.addCookie(createCookie(name, null, 0, request));
+        }
+    }
+
+    private Cookie createCookie(String name, String value, int maxAge, HttpServletRequest request) {
+        Cookie cookie = new Cookie(name, value);
+        String contextPath = request.getContextPath();
+        cookie.setMaxAge(maxAge);
+        cookie.setPath(contextPath.length() > 0 ? contextPath : "/");
+        cookie.setSecure(useSecureCookie == null ? request.isSecure() : useSecureCookie.booleanValue());
+
+        if (setHttpOnlyMethod != null) {
+            ReflectionUtils.invokeMethod(setHttpOnlyMethod, cookie, Boolean.TRUE);
+        }
+
+        return cookie;
+    }
+
+    /**
+     * Sets the name of the cookie (and the prefix of the names of any additional chunks). Defaults to
+     * {@value #DEFAULT_COOKIE_NAME}.
+     */
+    public void setCookieName(String cookieName) {
+        Assert.hasLength(cookieName, "cookieName cannot be empty or null");
+        this.cookieName = cookieName;
+    }
+
+    /**
+     * Sets the number of seconds for which the stored context is valid without being re-issued. Defaults to 1800.
+     */
+    public void setTokenValiditySeconds(int tokenValiditySeconds) {
+        Assert.isTrue(tokenValiditySeconds > 0, "tokenValiditySeconds must be positive");
+        this.tokenValiditySeconds = tokenValiditySeconds;
+    }
+
+    /**
+     * Sets the maximum number of seconds for which a cookie can be re-issued after the user authenticated, after which
+     * they will have to authenticate again. Defaults to 43200 (12 hours).
+     */
+    public void setMaxLifetimeSeconds(int maxLifetimeSeconds) {
+        Assert.isTrue(maxLifetimeSeconds > 0, "maxLifetimeSeconds must be positive");
+        this.maxLifetimeSeconds = maxLifetimeSeconds;
+    }
+
+    /**
+     * Sets the maximum length of the value of each cookie, beyond which the value is split between several cookies.
+     * Defaults to 3800, which leaves room for the name and attributes within the 4096 bytes supported by browsers.
+     */
+    public void setMaxCookieLength(int maxCookieLength) {
+        Assert.isTrue(maxCookieLength > 0, "maxCookieLength must be positive");
+        this.maxCookieLength = maxCookieLength;
+    }
+
+    /**
+     * Whether the contents of the cookie should be encrypted, as well as signed. Defaults to false. Cookies written
+     * with and without encryption are both accepted, so this can be changed without logging users out.
+     */
+    public void setEncryptionEnabled(boolean encryptionEnabled) {
+        this.encryptionEnabled = encryptionEnabled;
+    }
+
+    /**
+     * Whether the cookie should be flagged as secure or not. Secure cookies can only be sent over an HTTPS
+     * connection. By default, the cookie will be secure if the request is secure.
+     */
+    public void setUseSecureCookie(boolean useSecureCookie) {
+        this.useSecureCookie = useSecureCookie;
+    }
+
+    /**
+     * Sets the maximum number of verified cookie values which are cached. Defaults to 10000.
+     */
+    public void setVerificationCacheSize(int verificationCacheSize) {
+        Assert.isTrue(verificationCacheSize > 0, "verificationCacheSize must be positive");
+        this.verifiedCookies = new ConcurrentLruCache<CookieDigest, ContextToken>(verificationCacheSize);
+    }
+
+    public void setTrustResolver(AuthenticationTrustResolver trustResolver) {
+        Assert.notNull(trustResolver, "trustResolver cannot be null");
+        this.trustResolver = trustResolver;
+    }
+
+    /**
+     * @return the number of cookie values which were found in the verification cache
+     */
+    public long getCacheHitCount() {
+        return verifiedCookies.getHitCount();
+    }
+
+    /**
+     * @return the number of cookie values which had to be verified, because they weren't in the cache
+     */
+    public long getCacheMissCount() {
+        return verifiedCookies.getMissCount();
+    }
+
+    //~ Inner Classes ==================================================================================================
+
+    /**
+     * Wrapper that writes the cookies when the response is committed, or at the end of the request. A cookie which only
+     * needs to be re-issued is written as soon as the context has been loaded, since the response may be committed
+     * without the wrapper being aware of it.
+     */
+    final class SaveToCookieResponseWrapper extends SaveContextOnUpdateOrErrorResponseWrapper {
+        private final HttpServletRequest request;
+        private final Collection<String> existingCookies;
+        private final ContextToken tokenBeforeExecution;
+        private final Authentication authBeforeExecution;
+        private boolean reissued;
+
+        SaveToCookieResponseWrapper(HttpServletResponse response, HttpServletRequest request,
+                Collection<String> existingCookies, ContextToken token, SecurityContext context) {
+            super(response, false);
+            this.request = request;
+            this.existingCookies = existingCookies;
+            this.tokenBeforeExecution = token;
+            this.authBeforeExecution = context.getAuthentication();
+        }
+
+        /**
+         * Re-issues the cookie for the unchanged {@code Authentication}, if it was signed with an old key or half of
+         * its validity period has elapsed. The original authentication time is retained.
+         */
+        void reissueIfRequired() {
+            if (tokenBeforeExecution == null || !needsReissue(tokenBeforeExecution, System.currentTimeMillis())) {
+                return;
+            }
+
+            writeCookies(tokenBeforeExecution.reissue(expiryTime(tokenBeforeExecution.authenticationTime)),
+                    existingCookies, request, this);
+            reissued = true;
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Re-issued security context cookie for '" + tokenBeforeExecution.name + "'");
+            }
+        }
+
+        @Override
+        protected void saveContext(SecurityContext context) {
+            Authentication authentication = context.getAuthentication();
+
+            if (authentication == null || trustResolver.isAnonymous(authentication)) {
+                if (!existingCookies.isEmpty()) {
+                    logger.debug("No authenticated user in SecurityContext. Removing security context cookie.");
+                    cancelCookies(existingCookies, request, this);
+                    warnIfCommitted();
+                }
+                return;
+            }
+
+            if (authentication == authBeforeExecution) {
+                if (reissued || !needsReissue(tokenBeforeExecution, System.currentTimeMillis())) {
+                    return;
+                }
+                // The validity period has run down while processing the request
+                reissueIfRequired();
+                warnIfCommitted();
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            ContextToken token = new ContextToken(authentication, now, expiryTime(now));
+            writeCookies(token, existingCookies, request, this);
+            warnIfCommitted();
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("SecurityContext for '" + token.name + "' stored in cookie: '" + cookieName + "'");
+            }
+        }
+
+        private void warnIfCommitted() {
+            if (isCommitted()) {
+                logger.warn("The response was committed before the SecurityContext was saved, so the security "
+                        + "context cookie could not be updated");
+            }
+        }
+    }
+
+    /**
+     * The expiry time of a cookie issued now: the end of the validity period, or of the maximum lifetime if that is
+     * sooner.
+     */
+    private long expiryTime(long authenticationTime) {
+        return Math.min(System.currentTimeMillis() + tokenValiditySeconds * 1000L,
+                authenticationTime + maxLifetimeSeconds * 1000L);
+    }
+
+    private boolean needsReissue(ContextToken token, long now) {
+        if (!token.signedWithCurrentKey) {
+            return true;
+        }
+
+        // There's no point re-issuing a cookie whose expiry can't be extended any further
+        return token.expiryTime < token.authenticationTime + maxLifetimeSeconds * 1000L
+                && token.expiryTime - now < tokenValiditySeconds * 500L;
+    }
+
+    /**
+     * The contents of a verified cookie.
+     */
+    static final class ContextToken {
+        final String name;
+        final String[] authorities;
+        final long authenticationTime;
+        final long expiryTime;
+        final boolean signedWithCurrentKey;
+        private final List<GrantedAuthority> grantedAuthorities;
+
+        ContextToken(String name, String[] authorities, long authenticationTime, long expiryTime,
+                boolean signedWithCurrentKey) {
+            this.name = name;
+            this.authorities = authorities;
+            this.authenticationTime = authenticationTime;
+            this.expiryTime = expiryTime;
+            this.signedWithCurrentKey = signedWithCurrentKey;
+            List<GrantedAuthority> grantedAuthorities = new ArrayList<GrantedAuthority>(authorities.length);
+            for (String authority : authorities) {
+                grantedAuthorities.add(new SimpleGrantedAuthority(authority));
+            }
+            this.grantedAuthorities = Collections.unmodifiableList(grantedAuthorities);
+        }
+
+        ContextToken(Authentication authentication, long authenticationTime, long expiryTime) {
+            this(authentication.getName(), getAuthorities(authentication), authenticationTime, expiryTime, true);
+        }
+
+        private static String[] getAuthorities(Authentication authentication) {
+            Collection<? extends GrantedAuthority> authorities = authentication.getAuthorities();
+            List<String> names = new ArrayList<String>(authorities.size());
+
+            for (GrantedAuthority authority : authorities) {
+                // Authorities which can't be represented as a String can't be stored
+                if (authority.getAuthority() != null) {
+                    names.add(authority.getAuthority());
+                }
+            }
+
+            return names.toArray(new String[names.size()]);
+        }
+
+        Authentication createAuthentication() {
+            return new UsernamePasswordAuthenticationToken(name, null, grantedAuthorities);
+        }
+
+        ContextToken reissue(long expiryTime) {
+            return new ContextToken(name, authorities, authenticationTime, expiryTime, true);
+        }
+    }
+
+    private static final class SigningKey {
+        final int id;
+        private final String secret;
+        private final SecretKeySpec macKey;
+        private BytesEncryptor encryptor;
+
+        SigningKey(String secret) {
+            this.secret = secret;
+            byte[] secretBytes = Utf8.encode(secret);
+            byte[] digest = sha256(secretBytes);
+            this.id = ((digest[0] & 0xff) << 24) | ((digest[1] & 0xff) << 16) | ((digest[2] & 0xff) << 8)
+                    | (digest[3] & 0xff);
+            this.macKey = new SecretKeySpec(secretBytes, MAC_ALGORITHM);
+        }
+
+        /**
+         * Writes the MAC of the first {@code length} bytes of the value into the bytes which follow them.
+         */
+        void sign(byte[] value, int length) {
+            Mac mac = createMac();
+            mac.update(value, 0, length);
+            try {
+                mac.doFinal(value, length);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        boolean verify(byte[] value, int length) {
+            Mac mac = createMac();
+            mac.update(value, 0, length);
+            byte[] expected = mac.doFinal();
+            byte[] actual = new byte[MAC_LENGTH];
+            System.arraycopy(value, length, actual, 0, MAC_LENGTH);
+
+            return MessageDigest.isEqual(expected, actual);
+        }
+
+        /**
+         * The encryptor is created on demand, since deriving the AES key is relatively expensive. The salt is
+         * derived from the secret, so that all servers using the same secret create the same key.
+         */
+        synchronized BytesEncryptor getEncryptor() {
+            if (encryptor == null) {
+                byte[] salt = new byte[8];
+                System.arraycopy(sha256(Utf8.encode("salt:" + secret)), 0, salt, 0, salt.length);
+                encryptor = Encryptors.standard(secret, new String(Hex.encode(salt)));
+            }
+
+            return encryptor;
+        }
+
+        private Mac createMac() {
+            try {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(macKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to create " + MAC_ALGORITHM + " Mac", e);
+            }
+        }
+    }
+
+    /**
+     * A SHA-256 digest of a cookie value, used as the key for the verification cache, so that the (potentially long)
+     * values themselves don't need to be retained.
+     */
+    private static final class CookieDigest {
+        private final byte[] digest;
+        private final int hashCode;
+
+        CookieDigest(String cookieValue) {
+            this.digest = sha256(Utf8.encode(cookieValue));
+            this.hashCode = ((digest[0] & 0xff) << 24) | ((digest[1] & 0xff) << 16) | ((digest[2] & 0xff) << 8)
+                    | (digest[3] & 0xff);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CookieDigest && Arrays.equals(digest, ((CookieDigest) obj).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No SHA-256 algorithm available!");
+        }
+    }
+
+    static final class InvalidCookieException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        InvalidCookieException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.context;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+
+/**
+ * A {@code SecurityContext} returned by a {@link SecurityContextRepository} which doesn't load the stored context
+ * until it is first used. Filters which only need to supply an {@code Authentication} when there isn't one already,
+ * such as the {@code AnonymousAuthenticationFilter}, can use {@link #setDefaultAuthentication(Authentication)} so
+ * that they don't cause it to be loaded.
+ *
+ * @since 3.2
+ * @see HttpSessionSecurityContextRepository#setDeferredLoading(boolean)
+ */
+public interface DeferredLoadingSecurityContext extends SecurityContext {
+
+    /**
+     * @return true once the stored context has been loaded
+     */
+    boolean isLoaded();
+
+    /**
+     * Sets an {@code Authentication} which will be used if the stored context doesn't contain one. If the context
+     * hasn't been loaded yet, this doesn't load it.
+     *
+     * @param authentication the authentication to use if there is no other
+     */
+    void setDefaultAuthentication(Authentication authentication);
+}
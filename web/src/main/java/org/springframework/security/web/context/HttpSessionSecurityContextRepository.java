@@ -1,5 +1,7 @@
 package org.springframework.security.web.context;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
@@ -16,6 +18,9 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.core.context.SecurityContextSerializer;
+import org.springframework.security.core.context.SerializingSecurityContext;
+import org.springframework.security.core.context.VersionedSecurityContext;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 
@@ -50,6 +55,29 @@ import org.springframework.util.ClassUtils;
  * Only do this if you really need to conserve server memory and ensure all classes using the
  * {@code SecurityContextHolder} are designed to have no persistence of the {@code SecurityContext}
  * between web requests.
+ * <p>
+ * If {@link #setDeferredLoading(boolean) deferredLoading} is enabled, {@code loadContext} only checks whether there
+ * is a session, without reading the context attribute from it. Instead, it returns a {@code SecurityContext} which
+ * reads the stored context from the session the first time its {@code getAuthentication} or
+ * {@code setAuthentication} method is called. If the context is never used during the request, saving it at the end
+ * of the request is skipped entirely. This is only useful where reading session attributes is expensive (for
+ * example, with a remote session store). The context is a {@link DeferredLoadingSecurityContext}, so the
+ * {@code AnonymousAuthenticationFilter} supplies its token without loading it, and the
+ * {@code FilterSecurityInterceptor} doesn't use the context for requests which have no configuration attributes.
+ * Requests for other URLs, or which are processed by other filters which use the authentication, still load it.
+ * <p>
+ * Where session writes are expensive (for example, with a replicated session store, where each
+ * {@code setAttribute} call results in the session being serialized and transmitted), enabling
+ * {@link #setDirtyTracking(boolean) dirtyTracking} will minimize them. New contexts are then created as
+ * {@link VersionedSecurityContext}s, which record whether they have been changed since they were last stored.
+ * An unchanged context which was loaded from the current session isn't written again, even if another concurrent
+ * request has already stored a change to it, and the session attribute isn't re-read to check that it is present. The
+ * number of session writes which have been performed and skipped are available from {@link #getSessionWriteCount()}
+ * and {@link #getSkippedSessionWriteCount()}.
+ * <p>
+ * The size of the serialized session can be reduced by setting a
+ * {@link #setSecurityContextSerializer(SecurityContextSerializer) securityContextSerializer}, such as
+ * {@link org.springframework.security.core.context.CompactSecurityContextSerializer CompactSecurityContextSerializer}.
  *
  * @author Luke Taylor
  * @since 3.0
@@ -68,6 +96,11 @@ public class HttpSessionSecurityContextRepository implements SecurityContextRepo
     private boolean disableUrlRewriting = false;
     private boolean isServlet3 = ClassUtils.hasMethod(ServletRequest.class, "startAsync");
     private String springSecurityContextKey = SPRING_SECURITY_CONTEXT_KEY;
+    private boolean deferredLoading = false;
+    private boolean dirtyTracking = false;
+    private SecurityContextSerializer securityContextSerializer;
+    private final AtomicLong sessionWrites = new AtomicLong();
+    private final AtomicLong skippedSessionWrites = new AtomicLong();
 
     private final AuthenticationTrustResolver authenticationTrustResolver = new AuthenticationTrustResolverImpl();
 
@@ -81,9 +114,20 @@ public class HttpSessionSecurityContextRepository implements SecurityContextRepo
     public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
         HttpServletRequest request = requestResponseHolder.getRequest();
         HttpServletResponse response = requestResponseHolder.getResponse();
+
+        if (deferredLoading) {
+            // Only the existence of the session is checked now, so that an invalidation can still be detected
+            DeferredSecurityContext context = new DeferredSecurityContext(request, request.getSession(false));
+            wrapRequestAndResponse(requestResponseHolder,
+                    new SaveToSessionResponseWrapper(response, request, context));
+
+            return context;
+        }
+
         HttpSession httpSession = request.getSession(false);
 
         SecurityContext context = readSecurityContextFromSession(httpSession);
+        boolean contextFromSession = context != null;
 
         if (context == null) {
             if (logger.isDebugEnabled()) {
@@ -94,14 +138,21 @@ public class HttpSessionSecurityContextRepository implements SecurityContextRepo
 
         }
 
-        SaveToSessionResponseWrapper wrappedResponse = new SaveToSessionResponseWrapper(response, request, httpSession != null, context);
+        SaveToSessionResponseWrapper wrappedResponse = new SaveToSessionResponseWrapper(response, request, httpSession,
+                contextFromSession, context);
+        wrapRequestAndResponse(requestResponseHolder, wrappedResponse);
+
+        return context;
+    }
+
+    private void wrapRequestAndResponse(HttpRequestResponseHolder requestResponseHolder,
+            SaveToSessionResponseWrapper wrappedResponse) {
         requestResponseHolder.setResponse(wrappedResponse);
 
         if(isServlet3) {
-            requestResponseHolder.setRequest(new Servlet3SaveToSessionRequestWrapper(request, wrappedResponse));
+            requestResponseHolder.setRequest(
+                    new Servlet3SaveToSessionRequestWrapper(requestResponseHolder.getRequest(), wrappedResponse));
         }
-
-        return context;
     }
 
     public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
@@ -176,11 +227,22 @@ public class HttpSessionSecurityContextRepository implements SecurityContextRepo
      * By default, calls {@link SecurityContextHolder#createEmptyContext()} to obtain a new context (there should be
      * no context present in the holder when this method is called). Using this approach the context creation
      * strategy is decided by the {@link SecurityContextHolderStrategy} in use. The default implementations
-     * will return a new <tt>SecurityContextImpl</tt>.
+     * will return a new <tt>SecurityContextImpl</tt>. If {@link #setDirtyTracking(boolean) dirtyTracking} is
+     * enabled, a new {@link VersionedSecurityContext} is returned instead, and if a
+     * {@link #setSecurityContextSerializer(SecurityContextSerializer) securityContextSerializer} is set, a new
+     * {@link SerializingSecurityContext} which uses it.
      *
      * @return a new SecurityContext instance. Never null.
      */
     protected SecurityContext generateNewContext() {
+        if (securityContextSerializer != null) {
+            return new SerializingSecurityContext(securityContextSerializer);
+        }
+
+        if (dirtyTracking) {
+            return new VersionedSecurityContext();
+        }
+
         return SecurityContextHolder.createEmptyContext();
     }
 
@@ -219,6 +281,71 @@ public class HttpSessionSecurityContextRepository implements SecurityContextRepo
         this.springSecurityContextKey = springSecurityContextKey;
     }
 
+    /**
+     * If set to true, the context will not be read from the session until it is actually used. Defaults to false.
+     * <p>
+     * This only avoids reading the session for requests which don't use the context at all. In the usual
+     * configuration, these are requests for URLs which the {@code FilterSecurityInterceptor} has no configuration
+     * attributes for.
+     *
+     * @param deferredLoading whether loading of the security context from the session should be deferred until the
+     * context's {@code getAuthentication} or {@code setAuthentication} method is first called.
+     * @since 3.2
+     */
+    public void setDeferredLoading(boolean deferredLoading) {
+        this.deferredLoading = deferredLoading;
+    }
+
+    /**
+     * If set to true, new contexts will be {@link VersionedSecurityContext}s and a context loaded from the session
+     * will only be written back if it has been changed since it was last stored. Defaults to false.
+     *
+     * @param dirtyTracking whether to use versioned contexts to minimize session writes
+     * @since 3.2
+     */
+    public void setDirtyTracking(boolean dirtyTracking) {
+        this.dirtyTracking = dirtyTracking;
+    }
+
+    /**
+     * Sets the serializer which will be used to produce the serialized form of the contexts stored in the session.
+     * By default, standard Java serialization is used.
+     * <p>
+     * The contexts are stored as {@link SerializingSecurityContext}s, so this only affects the data produced when the
+     * container serializes the session (for replication or persistence). Contexts which were stored without a
+     * serializer can still be read, and are converted when they are next stored. The serializer is
+     * {@link SerializingSecurityContext#registerSerializer(SecurityContextSerializer) registered} so that sessions
+     * can be read before any context has been created.
+     *
+     * @param securityContextSerializer the serializer to use, such as a {@code CompactSecurityContextSerializer}
+     * @throws IllegalArgumentException if a different serializer of the same class has already been registered
+     * @since 3.2
+     */
+    public void setSecurityContextSerializer(SecurityContextSerializer securityContextSerializer) {
+        this.securityContextSerializer = securityContextSerializer;
+
+        if (securityContextSerializer != null) {
+            SerializingSecurityContext.registerSerializer(securityContextSerializer);
+        }
+    }
+
+    /**
+     * @return the number of times the security context has been stored in the session
+     * @since 3.2
+     */
+    public long getSessionWriteCount() {
+        return sessionWrites.get();
+    }
+
+    /**
+     * @return the number of times saving the security context didn't require a session write, because it (or
+     * its contents) hadn't changed, or because it was never loaded
+     * @since 3.2
+     */
+    public long getSkippedSessionWriteCount() {
+        return skippedSessionWrites.get();
+    }
+
     //~ Inner Classes ==================================================================================================
 
     private static class Servlet3SaveToSessionRequestWrapper extends HttpServletRequestWrapper {
@@ -254,31 +381,50 @@ public class HttpSessionSecurityContextRepository implements SecurityContextRepo
     final class SaveToSessionResponseWrapper extends SaveContextOnUpdateOrErrorResponseWrapper {
 
         private final HttpServletRequest request;
-        private final boolean httpSessionExistedAtStartOfRequest;
-        private final SecurityContext contextBeforeExecution;
-        private final Authentication authBeforeExecution;
+        private final DeferredSecurityContext deferredContext;
+        private boolean httpSessionExistedAtStartOfRequest;
+        /** The session the context was read from, which is the one at the start of the request unless deferred */
+        private HttpSession httpSessionContextWasReadFrom;
+        private boolean contextFromSession;
+        private SecurityContext contextBeforeExecution;
+        private Authentication authBeforeExecution;
 
         /**
          * Takes the parameters required to call <code>saveContext()</code> successfully in
          * addition to the request and the response object we are wrapping.
          *
          * @param request the request object (used to obtain the session, if one exists).
-         * @param httpSessionExistedAtStartOfRequest indicates whether there was a session in place before the
-         *        filter chain executed. If this is true, and the session is found to be null, this indicates that it was
-         *        invalidated during the request and a new session will now be created.
+         * @param httpSession the session in place before the filter chain executed (may be null). If there was a
+         *        session, and it is found to be null, this indicates that it was invalidated during the request and
+         *        a new session will now be created.
+         * @param contextFromSession whether the context was read from the session
          * @param context the context before the filter chain executed.
          *        The context will only be stored if it or its contents changed during the request.
          */
         SaveToSessionResponseWrapper(HttpServletResponse response, HttpServletRequest request,
-                                                      boolean httpSessionExistedAtStartOfRequest,
+                                                      HttpSession httpSession, boolean contextFromSession,
                                                       SecurityContext context) {
             super(response, disableUrlRewriting);
             this.request = request;
-            this.httpSessionExistedAtStartOfRequest = httpSessionExistedAtStartOfRequest;
+            this.deferredContext = null;
+            this.httpSessionExistedAtStartOfRequest = httpSession != null;
+            this.httpSessionContextWasReadFrom = httpSession;
+            this.contextFromSession = contextFromSession;
             this.contextBeforeExecution = context;
             this.authBeforeExecution = context.getAuthentication();
         }
 
+        /**
+         * Used when loading of the context is deferred. The state which would normally be recorded at the start of
+         * the request is taken from the deferred context when it is loaded.
+         */
+        SaveToSessionResponseWrapper(HttpServletResponse response, HttpServletRequest request,
+                DeferredSecurityContext context) {
+            super(response, disableUrlRewriting);
+            this.request = request;
+            this.deferredContext = context;
+        }
+
         /**
          * Stores the supplied security context in the session (if available) and if it has changed since it was
          * set at the start of the request. If the AuthenticationTrustResolver identifies the current user as
@@ -291,6 +437,28 @@ public class HttpSessionSecurityContextRepository implements SecurityContextRepo
          */
         @Override
         protected void saveContext(SecurityContext context) {
+            if (deferredContext != null) {
+                if (context == deferredContext && !deferredContext.isLoaded()) {
+                    skippedSessionWrites.incrementAndGet();
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("SecurityContext was not used during the request - not saving to HttpSession");
+                    }
+                    return;
+                }
+
+                // A different context may have been set, in which case we still need to know what was stored
+                SecurityContext loaded = deferredContext.getDelegate();
+                httpSessionExistedAtStartOfRequest = deferredContext.httpSessionAtStartOfRequest != null;
+                httpSessionContextWasReadFrom = deferredContext.httpSession;
+                contextFromSession = deferredContext.fromSession;
+                contextBeforeExecution = loaded;
+                authBeforeExecution = deferredContext.authenticationWhenLoaded;
+
+                if (context == deferredContext) {
+                    context = loaded;
+                }
+            }
+
             final Authentication authentication = context.getAuthentication();
             HttpSession httpSession = request.getSession(false);
 
@@ -316,18 +484,54 @@ public class HttpSessionSecurityContextRepository implements SecurityContextRepo
             // actually changed in this thread (see SEC-37, SEC-1307, SEC-1528)
             if (httpSession != null) {
                 // We may have a new session, so check also whether the context attribute is set SEC-1561
-                if (contextChanged(context) || httpSession.getAttribute(springSecurityContextKey) == null) {
+                if (contextChanged(context) || !isStoredIn(httpSession)) {
+                    if (securityContextSerializer != null && !(context instanceof SerializingSecurityContext)) {
+                        SecurityContext serializing = new SerializingSecurityContext(securityContextSerializer);
+                        serializing.setAuthentication(authentication);
+                        context = serializing;
+                    }
+
+                    int version = context instanceof VersionedSecurityContext ?
+                            ((VersionedSecurityContext) context).getVersion() : 0;
+
                     httpSession.setAttribute(springSecurityContextKey, context);
+                    sessionWrites.incrementAndGet();
+
+                    if (context instanceof VersionedSecurityContext) {
+                        ((VersionedSecurityContext) context).setPersistedVersion(version);
+                    }
 
                     if (logger.isDebugEnabled()) {
                         logger.debug("SecurityContext stored to HttpSession: '" + context + "'");
                     }
+                } else {
+                    skippedSessionWrites.incrementAndGet();
                 }
             }
         }
 
         private boolean contextChanged(SecurityContext context) {
-            return context != contextBeforeExecution || context.getAuthentication() != authBeforeExecution;
+            if (context != contextBeforeExecution) {
+                return true;
+            }
+
+            if (dirtyTracking && context instanceof VersionedSecurityContext) {
+                return ((VersionedSecurityContext) context).isDirty();
+            }
+
+            return context.getAuthentication() != authBeforeExecution;
+        }
+
+        /**
+         * Checks whether the (unchanged) context is already stored in the session.
+         */
+        private boolean isStoredIn(HttpSession httpSession) {
+            // With dirty tracking, there's no need to check a context which was read from the same session
+            if (dirtyTracking && contextFromSession && httpSession == httpSessionContextWasReadFrom) {
+                return true;
+            }
+
+            return httpSession.getAttribute(springSecurityContextKey) != null;
         }
 
         private HttpSession createNewSessionIfAllowed(SecurityContext context) {
@@ -378,4 +582,99 @@ public class HttpSessionSecurityContextRepository implements SecurityContextRepo
             return null;
         }
     }
+
+    /**
+     * A {@code SecurityContext} which loads the real context from the session when it is first used.
+     */
+    final class DeferredSecurityContext implements DeferredLoadingSecurityContext {
+        private static final long serialVersionUID = 1L;
+
+        private final transient HttpServletRequest request;
+        private final transient HttpSession httpSessionAtStartOfRequest;
+        private SecurityContext delegate;
+        private transient HttpSession httpSession;
+        private boolean fromSession;
+        private Authentication authenticationWhenLoaded;
+        private transient Authentication defaultAuthentication;
+
+        DeferredSecurityContext(HttpServletRequest request, HttpSession httpSessionAtStartOfRequest) {
+            this.request = request;
+            this.httpSessionAtStartOfRequest = httpSessionAtStartOfRequest;
+        }
+
+        public boolean isLoaded() {
+            return delegate != null;
+        }
+
+        public void setDefaultAuthentication(Authentication authentication) {
+            if (delegate == null) {
+                defaultAuthentication = authentication;
+            } else if (delegate.getAuthentication() == null) {
+                delegate.setAuthentication(authentication);
+            }
+        }
+
+        SecurityContext getDelegate() {
+            if (delegate == null) {
+                HttpSession httpSession = request.getSession(false);
+                SecurityContext context = readSecurityContextFromSession(httpSession);
+                fromSession = context != null;
+
+                if (context == null) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("No SecurityContext was available from the HttpSession: " + httpSession +". " +
+                                "A new one will be created.");
+                    }
+                    context = generateNewContext();
+                }
+
+                this.httpSession = httpSession;
+                authenticationWhenLoaded = context.getAuthentication();
+
+                // Applied as if it had been set once the context was loaded at the start of the request
+                if (authenticationWhenLoaded == null && defaultAuthentication != null) {
+                    context.setAuthentication(defaultAuthentication);
+                }
+
+                defaultAuthentication = null;
+                delegate = context;
+            }
+
+            return delegate;
+        }
+
+        public Authentication getAuthentication() {
+            return getDelegate().getAuthentication();
+        }
+
+        public void setAuthentication(Authentication authentication) {
+            getDelegate().setAuthentication(authentication);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof DeferredSecurityContext) {
+                obj = ((DeferredSecurityContext) obj).getDelegate();
+            }
+
+            return getDelegate().equals(obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return getDelegate().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return delegate == null ? "DeferredSecurityContext [not loaded]" : delegate.toString();
+        }
+
+        /**
+         * The loaded context is serialized in place of this object, which depends on the request.
+         */
+        private Object writeReplace() {
+            return getDelegate();
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package org.springframework.security.web.firewall;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -15,16 +17,23 @@ import javax.servlet.http.HttpServletResponse;
  * <p>
  * If any un-normalized paths are found (containing directory-traversal character sequences), the request will be
  * rejected immediately. Most containers normalize the paths before performing the servlet-mapping, but again this is
- * not guaranteed by the servlet spec.
+ * not guaranteed by the servlet spec. The number of rejected requests is available from
+ * {@link #getRejectedRequestCount()}.
+ * <p>
+ * Since every request passes through the firewall, the paths are stripped and checked in a single scan and the
+ * {@code servletPath} and {@code pathInfo} values are only copied if they actually contain path parameters or
+ * multiple consecutive '/' characters.
  *
  * @author Luke Taylor
  */
 public class DefaultHttpFirewall implements HttpFirewall {
+    private final AtomicLong rejectedRequests = new AtomicLong();
 
     public FirewalledRequest getFirewalledRequest(HttpServletRequest request) throws RequestRejectedException {
-        FirewalledRequest fwr = new RequestWrapper(request);
+        RequestWrapper fwr = new RequestWrapper(request);
 
-        if (!isNormalized(fwr.getServletPath()) || !isNormalized(fwr.getPathInfo())) {
+        if (!fwr.isNormalized()) {
+            rejectedRequests.incrementAndGet();
             throw new RequestRejectedException("Un-normalized paths are not supported: " + fwr.getServletPath() +
                 (fwr.getPathInfo() != null ? fwr.getPathInfo() : ""));
         }
@@ -37,31 +46,10 @@ public class DefaultHttpFirewall implements HttpFirewall {
     }
 
     /**
-     * Checks whether a path is normalized (doesn't contain path traversal sequences like "./", "/../" or "/.")
-     *
-     * @param path the path to test
-     * @return true if the path doesn't contain any path-traversal character sequences.
+     * @return the number of requests which have been rejected because their paths were not normalized
      */
-    private boolean isNormalized(String path) {
-        if (path == null) {
-            return true;
-        }
-
-        for (int j = path.length(); j > 0;) {
-            int i = path.lastIndexOf('/', j - 1);
-            int gap = j - i;
-
-            if (gap == 2 && path.charAt(i+1) == '.') {
-                // ".", "/./" or "/."
-                return false;
-            } else if (gap == 3 && path.charAt(i+1) == '.'&& path.charAt(i+2) == '.') {
-                return false;
-            }
-
-            j = i;
-        }
-
-        return true;
+    public long getRejectedRequestCount() {
+        return rejectedRequests.get();
     }
 
 }
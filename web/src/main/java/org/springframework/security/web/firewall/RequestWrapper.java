@@ -7,7 +7,6 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 
 import java.io.IOException;
-import java.util.*;
 
 /**
  * Request wrapper which ensures values of {@code servletPath} and {@code pathInfo} are returned which are suitable for
@@ -30,6 +29,7 @@ final class RequestWrapper extends FirewalledRequest {
     private final String strippedServletPath;
     private final String strippedPathInfo;
     private boolean stripPaths = true;
+    private boolean normalized = true;
 
     public RequestWrapper(HttpServletRequest request) {
         super(request);
@@ -44,6 +44,9 @@ final class RequestWrapper extends FirewalledRequest {
     /**
      * Removes path parameters from each path segment in the supplied path and truncates sequences of multiple '/'
      * characters to a single '/'.
+     * <p>
+     * This is done in a single scan of the path, which also checks whether the result contains any "." or ".."
+     * segments (see {@link #isNormalized()}). A new string is only created if the path actually needs to be changed.
      *
      * @param path either the {@code servletPath} and {@code pathInfo} from the original request
      *
@@ -55,39 +58,65 @@ final class RequestWrapper extends FirewalledRequest {
             return null;
         }
 
-        int scIndex = path.indexOf(';');
-
-        if (scIndex < 0) {
-            int doubleSlashIndex = path.indexOf("//");
-            if (doubleSlashIndex < 0) {
-                // Most likely case, no parameters in any segment and no '//', so no stripping required
-                return path;
+        int length = path.length();
+        // Only allocated once a character has to be removed. Until then, the output is the same as the input.
+        char[] stripped = null;
+        int strippedLength = 0;
+        boolean inParameters = false;
+        int segmentLength = 0;
+        boolean segmentIsDots = true;
+
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+            boolean keep;
+
+            if (c == '/') {
+                checkSegment(segmentLength, segmentIsDots);
+                segmentLength = 0;
+                segmentIsDots = true;
+                inParameters = false;
+                keep = i == 0 || path.charAt(i - 1) != '/';
+            } else if (inParameters) {
+                keep = false;
+            } else if (c == ';') {
+                inParameters = true;
+                keep = false;
+            } else {
+                segmentLength++;
+                segmentIsDots &= c == '.';
+                keep = true;
             }
-        }
-
-        StringTokenizer st = new StringTokenizer(path, "/");
-        StringBuilder stripped = new StringBuilder(path.length());
 
-        if (path.charAt(0) == '/') {
-            stripped.append('/');
+            if (keep) {
+                if (stripped != null) {
+                    stripped[strippedLength] = c;
+                }
+                strippedLength++;
+            } else if (stripped == null) {
+                stripped = new char[length];
+                path.getChars(0, strippedLength, stripped, 0);
+            }
         }
 
-        while(st.hasMoreTokens()) {
-            String segment = st.nextToken();
-            scIndex = segment.indexOf(';');
+        checkSegment(segmentLength, segmentIsDots);
 
-            if (scIndex >= 0) {
-                segment = segment.substring(0, scIndex);
-            }
-            stripped.append(segment).append('/');
-        }
+        return stripped == null ? path : new String(stripped, 0, strippedLength);
+    }
 
-        // Remove the trailing slash if the original path didn't have one
-        if (path.charAt(path.length() - 1) != '/') {
-            stripped.deleteCharAt(stripped.length() - 1);
+    /**
+     * Records the path as un-normalized if a segment is "." or "..".
+     */
+    private void checkSegment(int segmentLength, boolean segmentIsDots) {
+        if (segmentIsDots && (segmentLength == 1 || segmentLength == 2)) {
+            normalized = false;
         }
+    }
 
-        return stripped.toString();
+    /**
+     * @return true if neither of the stripped paths contain any path-traversal sequences ("." or ".." segments)
+     */
+    boolean isNormalized() {
+        return normalized;
     }
 
     @Override
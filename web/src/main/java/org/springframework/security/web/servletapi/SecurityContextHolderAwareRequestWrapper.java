@@ -17,7 +17,6 @@ package org.springframework.security.web.servletapi;
 
 
 import java.security.Principal;
-import java.util.Collection;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
@@ -25,7 +24,7 @@ import javax.servlet.http.HttpServletRequestWrapper;
 import org.springframework.security.authentication.AuthenticationTrustResolver;
 import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityDictionary;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 
@@ -132,20 +131,7 @@ public class SecurityContextHolderAwareRequestWrapper extends HttpServletRequest
             return false;
         }
 
-        Collection<? extends GrantedAuthority> authorities = auth.getAuthorities();
-
-        if (authorities == null) {
-            return false;
-        }
-
-
-        for (GrantedAuthority grantedAuthority : authorities) {
-            if (role.equals(grantedAuthority.getAuthority())) {
-                return true;
-            }
-        }
-
-        return false;
+        return AuthorityDictionary.contains(auth, role);
     }
 
     /**
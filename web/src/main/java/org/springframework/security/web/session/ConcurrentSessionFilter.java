@@ -51,6 +51,11 @@ import org.springframework.web.filter.GenericFilterBean;
  * A redirect to the expiredURL specified will be performed, and the session invalidation will cause an
  * {@link org.springframework.security.web.session.HttpSessionDestroyedEvent} to be published via the
  * {@link org.springframework.security.web.session.HttpSessionEventPublisher} registered in <code>web.xml</code>.</p>
+ * <p>
+ * By default the last request time is refreshed on every request. If the registry is expensive to update, a
+ * {@link #setLastRequestResolutionSeconds(int) resolution} can be set, in which case it is only refreshed once it is
+ * older than that. See also {@link org.springframework.security.core.session.BatchingSessionRegistry
+ * BatchingSessionRegistry}.</p>
  *
  * @author Ben Alex
  */
@@ -61,6 +66,7 @@ public class ConcurrentSessionFilter extends GenericFilterBean {
     private String expiredUrl;
     private LogoutHandler[] handlers = new LogoutHandler[] {new SecurityContextLogoutHandler()};
     private RedirectStrategy redirectStrategy = new DefaultRedirectStrategy();
+    private long lastRequestResolution = 0;
 
     //~ Methods ========================================================================================================
 
@@ -115,7 +121,7 @@ public class ConcurrentSessionFilter extends GenericFilterBean {
                     }
 
                     return;
-                } else {
+                } else if (System.currentTimeMillis() - info.getLastRequest().getTime() >= lastRequestResolution) {
                     // Non-expired - update last request date/time
                     sessionRegistry.refreshLastRequest(info.getSessionId());
                 }
@@ -161,4 +167,17 @@ public class ConcurrentSessionFilter extends GenericFilterBean {
     public void setRedirectStrategy(RedirectStrategy redirectStrategy) {
         this.redirectStrategy = redirectStrategy;
     }
+
+    /**
+     * Sets the resolution of the last request time of each session. The registry is only asked to refresh it if it
+     * is at least this old, which avoids updating the registry on every request. Defaults to 0, meaning that it is
+     * refreshed on every request.
+     *
+     * @param lastRequestResolutionSeconds the resolution in seconds
+     * @since 3.2
+     */
+    public void setLastRequestResolutionSeconds(int lastRequestResolutionSeconds) {
+        Assert.isTrue(lastRequestResolutionSeconds >= 0, "lastRequestResolutionSeconds cannot be negative");
+        this.lastRequestResolution = lastRequestResolutionSeconds * 1000L;
+    }
 }
@@ -31,8 +31,11 @@ import org.springframework.util.StringUtils;
  * are optimized by using a substring match &mdash; a pattern of {@code /aaa/**} will match {@code /aaa},
  * {@code /aaa/} and any sub-directories, such as {@code /aaa/bbb/ccc}.
  * <p>
- * For all other cases, Spring's {@link AntPathMatcher} is used to perform the match. See the Spring documentation
- * for this class for comprehensive information on the syntax used.
+ * For all other cases, the pattern is compiled once into a sequence of segment matchers which follow the same rules as
+ * Spring's {@link AntPathMatcher}, but which match the path in place, without tokenizing it or creating a lower-case
+ * copy. See the Spring documentation for {@code AntPathMatcher} for comprehensive information on the syntax used.
+ * Patterns which can't be compiled (such as those which use URI template variables with regular expressions) are
+ * matched using {@code AntPathMatcher} directly.
  *
  * @author Luke Taylor
  * @author Rob Winch
@@ -71,14 +74,15 @@ public final class AntPathRequestMatcher implements RequestMatcher {
             pattern = MATCH_ALL;
             matcher = null;
         } else {
-            pattern = pattern.toLowerCase();
+            pattern = toLowerCase(pattern);
 
             // If the pattern ends with {@code /**} and has no other wildcards, then optimize to a sub-path match
             if (pattern.endsWith(MATCH_ALL) && pattern.indexOf('?') == -1 &&
                     pattern.indexOf("*") == pattern.length() - 2) {
                 matcher = new SubpathMatcher(pattern.substring(0, pattern.length() - 3));
             } else {
-                matcher = new SpringAntMatcher(pattern);
+                CompiledAntPathPattern compiled = CompiledAntPathPattern.compile(pattern);
+                matcher = compiled != null ? new CompiledAntMatcher(compiled) : new SpringAntMatcher(pattern);
             }
         }
 
@@ -120,21 +124,17 @@ public final class AntPathRequestMatcher implements RequestMatcher {
     }
 
     private String getRequestPath(HttpServletRequest request) {
-        String url = request.getServletPath();
-
-        if (request.getPathInfo() != null) {
-            url += request.getPathInfo();
-        }
-
-        url = url.toLowerCase();
-
-        return url;
+        return RequestPath.get(request).getPath();
     }
 
     public String getPattern() {
         return pattern;
     }
 
+    HttpMethod getHttpMethod() {
+        return httpMethod;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof AntPathRequestMatcher)) {
@@ -168,6 +168,27 @@ public final class AntPathRequestMatcher implements RequestMatcher {
         return sb.toString();
     }
 
+    /**
+     * Converts a pattern or path to lower case one character at a time. Unlike {@code String.toLowerCase()}, the
+     * result doesn't depend on the default locale and has the same length, and patterns and paths must always be
+     * converted in the same way for the matching to be consistent.
+     */
+    static String toLowerCase(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (Character.toLowerCase(c) != c) {
+                char[] chars = s.toCharArray();
+                for (int j = i; j < chars.length; j++) {
+                    chars[j] = Character.toLowerCase(chars[j]);
+                }
+                return new String(chars);
+            }
+        }
+
+        return s;
+    }
+
     private static interface Matcher {
         boolean matches(String path);
     }
@@ -182,7 +203,19 @@ public final class AntPathRequestMatcher implements RequestMatcher {
         }
 
         public boolean matches(String path) {
-            return antMatcher.match(pattern, path);
+            return antMatcher.match(pattern, toLowerCase(path));
+        }
+    }
+
+    private static class CompiledAntMatcher implements Matcher {
+        private final CompiledAntPathPattern pattern;
+
+        private CompiledAntMatcher(CompiledAntPathPattern pattern) {
+            this.pattern = pattern;
+        }
+
+        public boolean matches(String path) {
+            return pattern.matches(path);
         }
     }
 
@@ -200,7 +233,17 @@ public final class AntPathRequestMatcher implements RequestMatcher {
         }
 
         public boolean matches(String path) {
-            return path.startsWith(subpath) && (path.length() == length || path.charAt(length) == '/');
+            if (path.length() < length || (path.length() > length && path.charAt(length) != '/')) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (Character.toLowerCase(path.charAt(i)) != subpath.charAt(i)) {
+                    return false;
+                }
+            }
+
+            return true;
         }
     }
 }
@@ -0,0 +1,444 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.AntPathMatcher;
+
+/**
+ * An ant-style pattern which has been compiled into a sequence of segment matchers, for use by
+ * {@link AntPathRequestMatcher}.
+ * <p>
+ * The matching rules are the same as those of Spring's {@link AntPathMatcher}, but the pattern is only tokenized once,
+ * and the path is matched in place: tokens are located by index and compared character by character (ignoring case),
+ * so no intermediate strings or arrays are created. Each pattern segment is either a literal, the {@code **} wildcard
+ * or a simple glob, where {@code ?} matches a single character and {@code *} or a URI template variable such as
+ * {@code {id}} match any number of characters.
+ * <p>
+ * Patterns which contain URI template variables with a regular expression ({@code {id:[0-9]+}}) or other constructs
+ * which can't be represented are not supported, in which case {@link #compile(String)} returns null.
+ *
+ * @since 3.2
+ */
+final class CompiledAntPathPattern {
+    private static final char SEPARATOR = '/';
+    private static final long NO_TOKEN = -1;
+
+    private final Segment[] segments;
+    private final boolean startsWithSeparator;
+    private final boolean endsWithSeparator;
+
+    private CompiledAntPathPattern(Segment[] segments, boolean startsWithSeparator, boolean endsWithSeparator) {
+        this.segments = segments;
+        this.startsWithSeparator = startsWithSeparator;
+        this.endsWithSeparator = endsWithSeparator;
+    }
+
+    /**
+     * Compiles the supplied pattern, which must already have been converted to lower case by
+     * {@link AntPathRequestMatcher#toLowerCase(String)}, since the path is converted in the same way.
+     *
+     * @param pattern the pattern to compile
+     * @return the compiled pattern, or null if the pattern uses features which are not supported
+     */
+    static CompiledAntPathPattern compile(String pattern) {
+        List<Segment> segments = new ArrayList<Segment>();
+        int length = pattern.length();
+        int pos = 0;
+
+        while (pos <= length) {
+            long token = nextToken(pattern, pos, length);
+            if (token == NO_TOKEN) {
+                break;
+            }
+            int start = tokenStart(token);
+            int end = tokenEnd(token);
+            Segment segment = Segment.compile(pattern.substring(start, end));
+
+            if (segment == null) {
+                return null;
+            }
+
+            segments.add(segment);
+            pos = end;
+        }
+
+        return new CompiledAntPathPattern(segments.toArray(new Segment[segments.size()]),
+                pattern.length() > 0 && pattern.charAt(0) == SEPARATOR,
+                pattern.length() > 0 && pattern.charAt(pattern.length() - 1) == SEPARATOR);
+    }
+
+    /**
+     * Matches the full path against the pattern, following the algorithm used by
+     * {@code AntPathMatcher.doMatch(pattern, path, true, null)}.
+     */
+    boolean matches(String path) {
+        int pathLength = path.length();
+        boolean pathStartsWithSeparator = pathLength > 0 && path.charAt(0) == SEPARATOR;
+
+        if (pathStartsWithSeparator != startsWithSeparator) {
+            return false;
+        }
+
+        int pattStart = 0;
+        int pattEnd = segments.length - 1;
+        // The remaining, unmatched part of the path
+        int pathFrom = 0;
+        int pathTo = pathLength;
+
+        // Match all elements up to the first **
+        while (pattStart <= pattEnd) {
+            Segment segment = segments[pattStart];
+            if (segment.isDoubleWildcard()) {
+                break;
+            }
+            long token = nextToken(path, pathFrom, pathTo);
+            if (token == NO_TOKEN) {
+                break;
+            }
+            if (!segment.matches(path, tokenStart(token), tokenEnd(token))) {
+                return false;
+            }
+            pattStart++;
+            pathFrom = tokenEnd(token);
+        }
+
+        if (nextToken(path, pathFrom, pathTo) == NO_TOKEN) {
+            // Path is exhausted, only match if rest of pattern is * or **'s
+            if (pattStart > pattEnd) {
+                boolean pathEndsWithSeparator = pathLength > 0 && path.charAt(pathLength - 1) == SEPARATOR;
+                return endsWithSeparator ? pathEndsWithSeparator : !pathEndsWithSeparator;
+            }
+            if (pattStart == pattEnd && segments[pattStart].isSingleWildcard() && pathLength > 0
+                    && path.charAt(pathLength - 1) == SEPARATOR) {
+                return true;
+            }
+            return onlyDoubleWildcards(pattStart, pattEnd);
+        } else if (pattStart > pattEnd) {
+            // Path not exhausted, but pattern is. Failure.
+            return false;
+        }
+
+        // Match elements from the end, up to the last **
+        while (pattStart <= pattEnd) {
+            Segment segment = segments[pattEnd];
+            if (segment.isDoubleWildcard()) {
+                break;
+            }
+            long token = previousToken(path, pathFrom, pathTo);
+            if (token == NO_TOKEN) {
+                break;
+            }
+            if (!segment.matches(path, tokenStart(token), tokenEnd(token))) {
+                return false;
+            }
+            pattEnd--;
+            pathTo = tokenStart(token);
+        }
+
+        if (nextToken(path, pathFrom, pathTo) == NO_TOKEN) {
+            // Path is exhausted
+            return onlyDoubleWildcards(pattStart, pattEnd);
+        }
+
+        // Match the groups of segments between each pair of **'s
+        while (pattStart != pattEnd && nextToken(path, pathFrom, pathTo) != NO_TOKEN) {
+            int nextDouble = -1;
+            for (int i = pattStart + 1; i <= pattEnd; i++) {
+                if (segments[i].isDoubleWildcard()) {
+                    nextDouble = i;
+                    break;
+                }
+            }
+
+            if (nextDouble == pattStart + 1) {
+                // '**/**' situation, so skip one
+                pattStart++;
+                continue;
+            }
+
+            int groupEnd = findGroup(path, pathFrom, pathTo, pattStart + 1, nextDouble);
+
+            if (groupEnd < 0) {
+                return false;
+            }
+
+            pattStart = nextDouble;
+            pathFrom = groupEnd;
+        }
+
+        return onlyDoubleWildcards(pattStart, pattEnd);
+    }
+
+    /**
+     * Finds the first position in the path range at which the consecutive segments {@code [first, last)} match.
+     *
+     * @return the end position of the last matched token, or -1 if there is no match
+     */
+    private int findGroup(String path, int from, int to, int first, int last) {
+        long candidate = nextToken(path, from, to);
+
+        while (candidate != NO_TOKEN) {
+            long token = candidate;
+            int i = first;
+
+            while (i < last) {
+                if (token == NO_TOKEN) {
+                    // There are too few remaining tokens, so later candidates can't match either
+                    return -1;
+                }
+                if (!segments[i].matches(path, tokenStart(token), tokenEnd(token))) {
+                    break;
+                }
+                i++;
+                if (i < last) {
+                    token = nextToken(path, tokenEnd(token), to);
+                }
+            }
+
+            if (i == last) {
+                return tokenEnd(token);
+            }
+
+            candidate = nextToken(path, tokenEnd(candidate), to);
+        }
+
+        return -1;
+    }
+
+    private boolean onlyDoubleWildcards(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            if (!segments[i].isDoubleWildcard()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //~ Tokenizing =====================================================================================================
+
+    /**
+     * Returns the first token in {@code [from, to)}, in the same way as {@code StringUtils.tokenizeToStringArray}:
+     * the string is split on the separator, tokens are trimmed and empty tokens are ignored.
+     *
+     * @return the token start and end positions packed into a long, or {@link #NO_TOKEN}
+     */
+    private static long nextToken(String s, int from, int to) {
+        int pos = from;
+
+        while (pos < to) {
+            int end = pos;
+            while (end < to && s.charAt(end) != SEPARATOR) {
+                end++;
+            }
+
+            int start = pos;
+            int trimmedEnd = end;
+            while (start < trimmedEnd && s.charAt(start) <= ' ') {
+                start++;
+            }
+            while (trimmedEnd > start && s.charAt(trimmedEnd - 1) <= ' ') {
+                trimmedEnd--;
+            }
+
+            if (start < trimmedEnd) {
+                return token(start, trimmedEnd);
+            }
+
+            pos = end + 1;
+        }
+
+        return NO_TOKEN;
+    }
+
+    /**
+     * Returns the last token in {@code [from, to)}.
+     */
+    private static long previousToken(String s, int from, int to) {
+        int pos = to;
+
+        while (pos > from) {
+            int start = pos;
+            while (start > from && s.charAt(start - 1) != SEPARATOR) {
+                start--;
+            }
+
+            int end = pos;
+            int trimmedStart = start;
+            while (trimmedStart < end && s.charAt(trimmedStart) <= ' ') {
+                trimmedStart++;
+            }
+            while (end > trimmedStart && s.charAt(end - 1) <= ' ') {
+                end--;
+            }
+
+            if (trimmedStart < end) {
+                return token(trimmedStart, end);
+            }
+
+            pos = start - 1;
+        }
+
+        return NO_TOKEN;
+    }
+
+    private static long token(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    private static int tokenStart(long token) {
+        return (int) (token >>> 32);
+    }
+
+    private static int tokenEnd(long token) {
+        return (int) token;
+    }
+
+    //~ Segments =======================================================================================================
+
+    private static final class Segment {
+        private static final int LITERAL = 0;
+        private static final int GLOB = 1;
+        private static final int DOUBLE_WILDCARD = 2;
+
+        private final int type;
+        /** The literal characters, or for a glob, the pattern with any variables replaced by '*' */
+        private final char[] chars;
+        private final boolean singleWildcard;
+
+        private Segment(int type, char[] chars, boolean singleWildcard) {
+            this.type = type;
+            this.chars = chars;
+            this.singleWildcard = singleWildcard;
+        }
+
+        static Segment compile(String segment) {
+            if (segment.equals("**")) {
+                return new Segment(DOUBLE_WILDCARD, null, false);
+            }
+
+            StringBuilder glob = new StringBuilder(segment.length());
+            boolean wildcards = false;
+
+            for (int i = 0; i < segment.length(); i++) {
+                char c = segment.charAt(i);
+
+                if (isLineTerminator(c) || c == '\\') {
+                    return null;
+                }
+
+                if (c == '{') {
+                    int close = segment.indexOf('}', i);
+                    if (close <= i + 1) {
+                        return null;
+                    }
+                    for (int j = i + 1; j < close; j++) {
+                        char v = segment.charAt(j);
+                        // Variables with regular expressions (or nested braces) are not supported
+                        if (v == ':' || v == '{') {
+                            return null;
+                        }
+                    }
+                    glob.append('*');
+                    wildcards = true;
+                    i = close;
+                } else if (c == '}') {
+                    return null;
+                } else {
+                    wildcards |= c == '*' || c == '?';
+                    glob.append(c);
+                }
+            }
+
+            char[] chars = new char[glob.length()];
+            glob.getChars(0, chars.length, chars, 0);
+
+            return new Segment(wildcards ? GLOB : LITERAL, chars, segment.equals("*"));
+        }
+
+        boolean isDoubleWildcard() {
+            return type == DOUBLE_WILDCARD;
+        }
+
+        boolean isSingleWildcard() {
+            return singleWildcard;
+        }
+
+        boolean matches(String path, int start, int end) {
+            if (type == DOUBLE_WILDCARD) {
+                return true;
+            }
+
+            if (type == LITERAL) {
+                if (end - start != chars.length) {
+                    return false;
+                }
+                for (int i = 0; i < chars.length; i++) {
+                    if (Character.toLowerCase(path.charAt(start + i)) != chars[i]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            return matchesGlob(path, start, end);
+        }
+
+        /**
+         * Wildcard matching with single-star backtracking. As with the regular expression used by
+         * {@code AntPathMatcher}, wildcards never match line terminators.
+         */
+        private boolean matchesGlob(String path, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (isLineTerminator(path.charAt(i))) {
+                    return false;
+                }
+            }
+
+            int p = 0;
+            int s = start;
+            int star = -1;
+            int starMatch = start;
+
+            while (s < end) {
+                char c = Character.toLowerCase(path.charAt(s));
+
+                if (p < chars.length && (chars[p] == '?' || chars[p] == c)) {
+                    p++;
+                    s++;
+                } else if (p < chars.length && chars[p] == '*') {
+                    star = p++;
+                    starMatch = s;
+                } else if (star >= 0) {
+                    p = star + 1;
+                    s = ++starMatch;
+                } else {
+                    return false;
+                }
+            }
+
+            while (p < chars.length && chars[p] == '*') {
+                p++;
+            }
+
+            return p == chars.length;
+        }
+
+        private static boolean isLineTerminator(char c) {
+            return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+    }
+}
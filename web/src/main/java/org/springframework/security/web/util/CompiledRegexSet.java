@@ -0,0 +1,857 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * A set of regular expressions which are combined into a single automaton, so that an input can be matched against
+ * all of them in one linear scan. Used by {@link RequestMatcherIndex} for {@link RegexRequestMatcher}s.
+ * <p>
+ * The expressions are compiled into a single Thompson NFA, which is converted into a DFA lazily, as inputs are
+ * matched (the DFA states and transitions are cached, up to a limit). Matching is always a full match of the input,
+ * as with {@code Matcher.matches()}, and reports every expression which matched, so the caller can choose the
+ * one with the lowest index.
+ * <p>
+ * Only the subset of the {@code java.util.regex} syntax which doesn't require backtracking is supported: literals,
+ * escapes, {@code .}, character classes, groups, alternation, greedy or reluctant quantifiers (including bounded
+ * repetition) and leading {@code ^} or trailing {@code $}. The {@code CASE_INSENSITIVE} flag is also supported. Any
+ * other construct, such as back-references, look-around, possessive quantifiers or embedded flags, means the
+ * expression is rejected by {@link #add(Pattern)} and should be matched using the {@code Pattern} itself.
+ *
+ * @since 3.2
+ */
+final class CompiledRegexSet {
+    /** The maximum number of cached DFA states. Beyond this, transitions are computed without being cached */
+    private static final int MAX_DFA_STATES = 10000;
+    /** The maximum number of NFA states created for a single expression (bounded repetition is expanded) */
+    private static final int MAX_NFA_STATES_PER_PATTERN = 5000;
+    private static final int ASCII = 128;
+
+    private static final int CHAR = 0;
+    private static final int SPLIT = 1;
+    private static final int ACCEPT = 2;
+
+    // The NFA. Each state is either a CHAR state (which consumes a character matching the predicate and moves to
+    // next1), a SPLIT (an epsilon transition to next1 and next2) or an ACCEPT state for an expression.
+    private final List<Integer> types = new ArrayList<Integer>();
+    private final List<CharPredicate> predicates = new ArrayList<CharPredicate>();
+    private final List<Integer> next1 = new ArrayList<Integer>();
+    private final List<Integer> next2 = new ArrayList<Integer>();
+    private final List<Integer> startStates = new ArrayList<Integer>();
+    private int expressions;
+
+    private volatile Dfa dfa;
+
+    /**
+     * Adds an expression to the set.
+     *
+     * @param pattern the compiled expression
+     * @return the index assigned to the expression, or -1 if it uses unsupported features
+     */
+    int add(Pattern pattern) {
+        int flags = pattern.flags();
+
+        if ((flags & ~Pattern.CASE_INSENSITIVE) != 0) {
+            return -1;
+        }
+
+        Node node;
+
+        try {
+            node = new Parser(pattern.pattern(), (flags & Pattern.CASE_INSENSITIVE) != 0).parse();
+        } catch (UnsupportedSyntaxException e) {
+            return -1;
+        }
+
+        if (node.size() > MAX_NFA_STATES_PER_PATTERN) {
+            return -1;
+        }
+
+        int id = expressions++;
+        int accept = newState(ACCEPT, null, id, -1);
+        startStates.add(node.compile(this, accept));
+        dfa = null;
+
+        return id;
+    }
+
+    /**
+     * @return the number of expressions in the set
+     */
+    int size() {
+        return expressions;
+    }
+
+    /**
+     * Matches the input against all the expressions.
+     *
+     * @param input the input to match
+     * @return the result, which indicates which expressions matched the whole input
+     */
+    Result match(String input) {
+        Dfa current = dfa;
+
+        if (current == null) {
+            current = new Dfa();
+            dfa = current;
+        }
+
+        return current.match(input);
+    }
+
+    /**
+     * @return the index of the first expression which matches the input, or -1 if none match
+     */
+    int firstMatch(String input) {
+        return match(input).first();
+    }
+
+    private int newState(int type, CharPredicate predicate, int n1, int n2) {
+        types.add(Integer.valueOf(type));
+        predicates.add(predicate);
+        next1.add(Integer.valueOf(n1));
+        next2.add(Integer.valueOf(n2));
+
+        return types.size() - 1;
+    }
+
+    //~ Matching =======================================================================================================
+
+    /**
+     * The outcome of matching an input: the set of expressions which matched.
+     */
+    static final class Result {
+        private static final Result NO_MATCH = new Result(new BitSet());
+
+        private final BitSet matched;
+
+        private Result(BitSet matched) {
+            this.matched = matched;
+        }
+
+        boolean matches(int expression) {
+            return matched.get(expression);
+        }
+
+        int first() {
+            return matched.nextSetBit(0);
+        }
+    }
+
+    /**
+     * A lazily-built DFA over an immutable snapshot of the NFA. Safe for concurrent use: states and transitions may
+     * occasionally be computed more than once by competing threads, but the result is always the same.
+     */
+    private final class Dfa {
+        private final int[] type;
+        private final CharPredicate[] predicate;
+        private final int[] n1;
+        private final int[] n2;
+        private final ConcurrentMap<StateKey, DfaState> states = new ConcurrentHashMap<StateKey, DfaState>();
+        private final DfaState start;
+
+        private Dfa() {
+            int count = types.size();
+            type = new int[count];
+            predicate = predicates.toArray(new CharPredicate[count]);
+            n1 = new int[count];
+            n2 = new int[count];
+
+            for (int i = 0; i < count; i++) {
+                type[i] = types.get(i).intValue();
+                n1[i] = next1.get(i).intValue();
+                n2[i] = next2.get(i).intValue();
+            }
+
+            BitSet initial = new BitSet(count);
+
+            for (Integer s : startStates) {
+                addClosure(s.intValue(), initial);
+            }
+
+            start = getState(initial);
+        }
+
+        Result match(String input) {
+            DfaState state = start;
+            int length = input.length();
+            int i = 0;
+
+            while (i < length && !state.dead) {
+                int c = input.codePointAt(i);
+                i += Character.charCount(c);
+                state = state.next(c);
+            }
+
+            // A dead state may still be accepting, but the whole input must be consumed for a match
+            return i < length ? Result.NO_MATCH : state.result;
+        }
+
+        private void addClosure(int s, BitSet set) {
+            if (s < 0 || set.get(s)) {
+                return;
+            }
+
+            set.set(s);
+
+            if (type[s] == SPLIT) {
+                addClosure(n1[s], set);
+                addClosure(n2[s], set);
+            }
+        }
+
+        private DfaState getState(BitSet nfaStates) {
+            StateKey key = new StateKey(nfaStates);
+            DfaState state = states.get(key);
+
+            if (state == null) {
+                state = new DfaState(this, nfaStates);
+
+                if (states.size() < MAX_DFA_STATES) {
+                    DfaState existing = states.putIfAbsent(key, state);
+                    if (existing != null) {
+                        state = existing;
+                    }
+                }
+            }
+
+            return state;
+        }
+
+        private DfaState step(BitSet nfaStates, int c) {
+            BitSet next = new BitSet(type.length);
+
+            for (int s = nfaStates.nextSetBit(0); s >= 0; s = nfaStates.nextSetBit(s + 1)) {
+                if (type[s] == CHAR && predicate[s].matches(c)) {
+                    addClosure(n1[s], next);
+                }
+            }
+
+            return getState(next);
+        }
+    }
+
+    private static final class DfaState {
+        private final Dfa dfa;
+        private final BitSet nfaStates;
+        private final Result result;
+        private final boolean dead;
+        private final AtomicReferenceArray<DfaState> asciiTransitions = new AtomicReferenceArray<DfaState>(ASCII);
+        private final ConcurrentMap<Integer, DfaState> otherTransitions = new ConcurrentHashMap<Integer, DfaState>();
+
+        DfaState(Dfa dfa, BitSet nfaStates) {
+            this.dfa = dfa;
+            this.nfaStates = nfaStates;
+            BitSet matched = new BitSet();
+            boolean consumes = false;
+
+            for (int s = nfaStates.nextSetBit(0); s >= 0; s = nfaStates.nextSetBit(s + 1)) {
+                if (dfa.type[s] == ACCEPT) {
+                    matched.set(dfa.n1[s]);
+                } else if (dfa.type[s] == CHAR) {
+                    consumes = true;
+                }
+            }
+
+            this.result = matched.isEmpty() ? Result.NO_MATCH : new Result(matched);
+            this.dead = !consumes;
+        }
+
+        DfaState next(int c) {
+            DfaState next;
+
+            if (c < ASCII) {
+                next = asciiTransitions.get(c);
+                if (next == null) {
+                    next = dfa.step(nfaStates, c);
+                    asciiTransitions.set(c, next);
+                }
+            } else {
+                Integer key = Integer.valueOf(c);
+                next = otherTransitions.get(key);
+                if (next == null) {
+                    next = dfa.step(nfaStates, c);
+                    if (otherTransitions.size() < ASCII) {
+                        otherTransitions.put(key, next);
+                    }
+                }
+            }
+
+            return next;
+        }
+    }
+
+    private static final class StateKey {
+        private final BitSet states;
+        private final int hash;
+
+        StateKey(BitSet states) {
+            this.states = states;
+            this.hash = states.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StateKey && states.equals(((StateKey) obj).states);
+        }
+    }
+
+    //~ Character predicates ===========================================================================================
+
+    private static abstract class CharPredicate {
+        abstract boolean matches(int c);
+    }
+
+    /** A set of code point ranges, optionally negated */
+    private static final class CharClass extends CharPredicate {
+        private final List<int[]> ranges = new ArrayList<int[]>();
+        private final List<CharPredicate> members = new ArrayList<CharPredicate>();
+        private final boolean caseInsensitive;
+        private boolean negated;
+
+        CharClass(boolean caseInsensitive) {
+            this.caseInsensitive = caseInsensitive;
+        }
+
+        CharClass range(int from, int to) {
+            ranges.add(new int[] {from, to});
+            return this;
+        }
+
+        CharClass negate() {
+            negated = !negated;
+            return this;
+        }
+
+        boolean matches(int c) {
+            return contains(c) != negated;
+        }
+
+        private boolean contains(int c) {
+            for (int[] range : ranges) {
+                if (inRange(c, range)) {
+                    return true;
+                }
+                // Java's CASE_INSENSITIVE flag only applies to US-ASCII characters
+                if (caseInsensitive && c < ASCII && Character.isLetter(c)
+                        && (inRange(Character.toUpperCase(c), range) || inRange(Character.toLowerCase(c), range))) {
+                    return true;
+                }
+            }
+
+            for (CharPredicate member : members) {
+                if (member.matches(c)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private static boolean inRange(int c, int[] range) {
+            return c >= range[0] && c <= range[1];
+        }
+    }
+
+    private static CharClass digit() {
+        return new CharClass(false).range('0', '9');
+    }
+
+    private static CharClass word() {
+        return new CharClass(false).range('a', 'z').range('A', 'Z').range('_', '_').range('0', '9');
+    }
+
+    private static CharClass space() {
+        return new CharClass(false).range(' ', ' ').range('\t', '\r');
+    }
+
+    private static CharClass dot() {
+        return new CharClass(false).range('\n', '\n').range('\r', '\r').range('\u0085', '\u0085')
+                .range('\u2028', '\u2029').negate();
+    }
+
+    //~ Syntax tree ====================================================================================================
+
+    private static abstract class Node {
+        /** Compiles the node into NFA states which continue to {@code next}, returning the entry state */
+        abstract int compile(CompiledRegexSet nfa, int next);
+
+        /** The (approximate) number of NFA states which will be created */
+        abstract int size();
+    }
+
+    private static final class CharNode extends Node {
+        private final CharPredicate predicate;
+
+        CharNode(CharPredicate predicate) {
+            this.predicate = predicate;
+        }
+
+        int compile(CompiledRegexSet nfa, int next) {
+            return nfa.newState(CHAR, predicate, next, -1);
+        }
+
+        int size() {
+            return 1;
+        }
+    }
+
+    private static final class ConcatNode extends Node {
+        private final List<Node> nodes;
+
+        ConcatNode(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        int compile(CompiledRegexSet nfa, int next) {
+            int entry = next;
+
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                entry = nodes.get(i).compile(nfa, entry);
+            }
+
+            return entry;
+        }
+
+        int size() {
+            int size = 0;
+            for (Node node : nodes) {
+                size += node.size();
+            }
+            return size;
+        }
+    }
+
+    private static final class AlternationNode extends Node {
+        private final List<Node> alternatives;
+
+        AlternationNode(List<Node> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        int compile(CompiledRegexSet nfa, int next) {
+            int entry = alternatives.get(alternatives.size() - 1).compile(nfa, next);
+
+            for (int i = alternatives.size() - 2; i >= 0; i--) {
+                entry = nfa.newState(SPLIT, null, alternatives.get(i).compile(nfa, next), entry);
+            }
+
+            return entry;
+        }
+
+        int size() {
+            int size = alternatives.size();
+            for (Node node : alternatives) {
+                size += node.size();
+            }
+            return size;
+        }
+    }
+
+    private static final class RepeatNode extends Node {
+        private final Node node;
+        private final int min;
+        /** The maximum number of repetitions, or -1 if unbounded */
+        private final int max;
+
+        RepeatNode(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        int compile(CompiledRegexSet nfa, int next) {
+            int entry;
+
+            if (max < 0) {
+                // A loop: split into the node (which returns to the split) or continue
+                int loop = nfa.newState(SPLIT, null, -1, next);
+                nfa.next1.set(loop, Integer.valueOf(node.compile(nfa, loop)));
+                entry = loop;
+            } else {
+                entry = next;
+                for (int i = min; i < max; i++) {
+                    entry = nfa.newState(SPLIT, null, node.compile(nfa, entry), next);
+                }
+            }
+
+            for (int i = 0; i < min; i++) {
+                entry = node.compile(nfa, entry);
+            }
+
+            return entry;
+        }
+
+        int size() {
+            int copies = (max < 0 ? min + 1 : max);
+            long size = (long) copies * (node.size() + 1);
+            return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+        }
+    }
+
+    //~ Parsing ========================================================================================================
+
+    private static final class UnsupportedSyntaxException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Recursive descent parser for the supported syntax. The pattern is known to be valid, since it has already been
+     * compiled by {@code Pattern}.
+     */
+    private static final class Parser {
+        private final String pattern;
+        private final boolean caseInsensitive;
+        private int pos;
+
+        Parser(String pattern, boolean caseInsensitive) {
+            this.pattern = pattern;
+            this.caseInsensitive = caseInsensitive;
+        }
+
+        Node parse() throws UnsupportedSyntaxException {
+            if (pattern.startsWith("^")) {
+                pos++;
+            }
+
+            Node node = parseAlternation();
+
+            if (pos != pattern.length()) {
+                unsupported();
+            }
+
+            return node;
+        }
+
+        private Node parseAlternation() throws UnsupportedSyntaxException {
+            List<Node> alternatives = new ArrayList<Node>();
+            alternatives.add(parseConcatenation());
+
+            while (pos < pattern.length() && peek() == '|') {
+                pos++;
+                alternatives.add(parseConcatenation());
+            }
+
+            return alternatives.size() == 1 ? alternatives.get(0) : new AlternationNode(alternatives);
+        }
+
+        private Node parseConcatenation() throws UnsupportedSyntaxException {
+            List<Node> nodes = new ArrayList<Node>();
+
+            while (pos < pattern.length() && peek() != '|' && peek() != ')') {
+                if (peek() == '$') {
+                    // Only supported at the very end, where it has no effect on a full match
+                    if (pos != pattern.length() - 1) {
+                        unsupported();
+                    }
+                    pos++;
+                    break;
+                }
+                nodes.add(parseRepetition());
+            }
+
+            return new ConcatNode(nodes);
+        }
+
+        private Node parseRepetition() throws UnsupportedSyntaxException {
+            Node atom = parseAtom();
+
+            while (pos < pattern.length()) {
+                char c = peek();
+                int min;
+                int max;
+
+                if (c == '*') {
+                    min = 0;
+                    max = -1;
+                    pos++;
+                } else if (c == '+') {
+                    min = 1;
+                    max = -1;
+                    pos++;
+                } else if (c == '?') {
+                    min = 0;
+                    max = 1;
+                    pos++;
+                } else if (c == '{') {
+                    pos++;
+                    min = parseNumber();
+                    max = min;
+                    if (peek() == ',') {
+                        pos++;
+                        max = peek() == '}' ? -1 : parseNumber();
+                    }
+                    expect('}');
+                } else {
+                    break;
+                }
+
+                if (pos < pattern.length()) {
+                    if (peek() == '+') {
+                        // Possessive quantifiers can change the result
+                        unsupported();
+                    } else if (peek() == '?') {
+                        // Reluctant quantifiers don't affect whether the whole input matches
+                        pos++;
+                    }
+                }
+
+                atom = new RepeatNode(atom, min, max);
+            }
+
+            return atom;
+        }
+
+        private Node parseAtom() throws UnsupportedSyntaxException {
+            int c = pattern.codePointAt(pos);
+
+            switch (c) {
+            case '(':
+                pos++;
+                if (peek() == '?') {
+                    pos++;
+                    if (peek() != ':') {
+                        unsupported();
+                    }
+                    pos++;
+                }
+                Node group = parseAlternation();
+                expect(')');
+                return group;
+            case '[':
+                pos++;
+                return new CharNode(parseClass());
+            case '.':
+                pos++;
+                return new CharNode(dot());
+            case '\\':
+                pos++;
+                return new CharNode(parseEscape());
+            case '^':
+            case '$':
+            case '{':
+            case '}':
+            case ']':
+                unsupported();
+            }
+
+            pos += Character.charCount(c);
+
+            return new CharNode(literal(c));
+        }
+
+        private CharPredicate parseClass() throws UnsupportedSyntaxException {
+            CharClass cc = new CharClass(caseInsensitive);
+            boolean negated = false;
+
+            if (peek() == '^') {
+                negated = true;
+                pos++;
+            }
+
+            if (peek() == ']') {
+                unsupported();
+            }
+
+            while (peek() != ']') {
+                char c = peek();
+
+                if (c == '[' || (c == '&' && pattern.startsWith("&&", pos))) {
+                    unsupported();
+                }
+
+                int from;
+
+                if (c == '\\') {
+                    pos++;
+                    CharPredicate escaped = parseEscape();
+                    if (!(escaped instanceof Literal)) {
+                        cc.members.add(escaped);
+                        continue;
+                    }
+                    from = ((Literal) escaped).c;
+                } else {
+                    from = pattern.codePointAt(pos);
+                    pos += Character.charCount(from);
+                }
+
+                if (peek() == '-' && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                    pos++;
+                    int to;
+                    if (peek() == '\\') {
+                        pos++;
+                        CharPredicate escaped = parseEscape();
+                        if (!(escaped instanceof Literal)) {
+                            unsupported();
+                        }
+                        to = ((Literal) escaped).c;
+                    } else if (peek() == '[') {
+                        unsupported();
+                        to = -1;
+                    } else {
+                        to = pattern.codePointAt(pos);
+                        pos += Character.charCount(to);
+                    }
+                    cc.range(from, to);
+                } else {
+                    cc.range(from, from);
+                }
+            }
+
+            pos++;
+
+            return negated ? cc.negate() : cc;
+        }
+
+        /**
+         * Parses an escape sequence, following the backslash.
+         */
+        private CharPredicate parseEscape() throws UnsupportedSyntaxException {
+            if (pos >= pattern.length()) {
+                unsupported();
+            }
+
+            char c = pattern.charAt(pos++);
+
+            switch (c) {
+            case 'd':
+                return digit();
+            case 'D':
+                return digit().negate();
+            case 'w':
+                return word();
+            case 'W':
+                return word().negate();
+            case 's':
+                return space();
+            case 'S':
+                return space().negate();
+            case 't':
+                return literal('\t');
+            case 'n':
+                return literal('\n');
+            case 'r':
+                return literal('\r');
+            case 'f':
+                return literal('\f');
+            case 'e':
+                return literal('\u001B');
+            case 'a':
+                return literal('\u0007');
+            case 'x':
+                return literal(parseHex(2));
+            case 'u':
+                int value = parseHex(4);
+                // Escaped surrogate pairs are combined into a single code point by Pattern
+                if (value >= Character.MIN_SURROGATE && value <= Character.MAX_SURROGATE) {
+                    unsupported();
+                }
+                return literal(value);
+            }
+
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                unsupported();
+            }
+
+            // An escaped non-alphanumeric character is a literal
+            pos--;
+            int literal = pattern.codePointAt(pos);
+            pos += Character.charCount(literal);
+
+            return literal(literal);
+        }
+
+        private int parseHex(int digits) throws UnsupportedSyntaxException {
+            if (pos + digits > pattern.length()) {
+                unsupported();
+            }
+
+            try {
+                int value = Integer.parseInt(pattern.substring(pos, pos + digits), 16);
+                pos += digits;
+                return value;
+            } catch (NumberFormatException e) {
+                throw new UnsupportedSyntaxException();
+            }
+        }
+
+        private int parseNumber() throws UnsupportedSyntaxException {
+            int start = pos;
+
+            while (pos < pattern.length() && Character.isDigit(pattern.charAt(pos))) {
+                pos++;
+            }
+
+            if (start == pos || pos - start > 4) {
+                unsupported();
+            }
+
+            return Integer.parseInt(pattern.substring(start, pos));
+        }
+
+        private CharPredicate literal(int c) {
+            return new Literal(c, caseInsensitive);
+        }
+
+        private char peek() throws UnsupportedSyntaxException {
+            if (pos >= pattern.length()) {
+                unsupported();
+            }
+
+            return pattern.charAt(pos);
+        }
+
+        private void expect(char c) throws UnsupportedSyntaxException {
+            if (peek() != c) {
+                unsupported();
+            }
+            pos++;
+        }
+
+        private void unsupported() throws UnsupportedSyntaxException {
+            throw new UnsupportedSyntaxException();
+        }
+    }
+
+    private static final class Literal extends CharPredicate {
+        private final int c;
+        private final int otherCase;
+
+        Literal(int c, boolean caseInsensitive) {
+            this.c = c;
+
+            if (caseInsensitive && c < ASCII && Character.isLetter(c)) {
+                otherCase = Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c);
+            } else {
+                otherCase = c;
+            }
+        }
+
+        boolean matches(int ch) {
+            return ch == c || ch == otherCase;
+        }
+    }
+}
@@ -18,8 +18,8 @@ import org.springframework.util.StringUtils;
  * @since 3.0.2
  */
 public final class IpAddressMatcher implements RequestMatcher {
-    private final int nMaskBits;
-    private final InetAddress requiredAddress;
+    private final byte[] reqAddr;
+    private final byte[] mask;
 
     /**
      * Takes a specific IP address or a range specified using the
@@ -28,6 +28,7 @@ public final class IpAddressMatcher implements RequestMatcher {
      * @param ipAddress the address or range of addresses from which the request must come.
      */
     public IpAddressMatcher(String ipAddress) {
+        int nMaskBits;
 
         if (ipAddress.indexOf('/') > 0) {
             String[] addressAndMask = StringUtils.split(ipAddress, "/");
@@ -36,30 +37,13 @@ public final class IpAddressMatcher implements RequestMatcher {
         } else {
             nMaskBits = -1;
         }
-        requiredAddress = parseAddress(ipAddress);
-    }
-
-    public boolean matches(HttpServletRequest request) {
-        return matches(request.getRemoteAddr());
-    }
+        reqAddr = parseAddress(ipAddress);
 
-    public boolean matches(String address) {
-        InetAddress remoteAddress = parseAddress(address);
-
-        if (!requiredAddress.getClass().equals(remoteAddress.getClass())) {
-            return false;
-        }
-
-        if (nMaskBits < 0) {
-            return remoteAddress.equals(requiredAddress);
-        }
-
-        byte[] remAddr = remoteAddress.getAddress();
-        byte[] reqAddr = requiredAddress.getAddress();
-
-        int oddBits = nMaskBits % 8;
-        int nMaskBytes = nMaskBits/8 + (oddBits == 0 ? 0 : 1);
-        byte[] mask = new byte[nMaskBytes];
+        // With no mask, the address must match exactly
+        int maskBits = nMaskBits < 0 ? reqAddr.length * 8 : nMaskBits;
+        int oddBits = maskBits % 8;
+        int nMaskBytes = maskBits/8 + (oddBits == 0 ? 0 : 1);
+        mask = new byte[nMaskBytes];
 
         Arrays.fill(mask, 0, oddBits == 0 ? mask.length : mask.length - 1, (byte)0xFF);
 
@@ -68,8 +52,18 @@ public final class IpAddressMatcher implements RequestMatcher {
             finalByte <<= 8-oddBits;
             mask[mask.length - 1] = (byte) finalByte;
         }
+    }
 
- //       System.out.println("Mask is " + new sun.misc.HexDumpEncoder().encode(mask));
+    public boolean matches(HttpServletRequest request) {
+        return matches(request.getRemoteAddr());
+    }
+
+    public boolean matches(String address) {
+        byte[] remAddr = parseAddress(address);
+
+        if (remAddr.length != reqAddr.length) {
+            return false;
+        }
 
         for (int i=0; i < mask.length; i++) {
             if ((remAddr[i] & mask[i]) != (reqAddr[i] & mask[i])) {
@@ -80,11 +74,59 @@ public final class IpAddressMatcher implements RequestMatcher {
         return true;
     }
 
-    private InetAddress parseAddress(String address) {
+    /**
+     * Parses an address, avoiding {@code InetAddress} for the common case of a dotted-quad IPv4 address.
+     */
+    static byte[] parseAddress(String address) {
+        byte[] ipv4 = parseDottedQuad(address);
+
+        if (ipv4 != null) {
+            return ipv4;
+        }
+
         try {
-            return InetAddress.getByName(address);
+            return InetAddress.getByName(address).getAddress();
         } catch (UnknownHostException e) {
             throw new IllegalArgumentException("Failed to parse address" + address, e);
         }
     }
+
+    private static byte[] parseDottedQuad(String address) {
+        if (address == null) {
+            return null;
+        }
+
+        byte[] bytes = new byte[4];
+        int length = address.length();
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = address.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+                // Leading zeros are rejected, since InetAddress may treat them differently
+                if (value > 255 || digits > 3 || (digits == 2 && value < 10)) {
+                    return null;
+                }
+            } else if (c == '.' && digits > 0 && part < 3) {
+                bytes[part++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+
+        if (part != 3 || digits == 0) {
+            return null;
+        }
+
+        bytes[3] = (byte) value;
+
+        return bytes;
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Matches a request if its remote address falls within any of a set of IP addresses or ranges. This is the equivalent
+ * of combining an {@link IpAddressMatcher} for each range, but is suitable for use with very large lists (for
+ * example, tens of thousands of partner address blocks).
+ * <p>
+ * The ranges are stored in binary prefix tries over the address bits (one for IPv4 and one for IPv6), so the cost of
+ * a lookup depends only on the length of the address, rather than the number of ranges. As with
+ * {@code IpAddressMatcher}, IPv4 ranges never match IPv6 addresses and vice-versa. {@link #getMatchingRange(String)}
+ * performs a longest-prefix match, returning the most specific range which contains an address.
+ *
+ * @since 3.2
+ */
+public final class IpRangeSetMatcher implements RequestMatcher {
+    private final Trie ipv4 = new Trie();
+    private final Trie ipv6 = new Trie();
+    private final List<String> ranges = new ArrayList<String>();
+
+    /**
+     * @param ipAddresses the addresses or ranges (using the IP/Netmask notation, such as {@code 192.168.1.0/24}), from
+     * which the request must come
+     */
+    public IpRangeSetMatcher(String... ipAddresses) {
+        this(Arrays.asList(ipAddresses));
+    }
+
+    /**
+     * @param ipAddresses the addresses or ranges (using the IP/Netmask notation, such as {@code 192.168.1.0/24}), from
+     * which the request must come
+     */
+    public IpRangeSetMatcher(Collection<String> ipAddresses) {
+        Assert.notNull(ipAddresses, "ipAddresses cannot be null");
+
+        for (String ipAddress : ipAddresses) {
+            addRange(ipAddress);
+        }
+    }
+
+    public boolean matches(HttpServletRequest request) {
+        return matches(request.getRemoteAddr());
+    }
+
+    /**
+     * @param address the IP address to check
+     * @return true if the address is within one of the ranges
+     */
+    public boolean matches(String address) {
+        return getMatchingRange(address) != null;
+    }
+
+    /**
+     * Returns the most specific of the configured ranges which contains the address.
+     *
+     * @param address the IP address to check
+     * @return the range (as it was supplied to the constructor), or null if the address isn't in any of the ranges
+     */
+    public String getMatchingRange(String address) {
+        byte[] bytes = IpAddressMatcher.parseAddress(address);
+        int match = (bytes.length == 4 ? ipv4 : ipv6).longestMatch(bytes);
+
+        return match < 0 ? null : ranges.get(match);
+    }
+
+    /**
+     * @return the number of ranges
+     */
+    public int size() {
+        return ranges.size();
+    }
+
+    private void addRange(String ipAddress) {
+        Assert.hasText(ipAddress, "ipAddress cannot be empty");
+        String address = ipAddress;
+        int nMaskBits = -1;
+
+        if (ipAddress.indexOf('/') > 0) {
+            String[] addressAndMask = StringUtils.split(ipAddress, "/");
+            address = addressAndMask[0];
+            nMaskBits = Integer.parseInt(addressAndMask[1]);
+        }
+
+        byte[] bytes = IpAddressMatcher.parseAddress(address);
+        int addressBits = bytes.length * 8;
+
+        if (nMaskBits < 0 || nMaskBits > addressBits) {
+            nMaskBits = addressBits;
+        }
+
+        ranges.add(ipAddress);
+        (bytes.length == 4 ? ipv4 : ipv6).add(bytes, nMaskBits, ranges.size() - 1);
+    }
+
+    /**
+     * A binary trie stored in parallel arrays. Node 0 is the root; a child index of 0 means there is no child.
+     */
+    private static final class Trie {
+        private int[] zero = new int[16];
+        private int[] one = new int[16];
+        /** The index of the range which ends at each node, or -1 */
+        private int[] range = new int[16];
+        private int size = 1;
+
+        Trie() {
+            Arrays.fill(range, -1);
+        }
+
+        void add(byte[] address, int nMaskBits, int rangeIndex) {
+            int node = 0;
+
+            for (int bit = 0; bit < nMaskBits; bit++) {
+                int[] children = isSet(address, bit) ? one : zero;
+                int child = children[node];
+
+                if (child == 0) {
+                    child = newNode();
+                    // The arrays may have been replaced
+                    children = isSet(address, bit) ? one : zero;
+                    children[node] = child;
+                }
+
+                node = child;
+            }
+
+            // Where the same range is supplied more than once, the first takes precedence
+            if (range[node] < 0) {
+                range[node] = rangeIndex;
+            }
+        }
+
+        int longestMatch(byte[] address) {
+            int node = 0;
+            int match = range[0];
+            int bits = address.length * 8;
+
+            for (int bit = 0; bit < bits; bit++) {
+                node = isSet(address, bit) ? one[node] : zero[node];
+
+                if (node == 0) {
+                    break;
+                }
+
+                if (range[node] >= 0) {
+                    match = range[node];
+                }
+            }
+
+            return match;
+        }
+
+        private int newNode() {
+            if (size == range.length) {
+                int capacity = size * 2;
+                zero = grow(zero, capacity);
+                one = grow(one, capacity);
+                range = grow(range, capacity);
+                Arrays.fill(range, size, capacity, -1);
+            }
+
+            return size++;
+        }
+
+        private static int[] grow(int[] array, int capacity) {
+            int[] newArray = new int[capacity];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            return newArray;
+        }
+
+        private static boolean isSet(byte[] address, int bit) {
+            return (address[bit >> 3] & (0x80 >> (bit & 7))) != 0;
+        }
+    }
+}
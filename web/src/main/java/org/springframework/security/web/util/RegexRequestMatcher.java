@@ -74,26 +74,11 @@ public final class RegexRequestMatcher implements RequestMatcher {
      * @return true if the pattern matches the URL, false otherwise.
      */
     public boolean matches(HttpServletRequest request) {
-        if (httpMethod != null && request.getMethod() != null && httpMethod != HttpMethod.valueOf(request.getMethod())) {
+        if (!matchesMethod(request)) {
             return false;
         }
 
-        String url = request.getServletPath();
-        String pathInfo = request.getPathInfo();
-        String query = request.getQueryString();
-
-        if (pathInfo != null || query != null) {
-            StringBuilder sb = new StringBuilder(url);
-
-            if (pathInfo != null) {
-                sb.append(pathInfo);
-            }
-
-            if (query != null) {
-                sb.append('?').append(query);
-            }
-            url = sb.toString();
-        }
+        String url = RequestPath.get(request).getPathWithQueryString();
 
         if (logger.isDebugEnabled()) {
             logger.debug("Checking match of request : '" + url + "'; against '" + pattern + "'");
@@ -101,4 +86,17 @@ public final class RegexRequestMatcher implements RequestMatcher {
 
         return pattern.matcher(url).matches();
     }
+
+    boolean matchesMethod(HttpServletRequest request) {
+        return httpMethod == null || request.getMethod() == null
+                || httpMethod == HttpMethod.valueOf(request.getMethod());
+    }
+
+    Pattern getPattern() {
+        return pattern;
+    }
+
+    HttpMethod getHttpMethod() {
+        return httpMethod;
+    }
 }
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.util;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.util.Assert;
+
+/**
+ * An ordered collection of {@code RequestMatcher}s, each associated with a value, which returns the value of the
+ * <em>first</em> matcher (in insertion order) that matches a request.
+ * <p>
+ * The result is always the same as iterating through the matchers in order and returning the first match, but the
+ * number of matchers actually consulted is reduced by indexing {@link AntPathRequestMatcher} instances on the literal
+ * path segments at the start of their patterns. A pattern such as {@code /admin/users/**} is stored under the trie
+ * node {@code admin -> users}, so a request for {@code /public/css/site.css} will never be checked against it.
+ * Patterns which start with a wildcard (including {@code /**}) and any other type of {@code RequestMatcher} can't be
+ * indexed, and are stored at the root, meaning they are candidates for every request. Within each node, matchers
+ * which are restricted to a specific HTTP method are kept in a separate bucket for that method, so a {@code GET}
+ * request won't be checked against {@code POST}-only rules.
+ * <p>
+ * The regular expressions of {@link RegexRequestMatcher}s are also combined into a single automaton (where they don't
+ * use features such as back-references or look-around, which require backtracking). The first time one of them is a
+ * candidate for a request, the URL is matched against all of them in one scan, and the result is reused for the
+ * remaining regex candidates, rather than running each {@code Pattern} in turn.
+ * <p>
+ * When looking up a request, the candidates collected along the path through the trie are evaluated in order of
+ * their original position, so the cost is proportional to the path length plus the number of candidates which
+ * share a prefix with the request path, rather than to the total number of matchers.
+ * <p>
+ * Entries must all be added before the index is used to match requests; it is not safe to call {@code add}
+ * concurrently with {@code getFirstMatch}.
+ *
+ * @since 3.2
+ */
+public final class RequestMatcherIndex<T> {
+    private final Node root = new Node();
+    private final List<RequestMatcher> matchers = new ArrayList<RequestMatcher>();
+    private final List<T> values = new ArrayList<T>();
+    /** The regular expressions of the {@code RegexRequestMatcher}s, which are matched together in a single pass */
+    private final CompiledRegexSet regexSet = new CompiledRegexSet();
+    /** For each entry, the index of its expression in {@code regexSet}, or -1 */
+    private int[] regexIds = new int[0];
+    /** The position of the first matcher which depends on more than the request path and method */
+    private int firstNonPathMatcher = -1;
+
+    /**
+     * Adds a matcher and its associated value. Matchers added earlier take precedence over those added later.
+     *
+     * @param matcher the matcher for the entry
+     * @param value the value to return from {@link #getFirstMatch(HttpServletRequest)} if the matcher is the first
+     * one which matches the request
+     */
+    public void add(RequestMatcher matcher, T value) {
+        Assert.notNull(matcher, "matcher cannot be null");
+        int index = matchers.size();
+        matchers.add(matcher);
+        values.add(value);
+
+        if (firstNonPathMatcher < 0 && !isPathMatcher(matcher)) {
+            firstNonPathMatcher = index;
+        }
+
+        if (index == regexIds.length) {
+            int[] newRegexIds = new int[index == 0 ? 2 : index * 2];
+            System.arraycopy(regexIds, 0, newRegexIds, 0, index);
+            regexIds = newRegexIds;
+        }
+
+        regexIds[index] = matcher instanceof RegexRequestMatcher ?
+                regexSet.add(((RegexRequestMatcher) matcher).getPattern()) : -1;
+
+        Node node = root;
+
+        for (String segment : getLiteralPrefix(matcher)) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+
+        node.getBucket(getHttpMethod(matcher)).add(index);
+    }
+
+    /**
+     * Returns the value associated with the first matcher which matches the request.
+     *
+     * @param request the request to match
+     * @return the value of the first matching entry, or null if none match
+     */
+    public T getFirstMatch(HttpServletRequest request) {
+        int index = getFirstMatchIndex(request);
+
+        return index < 0 ? null : values.get(index);
+    }
+
+    /**
+     * Returns the position (in insertion order) of the first matcher which matches the request.
+     *
+     * @param request the request to match
+     * @return the index of the first matching entry, or -1 if none match
+     */
+    public int getFirstMatchIndex(HttpServletRequest request) {
+        List<Bucket> candidates = findCandidates(request);
+        int lists = candidates.size();
+        int[] positions = new int[lists];
+        CompiledRegexSet.Result regexResult = null;
+
+        while (true) {
+            int next = -1;
+            int nextList = -1;
+
+            for (int i = 0; i < lists; i++) {
+                Bucket bucket = candidates.get(i);
+                if (positions[i] < bucket.size) {
+                    int candidate = bucket.entries[positions[i]];
+                    if (next < 0 || candidate < next) {
+                        next = candidate;
+                        nextList = i;
+                    }
+                }
+            }
+
+            if (next < 0) {
+                return -1;
+            }
+
+            positions[nextList]++;
+
+            int regexId = regexIds[next];
+
+            if (regexId >= 0) {
+                RegexRequestMatcher matcher = (RegexRequestMatcher) matchers.get(next);
+
+                if (!matcher.matchesMethod(request)) {
+                    continue;
+                }
+
+                if (regexResult == null) {
+                    regexResult = regexSet.match(RequestPath.get(request).getPathWithQueryString());
+                }
+
+                if (regexResult.matches(regexId)) {
+                    return next;
+                }
+            } else if (matchers.get(next).matches(request)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the result of a lookup depends only on the request path and HTTP method, and so can safely be
+     * reused for other requests with the same path and method. This is the case if all the matchers up to and including
+     * the matching one (or all matchers, if there was no match) are {@code AntPathRequestMatcher}s or
+     * {@code AnyRequestMatcher}s.
+     *
+     * @param firstMatchIndex the value returned by {@link #getFirstMatchIndex(HttpServletRequest)}
+     * @return true if the result can be cached using the path and method as the key
+     */
+    public boolean isCacheable(int firstMatchIndex) {
+        if (firstNonPathMatcher < 0) {
+            return true;
+        }
+
+        return firstMatchIndex >= 0 && firstMatchIndex < firstNonPathMatcher;
+    }
+
+    /**
+     * @param index the position of an entry
+     * @return the value of the entry
+     */
+    public T getValue(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * @return the number of entries in the index
+     */
+    public int size() {
+        return matchers.size();
+    }
+
+    private List<Bucket> findCandidates(HttpServletRequest request) {
+        List<Bucket> candidates = new ArrayList<Bucket>(4);
+        HttpMethod method = resolveMethod(request.getMethod());
+        Node node = root;
+
+        node.collectBuckets(method, candidates);
+
+        if (node.children.isEmpty()) {
+            return candidates;
+        }
+
+        String path = RequestPath.get(request).getLowerCasePath();
+        int length = path.length();
+        int start = 0;
+
+        // Tokenize in the same way as AntPathMatcher: tokens are trimmed and empty tokens are ignored
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+
+            String segment = path.substring(start, end).trim();
+            start = end + 1;
+
+            if (segment.length() == 0) {
+                continue;
+            }
+
+            node = node.children.get(segment);
+
+            if (node == null) {
+                break;
+            }
+
+            node.collectBuckets(method, candidates);
+
+            if (node.children.isEmpty()) {
+                break;
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Returns the {@code HttpMethod} for the request method name, or null if it is missing or unknown. In the latter
+     * case, all method-specific matchers remain candidates and will make their own decision.
+     */
+    private static HttpMethod resolveMethod(String method) {
+        if (method == null) {
+            return null;
+        }
+
+        try {
+            return HttpMethod.valueOf(method);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the path segments which any request must start with for the matcher to have a chance of matching it.
+     */
+    private static List<String> getLiteralPrefix(RequestMatcher matcher) {
+        List<String> prefix = new ArrayList<String>();
+
+        if (!(matcher instanceof AntPathRequestMatcher)) {
+            return prefix;
+        }
+
+        String pattern = ((AntPathRequestMatcher) matcher).getPattern();
+
+        // AntPathMatcher won't match a pattern with a leading slash against a path without one (and vice versa)
+        if (!pattern.startsWith("/")) {
+            return prefix;
+        }
+
+        for (String segment : pattern.substring(1).split("/", -1)) {
+            if (!isLiteral(segment)) {
+                break;
+            }
+
+            prefix.add(segment);
+        }
+
+        return prefix;
+    }
+
+    private static HttpMethod getHttpMethod(RequestMatcher matcher) {
+        if (matcher instanceof AntPathRequestMatcher) {
+            return ((AntPathRequestMatcher) matcher).getHttpMethod();
+        }
+
+        if (matcher instanceof RegexRequestMatcher) {
+            return ((RegexRequestMatcher) matcher).getHttpMethod();
+        }
+
+        return null;
+    }
+
+    private static boolean isPathMatcher(RequestMatcher matcher) {
+        return matcher instanceof AntPathRequestMatcher || matcher instanceof AnyRequestMatcher;
+    }
+
+    private static boolean isLiteral(String segment) {
+        if (segment.length() == 0 || !segment.equals(segment.trim())) {
+            return false;
+        }
+
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?' || c == '{' || c == '}') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<String, Node>();
+        private final Bucket anyMethod = new Bucket();
+        private final Map<HttpMethod, Bucket> byMethod = new EnumMap<HttpMethod, Bucket>(HttpMethod.class);
+
+        private Bucket getBucket(HttpMethod method) {
+            if (method == null) {
+                return anyMethod;
+            }
+
+            Bucket bucket = byMethod.get(method);
+
+            if (bucket == null) {
+                bucket = new Bucket();
+                byMethod.put(method, bucket);
+            }
+
+            return bucket;
+        }
+
+        private void collectBuckets(HttpMethod method, List<Bucket> candidates) {
+            if (anyMethod.size > 0) {
+                candidates.add(anyMethod);
+            }
+
+            if (byMethod.isEmpty()) {
+                return;
+            }
+
+            if (method == null) {
+                candidates.addAll(byMethod.values());
+                return;
+            }
+
+            Bucket bucket = byMethod.get(method);
+
+            if (bucket != null) {
+                candidates.add(bucket);
+            }
+        }
+    }
+
+    /**
+     * A sorted list of entry positions.
+     */
+    private static final class Bucket {
+        private int[] entries = new int[0];
+        private int size;
+
+        private void add(int index) {
+            if (size == entries.length) {
+                int[] newEntries = new int[size == 0 ? 2 : size * 2];
+                System.arraycopy(entries, 0, newEntries, 0, size);
+                entries = newEntries;
+            }
+            // Entries are added in increasing order, so the array remains sorted
+            entries[size++] = index;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.util;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Holds the path ({@code servletPath + pathInfo}) of a request which is used by the {@code RequestMatcher}
+ * implementations, so that it only needs to be built once per request, rather than once per matcher.
+ * <p>
+ * An instance is stored as a request attribute by the {@code FilterChainProxy} for the duration of the security
+ * filter chain (see {@link #install(HttpServletRequest)}). Matchers obtain it using {@link #get(HttpServletRequest)},
+ * which checks that the stored instance is still valid for the request (the {@code servletPath} and {@code pathInfo}
+ * may change, for example when the request is forwarded or the firewall wrapper is reset). If there is no valid
+ * instance, a new one is created for the caller but not stored, so matchers also work outside the filter chain.
+ * <p>
+ * The lower-case and query string variants of the path are built lazily, on first use.
+ *
+ * @since 3.2
+ */
+public final class RequestPath {
+    static final String ATTRIBUTE_NAME = RequestPath.class.getName();
+
+    private final String servletPath;
+    private final String pathInfo;
+    private final String queryString;
+    private final String path;
+    private String lowerCasePath;
+    private String pathWithQueryString;
+
+    private RequestPath(HttpServletRequest request) {
+        this.servletPath = request.getServletPath();
+        this.pathInfo = request.getPathInfo();
+        this.queryString = request.getQueryString();
+
+        if (pathInfo == null) {
+            path = servletPath;
+        } else if (servletPath == null) {
+            path = pathInfo;
+        } else {
+            path = servletPath + pathInfo;
+        }
+    }
+
+    /**
+     * Creates an instance for the request and stores it as a request attribute, replacing any existing one.
+     *
+     * @param request the request which is about to be matched
+     * @return the previously stored value of the attribute (which may be null), so that it can be restored by
+     * passing it to {@link #restore(HttpServletRequest, Object)}
+     */
+    public static Object install(HttpServletRequest request) {
+        Object previous = request.getAttribute(ATTRIBUTE_NAME);
+        request.setAttribute(ATTRIBUTE_NAME, new RequestPath(request));
+
+        return previous;
+    }
+
+    /**
+     * Restores the request attribute to the value it had before {@link #install(HttpServletRequest)} was called.
+     *
+     * @param request the request
+     * @param previous the value returned by {@code install}
+     */
+    public static void restore(HttpServletRequest request, Object previous) {
+        if (previous == null) {
+            request.removeAttribute(ATTRIBUTE_NAME);
+        } else {
+            request.setAttribute(ATTRIBUTE_NAME, previous);
+        }
+    }
+
+    /**
+     * Returns the stored instance for the request, if there is one and it matches the current state of the request,
+     * otherwise a newly created one.
+     *
+     * @param request the request to be matched
+     * @return the path information for the request
+     */
+    public static RequestPath get(HttpServletRequest request) {
+        Object stored = request.getAttribute(ATTRIBUTE_NAME);
+
+        if (stored instanceof RequestPath) {
+            RequestPath path = (RequestPath) stored;
+
+            if (path.isCurrent(request)) {
+                return path;
+            }
+        }
+
+        return new RequestPath(request);
+    }
+
+    /**
+     * @return the {@code servletPath + pathInfo} of the request
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the {@code servletPath + pathInfo} of the request, converted to lower case in the same way as the
+     * patterns of an {@link AntPathRequestMatcher}
+     */
+    public String getLowerCasePath() {
+        if (lowerCasePath == null) {
+            lowerCasePath = path == null ? null : AntPathRequestMatcher.toLowerCase(path);
+        }
+
+        return lowerCasePath;
+    }
+
+    /**
+     * @return the {@code servletPath + pathInfo} of the request, followed by a question mark and the query string if
+     * the request has one
+     */
+    public String getPathWithQueryString() {
+        if (pathWithQueryString == null) {
+            pathWithQueryString = queryString == null ? path : path + '?' + queryString;
+        }
+
+        return pathWithQueryString;
+    }
+
+    private boolean isCurrent(HttpServletRequest request) {
+        return same(servletPath, request.getServletPath()) && same(pathInfo, request.getPathInfo())
+                && same(queryString, request.getQueryString());
+    }
+
+    private static boolean same(String s1, String s2) {
+        return s1 == s2 || (s1 != null && s1.equals(s2));
+    }
+}
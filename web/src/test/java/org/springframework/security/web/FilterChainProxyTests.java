@@ -14,8 +14,13 @@ import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.firewall.FirewalledRequest;
 import org.springframework.security.web.firewall.HttpFirewall;
+import org.springframework.security.web.util.AntPathRequestMatcher;
 import org.springframework.security.web.util.RequestMatcher;
+import org.springframework.security.web.util.RequestPath;
 
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -223,4 +228,129 @@ public class FilterChainProxyTests {
         verify(innerChain).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class));
         assertNull(SecurityContextHolder.getContext().getAuthentication());
     }
+
+    @Test
+    public void indexedChainsPreserveFirstMatchOrdering() throws Exception {
+        Filter apiFilter = mock(Filter.class);
+        Filter adminFilter = mock(Filter.class);
+        List<SecurityFilterChain> chains = new ArrayList<SecurityFilterChain>();
+        chains.add(new DefaultSecurityFilterChain(new AntPathRequestMatcher("/api/public/**")));
+        chains.add(new DefaultSecurityFilterChain(new AntPathRequestMatcher("/api/**"), apiFilter));
+        chains.add(new DefaultSecurityFilterChain(matcher, adminFilter));
+        chains.add(new DefaultSecurityFilterChain(new AntPathRequestMatcher("/admin/**"), filter));
+        chains.add(new DefaultSecurityFilterChain(new AntPathRequestMatcher("/**"), filter));
+        fcp = new FilterChainProxy(chains);
+        fcp.setFilterChainValidator(mock(FilterChainProxy.FilterChainValidator.class));
+        fcp.afterPropertiesSet();
+
+        when(matcher.matches(any(HttpServletRequest.class))).thenReturn(true);
+        assertEquals(0, fcp.getFilters("/API/public/css").size());
+        assertSame(apiFilter, fcp.getFilters("/api/private").get(0));
+        assertSame(adminFilter, fcp.getFilters("/admin/users").get(0));
+
+        when(matcher.matches(any(HttpServletRequest.class))).thenReturn(false);
+        assertSame(filter, fcp.getFilters("/admin/users").get(0));
+        assertSame(apiFilter, fcp.getFilters("/api/private").get(0));
+        // The arbitrary matcher must be consulted in its configured position for every request
+        verify(matcher, times(2)).matches(any(HttpServletRequest.class));
+    }
+
+    @Test
+    @Deprecated
+    public void indexIsRebuiltWhenFilterChainMapChanges() throws Exception {
+        fcp.afterPropertiesSet();
+        Map<RequestMatcher, List<Filter>> map = new LinkedHashMap<RequestMatcher, List<Filter>>();
+        map.put(new AntPathRequestMatcher("/secure/**"), Arrays.asList(filter));
+        fcp.setFilterChainMap(map);
+
+        assertSame(filter, fcp.getFilters("/secure/page").get(0));
+        assertNull(fcp.getFilters("/other"));
+        verifyZeroInteractions(matcher);
+    }
+
+    @Test
+    public void requestPathIsSharedWithinChainAndRemovedAfterwards() throws Exception {
+        final List<RequestPath> paths = new ArrayList<RequestPath>();
+        when(matcher.matches(any(HttpServletRequest.class))).thenAnswer(new Answer<Boolean>() {
+            public Boolean answer(InvocationOnMock inv) throws Throwable {
+                paths.add(RequestPath.get((HttpServletRequest) inv.getArguments()[0]));
+                return true;
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock inv) throws Throwable {
+                paths.add(RequestPath.get((HttpServletRequest) inv.getArguments()[0]));
+                return null;
+            }
+        }).when(filter).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class), any(FilterChain.class));
+
+        fcp.doFilter(request, response, chain);
+
+        assertEquals(2, paths.size());
+        assertSame(paths.get(0), paths.get(1));
+        assertEquals("/path", paths.get(0).getPath());
+        assertTrue(Collections.list(request.getAttributeNames()).isEmpty());
+    }
+
+    @Test
+    public void filterStatisticsAreNotRecordedByDefault() throws Exception {
+        fcp.afterPropertiesSet();
+        when(matcher.matches(any(HttpServletRequest.class))).thenReturn(true);
+        fcp.doFilter(request, response, chain);
+
+        assertTrue(fcp.getFilterStatistics().isEmpty());
+    }
+
+    @Test
+    public void filterStatisticsExcludeDownstreamTime() throws Exception {
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock inv) throws Throwable {
+                Thread.sleep(100);
+                return null;
+            }
+        }).when(chain).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class));
+        Filter second = mock(Filter.class);
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock inv) throws Throwable {
+                Thread.sleep(20);
+                ((FilterChain) inv.getArguments()[2]).doFilter((HttpServletRequest) inv.getArguments()[0],
+                        (HttpServletResponse) inv.getArguments()[1]);
+                return null;
+            }
+        }).when(second).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class), any(FilterChain.class));
+        fcp = new FilterChainProxy(new DefaultSecurityFilterChain(matcher, filter, second));
+        fcp.setFilterChainValidator(mock(FilterChainProxy.FilterChainValidator.class));
+        fcp.setFilterStatisticsEnabled(true);
+        fcp.afterPropertiesSet();
+        when(matcher.matches(any(HttpServletRequest.class))).thenReturn(true);
+
+        fcp.doFilter(request, response, chain);
+
+        List<FilterStatistics> statistics = fcp.getFilterStatistics();
+        assertEquals(2, statistics.size());
+        assertEquals(1, statistics.get(0).getInvocationCount());
+        assertEquals(1, statistics.get(1).getInvocationCount());
+        assertEquals(second.getClass().getName(), statistics.get(1).getFilterClass());
+        assertTrue(statistics.get(0).getMaxTimeMicros() < 20000);
+        assertTrue(statistics.get(1).getMaxTimeMicros() >= 20000);
+        assertTrue(statistics.get(1).getMaxTimeMicros() < 100000);
+    }
+
+    @Test
+    public void filterStatisticsAreRegisteredWithMBeanServer() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        fcp.setFilterStatisticsEnabled(true);
+        fcp.setMBeanServer(server);
+        fcp.afterPropertiesSet();
+        when(matcher.matches(any(HttpServletRequest.class))).thenReturn(true);
+        fcp.doFilter(request, response, chain);
+
+        ObjectName query = new ObjectName("org.springframework.security:type=FilterStatistics,*");
+        Set<ObjectName> names = server.queryNames(query, null);
+        assertEquals(1, names.size());
+        assertEquals(Long.valueOf(1), server.getAttribute(names.iterator().next(), "InvocationCount"));
+
+        fcp.destroy();
+        assertTrue(server.queryNames(query, null).isEmpty());
+    }
 }
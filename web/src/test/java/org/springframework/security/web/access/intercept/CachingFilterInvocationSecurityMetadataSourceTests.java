@@ -0,0 +1,108 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.access.intercept;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+import javax.servlet.FilterChain;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.access.SecurityConfig;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.util.AntPathRequestMatcher;
+import org.springframework.security.web.util.RegexRequestMatcher;
+import org.springframework.security.web.util.RequestMatcher;
+
+public class CachingFilterInvocationSecurityMetadataSourceTests {
+    private final Collection<ConfigAttribute> admin = SecurityConfig.createList("ROLE_ADMIN");
+    private final Collection<ConfigAttribute> user = SecurityConfig.createList("ROLE_USER");
+    private final Collection<ConfigAttribute> regex = SecurityConfig.createList("ROLE_REGEX");
+
+    @Test
+    public void repeatedLookupsAreServedFromCache() {
+        CachingFilterInvocationSecurityMetadataSource source = createSource(false);
+
+        assertEquals(admin, source.getAttributes(createFilterInvocation("/admin/x", "GET")));
+        assertEquals(admin, source.getAttributes(createFilterInvocation("/admin/x", "GET")));
+        assertEquals(user, source.getAttributes(createFilterInvocation("/user/x", "GET")));
+
+        assertEquals(1, source.getHitCount());
+        assertEquals(2, source.getMissCount());
+        assertEquals(2, source.getCacheSize());
+        assertEquals(0, source.getUncacheableCount());
+    }
+
+    @Test
+    public void noMatchIsCached() {
+        CachingFilterInvocationSecurityMetadataSource source = createSource(false);
+
+        assertNull(source.getAttributes(createFilterInvocation("/other", "GET")));
+        assertNull(source.getAttributes(createFilterInvocation("/other", "GET")));
+        assertEquals(1, source.getHitCount());
+    }
+
+    @Test
+    public void methodIsPartOfKey() {
+        CachingFilterInvocationSecurityMetadataSource source = createSource(false);
+
+        assertEquals(user, source.getAttributes(createFilterInvocation("/user/x", "GET")));
+        assertNull(source.getAttributes(createFilterInvocation("/user/x", "POST")));
+        assertEquals(0, source.getHitCount());
+    }
+
+    @Test
+    public void lookupsInvolvingOtherMatchersAreNotCached() {
+        CachingFilterInvocationSecurityMetadataSource source = createSource(true);
+
+        // Rules before the regex rule are still cacheable
+        assertEquals(admin, source.getAttributes(createFilterInvocation("/admin/x", "GET")));
+        assertEquals(admin, source.getAttributes(createFilterInvocation("/admin/x", "GET")));
+        assertEquals(1, source.getHitCount());
+
+        FilterInvocation fi = createFilterInvocation("/user/x", "GET");
+        ((MockHttpServletRequest) fi.getRequest()).setQueryString("special");
+        assertEquals(regex, source.getAttributes(fi));
+        assertEquals(user, source.getAttributes(createFilterInvocation("/user/x", "GET")));
+        assertNull(source.getAttributes(createFilterInvocation("/other", "GET")));
+        assertEquals(3, source.getUncacheableCount());
+        assertEquals(1, source.getCacheSize());
+    }
+
+    private CachingFilterInvocationSecurityMetadataSource createSource(boolean includeRegex) {
+        LinkedHashMap<RequestMatcher, Collection<ConfigAttribute>> requestMap =
+            new LinkedHashMap<RequestMatcher, Collection<ConfigAttribute>>();
+        requestMap.put(new AntPathRequestMatcher("/admin/**"), admin);
+        if (includeRegex) {
+            requestMap.put(new RegexRequestMatcher(".*\\\\?special", null), regex);
+        }
+        requestMap.put(new AntPathRequestMatcher("/user/**", "GET"), user);
+
+        return new CachingFilterInvocationSecurityMetadataSource(
+                new DefaultFilterInvocationSecurityMetadataSource(requestMap));
+    }
+
+    private FilterInvocation createFilterInvocation(String servletPath, String method) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setMethod(method);
+        request.setServletPath(servletPath);
+
+        return new FilterInvocation(request, new MockHttpServletResponse(), mock(FilterChain.class));
+    }
+}
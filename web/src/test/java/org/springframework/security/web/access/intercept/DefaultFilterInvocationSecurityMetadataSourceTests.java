@@ -30,6 +30,7 @@ import org.springframework.security.access.ConfigAttribute;
 import org.springframework.security.access.SecurityConfig;
 import org.springframework.security.web.FilterInvocation;
 import org.springframework.security.web.util.AntPathRequestMatcher;
+import org.springframework.security.web.util.RegexRequestMatcher;
 import org.springframework.security.web.util.RequestMatcher;
 
 /**
@@ -139,6 +140,28 @@ public class DefaultFilterInvocationSecurityMetadataSourceTests {
         assertEquals(userAttrs, attrs);
     }
 
+    @Test
+    public void firstMatchIsReturnedWhenRulesMixMethodsAndMatcherTypes() throws Exception {
+        LinkedHashMap<RequestMatcher, Collection<ConfigAttribute>> requestMap =
+            new LinkedHashMap<RequestMatcher, Collection<ConfigAttribute>>();
+        Collection<ConfigAttribute> postAttrs = SecurityConfig.createList("POST");
+        Collection<ConfigAttribute> regexAttrs = SecurityConfig.createList("REGEX");
+        Collection<ConfigAttribute> adminAttrs = SecurityConfig.createList("ADMIN");
+        Collection<ConfigAttribute> allAttrs = SecurityConfig.createList("ALL");
+
+        requestMap.put(new AntPathRequestMatcher("/admin/users/**", "POST"), postAttrs);
+        requestMap.put(new RegexRequestMatcher("/admin/users/[0-9]+", null), regexAttrs);
+        requestMap.put(new AntPathRequestMatcher("/admin/**"), adminAttrs);
+        requestMap.put(new AntPathRequestMatcher("/**"), allAttrs);
+        fids = new DefaultFilterInvocationSecurityMetadataSource(requestMap);
+
+        assertEquals(postAttrs, fids.getAttributes(createFilterInvocation("/admin/users/1", null, null, "POST")));
+        assertEquals(regexAttrs, fids.getAttributes(createFilterInvocation("/admin/users/1", null, null, "GET")));
+        assertEquals(adminAttrs, fids.getAttributes(createFilterInvocation("/admin/users/bob", null, null, "GET")));
+        assertEquals(allAttrs, fids.getAttributes(createFilterInvocation("/other", null, null, "POST")));
+        assertEquals(postAttrs, fids.getAttributes(createFilterInvocation("/admin/users", null, null, null)));
+    }
+
     /**
      * Check fixes for SEC-321
      */
@@ -21,12 +21,16 @@ import static org.mockito.Mockito.*;
 import org.junit.*;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.AuthenticationDetailsSource;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
 import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.memory.UserAttribute;
+import org.springframework.security.web.context.DeferredLoadingSecurityContext;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -34,7 +38,12 @@ import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 
 /**
@@ -116,6 +125,103 @@ public class AnonymousAuthenticationFilterTests {
         SecurityContextHolder.getContext().setAuthentication(null); // so anonymous fires again
     }
 
+    @Test
+    public void deferredContextIsNotLoaded() throws Exception {
+        DeferredLoadingSecurityContext context = mock(DeferredLoadingSecurityContext.class);
+        SecurityContextHolder.setContext(context);
+        AnonymousAuthenticationFilter filter = new AnonymousAuthenticationFilter("qwerty");
+
+        filter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), new MockFilterChain(true));
+
+        verify(context).isLoaded();
+        verify(context).setDefaultAuthentication(any(AnonymousAuthenticationToken.class));
+        verifyNoMoreInteractions(context);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lazyDetailsAreOnlyBuiltWhenRequested() throws Exception {
+        AuthenticationDetailsSource<HttpServletRequest, Object> detailsSource = mock(AuthenticationDetailsSource.class);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        when(detailsSource.buildDetails(request)).thenReturn("details");
+        AnonymousAuthenticationFilter filter = new AnonymousAuthenticationFilter("qwerty");
+        filter.setAuthenticationDetailsSource(detailsSource);
+        filter.setLazyDetails(true);
+
+        final Authentication[] result = new Authentication[1];
+        final Object[] details = new Object[2];
+
+        filter.doFilter(request, new MockHttpServletResponse(), new FilterChain() {
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                result[0] = SecurityContextHolder.getContext().getAuthentication();
+                details[0] = result[0].getDetails();
+                details[1] = result[0].getDetails();
+            }
+        });
+        Authentication auth = result[0];
+
+        assertTrue(auth instanceof AnonymousAuthenticationToken);
+        assertTrue(new AuthenticationTrustResolverImpl().isAnonymous(auth));
+        assertTrue(auth.isAuthenticated());
+        assertEquals("anonymousUser", auth.getPrincipal());
+        assertEquals("qwerty".hashCode(), ((AnonymousAuthenticationToken) auth).getKeyHash());
+        assertEquals("details", details[0]);
+        assertEquals("details", details[1]);
+        assertEquals("details", auth.getDetails());
+        verify(detailsSource, times(1)).buildDetails(request);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lazyDetailsAreNotBuiltOnceTheRequestHasBeenProcessed() throws Exception {
+        AuthenticationDetailsSource<HttpServletRequest, Object> detailsSource = mock(AuthenticationDetailsSource.class);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        AnonymousAuthenticationFilter filter = new AnonymousAuthenticationFilter("qwerty");
+        filter.setAuthenticationDetailsSource(detailsSource);
+        filter.setLazyDetails(true);
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain(true));
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+
+        assertNull(auth.getDetails());
+        verifyZeroInteractions(detailsSource);
+    }
+
+    @Test
+    public void lazyDetailsTokensShareAuthoritiesAndEqualEagerTokens() throws Exception {
+        AnonymousAuthenticationFilter filter = new AnonymousAuthenticationFilter("qwerty");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        Authentication eager = filter.createAuthentication(request);
+        filter.setLazyDetails(true);
+        Authentication lazy1 = filter.createAuthentication(request);
+        Authentication lazy2 = filter.createAuthentication(request);
+
+        assertNotSame(lazy1, lazy2);
+        assertSame(lazy1.getAuthorities(), lazy2.getAuthorities());
+        assertEquals(eager, lazy1);
+        assertEquals(lazy1, eager);
+        assertEquals(eager.hashCode(), lazy2.hashCode());
+    }
+
+    @Test
+    public void lazyDetailsTokenIsSerializable() throws Exception {
+        AnonymousAuthenticationFilter filter = new AnonymousAuthenticationFilter("qwerty");
+        filter.setLazyDetails(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        Authentication auth = filter.createAuthentication(request);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(auth);
+        out.close();
+        Authentication copy = (Authentication) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals(auth, copy);
+        assertEquals("10.0.0.1", ((WebAuthenticationDetails) copy.getDetails()).getRemoteAddress());
+    }
+
     //~ Inner Classes ==================================================================================================
 
     private class MockFilterChain implements FilterChain {
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.rememberme;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+
+import java.util.Collection;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class CachingPersistentTokenRepositoryTests {
+    private BulkPersistentTokenRepository delegate;
+    private CachingPersistentTokenRepository repository;
+    private PersistentRememberMeToken token;
+
+    @Before
+    public void setUp() {
+        delegate = mock(BulkPersistentTokenRepository.class);
+        repository = new CachingPersistentTokenRepository(delegate);
+        token = new PersistentRememberMeToken("joe", "series", "token", new Date());
+        when(delegate.getTokenForSeries("series")).thenReturn(token);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void nullDelegateIsRejected() {
+        new CachingPersistentTokenRepository(null);
+    }
+
+    @Test
+    public void tokensAreCached() {
+        assertSame(token, repository.getTokenForSeries("series"));
+        assertSame(token, repository.getTokenForSeries("series"));
+
+        verify(delegate, times(1)).getTokenForSeries("series");
+    }
+
+    @Test
+    public void tokensAreReloadedAfterTtl() {
+        repository.setCacheTtlSeconds(0);
+
+        repository.getTokenForSeries("series");
+        repository.getTokenForSeries("series");
+
+        verify(delegate, times(2)).getTokenForSeries("series");
+    }
+
+    @Test
+    public void newTokensAreWrittenImmediatelyAndCached() {
+        PersistentRememberMeToken newToken = new PersistentRememberMeToken("bob", "newseries", "token", new Date());
+
+        repository.createNewToken(newToken);
+
+        verify(delegate).createNewToken(newToken);
+        assertSame(newToken, repository.getTokenForSeries("newseries"));
+        verify(delegate, never()).getTokenForSeries("newseries");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void updatesAreWrittenInBatches() {
+        Date lastUsed = new Date();
+        repository.updateToken("series", "newtoken", lastUsed);
+        repository.updateToken("series", "newertoken", lastUsed);
+
+        assertEquals("newertoken", repository.getTokenForSeries("series").getTokenValue());
+        verify(delegate, never()).updateToken(anyString(), anyString(), any(Date.class));
+        verify(delegate, never()).updateTokens(anyCollectionOf(PersistentRememberMeToken.class));
+
+        assertEquals(1, repository.flush());
+
+        ArgumentCaptor<Collection> tokens = ArgumentCaptor.forClass(Collection.class);
+        verify(delegate).updateTokens(tokens.capture());
+        PersistentRememberMeToken updated = (PersistentRememberMeToken) tokens.getValue().iterator().next();
+        assertEquals("joe", updated.getUsername());
+        assertEquals("series", updated.getSeries());
+        assertEquals("newertoken", updated.getTokenValue());
+        assertEquals(0, repository.flush());
+    }
+
+    @Test
+    public void pendingUpdatesAreUsedAfterTtl() {
+        repository.updateToken("series", "newtoken", new Date());
+        repository.setCacheTtlSeconds(0);
+
+        assertEquals("newtoken", repository.getTokenForSeries("series").getTokenValue());
+    }
+
+    @Test
+    public void updatesArePassedOnIndividuallyIfDelegateCannotBatch() {
+        PersistentTokenRepository simpleDelegate = mock(PersistentTokenRepository.class);
+        when(simpleDelegate.getTokenForSeries("series")).thenReturn(token);
+        repository = new CachingPersistentTokenRepository(simpleDelegate);
+        Date lastUsed = new Date();
+
+        repository.updateToken("series", "newtoken", lastUsed);
+        repository.flush();
+
+        verify(simpleDelegate).updateToken("series", "newtoken", lastUsed);
+        assertEquals(0, repository.removeExpiredTokens());
+    }
+
+    @Test
+    public void failedUpdatesAreRetried() {
+        repository.updateToken("series", "newtoken", new Date());
+        doThrow(new RuntimeException("failed")).doNothing().when(delegate)
+                .updateTokens(anyCollectionOf(PersistentRememberMeToken.class));
+
+        try {
+            repository.flush();
+            fail("Expected exception");
+        } catch (RuntimeException expected) {
+        }
+
+        assertEquals(1, repository.flush());
+    }
+
+    @Test
+    public void removingUserTokensInvalidatesCachedAndPendingTokens() throws Exception {
+        repository.getTokenForSeries("series");
+        repository.updateToken("series", "newtoken", new Date());
+        Thread.sleep(2);
+
+        repository.removeUserTokens("joe");
+        when(delegate.getTokenForSeries("series")).thenReturn(null);
+
+        verify(delegate).removeUserTokens("joe");
+        assertNull(repository.getTokenForSeries("series"));
+        assertEquals(0, repository.flush());
+    }
+
+    @Test
+    public void expiredTokensAreRemovedAfterFlushing() {
+        repository.setTokenValiditySeconds(60);
+        repository.updateToken("series", "newtoken", new Date());
+        when(delegate.removeTokensLastUsedBefore(any(Date.class))).thenReturn(3);
+
+        assertEquals(3, repository.removeExpiredTokens());
+
+        verify(delegate).updateTokens(anyCollectionOf(PersistentRememberMeToken.class));
+        ArgumentCaptor<Date> cutoff = ArgumentCaptor.forClass(Date.class);
+        verify(delegate).removeTokensLastUsedBefore(cutoff.capture());
+        long expected = System.currentTimeMillis() - 60000;
+        assertTrue(Math.abs(cutoff.getValue().getTime() - expected) < 1000);
+    }
+
+    @Test
+    public void destroyWritesPendingUpdates() {
+        repository.afterPropertiesSet();
+        repository.updateToken("series", "newtoken", new Date());
+
+        repository.destroy();
+
+        verify(delegate).updateTokens(anyCollectionOf(PersistentRememberMeToken.class));
+    }
+}
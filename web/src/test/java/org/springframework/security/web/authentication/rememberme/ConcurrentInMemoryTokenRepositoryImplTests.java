@@ -0,0 +1,157 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.rememberme;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+public class ConcurrentInMemoryTokenRepositoryImplTests {
+    private ConcurrentInMemoryTokenRepositoryImpl repository;
+
+    @Before
+    public void setUp() {
+        repository = new ConcurrentInMemoryTokenRepositoryImpl(100);
+        repository.setTokenValiditySeconds(60);
+    }
+
+    private Date minutesAgo(int minutes) {
+        return new Date(System.currentTimeMillis() - minutes * 60000L);
+    }
+
+    @Test
+    public void createdTokenCanBeRetrieved() {
+        PersistentRememberMeToken token = new PersistentRememberMeToken("joe", "series", "token", new Date());
+
+        repository.createNewToken(token);
+
+        assertSame(token, repository.getTokenForSeries("series"));
+        assertNull(repository.getTokenForSeries("missing"));
+    }
+
+    @Test(expected=DataIntegrityViolationException.class)
+    public void duplicateSeriesIsRejected() {
+        repository.createNewToken(new PersistentRememberMeToken("joe", "series", "token", new Date()));
+        repository.createNewToken(new PersistentRememberMeToken("bob", "series", "token", new Date()));
+    }
+
+    @Test
+    public void updatingTokenKeepsUsername() {
+        repository.createNewToken(new PersistentRememberMeToken("joe", "series", "token", minutesAgo(1)));
+        Date lastUsed = new Date();
+
+        repository.updateToken("series", "newtoken", lastUsed);
+        repository.updateToken("missing", "newtoken", lastUsed);
+
+        PersistentRememberMeToken token = repository.getTokenForSeries("series");
+        assertEquals("joe", token.getUsername());
+        assertEquals("newtoken", token.getTokenValue());
+        assertEquals(lastUsed, token.getDate());
+        assertNull(repository.getTokenForSeries("missing"));
+    }
+
+    @Test
+    public void removingUserTokensOnlyRemovesThoseOfTheUser() {
+        repository.createNewToken(new PersistentRememberMeToken("joe", "series1", "token", new Date()));
+        repository.createNewToken(new PersistentRememberMeToken("joe", "series2", "token", new Date()));
+        repository.createNewToken(new PersistentRememberMeToken("bob", "series3", "token", new Date()));
+
+        repository.removeUserTokens("joe");
+        repository.removeUserTokens("unknown");
+
+        assertNull(repository.getTokenForSeries("series1"));
+        assertNull(repository.getTokenForSeries("series2"));
+        assertNotNull(repository.getTokenForSeries("series3"));
+    }
+
+    @Test
+    public void tokensCanBeCreatedAfterUserTokensAreRemoved() {
+        repository.createNewToken(new PersistentRememberMeToken("joe", "series1", "token", new Date()));
+        repository.removeUserTokens("joe");
+
+        repository.createNewToken(new PersistentRememberMeToken("joe", "series2", "token", new Date()));
+        assertNotNull(repository.getTokenForSeries("series2"));
+
+        repository.removeUserTokens("joe");
+        assertNull(repository.getTokenForSeries("series2"));
+    }
+
+    @Test
+    public void expiredTokensAreNotReturned() {
+        repository.createNewToken(new PersistentRememberMeToken("joe", "series", "token", minutesAgo(2)));
+
+        assertNull(repository.getTokenForSeries("series"));
+    }
+
+    @Test
+    public void expiredTokensAreRemoved() {
+        repository.createNewToken(new PersistentRememberMeToken("joe", "series1", "token", minutesAgo(2)));
+        repository.createNewToken(new PersistentRememberMeToken("joe", "series2", "token", new Date()));
+        repository.createNewToken(new PersistentRememberMeToken("bob", "series3", "token", minutesAgo(2)));
+
+        assertEquals(2, repository.removeExpiredTokens());
+        assertEquals(0, repository.removeExpiredTokens());
+
+        assertNotNull(repository.getTokenForSeries("series2"));
+        repository.removeUserTokens("joe");
+        assertNull(repository.getTokenForSeries("series2"));
+    }
+
+    @Test
+    public void tokensCanBeUpdatedAndRemovedInBulk() {
+        repository.createNewToken(new PersistentRememberMeToken("joe", "series1", "token", minutesAgo(10)));
+        repository.createNewToken(new PersistentRememberMeToken("bob", "series2", "token", minutesAgo(10)));
+
+        repository.updateTokens(Arrays.asList(new PersistentRememberMeToken("joe", "series1", "new", minutesAgo(1))));
+
+        assertEquals(1, repository.removeTokensLastUsedBefore(minutesAgo(5)));
+        assertEquals("new", repository.getTokenForSeries("series1").getTokenValue());
+        assertNull(repository.getTokenForSeries("series2"));
+    }
+
+    @Test
+    public void concurrentCreationAndRemovalLeavesNoUnindexedTokens() throws Exception {
+        final int iterations = 2000;
+        Thread creator = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < iterations; i++) {
+                    repository.createNewToken(new PersistentRememberMeToken("joe", "series" + i, "token", new Date()));
+                }
+            }
+        };
+        Thread remover = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < iterations; i++) {
+                    repository.removeUserTokens("joe");
+                }
+            }
+        };
+
+        creator.start();
+        remover.start();
+        creator.join();
+        remover.join();
+
+        repository.removeUserTokens("joe");
+        for (int i = 0; i < iterations; i++) {
+            assertNull(repository.getTokenForSeries("series" + i));
+        }
+    }
+}
@@ -23,6 +23,7 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -165,6 +166,35 @@ public class JdbcTokenRepositoryImplTests {
         assertTrue(lastUsed.getTime() > ts.getTime());
     }
 
+    @Test
+    public void updatingTokensInBatchModifiesAllTokens() {
+        template.execute("insert into persistent_logins (series, username, token, last_used) values " +
+                "('joesseries', 'joeuser', 'atoken', '2007-10-09 18:19:25.000000000')");
+        template.execute("insert into persistent_logins (series, username, token, last_used) values " +
+                "('bobsseries', 'bobuser', 'btoken', '2007-10-09 18:19:25.000000000')");
+        Date lastUsed = new Date();
+
+        repo.updateTokens(Arrays.asList(new PersistentRememberMeToken("joeuser", "joesseries", "newtoken", lastUsed),
+                new PersistentRememberMeToken("bobuser", "bobsseries", "newbtoken", lastUsed)));
+
+        assertEquals("newtoken", repo.getTokenForSeries("joesseries").getTokenValue());
+        assertEquals("newbtoken", repo.getTokenForSeries("bobsseries").getTokenValue());
+        assertEquals(lastUsed.getTime(), repo.getTokenForSeries("bobsseries").getDate().getTime());
+    }
+
+    @Test
+    public void removingTokensLastUsedBeforeDateDeletesOnlyOlderTokens() {
+        template.execute("insert into persistent_logins (series, username, token, last_used) values " +
+                "('joesseries', 'joeuser', 'atoken', '2007-10-09 18:19:25.000000000')");
+        template.execute("insert into persistent_logins (series, username, token, last_used) values " +
+                "('bobsseries', 'bobuser', 'btoken', '2007-10-19 18:19:25.000000000')");
+
+        assertEquals(1, repo.removeTokensLastUsedBefore(Timestamp.valueOf("2007-10-15 00:00:00.000000000")));
+
+        assertNull(repo.getTokenForSeries("joesseries"));
+        assertNotNull(repo.getTokenForSeries("bobsseries"));
+    }
+
     @Test
     public void createTableOnStartupCreatesCorrectTable() {
         template.execute("drop table persistent_logins");
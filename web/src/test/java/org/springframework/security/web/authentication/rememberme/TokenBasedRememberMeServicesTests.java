@@ -21,6 +21,8 @@ import static org.mockito.Mockito.*;
 import static org.springframework.security.web.authentication.rememberme.TokenBasedRememberMeServices.*;
 
 import java.util.*;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.http.Cookie;
 
 import org.apache.commons.codec.binary.Base64;
@@ -36,6 +38,7 @@ import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.codec.Hex;
 import org.springframework.util.StringUtils;
 
 /**
@@ -323,4 +326,102 @@ public class TokenBasedRememberMeServicesTests {
         assertEquals(-1, cookie.getMaxAge());
         assertTrue(Base64.isArrayByteBase64(cookie.getValue().getBytes()));
     }
+
+    @Test
+    public void hmacSignedCookieIsAccepted() throws Exception {
+        udsWillReturnUser();
+        services.setUseHmac(true);
+        long expiryTime = System.currentTimeMillis() + 1000000;
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec("key".getBytes("UTF-8"), "HmacSHA256"));
+        String signature = new String(Hex.encode(mac.doFinal(("someone:" + expiryTime + ":password").getBytes("UTF-8"))));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY,
+                services.encodeCookie(new String[] {"someone", Long.toString(expiryTime), signature})));
+
+        assertEquals(signature, services.makeTokenSignature(expiryTime, "someone", "password"));
+        assertNotNull(services.autoLogin(request, new MockHttpServletResponse()));
+    }
+
+    @Test
+    public void md5SignedCookieIsRejectedWhenUsingHmac() throws Exception {
+        udsWillReturnUser();
+        services.setUseHmac(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY,
+                generateCorrectCookieContentForToken(System.currentTimeMillis() + 1000000, "someone", "password", "key")));
+
+        assertNull(services.autoLogin(request, new MockHttpServletResponse()));
+    }
+
+    @Test
+    public void hmacSignatureChangesWithKey() throws Exception {
+        services.setUseHmac(true);
+        String signature = services.makeTokenSignature(1000, "someone", "password");
+        services.setKey("otherkey");
+
+        assertFalse(signature.equals(services.makeTokenSignature(1000, "someone", "password")));
+    }
+
+    @Test
+    public void validatedCookieIsNotCheckedAgain() throws Exception {
+        udsWillReturnUser();
+        services.setValidatedCookieCacheSeconds(60);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY,
+                generateCorrectCookieContentForToken(System.currentTimeMillis() + 1000000, "someone", "password", "key")));
+
+        assertNotNull(services.autoLogin(request, new MockHttpServletResponse()));
+        Authentication result = services.autoLogin(request, new MockHttpServletResponse());
+
+        assertEquals(user, result.getPrincipal());
+        verify(uds, times(1)).loadUserByUsername("someone");
+    }
+
+    @Test
+    public void cookiesAreCheckedEachTimeByDefault() throws Exception {
+        udsWillReturnUser();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY,
+                generateCorrectCookieContentForToken(System.currentTimeMillis() + 1000000, "someone", "password", "key")));
+
+        services.autoLogin(request, new MockHttpServletResponse());
+        services.autoLogin(request, new MockHttpServletResponse());
+
+        verify(uds, times(2)).loadUserByUsername("someone");
+    }
+
+    @Test
+    public void cachedSignatureIsNotAcceptedForDifferentUser() throws Exception {
+        when(uds.loadUserByUsername("someone")).thenReturn(user);
+        when(uds.loadUserByUsername("other")).thenReturn(new User("other", "password", true, true, true, true,
+                AuthorityUtils.createAuthorityList("ROLE_ABC")));
+        services.setValidatedCookieCacheSeconds(60);
+        long expiryTime = System.currentTimeMillis() + 1000000;
+        String signature = services.makeTokenSignature(expiryTime, "someone", "password");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY,
+                services.encodeCookie(new String[] {"someone", Long.toString(expiryTime), signature})));
+        assertNotNull(services.autoLogin(request, new MockHttpServletResponse()));
+
+        request.setCookies(new Cookie(SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY,
+                services.encodeCookie(new String[] {"other", Long.toString(expiryTime), signature})));
+
+        assertNull(services.autoLogin(request, new MockHttpServletResponse()));
+    }
+
+    @Test
+    public void logoutForgetsValidatedCookie() throws Exception {
+        udsWillReturnUser();
+        services.setValidatedCookieCacheSeconds(60);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY,
+                generateCorrectCookieContentForToken(System.currentTimeMillis() + 1000000, "someone", "password", "key")));
+        services.autoLogin(request, new MockHttpServletResponse());
+
+        services.logout(request, new MockHttpServletResponse(), null);
+        services.autoLogin(request, new MockHttpServletResponse());
+
+        verify(uds, times(2)).loadUserByUsername("someone");
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.session;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.session.SessionRegistryImpl;
+
+public class BoundedConcurrentSessionControlStrategyTests {
+    private SessionRegistryImpl sessionRegistry;
+    private Authentication authentication;
+    private BoundedConcurrentSessionControlStrategy strategy;
+
+    @Before
+    public void setup() {
+        sessionRegistry = new SessionRegistryImpl();
+        authentication = new TestingAuthenticationToken("user", "password", "ROLE_USER");
+        strategy = new BoundedConcurrentSessionControlStrategy(sessionRegistry);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void nullRegistryIsRejected() {
+        new BoundedConcurrentSessionControlStrategy(null);
+    }
+
+    @Test
+    public void newSessionIsRegistered() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        strategy.onAuthentication(authentication, request, new MockHttpServletResponse());
+
+        assertNotNull(sessionRegistry.getSessionInformation(request.getSession().getId()));
+    }
+
+    @Test
+    public void leastRecentlyUsedSessionIsExpired() {
+        MockHttpServletRequest first = new MockHttpServletRequest();
+        MockHttpServletRequest second = new MockHttpServletRequest();
+
+        strategy.onAuthentication(authentication, first, new MockHttpServletResponse());
+        strategy.onAuthentication(authentication, second, new MockHttpServletResponse());
+
+        assertTrue(sessionRegistry.getSessionInformation(first.getSession().getId()).isExpired());
+        assertFalse(sessionRegistry.getSessionInformation(second.getSession().getId()).isExpired());
+    }
+
+    @Test(expected=SessionAuthenticationException.class)
+    public void exceptionIsRaisedIfMaximumExceeded() {
+        strategy.setExceptionIfMaximumExceeded(true);
+
+        strategy.onAuthentication(authentication, new MockHttpServletRequest(), new MockHttpServletResponse());
+        strategy.onAuthentication(authentication, new MockHttpServletRequest(), new MockHttpServletResponse());
+    }
+
+    @Test
+    public void reauthenticatingInRegisteredSessionIsAllowedAtMaximum() {
+        strategy.setExceptionIfMaximumExceeded(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        strategy.onAuthentication(authentication, request, new MockHttpServletResponse());
+        String originalSessionId = request.getSession().getId();
+
+        strategy.onAuthentication(authentication, request, new MockHttpServletResponse());
+
+        assertNull(sessionRegistry.getSessionInformation(originalSessionId));
+        assertNotNull(sessionRegistry.getSessionInformation(request.getSession().getId()));
+        assertEquals(1, sessionRegistry.getSessionCount("user", true));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void alwaysCreateSessionCannotBeDisabled() {
+        strategy.setAlwaysCreateSession(false);
+    }
+}
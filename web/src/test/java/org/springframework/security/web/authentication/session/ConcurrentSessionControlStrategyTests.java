@@ -23,6 +23,9 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
+import java.util.Arrays;
+import java.util.Date;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -34,6 +37,8 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.session.CountingSessionRegistry;
+import org.springframework.security.core.session.SessionInformation;
 import org.springframework.security.core.session.SessionRegistry;
 
 /**
@@ -113,4 +118,35 @@ public class ConcurrentSessionControlStrategyTests {
     public void onAuthenticationNoExceptionWhenRequireApplicationEventPublisherSet() {
         strategy.onAuthentication(authentication, request, response);
     }
+
+    @Test
+    public void countingRegistryIsNotAskedForSessionsBelowMaximum() {
+        CountingSessionRegistry countingRegistry = mock(CountingSessionRegistry.class);
+        when(authentication.getPrincipal()).thenReturn("user");
+        when(countingRegistry.getSessionCount("user", false)).thenReturn(1);
+        strategy = new ConcurrentSessionControlStrategy(countingRegistry);
+        strategy.setMaximumSessions(2);
+
+        strategy.onAuthentication(authentication, request, response);
+
+        verify(countingRegistry, never()).getAllSessions(anyObject(), anyBoolean());
+        verify(countingRegistry).registerNewSession(anyString(), eq("user"));
+    }
+
+    @Test
+    public void countingRegistryExpiresLeastRecentlyUsedSessionAtMaximum() {
+        CountingSessionRegistry countingRegistry = mock(CountingSessionRegistry.class);
+        SessionInformation oldest = new SessionInformation("user", "oldest", new Date(1000));
+        SessionInformation newest = new SessionInformation("user", "newest", new Date(2000));
+        when(authentication.getPrincipal()).thenReturn("user");
+        when(countingRegistry.getSessionCount("user", false)).thenReturn(2);
+        when(countingRegistry.getAllSessions("user", false)).thenReturn(Arrays.asList(newest, oldest));
+        strategy = new ConcurrentSessionControlStrategy(countingRegistry);
+        strategy.setMaximumSessions(2);
+
+        strategy.onAuthentication(authentication, request, response);
+
+        assertTrue(oldest.isExpired());
+        assertFalse(newest.isExpired());
+    }
 }
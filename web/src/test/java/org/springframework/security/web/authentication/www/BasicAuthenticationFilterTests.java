@@ -253,4 +253,68 @@ public class BasicAuthenticationFilterTests {
         assertNull(SecurityContextHolder.getContext().getAuthentication());
         assertEquals(401, response.getStatus());
     }
+
+    @Test
+    public void verifiedCredentialsAreNotAuthenticatedAgain() throws Exception {
+        VerifiedCredentialsCache cache = new VerifiedCredentialsCache();
+        filter.setVerifiedCredentialsCache(cache);
+
+        for (int i = 0; i < 3; i++) {
+            SecurityContextHolder.clearContext();
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addHeader("Authorization", "Basic " + new String(Base64.encodeBase64("rod:koala".getBytes())));
+            request.setServletPath("/some_file.html");
+
+            filter.doFilter(request, new MockHttpServletResponse(), mock(FilterChain.class));
+
+            assertEquals("rod", SecurityContextHolder.getContext().getAuthentication().getName());
+        }
+
+        verify(manager, times(1)).authenticate(any(Authentication.class));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void cachedAuthenticationHasDetailsOfCurrentRequest() throws Exception {
+        filter.setVerifiedCredentialsCache(new VerifiedCredentialsCache());
+        Authentication[] results = new Authentication[2];
+
+        for (int i = 0; i < 2; i++) {
+            SecurityContextHolder.clearContext();
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addHeader("Authorization", "Basic " + new String(Base64.encodeBase64("rod:koala".getBytes())));
+            if (i > 0) {
+                request.setRemoteAddr("10.0.0.1");
+            }
+            filter.doFilter(request, new MockHttpServletResponse(), mock(FilterChain.class));
+            results[i] = SecurityContextHolder.getContext().getAuthentication();
+        }
+
+        verify(manager, times(1)).authenticate(any(Authentication.class));
+        assertNotSame(results[0], results[1]);
+        assertEquals("rod", results[1].getName());
+        assertTrue(results[1].isAuthenticated());
+        assertEquals(AuthorityUtils.createAuthorityList("ROLE_1"), results[1].getAuthorities());
+        assertEquals("10.0.0.1", ((WebAuthenticationDetails) results[1].getDetails()).getRemoteAddress());
+    }
+
+    @Test
+    public void wrongPasswordIsRejectedWhenCredentialsAreCached() throws Exception {
+        filter.setVerifiedCredentialsCache(new VerifiedCredentialsCache());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Basic " + new String(Base64.encodeBase64("rod:koala".getBytes())));
+        filter.doFilter(request, new MockHttpServletResponse(), mock(FilterChain.class));
+        SecurityContextHolder.clearContext();
+
+        request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Basic " + new String(Base64.encodeBase64("rod:WRONG".getBytes())));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = mock(FilterChain.class);
+        filter.doFilter(request, response, chain);
+
+        verify(chain, never()).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertEquals(401, response.getStatus());
+    }
 }
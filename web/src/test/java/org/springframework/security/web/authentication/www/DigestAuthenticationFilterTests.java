@@ -419,4 +419,98 @@ public class DigestAuthenticationFilterTests {
         assertNull(SecurityContextHolder.getContext().getAuthentication());
         assertEquals(401, response.getStatus());
     }
+
+    private MockHttpServletRequest createRequest(String nc) {
+        return createRequest(NONCE, nc);
+    }
+
+    private MockHttpServletRequest createRequest(String nonce, String nc) {
+        String responseDigest = DigestAuthUtils.generateDigest(false, USERNAME, REALM, PASSWORD, "GET",
+                REQUEST_URI, QOP, nonce, nc, CNONCE);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", REQUEST_URI);
+        request.setServletPath(REQUEST_URI);
+        request.addHeader("Authorization",
+                createAuthorizationHeader(USERNAME, REALM, nonce, REQUEST_URI, responseDigest, QOP, nc, CNONCE));
+
+        return request;
+    }
+
+    @Test
+    public void replayedNonceCountIsRejected() throws Exception {
+        DigestNonceStore nonceStore = new DigestNonceStore();
+        filter.setNonceStore(nonceStore);
+        // A nonce issued now with the default validity
+        String nonce = generateNonce(300);
+
+        executeFilterInContainerSimulator(filter, createRequest(nonce, "00000001"), true);
+        executeFilterInContainerSimulator(filter, createRequest(nonce, "00000003"), true);
+        executeFilterInContainerSimulator(filter, createRequest(nonce, "00000002"), true);
+        SecurityContextHolder.clearContext();
+
+        MockHttpServletResponse response = executeFilterInContainerSimulator(filter, createRequest(nonce, "00000002"),
+                false);
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertEquals(401, response.getStatus());
+        assertEquals(3, nonceStore.getAcceptedCount());
+        assertEquals(1, nonceStore.getReplayedCount());
+    }
+
+    @Test
+    public void unknownNonceIsReportedAsStale() throws Exception {
+        filter.setNonceStore(new DigestNonceStore());
+
+        MockHttpServletResponse response = executeFilterInContainerSimulator(filter, createRequest(NC), false);
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertEquals(401, response.getStatus());
+        assertTrue(response.getHeader("WWW-Authenticate").toString().contains("stale=\"true\""));
+    }
+
+    @Test
+    public void firstUseOfOldNonceIsReportedAsStale() throws Exception {
+        DigestNonceStore nonceStore = new DigestNonceStore();
+        filter.setNonceStore(nonceStore);
+        // The default validity is 300 seconds, so the nonce appears to have been issued 240 seconds ago
+        String nonce = generateNonce(60);
+
+        MockHttpServletResponse response = executeFilterInContainerSimulator(filter, createRequest(nonce, "00000001"),
+                false);
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertTrue(response.getHeader("WWW-Authenticate").toString().contains("stale=\"true\""));
+        assertEquals(1, nonceStore.getUnknownCount());
+        assertEquals(0, nonceStore.size());
+    }
+
+    @Test
+    public void cachedHa1IsUsedForSubsequentRequests() throws Exception {
+        filter.setHa1CacheSize(10);
+
+        executeFilterInContainerSimulator(filter, createRequest("00000001"), true);
+        SecurityContextHolder.clearContext();
+        executeFilterInContainerSimulator(filter, createRequest("00000002"), true);
+
+        assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+        assertEquals(1, filter.getHa1CacheHitCount());
+        assertEquals(1, filter.getHa1CacheMissCount());
+    }
+
+    @Test
+    public void cachedHa1IsNotUsedOnceThePasswordChanges() throws Exception {
+        filter.setHa1CacheSize(10);
+        executeFilterInContainerSimulator(filter, createRequest("00000001"), true);
+        SecurityContextHolder.clearContext();
+        filter.setUserDetailsService(new UserDetailsService() {
+            public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+                return new User("rod,ok", "changed", AuthorityUtils.createAuthorityList("ROLE_ONE","ROLE_TWO"));
+            }
+        });
+
+        executeFilterInContainerSimulator(filter, createRequest("00000002"), false);
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertEquals(0, filter.getHa1CacheHitCount());
+        assertEquals(2, filter.getHa1CacheMissCount());
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.www;
+
+import static org.junit.Assert.*;
+import static org.springframework.security.web.authentication.www.DigestNonceStore.Result.*;
+
+import org.junit.Test;
+
+public class DigestNonceStoreTests {
+    private DigestNonceStore store = new DigestNonceStore();
+    private long now = System.currentTimeMillis();
+
+    @Test
+    public void increasingCountsAreAccepted() {
+        assertEquals(ACCEPTED, store.useNonceCount("nonce", "cnonce", 1, now));
+        assertEquals(ACCEPTED, store.useNonceCount("nonce", "cnonce", 2, now));
+        assertEquals(ACCEPTED, store.useNonceCount("nonce", "cnonce", 100, now));
+        assertEquals(3, store.getAcceptedCount());
+    }
+
+    @Test
+    public void reusedCountIsRejected() {
+        store.useNonceCount("nonce", "cnonce", 1, now);
+
+        assertEquals(REPLAYED, store.useNonceCount("nonce", "cnonce", 1, now));
+        assertEquals(1, store.getReplayedCount());
+    }
+
+    @Test
+    public void countsMayArriveOutOfOrder() {
+        store.useNonceCount("nonce", "cnonce", 1, now);
+        store.useNonceCount("nonce", "cnonce", 5, now);
+
+        assertEquals(ACCEPTED, store.useNonceCount("nonce", "cnonce", 3, now));
+        assertEquals(REPLAYED, store.useNonceCount("nonce", "cnonce", 3, now));
+        assertEquals(REPLAYED, store.useNonceCount("nonce", "cnonce", 5, now));
+    }
+
+    @Test
+    public void countsTooFarBehindAreRejected() {
+        store.useNonceCount("nonce", "cnonce", 1, now);
+        store.useNonceCount("nonce", "cnonce", 66, now);
+
+        assertEquals(REPLAYED, store.useNonceCount("nonce", "cnonce", 2, now));
+        assertEquals(ACCEPTED, store.useNonceCount("nonce", "cnonce", 3, now));
+    }
+
+    @Test
+    public void invalidCountIsRejected() {
+        assertEquals(REPLAYED, store.useNonceCount("nonce", "cnonce", 0, now));
+        assertEquals(REPLAYED, store.useNonceCount("nonce", "cnonce", -1, now));
+    }
+
+    @Test
+    public void clientNoncesAreTrackedSeparately() {
+        store.useNonceCount("nonce", "cnonce1", 1, now);
+
+        assertEquals(ACCEPTED, store.useNonceCount("nonce", "cnonce2", 1, now));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void unknownNonceMustStartAtOne() {
+        assertEquals(UNKNOWN, store.useNonceCount("nonce", "cnonce", 2, now));
+        assertEquals(1, store.getUnknownCount());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void unknownNonceIsOnlyAcceptedWhenNew() {
+        store.setFirstUseSeconds(10);
+
+        assertEquals(UNKNOWN, store.useNonceCount("nonce1", "cnonce", 1, now - 11000));
+        assertEquals(ACCEPTED, store.useNonceCount("nonce2", "cnonce", 1, now - 5000));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        store.setMaximumSize(1);
+        store.useNonceCount("nonce1", "cnonce", 1, now);
+        store.useNonceCount("nonce2", "cnonce", 1, now);
+
+        assertEquals(1, store.size());
+        assertEquals(1, store.getEvictionCount());
+        assertEquals(UNKNOWN, store.useNonceCount("nonce1", "cnonce", 2, now));
+    }
+}
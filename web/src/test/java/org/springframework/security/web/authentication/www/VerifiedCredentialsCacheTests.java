@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.authentication.www;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UserCache;
+
+public class VerifiedCredentialsCacheTests {
+    private UserCache delegate;
+    private VerifiedCredentialsCache cache;
+    private Authentication rod;
+
+    @Before
+    public void setUp() {
+        delegate = mock(UserCache.class);
+        cache = new VerifiedCredentialsCache(delegate);
+        rod = new UsernamePasswordAuthenticationToken("rod", null, AuthorityUtils.createAuthorityList("ROLE_1"));
+    }
+
+    @Test
+    public void verifiedCredentialsAreReturned() {
+        cache.putAuthentication("rod", "koala", rod, System.currentTimeMillis());
+
+        assertSame(rod, cache.getAuthentication("rod", "koala"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void differentPasswordIsNotMatched() {
+        cache.putAuthentication("rod", "koala", rod, System.currentTimeMillis());
+
+        assertNull(cache.getAuthentication("rod", "wombat"));
+        assertNull(cache.getAuthentication("bob", "koala"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void unauthenticatedResultIsNotCached() {
+        cache.putAuthentication("rod", "koala", new TestingAuthenticationToken("rod", "koala"),
+                System.currentTimeMillis());
+
+        assertNull(cache.getAuthentication("rod", "koala"));
+    }
+
+    @Test
+    public void expiredCredentialsAreNotReturned() {
+        cache.setTtlSeconds(1);
+        cache.putAuthentication("rod", "koala", rod, System.currentTimeMillis() - 2000);
+
+        assertNull(cache.getAuthentication("rod", "koala"));
+    }
+
+    @Test
+    public void removingUserForgetsCredentialsAndNotifiesDelegate() {
+        cache.putAuthentication("rod", "koala", rod, System.currentTimeMillis() - 1);
+
+        cache.removeUserFromCache("rod");
+
+        assertNull(cache.getAuthentication("rod", "koala"));
+        verify(delegate).removeUserFromCache("rod");
+    }
+
+    @Test
+    public void authenticationStartedBeforeRemovalIsNotCached() {
+        long verificationStartTime = System.currentTimeMillis();
+        cache.removeUserFromCache("bob");
+
+        cache.putAuthentication("rod", "koala", rod, verificationStartTime);
+
+        assertNull(cache.getAuthentication("rod", "koala"));
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        cache.setMaximumSize(1);
+        long now = System.currentTimeMillis();
+        cache.putAuthentication("rod", "koala", rod, now);
+        cache.putAuthentication("bob", "koala", rod, now);
+
+        assertNull(cache.getAuthentication("rod", "koala"));
+        assertNotNull(cache.getAuthentication("bob", "koala"));
+    }
+}
@@ -26,6 +26,7 @@ import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.core.session.SessionInformation;
 import org.springframework.security.core.session.SessionRegistry;
 import org.springframework.security.core.session.SessionRegistryImpl;
 import org.springframework.security.web.DefaultRedirectStrategy;
@@ -133,4 +134,26 @@ public class ConcurrentSessionFilterTests {
         verify(fc).doFilter(request, response);
         assertTrue(registry.getSessionInformation(session.getId()).getLastRequest().after(lastRequest));
     }
+
+    @Test
+    public void lastRequestTimeIsNotRefreshedWithinResolution() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpSession session = new MockHttpSession();
+        request.setSession(session);
+        FilterChain fc = mock(FilterChain.class);
+
+        SessionRegistry registry = mock(SessionRegistry.class);
+        SessionInformation info = new SessionInformation("principal", session.getId(), new Date());
+        when(registry.getSessionInformation(session.getId())).thenReturn(info);
+        ConcurrentSessionFilter filter = new ConcurrentSessionFilter(registry);
+        filter.setLastRequestResolutionSeconds(30);
+
+        filter.doFilter(request, new MockHttpServletResponse(), fc);
+        verify(registry, never()).refreshLastRequest(anyString());
+
+        info = new SessionInformation("principal", session.getId(), new Date(System.currentTimeMillis() - 31000));
+        when(registry.getSessionInformation(session.getId())).thenReturn(info);
+        filter.doFilter(request, new MockHttpServletResponse(), fc);
+        verify(registry).refreshLastRequest(session.getId());
+    }
 }
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.context;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.Cookie;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.codec.Base64;
+
+public class CookieSecurityContextRepositoryTests {
+    private final TestingAuthenticationToken testToken = new TestingAuthenticationToken("someone", "passwd",
+            "ROLE_A", "ROLE_B");
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void emptyContextIsReturnedWhenNoCookieIsPresent() {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+
+        SecurityContext context = repo.loadContext(holder);
+
+        assertNull(context.getAuthentication());
+        assertFalse(repo.containsContext(request));
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+        assertEquals(0, response.getCookies().length);
+    }
+
+    @Test
+    public void savedContextIsLoadedFromCookie() {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        Cookie[] cookies = saveAuthentication(repo, testToken, new MockHttpServletRequest());
+        assertEquals(1, cookies.length);
+        assertEquals(CookieSecurityContextRepository.DEFAULT_COOKIE_NAME, cookies[0].getName());
+        assertEquals(1800, cookies[0].getMaxAge());
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookies);
+
+        assertTrue(repo.containsContext(request));
+        Authentication authentication = load(repo, request).getAuthentication();
+
+        assertEquals("someone", authentication.getName());
+        assertNull(authentication.getCredentials());
+        assertTrue(authentication.isAuthenticated());
+        assertEquals(AuthorityUtils.createAuthorityList("ROLE_A", "ROLE_B"), authentication.getAuthorities());
+    }
+
+    @Test
+    public void unchangedContextIsNotWrittenAgain() {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(saveAuthentication(repo, testToken, new MockHttpServletRequest()));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+
+        SecurityContext context = repo.loadContext(holder);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        assertEquals(0, response.getCookies().length);
+    }
+
+    @Test
+    public void tamperedCookieIsRejected() {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        Cookie cookie = saveAuthentication(repo, testToken, new MockHttpServletRequest())[0];
+        char[] value = cookie.getValue().toCharArray();
+        value[10] = value[10] == 'A' ? 'B' : 'A';
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(cookie.getName(), new String(value)));
+
+        assertFalse(repo.containsContext(request));
+        assertNull(load(repo, request).getAuthentication());
+    }
+
+    @Test
+    public void cookieSignedWithAnotherKeyIsRejected() {
+        Cookie[] cookies = saveAuthentication(new CookieSecurityContextRepository("other"), testToken,
+                new MockHttpServletRequest());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookies);
+
+        assertNull(load(new CookieSecurityContextRepository("secret"), request).getAuthentication());
+    }
+
+    @Test
+    public void expiredCookieIsRejected() throws Exception {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        long now = System.currentTimeMillis();
+        String value = repo.encode(new CookieSecurityContextRepository.ContextToken(testToken, now - 1800 * 1000L,
+                now - 1));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(CookieSecurityContextRepository.DEFAULT_COOKIE_NAME, value));
+
+        assertNull(load(repo, request).getAuthentication());
+    }
+
+    @Test
+    public void cookieIsReissuedAfterHalfOfValidityPeriod() throws Exception {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        long now = System.currentTimeMillis();
+        String value = repo.encode(new CookieSecurityContextRepository.ContextToken(testToken, now - 1200 * 1000L,
+                now + 600 * 1000L));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(CookieSecurityContextRepository.DEFAULT_COOKIE_NAME, value));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+
+        SecurityContext context = repo.loadContext(holder);
+        assertEquals("someone", context.getAuthentication().getName());
+        // The cookie is added before the request is processed, in case the response is committed
+        assertEquals(1, response.getCookies().length);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        assertEquals(1, response.getCookies().length);
+        Cookie cookie = response.getCookies()[0];
+        assertFalse(value.equals(cookie.getValue()));
+        CookieSecurityContextRepository.ContextToken token = repo.decode(cookie.getValue());
+        assertEquals(now - 1200 * 1000L, token.authenticationTime);
+        assertTrue(token.expiryTime >= now + 1800 * 1000L);
+    }
+
+    @Test
+    public void reissuedCookieDoesNotOutliveMaximumLifetime() throws Exception {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        repo.setMaxLifetimeSeconds(3600);
+        long now = System.currentTimeMillis();
+        String value = repo.encode(new CookieSecurityContextRepository.ContextToken(testToken, now - 3000 * 1000L,
+                now + 300 * 1000L));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(CookieSecurityContextRepository.DEFAULT_COOKIE_NAME, value));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+
+        repo.loadContext(holder);
+
+        Cookie cookie = response.getCookies()[0];
+        CookieSecurityContextRepository.ContextToken token = repo.decode(cookie.getValue());
+        assertEquals(now + 600 * 1000L, token.expiryTime);
+        assertTrue(cookie.getMaxAge() <= 600);
+
+        // Once the expiry can't be extended, the cookie isn't re-issued again
+        request = new MockHttpServletRequest();
+        request.setCookies(cookie);
+        response = new MockHttpServletResponse();
+        holder = new HttpRequestResponseHolder(request, response);
+        SecurityContext context = repo.loadContext(holder);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        assertEquals("someone", context.getAuthentication().getName());
+        assertEquals(0, response.getCookies().length);
+    }
+
+    @Test
+    public void cookieIsRejectedOnceMaximumLifetimeHasElapsed() throws Exception {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        long now = System.currentTimeMillis();
+        String value = repo.encode(new CookieSecurityContextRepository.ContextToken(testToken, now - 7200 * 1000L,
+                now + 600 * 1000L));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(CookieSecurityContextRepository.DEFAULT_COOKIE_NAME, value));
+
+        assertNotNull(load(repo, request).getAuthentication());
+        repo.setMaxLifetimeSeconds(3600);
+        assertNull(load(repo, request).getAuthentication());
+    }
+
+    @Test
+    public void cookiesSignedWithOlderKeyAreAcceptedAndReissued() {
+        Cookie[] cookies = saveAuthentication(new CookieSecurityContextRepository("old"), testToken,
+                new MockHttpServletRequest());
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("new", "old");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookies);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+
+        SecurityContext context = repo.loadContext(holder);
+        assertEquals("someone", context.getAuthentication().getName());
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+        assertEquals(1, response.getCookies().length);
+
+        // The new cookie is only accepted with the new key
+        request = new MockHttpServletRequest();
+        request.setCookies(response.getCookies());
+        assertNotNull(load(new CookieSecurityContextRepository("new"), request).getAuthentication());
+        assertNull(load(new CookieSecurityContextRepository("old"), request).getAuthentication());
+    }
+
+    @Test
+    public void encryptedCookieDoesNotContainAuthorities() {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        repo.setEncryptionEnabled(true);
+        Cookie[] cookies = saveAuthentication(repo, testToken, new MockHttpServletRequest());
+        CookieSecurityContextRepository plain = new CookieSecurityContextRepository("secret");
+        Cookie[] plainCookies = saveAuthentication(plain, testToken, new MockHttpServletRequest());
+
+        String decoded = new String(Base64.decode(
+                pad(cookies[0].getValue()).getBytes()));
+        String plainDecoded = new String(Base64.decode(
+                pad(plainCookies[0].getValue()).getBytes()));
+        assertFalse(decoded.contains("ROLE_A"));
+        assertTrue(plainDecoded.contains("ROLE_A"));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookies);
+        Authentication authentication = load(repo, request).getAuthentication();
+        assertEquals("someone", authentication.getName());
+        assertEquals(AuthorityUtils.createAuthorityList("ROLE_A", "ROLE_B"), authentication.getAuthorities());
+        // Either form is accepted
+        request.setCookies(plainCookies);
+        assertEquals("someone", load(repo, request).getAuthentication().getName());
+    }
+
+    @Test
+    public void largeContextIsSplitBetweenCookies() {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        repo.setMaxCookieLength(100);
+        List<String> roles = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            roles.add("ROLE_" + i);
+        }
+        TestingAuthenticationToken token = new TestingAuthenticationToken("someone", "passwd",
+                AuthorityUtils.createAuthorityList(roles.toArray(new String[roles.size()])));
+
+        Cookie[] cookies = saveAuthentication(repo, token, new MockHttpServletRequest());
+
+        assertTrue(cookies.length > 1);
+        assertEquals("SPRING_SECURITY_CONTEXT", cookies[0].getName());
+        assertEquals("SPRING_SECURITY_CONTEXT_1", cookies[1].getName());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookies);
+        assertEquals(token.getAuthorities(), load(repo, request).getAuthentication().getAuthorities());
+
+        // Missing chunk
+        Cookie[] incomplete = new Cookie[cookies.length - 1];
+        System.arraycopy(cookies, 0, incomplete, 0, incomplete.length);
+        request.setCookies(incomplete);
+        assertNull(load(repo, request).getAuthentication());
+    }
+
+    @Test
+    public void unusedChunksAreRemovedWhenContextShrinks() {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        repo.setMaxCookieLength(100);
+        TestingAuthenticationToken large = new TestingAuthenticationToken("someone", "passwd",
+                "ROLE_AAAAAAAAAAAAAAAAAAAAAAAAAAAA", "ROLE_BBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBB",
+                "ROLE_CCCCCCCCCCCCCCCCCCCCCCCCCCCCC", "ROLE_DDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDD");
+        Cookie[] cookies = saveAuthentication(repo, large, new MockHttpServletRequest());
+        assertTrue(cookies.length > 2);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookies);
+
+        Cookie[] newCookies = saveAuthentication(repo, new TestingAuthenticationToken("x", "y"), request);
+
+        assertEquals(cookies.length, newCookies.length);
+        assertTrue(newCookies[0].getMaxAge() > 0);
+        for (int i = 1; i < newCookies.length; i++) {
+            assertEquals(0, newCookies[i].getMaxAge());
+        }
+    }
+
+    @Test
+    public void cookiesAreRemovedForAnonymousUser() {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(saveAuthentication(repo, testToken, new MockHttpServletRequest()));
+
+        Cookie[] cookies = saveAuthentication(repo, new AnonymousAuthenticationToken("key", "anonymous",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")), request);
+
+        assertEquals(1, cookies.length);
+        assertEquals(0, cookies[0].getMaxAge());
+    }
+
+    @Test
+    public void verifiedCookieIsCached() {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(saveAuthentication(repo, testToken, new MockHttpServletRequest()));
+
+        load(repo, request);
+        load(repo, request);
+        SecurityContext context = load(repo, request);
+
+        assertEquals(1, repo.getCacheMissCount());
+        assertEquals(2, repo.getCacheHitCount());
+        // Each request gets its own Authentication
+        assertNotSame(context.getAuthentication(), load(repo, request).getAuthentication());
+    }
+
+    @Test
+    public void cookieIsSecureIfRequestIsSecure() {
+        CookieSecurityContextRepository repo = new CookieSecurityContextRepository("secret");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSecure(true);
+
+        assertTrue(saveAuthentication(repo, testToken, request)[0].getSecure());
+        repo.setUseSecureCookie(false);
+        assertFalse(saveAuthentication(repo, testToken, request)[0].getSecure());
+    }
+
+    private static SecurityContext load(CookieSecurityContextRepository repo, MockHttpServletRequest request) {
+        return repo.loadContext(new HttpRequestResponseHolder(request, new MockHttpServletResponse()));
+    }
+
+    private static Cookie[] saveAuthentication(CookieSecurityContextRepository repo, Authentication authentication,
+            MockHttpServletRequest request) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+        SecurityContext context = repo.loadContext(holder);
+        context.setAuthentication(authentication);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        return response.getCookies();
+    }
+
+    private static String pad(String value) {
+        StringBuilder padded = new StringBuilder(value.replace('-', '+').replace('_', '/'));
+        while (padded.length() % 4 != 0) {
+            padded.append('=');
+        }
+        return padded.toString();
+    }
+}
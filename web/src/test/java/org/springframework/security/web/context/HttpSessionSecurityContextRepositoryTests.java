@@ -36,9 +36,14 @@ import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.CompactSecurityContextSerializer;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.context.SerializingSecurityContext;
+import org.springframework.security.core.context.VersionedSecurityContext;
 import org.springframework.util.ClassUtils;
 
 /**
@@ -466,4 +471,221 @@ public class HttpSessionSecurityContextRepositoryTests {
         assertEquals(url, holder.getResponse().encodeUrl(url));
         assertEquals(url, holder.getResponse().encodeURL(url));
     }
+
+    @Test
+    public void deferredContextDoesNotAccessSessionUntilUsed() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setDeferredLoading(true);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpSession session = mock(HttpSession.class);
+        when(request.getSession(false)).thenReturn(session);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+        SecurityContext context = repo.loadContext(holder);
+
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        verify(request, never()).getSession(true);
+        verify(request, never()).getSession();
+        verifyZeroInteractions(session);
+    }
+
+    @Test
+    public void deferredContextIsNotStoredInNewSessionIfSessionIsInvalidatedBeforeUse() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setDeferredLoading(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.getSession();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        SecurityContext context = repo.loadContext(holder);
+
+        request.getSession().invalidate();
+        request.setSession(null);
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        assertNull(request.getSession(false));
+    }
+
+    @Test
+    public void defaultAuthenticationDoesNotLoadDeferredContext() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setDeferredLoading(true);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpSession session = mock(HttpSession.class);
+        when(request.getSession(false)).thenReturn(session);
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        DeferredLoadingSecurityContext context = (DeferredLoadingSecurityContext) repo.loadContext(holder);
+
+        context.setDefaultAuthentication(testToken);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        assertFalse(context.isLoaded());
+        verifyZeroInteractions(session);
+    }
+
+    @Test
+    public void defaultAuthenticationIsOnlyUsedIfStoredContextHasNone() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setDeferredLoading(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        DeferredLoadingSecurityContext context = (DeferredLoadingSecurityContext) repo.loadContext(holder);
+        Authentication anonymous = new AnonymousAuthenticationToken("key", "anonymous",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+
+        context.setDefaultAuthentication(anonymous);
+
+        assertSame(anonymous, context.getAuthentication());
+
+        SecurityContextHolder.getContext().setAuthentication(testToken);
+        request.getSession().setAttribute(SPRING_SECURITY_CONTEXT_KEY, SecurityContextHolder.getContext());
+        holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        context = (DeferredLoadingSecurityContext) repo.loadContext(holder);
+
+        context.setDefaultAuthentication(anonymous);
+
+        assertSame(testToken, context.getAuthentication());
+    }
+
+    @Test
+    public void deferredContextIsLoadedFromSessionOnFirstUse() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setDeferredLoading(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        SecurityContextHolder.getContext().setAuthentication(testToken);
+        request.getSession().setAttribute(SPRING_SECURITY_CONTEXT_KEY, SecurityContextHolder.getContext());
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        SecurityContext context = repo.loadContext(holder);
+
+        assertSame(testToken, context.getAuthentication());
+        assertEquals(context, SecurityContextHolder.getContext());
+    }
+
+    @Test
+    public void deferredContextChangesAreSavedToSession() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setDeferredLoading(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        SecurityContext context = repo.loadContext(holder);
+
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        SecurityContext stored = (SecurityContext) request.getSession().getAttribute(SPRING_SECURITY_CONTEXT_KEY);
+        assertNotSame(context, stored);
+        assertSame(testToken, stored.getAuthentication());
+    }
+
+    @Test
+    public void deferredContextIsRemovedFromSessionWhenReplacedWithEmptyContext() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setDeferredLoading(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        SecurityContextHolder.getContext().setAuthentication(testToken);
+        request.getSession().setAttribute(SPRING_SECURITY_CONTEXT_KEY, SecurityContextHolder.getContext());
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        repo.loadContext(holder);
+
+        repo.saveContext(SecurityContextHolder.createEmptyContext(), holder.getRequest(), holder.getResponse());
+
+        assertNull(request.getSession().getAttribute(SPRING_SECURITY_CONTEXT_KEY));
+    }
+
+    @Test
+    public void dirtyTrackingSkipsWriteOfUnchangedContext() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setDirtyTracking(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        SecurityContext context = repo.loadContext(holder);
+        assertTrue(context instanceof VersionedSecurityContext);
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+        assertEquals(1, repo.getSessionWriteCount());
+
+        holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        SecurityContext loaded = repo.loadContext(holder);
+        assertSame(context, loaded);
+        repo.saveContext(loaded, holder.getRequest(), holder.getResponse());
+
+        assertEquals(1, repo.getSessionWriteCount());
+        assertEquals(1, repo.getSkippedSessionWriteCount());
+    }
+
+    @Test
+    public void dirtyTrackingSkipsWriteOfChangeStoredByConcurrentRequest() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setDirtyTracking(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        VersionedSecurityContext stored = new VersionedSecurityContext();
+        stored.setAuthentication(new TestingAuthenticationToken("someoneelse", "passwd", "ROLE_B"));
+        request.getSession().setAttribute(SPRING_SECURITY_CONTEXT_KEY, stored);
+        HttpRequestResponseHolder holder1 = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        HttpRequestResponseHolder holder2 = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        SecurityContext context1 = repo.loadContext(holder1);
+        SecurityContext context2 = repo.loadContext(holder2);
+
+        context1.setAuthentication(testToken);
+        repo.saveContext(context1, holder1.getRequest(), holder1.getResponse());
+        repo.saveContext(context2, holder2.getRequest(), holder2.getResponse());
+
+        assertEquals(1, repo.getSessionWriteCount());
+        assertEquals(1, repo.getSkippedSessionWriteCount());
+        assertFalse(stored.isDirty());
+    }
+
+    @Test
+    public void changedVersionedContextIsWritten() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setDirtyTracking(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        VersionedSecurityContext stored = new VersionedSecurityContext();
+        stored.setAuthentication(new TestingAuthenticationToken("someoneelse", "passwd", "ROLE_B"));
+        stored.setPersistedVersion(stored.getVersion());
+        request.getSession().setAttribute(SPRING_SECURITY_CONTEXT_KEY, stored);
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        SecurityContext context = repo.loadContext(holder);
+
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        assertEquals(1, repo.getSessionWriteCount());
+        assertEquals(0, repo.getSkippedSessionWriteCount());
+    }
+
+    @Test
+    public void contextsAreStoredUsingSerializer() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setSecurityContextSerializer(new CompactSecurityContextSerializer());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        SecurityContext context = repo.loadContext(holder);
+        assertTrue(context instanceof SerializingSecurityContext);
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        assertSame(context, request.getSession().getAttribute(SPRING_SECURITY_CONTEXT_KEY));
+    }
+
+    @Test
+    public void existingContextIsConvertedWhenStoredWithSerializer() throws Exception {
+        HttpSessionSecurityContextRepository repo = new HttpSessionSecurityContextRepository();
+        repo.setSecurityContextSerializer(new CompactSecurityContextSerializer());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        SecurityContext stored = new SecurityContextImpl();
+        stored.setAuthentication(new TestingAuthenticationToken("someoneelse", "passwd", "ROLE_B"));
+        request.getSession().setAttribute(SPRING_SECURITY_CONTEXT_KEY, stored);
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, new MockHttpServletResponse());
+        SecurityContext context = repo.loadContext(holder);
+        assertSame(stored, context);
+
+        context.setAuthentication(testToken);
+        repo.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        Object result = request.getSession().getAttribute(SPRING_SECURITY_CONTEXT_KEY);
+        assertTrue(result instanceof SerializingSecurityContext);
+        assertSame(testToken, ((SecurityContext) result).getAuthentication());
+    }
 }
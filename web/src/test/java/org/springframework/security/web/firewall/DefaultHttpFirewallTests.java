@@ -1,6 +1,6 @@
 package org.springframework.security.web.firewall;
 
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
 
 import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
@@ -41,4 +41,38 @@ public class DefaultHttpFirewallTests {
             }
         }
     }
+
+    @Test
+    public void pathsAreCheckedAfterParametersAreRemoved() throws Exception {
+        DefaultHttpFirewall fw = new DefaultHttpFirewall();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServletPath("/path/..;x=y/secure");
+
+        try {
+            fw.getFirewalledRequest(request);
+            fail("/path/.. is un-normalized");
+        } catch (RequestRejectedException expected) {
+        }
+
+        request.setServletPath("/path/..x/.../secure");
+        assertEquals("/path/..x/.../secure", fw.getFirewalledRequest(request).getServletPath());
+    }
+
+    @Test
+    public void rejectedRequestsAreCounted() throws Exception {
+        DefaultHttpFirewall fw = new DefaultHttpFirewall();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServletPath("/ok");
+        fw.getFirewalledRequest(request);
+        assertEquals(0, fw.getRejectedRequestCount());
+
+        request.setServletPath("/../secure");
+        try {
+            fw.getFirewalledRequest(request);
+            fail("Expected RequestRejectedException");
+        } catch (RequestRejectedException expected) {
+        }
+
+        assertEquals(1, fw.getRejectedRequestCount());
+    }
 }
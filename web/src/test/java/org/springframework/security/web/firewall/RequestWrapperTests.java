@@ -29,6 +29,8 @@ public class RequestWrapperTests {
         testPaths.put("/path1//path2/", "/path1/path2/");
         testPaths.put("//path1/path2//", "/path1/path2/");
         testPaths.put(";x=y;z=w", "");
+        testPaths.put("/path1/;x=y/path2", "/path1//path2");
+        testPaths.put("/;x=y", "/");
     }
 
     @Test
@@ -65,6 +67,15 @@ public class RequestWrapperTests {
         }
     }
 
+    @Test
+    public void pathIsNotCopiedIfNothingIsStripped() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        String path = new String("/path1/path2.html");
+        request.setServletPath(path);
+
+        assertSame(path, new RequestWrapper(request).getServletPath());
+    }
+
     @Test
     public void resetWhenForward() throws Exception {
         String denormalizedPath = testPaths.keySet().iterator().next();
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.AntPathMatcher;
+
+public class CompiledAntPathPatternTests {
+    private static final String[] PATTERNS = {
+        "/", "/a", "/a/", "/a/b", "/a/*", "/a/*/", "/a/**", "/a/**/b", "/**/b", "/**/*.css", "/a/**/b/**/c",
+        "/a/**/**/b", "/a/b*", "/a/*b", "/a/?b", "/a/b?c*d", "/*", "*", "a/b", "**/a", "/a/{id}", "/a/{id}.json",
+        "/a/{x}/b/{y}", "/**/a/b/**/c/d", "/a/**/*", "/a/ b /c", "/a//b", "/a*b*c/d", "/**/**", "/ADMIN/**",
+        "/ADMIN/*.html", "/\u0130/*", "/\u0131/*", "/s/*", "/\u017f/*", "/\u00e9/**", "/\u00c9/x"
+    };
+
+    private static final String[] PATHS = {
+        "", "/", "//", "/a", "/a/", "/a/b", "/a/b/", "/a/bb", "/a/xb", "/a/xyb", "/a/b/c", "/a/x/y/b", "/a/b/b",
+        "/a/b/x/c", "/a/b/c/b/c", "/x/y/z.css", "/z.css", "a/b", "a", "/a/12", "/a/12.json", "/a/1/b/2",
+        "/q/a/b/r/c/d", "/a/b/c/d", "/a//b", "/a/ b /c", "/a/b /c", "/a/bXcYd", "/a/bcd", "/A/B", "/a/axbyc/d",
+        "/a/b\n", "/a/\nb", "/a/b/c/d/e/f/g/b", "/ a", "/ADMIN/x", "/admin/x.html", "/ADMIN/X.HTML", "/i/x",
+        "/I/x", "/\u0130/x", "/\u0131/x", "/s/x", "/S/x", "/\u017f/x", "/\u00e9/x", "/\u00c9/x"
+    };
+
+    @Test
+    public void resultsAreConsistentWithAntPathMatcher() {
+        assertConsistentWithAntPathMatcher();
+    }
+
+    @Test
+    public void resultsAreConsistentWithAntPathMatcherInTurkishLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+
+        try {
+            assertConsistentWithAntPathMatcher();
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void patternAndPathAreConvertedToLowerCaseInTheSameWayInTurkishLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+
+        try {
+            String[] patterns = {"/ADMIN/**", "/ADMIN/*.html", "/ADMIN/{id:[0-9]+}", "/ADMIN/x"};
+            String[] paths = {"/ADMIN/x", "/ADMIN/x.html", "/ADMIN/1", "/admin/X"};
+
+            for (int i = 0; i < patterns.length; i++) {
+                MockHttpServletRequest request = new MockHttpServletRequest();
+                request.setServletPath(paths[i]);
+                assertTrue(patterns[i], new AntPathRequestMatcher(patterns[i]).matches(request));
+            }
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void requestMatcherResultsAreConsistentWithAntPathMatcher() {
+        AntPathMatcher antMatcher = new AntPathMatcher();
+        String[] patterns = {"/\u0130/**", "/\u0131/**", "/S/**", "/\u017f/**", "/\u00c9/**", "/\u0130/{id:.+}",
+                "/\u017f/{id:.+}", "/\u00c9/*"};
+
+        for (String pattern : patterns) {
+            AntPathRequestMatcher matcher = new AntPathRequestMatcher(pattern);
+
+            for (String path : PATHS) {
+                MockHttpServletRequest request = new MockHttpServletRequest();
+                request.setServletPath(path);
+                assertEquals("Pattern '" + pattern + "', path '" + path + "'",
+                        antMatcher.match(AntPathRequestMatcher.toLowerCase(pattern),
+                                AntPathRequestMatcher.toLowerCase(path)), matcher.matches(request));
+            }
+        }
+    }
+
+    private void assertConsistentWithAntPathMatcher() {
+        AntPathMatcher antMatcher = new AntPathMatcher();
+
+        for (String rawPattern : PATTERNS) {
+            String pattern = AntPathRequestMatcher.toLowerCase(rawPattern);
+            CompiledAntPathPattern compiled = CompiledAntPathPattern.compile(pattern);
+            assertNotNull("Failed to compile " + pattern, compiled);
+
+            for (String path : PATHS) {
+                assertEquals("Pattern '" + pattern + "', path '" + path + "'",
+                        antMatcher.match(pattern, AntPathRequestMatcher.toLowerCase(path)), compiled.matches(path));
+            }
+        }
+    }
+
+    @Test
+    public void matchingIgnoresCase() {
+        CompiledAntPathPattern compiled = CompiledAntPathPattern.compile("/secure/*.html");
+
+        assertTrue(compiled.matches("/SeCuRe/Page.HTML"));
+        assertFalse(compiled.matches("/SeCuRe/Page.HTM"));
+    }
+
+    @Test
+    public void unsupportedPatternsAreNotCompiled() {
+        assertNull(CompiledAntPathPattern.compile("/a/{id:[0-9]+}"));
+        assertNull(CompiledAntPathPattern.compile("/a/{}"));
+        assertNull(CompiledAntPathPattern.compile("/a/b}"));
+        assertNull(CompiledAntPathPattern.compile("/a/\\\\b"));
+    }
+
+    @Test
+    public void antPathRequestMatcherFallsBackForUnsupportedPatterns() {
+        AntPathRequestMatcher matcher = new AntPathRequestMatcher("/a/{id:[0-9]+}");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServletPath("/A/123");
+
+        assertTrue(matcher.matches(request));
+        request.setServletPath("/a/abc");
+        assertFalse(matcher.matches(request));
+    }
+}
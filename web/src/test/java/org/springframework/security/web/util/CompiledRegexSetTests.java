@@ -0,0 +1,137 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.util;
+
+import static org.junit.Assert.*;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class CompiledRegexSetTests {
+    private static final String[] EXPRESSIONS = {
+        "/a/b", "/a/.*", "^/a/b.*$", "/a/[bc]+/?", "/a/[^b]*", "/(a|bb|c)/x", "/a(/b)?", "/a/b\\?x=\\d+",
+        ".*\\.(css|js)", "/a/\\w{2,3}", "/a/.{2}", "/x{0}/a.*", "/a/[a-c-]+", "/a/[\\d\\s]*", "/a/\\W", "/a/.*?b",
+        "/(?:a|b)+/.*", "", ".*", "/a/\\S+\\.p", "/a/\\x41", "/a/[^\\w]+", "/a\\/b", "/(a*)*b", "/a/\\D{1,}",
+        "/\u00e9/.*", "/a/.\\uFFFF?"
+    };
+
+    private static final String[] INPUTS = {
+        "", "/", "/a", "/a/", "/a/b", "/A/B", "/a/bc", "/a/bcbc/", "/a/x", "/bb/x", "/c/x", "/a/b?x=12", "/a/b?x=",
+        "/x/y.css", "/x/y.CSS", "/a/ab", "/a/abcd", "/a/zz", "/a/-c", "/a/1 2", "/a/!", "/a/xxb", "/ab/.*",
+        "/a/\n", "/a/b\n", "/aab", "/b", "/a/A", "/\u00e9/x", "/\u00c9/x", "/a/\ud83d\ude00", "/a/\ud83d\ude00\uffff",
+        "/a/1a", "/a/s.p", "/a/b/c", "/a/bx", "/x/y.cssx", "/a/s.px"
+    };
+
+    @Test
+    public void resultsAreConsistentWithPattern() {
+        assertConsistentWithPattern(0);
+    }
+
+    @Test
+    public void caseInsensitiveResultsAreConsistentWithPattern() {
+        assertConsistentWithPattern(Pattern.CASE_INSENSITIVE);
+    }
+
+    @Test
+    public void singleExpressionResultsAreConsistentWithPattern() {
+        assertSingleExpressionsConsistentWithPattern(0);
+    }
+
+    @Test
+    public void caseInsensitiveSingleExpressionResultsAreConsistentWithPattern() {
+        assertSingleExpressionsConsistentWithPattern(Pattern.CASE_INSENSITIVE);
+    }
+
+    @Test
+    public void inputIsNotMatchedByPrefix() {
+        CompiledRegexSet set = new CompiledRegexSet();
+        set.add(Pattern.compile("/admin"));
+        set.add(Pattern.compile("/a"));
+
+        assertEquals(-1, set.firstMatch("/admin/secret"));
+        assertEquals(-1, set.firstMatch("/ab"));
+        assertEquals(0, set.firstMatch("/admin"));
+        assertEquals(1, set.firstMatch("/a"));
+    }
+
+    @Test
+    public void firstMatchIsLowestIndex() {
+        CompiledRegexSet set = new CompiledRegexSet();
+        assertEquals(0, set.add(Pattern.compile("/a/b")));
+        assertEquals(1, set.add(Pattern.compile("/a/.*")));
+        assertEquals(2, set.add(Pattern.compile(".*")));
+
+        assertEquals(0, set.firstMatch("/a/b"));
+        assertEquals(1, set.firstMatch("/a/c"));
+        assertEquals(2, set.firstMatch("/b"));
+        assertTrue(set.match("/a/b").matches(2));
+    }
+
+    @Test
+    public void emptySetMatchesNothing() {
+        assertEquals(-1, new CompiledRegexSet().firstMatch("/a"));
+    }
+
+    @Test
+    public void unsupportedExpressionsAreRejected() {
+        CompiledRegexSet set = new CompiledRegexSet();
+
+        assertEquals(-1, set.add(Pattern.compile("/(a)\\1")));
+        assertEquals(-1, set.add(Pattern.compile("/a(?=b)b")));
+        assertEquals(-1, set.add(Pattern.compile("/a*+")));
+        assertEquals(-1, set.add(Pattern.compile("(?i)/a")));
+        assertEquals(-1, set.add(Pattern.compile("/a\\b")));
+        assertEquals(-1, set.add(Pattern.compile("/[a[b]]")));
+        assertEquals(-1, set.add(Pattern.compile("/[a-z&&[^b]]")));
+        assertEquals(-1, set.add(Pattern.compile("/\\p{Alpha}")));
+        assertEquals(-1, set.add(Pattern.compile("/a", Pattern.DOTALL)));
+        assertEquals(-1, set.add(Pattern.compile("a$|b")));
+        assertEquals(0, set.size());
+    }
+
+    /**
+     * Compiles each expression into its own set, so that states aren't kept alive by the other expressions.
+     */
+    private void assertSingleExpressionsConsistentWithPattern(int flags) {
+        for (String expression : EXPRESSIONS) {
+            Pattern pattern = Pattern.compile(expression, flags);
+            CompiledRegexSet set = new CompiledRegexSet();
+            assertEquals("Failed to compile " + expression, 0, set.add(pattern));
+
+            for (String input : INPUTS) {
+                assertEquals("Expression '" + expression + "', input '" + input + "'",
+                        pattern.matcher(input).matches(), set.match(input).matches(0));
+            }
+        }
+    }
+
+    private void assertConsistentWithPattern(int flags) {
+        CompiledRegexSet set = new CompiledRegexSet();
+        Pattern[] patterns = new Pattern[EXPRESSIONS.length];
+
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            patterns[i] = Pattern.compile(EXPRESSIONS[i], flags);
+            assertEquals("Failed to compile " + EXPRESSIONS[i], i, set.add(patterns[i]));
+        }
+
+        for (String input : INPUTS) {
+            CompiledRegexSet.Result result = set.match(input);
+
+            for (int i = 0; i < patterns.length; i++) {
+                assertEquals("Expression '" + EXPRESSIONS[i] + "', input '" + input + "'",
+                        patterns[i].matcher(input).matches(), result.matches(i));
+            }
+        }
+    }
+}
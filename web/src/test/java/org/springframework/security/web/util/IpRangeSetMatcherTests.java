@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class IpRangeSetMatcherTests {
+
+    @Test
+    public void matchesAddressesInAnyRange() {
+        IpRangeSetMatcher matcher = new IpRangeSetMatcher("192.168.1.0/24", "10.0.0.1", "2001:DB8::/48");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        request.setRemoteAddr("192.168.1.159");
+        assertTrue(matcher.matches(request));
+        request.setRemoteAddr("192.168.2.1");
+        assertFalse(matcher.matches(request));
+        assertTrue(matcher.matches("10.0.0.1"));
+        assertFalse(matcher.matches("10.0.0.2"));
+        assertTrue(matcher.matches("2001:DB8:0:FFFF:FFFF:FFFF:FFFF:FFFF"));
+        assertFalse(matcher.matches("2001:DB8:1:0:0:0:0:0"));
+    }
+
+    @Test
+    public void ipv4RangesDontMatchIpv6Addresses() {
+        IpRangeSetMatcher matcher = new IpRangeSetMatcher("0.0.0.0/0");
+
+        assertTrue(matcher.matches("123.4.5.6"));
+        assertFalse(matcher.matches("fe80::21f:5bff:fe33:bd68"));
+    }
+
+    @Test
+    public void mostSpecificRangeIsReturned() {
+        IpRangeSetMatcher matcher = new IpRangeSetMatcher("10.0.0.0/8", "10.1.2.0/24", "10.1.0.0/16");
+
+        assertEquals("10.1.2.0/24", matcher.getMatchingRange("10.1.2.3"));
+        assertEquals("10.1.0.0/16", matcher.getMatchingRange("10.1.3.3"));
+        assertEquals("10.0.0.0/8", matcher.getMatchingRange("10.2.3.4"));
+        assertNull(matcher.getMatchingRange("11.0.0.1"));
+    }
+
+    @Test
+    public void resultsAreConsistentWithIpAddressMatcher() {
+        String[] ranges = {"192.168.1.128/25", "172.16.0.0/12", "8.8.8.8", "100.64.0.0/10", "1.2.3.4/31",
+                "fe80::/10", "2001:DB8::1", "0.0.0.0/1"};
+        String[] addresses = {"192.168.1.127", "192.168.1.128", "172.31.255.255", "172.32.0.0", "8.8.8.8",
+                "8.8.8.9", "100.127.0.1", "1.2.3.5", "1.2.3.6", "127.0.0.1", "200.1.1.1", "fe80::1", "fec0::1",
+                "2001:db8:0:0:0:0:0:1", "2001:db8::2", "::ffff:8.8.8.8"};
+        List<IpAddressMatcher> matchers = new ArrayList<IpAddressMatcher>();
+
+        for (String range : ranges) {
+            matchers.add(new IpAddressMatcher(range));
+        }
+
+        IpRangeSetMatcher setMatcher = new IpRangeSetMatcher(ranges);
+
+        for (String address : addresses) {
+            boolean expected = false;
+            for (IpAddressMatcher matcher : matchers) {
+                expected |= matcher.matches(address);
+            }
+            assertEquals("Mismatch for " + address, expected, setMatcher.matches(address));
+        }
+    }
+
+    @Test
+    public void largeNumberOfRangesIsSupported() {
+        List<String> ranges = new ArrayList<String>();
+
+        for (int i = 0; i < 20000; i++) {
+            ranges.add((i >> 8) + "." + (i & 0xFF) + ".0.0/16");
+        }
+
+        IpRangeSetMatcher matcher = new IpRangeSetMatcher(ranges);
+
+        assertEquals(20000, matcher.size());
+        assertEquals("77.12.0.0/16", matcher.getMatchingRange("77.12.200.1"));
+        assertFalse(matcher.matches("79.0.0.1"));
+    }
+}
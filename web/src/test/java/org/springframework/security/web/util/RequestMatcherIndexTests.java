@@ -0,0 +1,202 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class RequestMatcherIndexTests {
+    private RequestMatcherIndex<String> index;
+
+    @Before
+    public void setUp() {
+        index = new RequestMatcherIndex<String>();
+    }
+
+    @Test
+    public void emptyIndexMatchesNothing() {
+        assertNull(index.getFirstMatch(createRequest("/anything")));
+        assertEquals(-1, index.getFirstMatchIndex(createRequest("/anything")));
+    }
+
+    @Test
+    public void firstMatchInInsertionOrderIsReturned() {
+        index.add(new AntPathRequestMatcher("/a/b/c"), "abc");
+        index.add(new AntPathRequestMatcher("/**"), "all");
+        index.add(new AntPathRequestMatcher("/a/**"), "a");
+
+        assertEquals("abc", index.getFirstMatch(createRequest("/a/b/c")));
+        assertEquals("all", index.getFirstMatch(createRequest("/a/b/d")));
+        assertEquals("all", index.getFirstMatch(createRequest("/x")));
+    }
+
+    @Test
+    public void moreSpecificPrefixAddedLaterIsShadowedByEarlierGeneralPattern() {
+        index.add(new AntPathRequestMatcher("/a/**"), "a");
+        index.add(new AntPathRequestMatcher("/a/b/**"), "ab");
+
+        assertEquals("a", index.getFirstMatch(createRequest("/a/b/c")));
+        assertEquals(0, index.getFirstMatchIndex(createRequest("/a/b/c")));
+    }
+
+    @Test
+    public void matchingIsCaseInsensitive() {
+        index.add(new AntPathRequestMatcher("/Admin/Users/*"), "users");
+
+        assertEquals("users", index.getFirstMatch(createRequest("/ADMIN/users/bob")));
+        assertNull(index.getFirstMatch(createRequest("/admin/groups/bob")));
+    }
+
+    @Test
+    public void pathInfoIsIncludedInPath() {
+        index.add(new AntPathRequestMatcher("/servlet/info/**"), "info");
+        MockHttpServletRequest request = createRequest("/servlet");
+        request.setPathInfo("/info/more");
+
+        assertEquals("info", index.getFirstMatch(request));
+    }
+
+    @Test
+    public void wildcardSegmentsEndTheIndexedPrefix() {
+        index.add(new AntPathRequestMatcher("/a/*/c"), "star");
+        index.add(new AntPathRequestMatcher("/a/{id}/d"), "var");
+        index.add(new AntPathRequestMatcher("/a/b?/e"), "question");
+        index.add(new AntPathRequestMatcher("/*.html"), "html");
+
+        assertEquals("star", index.getFirstMatch(createRequest("/a/x/c")));
+        assertEquals("var", index.getFirstMatch(createRequest("/a/x/d")));
+        assertEquals("question", index.getFirstMatch(createRequest("/a/bx/e")));
+        assertEquals("html", index.getFirstMatch(createRequest("/index.html")));
+    }
+
+    @Test
+    public void unindexableMatchersAreCheckedInOrder() {
+        RequestMatcher other = mock(RequestMatcher.class);
+        when(other.matches(any(HttpServletRequest.class))).thenReturn(true);
+        index.add(new AntPathRequestMatcher("/a/**"), "a");
+        index.add(other, "other");
+        index.add(new AntPathRequestMatcher("/b/**"), "b");
+
+        assertEquals("a", index.getFirstMatch(createRequest("/a/x")));
+        assertEquals("other", index.getFirstMatch(createRequest("/b/x")));
+        verify(other, times(1)).matches(any(HttpServletRequest.class));
+    }
+
+    @Test
+    public void httpMethodIsRespected() {
+        index.add(new AntPathRequestMatcher("/a/**"), "a");
+        index.add(new AntPathRequestMatcher("/b/**", "GET"), "b");
+
+        MockHttpServletRequest request = createRequest("/b/x");
+        request.setMethod("POST");
+        assertNull(index.getFirstMatch(request));
+        request.setMethod("GET");
+        assertEquals("b", index.getFirstMatch(request));
+    }
+
+    @Test
+    public void methodSpecificRulesKeepTheirPriorityRelativeToOtherRules() {
+        index.add(new AntPathRequestMatcher("/a/**", "POST"), "post");
+        index.add(new AntPathRequestMatcher("/a/b/**"), "any");
+        index.add(new AntPathRequestMatcher("/a/b/c", "GET"), "get");
+
+        MockHttpServletRequest request = createRequest("/a/b/c");
+        assertEquals("any", index.getFirstMatch(request));
+        request.setMethod("POST");
+        assertEquals("post", index.getFirstMatch(request));
+        request.setMethod(null);
+        assertEquals("post", index.getFirstMatch(request));
+    }
+
+    @Test
+    public void resultIsConsistentWithLinearScan() {
+        String[] patterns = {"/a/b/**", "/a/*/c", "/a/**/d", "/**/*.css", "/a/b", "/c/**", "/a/b/c/d",
+                "/a/{x}", "/c/d/e/**", "/a/b/c/**"};
+        String[] paths = {"/a/b", "/a/b/", "/a/b/c", "/a/x/c", "/a/x/y/d", "/c", "/c/d/e/f", "/a/b/c/d",
+                "/x/y.css", "/a/q", "/a//b/c", "/a/ b /c", "/z"};
+        List<RequestMatcher> matchers = new ArrayList<RequestMatcher>();
+
+        for (String pattern : patterns) {
+            RequestMatcher matcher = new AntPathRequestMatcher(pattern);
+            matchers.add(matcher);
+            index.add(matcher, pattern);
+        }
+
+        for (String path : paths) {
+            MockHttpServletRequest request = createRequest(path);
+            int expected = -1;
+            for (int i = 0; i < matchers.size(); i++) {
+                if (matchers.get(i).matches(request)) {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals("Mismatch for " + path, expected, index.getFirstMatchIndex(request));
+        }
+    }
+
+    @Test
+    public void regexMatchersAreConsistentWithLinearScan() {
+        RequestMatcher[] rules = {
+            new RegexRequestMatcher("/a/b\\?x=\\d+", null),
+            new RegexRequestMatcher("/(\\w)\\1/.*", null),
+            new AntPathRequestMatcher("/c/**"),
+            new RegexRequestMatcher("/c/d.*", "POST"),
+            new RegexRequestMatcher(".*\\.(css|js)", null, true),
+            new RegexRequestMatcher("/a/.*", "GET")
+        };
+        String[] urls = {"/a/b?x=12", "/a/b?x=", "/aa/b", "/c/d", "/x/y.CSS", "/a/z", "/q"};
+
+        for (int i = 0; i < rules.length; i++) {
+            index.add(rules[i], Integer.toString(i));
+        }
+
+        for (String method : new String[] {"GET", "POST"}) {
+            for (String url : urls) {
+                MockHttpServletRequest request = createRequest(url);
+                int query = url.indexOf('?');
+                if (query >= 0) {
+                    request.setServletPath(url.substring(0, query));
+                    request.setQueryString(url.substring(query + 1));
+                }
+                request.setMethod(method);
+                int expected = -1;
+                for (int i = 0; i < rules.length; i++) {
+                    if (rules[i].matches(request)) {
+                        expected = i;
+                        break;
+                    }
+                }
+                assertEquals("Mismatch for " + method + " " + url, expected, index.getFirstMatchIndex(request));
+            }
+        }
+    }
+
+    private MockHttpServletRequest createRequest(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServletPath(path);
+        request.setMethod("GET");
+
+        return request;
+    }
+}
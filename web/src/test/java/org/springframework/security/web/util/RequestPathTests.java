@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.web.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class RequestPathTests {
+    private MockHttpServletRequest request;
+
+    @Before
+    public void setUp() {
+        request = new MockHttpServletRequest();
+        request.setServletPath("/Servlet");
+        request.setPathInfo("/Info");
+        request.setQueryString("a=b");
+    }
+
+    @Test
+    public void pathVariantsAreCorrect() {
+        RequestPath path = RequestPath.get(request);
+
+        assertEquals("/Servlet/Info", path.getPath());
+        assertEquals("/servlet/info", path.getLowerCasePath());
+        assertEquals("/Servlet/Info?a=b", path.getPathWithQueryString());
+    }
+
+    @Test
+    public void nullPathInfoAndQueryStringAreIgnored() {
+        request.setPathInfo(null);
+        request.setQueryString(null);
+        RequestPath path = RequestPath.get(request);
+
+        assertEquals("/Servlet", path.getPath());
+        assertEquals("/Servlet", path.getPathWithQueryString());
+    }
+
+    @Test
+    public void installedInstanceIsSharedUntilRestored() {
+        Object previous = RequestPath.install(request);
+        assertNull(previous);
+
+        RequestPath path = RequestPath.get(request);
+        assertSame(path, RequestPath.get(request));
+        assertSame(path.getLowerCasePath(), RequestPath.get(request).getLowerCasePath());
+
+        RequestPath.restore(request, previous);
+        assertNull(request.getAttribute(RequestPath.ATTRIBUTE_NAME));
+        assertNotSame(RequestPath.get(request), RequestPath.get(request));
+    }
+
+    @Test
+    public void staleInstanceIsNotUsedWhenRequestPathChanges() {
+        RequestPath.install(request);
+        RequestPath original = RequestPath.get(request);
+
+        request.setServletPath("/other");
+        RequestPath current = RequestPath.get(request);
+
+        assertNotSame(original, current);
+        assertEquals("/other/Info", current.getPath());
+    }
+
+    @Test
+    public void nestedInstallationRestoresOuterInstance() {
+        RequestPath.install(request);
+        RequestPath outer = RequestPath.get(request);
+
+        Object previous = RequestPath.install(request);
+        assertSame(outer, previous);
+        assertNotSame(outer, RequestPath.get(request));
+
+        RequestPath.restore(request, previous);
+        assertSame(outer, RequestPath.get(request));
+    }
+}